@@ -7,6 +7,7 @@ import com.bericotech.clavin.gazetteer.query.Gazetteer;
 import com.bericotech.clavin.resolver.ClavinLocationResolver;
 import com.bericotech.clavin.resolver.ResolvedLocation;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -76,8 +77,33 @@ public class GeoParser {
      * @param fuzzy               switch to turn on/off fuzzy matching
      */
     public GeoParser(LocationExtractor extractor, Gazetteer gazetteer, int maxHitDepth, int maxContextWindow, boolean fuzzy) {
+        this(extractor, gazetteer, maxHitDepth, maxContextWindow, fuzzy, 1);
+    }
+
+    /**
+     * Create a GeoParser that resolves the locations of each document
+     * in parallel, querying the gazetteer for the candidates of long
+     * documents concurrently and scoring their context windows on a
+     * pool of the given size.  The gazetteer must be thread-safe.
+     *
+     * The pool's threads are daemon threads that exit when the pool is
+     * idle, so the parser does not need to be closed.
+     *
+     * @param extractor           extracts location names from text
+     * @param gazetteer           resolves location names to gazetteer
+     * @param maxHitDepth         the maximum hit depth
+     * @param maxContextWindow    the maximum context window
+     * @param fuzzy               switch to turn on/off fuzzy matching
+     * @param poolSize            the number of threads resolving each document; 1 will
+     *                            resolve locations on the calling thread
+     */
+    public GeoParser(LocationExtractor extractor, Gazetteer gazetteer, int maxHitDepth, int maxContextWindow, boolean fuzzy,
+            int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("poolSize must be greater than zero");
+        }
         this.extractor = extractor;
-        this.resolver = new ClavinLocationResolver(gazetteer);
+        this.resolver = new ClavinLocationResolver(gazetteer, poolSize > 1 ? new ForkJoinPool(poolSize) : null);
         this.maxHitDepth = maxHitDepth;
         this.maxContextWindow = maxContextWindow;
         this.fuzzy = fuzzy;
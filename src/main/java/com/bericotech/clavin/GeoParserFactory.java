@@ -2,8 +2,10 @@ package com.bericotech.clavin;
 
 import com.bericotech.clavin.extractor.ApacheExtractor;
 import com.bericotech.clavin.extractor.LocationExtractor;
+import com.bericotech.clavin.gazetteer.query.DirectoryMode;
 import com.bericotech.clavin.gazetteer.query.Gazetteer;
 import com.bericotech.clavin.gazetteer.query.LuceneGazetteer;
+import com.bericotech.clavin.gazetteer.query.LuceneGazetteerConfig;
 import java.io.File;
 import java.io.IOException;
 
@@ -93,10 +95,28 @@ public class GeoParserFactory {
      */
     public static GeoParser getDefault(String pathToLuceneIndex, int maxHitDepth, int maxContentWindow, boolean fuzzy)
                     throws ClavinException {
+        return getDefault(pathToLuceneIndex, maxHitDepth, maxContentWindow, fuzzy, DirectoryMode.DEFAULT);
+    }
+
+    /**
+     * Get a GeoParser with defined values for maxHitDepth and
+     * maxContentWindow, fuzzy matching explicitly turned on or off,
+     * and a specific mode for loading the Lucene index.
+     *
+     * @param pathToLuceneIndex     Path to the local Lucene index.
+     * @param maxHitDepth           Number of candidate matches to consider
+     * @param maxContentWindow      How much context to consider when resolving
+     * @param fuzzy                 Should fuzzy matching be used?
+     * @param directoryMode         How should the Lucene index be loaded?
+     * @return                      GeoParser
+     * @throws ClavinException      If the index cannot be created.
+     */
+    public static GeoParser getDefault(String pathToLuceneIndex, int maxHitDepth, int maxContentWindow, boolean fuzzy,
+            DirectoryMode directoryMode) throws ClavinException {
         try {
             // instantiate default LocationExtractor
             LocationExtractor extractor = new ApacheExtractor();
-            return getDefault(pathToLuceneIndex, extractor, maxHitDepth, maxContentWindow, fuzzy);
+            return getDefault(pathToLuceneIndex, extractor, maxHitDepth, maxContentWindow, fuzzy, directoryMode);
         } catch (IOException ioe) {
             throw new ClavinException("Error creating ApacheExtractor", ioe);
         }
@@ -117,8 +137,74 @@ public class GeoParserFactory {
      */
     public static GeoParser getDefault(String pathToLuceneIndex, LocationExtractor extractor, int maxHitDepth,
             int maxContentWindow, boolean fuzzy) throws ClavinException {
+        return getDefault(pathToLuceneIndex, extractor, maxHitDepth, maxContentWindow, fuzzy, DirectoryMode.DEFAULT);
+    }
+
+    /**
+     * Get a GeoParser with defined values for maxHitDepth and
+     * maxContentWindow, fuzzy matching explicitly turned on or off,
+     * a specific LocationExtractor to use and a specific mode for
+     * loading the Lucene index.
+     *
+     * @param pathToLuceneIndex     Path to the local Lucene index.
+     * @param extractor             A specific implementation of LocationExtractor to be used
+     * @param maxHitDepth           Number of candidate matches to consider
+     * @param maxContentWindow      How much context to consider when resolving
+     * @param fuzzy                 Should fuzzy matching be used?
+     * @param directoryMode         How should the Lucene index be loaded?
+     * @return                      GeoParser
+     * @throws ClavinException      If the index cannot be created.
+     */
+    public static GeoParser getDefault(String pathToLuceneIndex, LocationExtractor extractor, int maxHitDepth,
+            int maxContentWindow, boolean fuzzy, DirectoryMode directoryMode) throws ClavinException {
+        return getDefault(pathToLuceneIndex, extractor, maxHitDepth, maxContentWindow, fuzzy,
+                new LuceneGazetteerConfig().directoryMode(directoryMode));
+    }
+
+    /**
+     * Get a GeoParser with defined values for maxHitDepth and
+     * maxContentWindow, fuzzy matching explicitly turned on or off,
+     * and a specific configuration for the Lucene gazetteer, such as
+     * an executor for searching index segments in parallel.
+     *
+     * @param pathToLuceneIndex     Path to the local Lucene index.
+     * @param maxHitDepth           Number of candidate matches to consider
+     * @param maxContentWindow      How much context to consider when resolving
+     * @param fuzzy                 Should fuzzy matching be used?
+     * @param config                The Lucene gazetteer configuration
+     * @return                      GeoParser
+     * @throws ClavinException      If the index cannot be created.
+     */
+    public static GeoParser getDefault(String pathToLuceneIndex, int maxHitDepth, int maxContentWindow, boolean fuzzy,
+            LuceneGazetteerConfig config) throws ClavinException {
+        try {
+            // instantiate default LocationExtractor
+            LocationExtractor extractor = new ApacheExtractor();
+            return getDefault(pathToLuceneIndex, extractor, maxHitDepth, maxContentWindow, fuzzy, config);
+        } catch (IOException ioe) {
+            throw new ClavinException("Error creating ApacheExtractor", ioe);
+        }
+    }
+
+    /**
+     * Get a GeoParser with defined values for maxHitDepth and
+     * maxContentWindow, fuzzy matching explicitly turned on or off,
+     * a specific LocationExtractor to use and a specific configuration
+     * for the Lucene gazetteer.
+     *
+     * @param pathToLuceneIndex     Path to the local Lucene index.
+     * @param extractor             A specific implementation of LocationExtractor to be used
+     * @param maxHitDepth           Number of candidate matches to consider
+     * @param maxContentWindow      How much context to consider when resolving
+     * @param fuzzy                 Should fuzzy matching be used?
+     * @param config                The Lucene gazetteer configuration
+     * @return                      GeoParser
+     * @throws ClavinException      If the index cannot be created.
+     */
+    public static GeoParser getDefault(String pathToLuceneIndex, LocationExtractor extractor, int maxHitDepth,
+            int maxContentWindow, boolean fuzzy, LuceneGazetteerConfig config) throws ClavinException {
         // instantiate new LuceneGazetteer
-        Gazetteer gazetteer = new LuceneGazetteer(new File(pathToLuceneIndex));
+        Gazetteer gazetteer = new LuceneGazetteer(new File(pathToLuceneIndex), config);
         return new GeoParser(extractor, gazetteer, maxHitDepth, maxContentWindow, fuzzy);
     }
 }
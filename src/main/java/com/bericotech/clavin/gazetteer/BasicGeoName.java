@@ -1,5 +1,6 @@
 package com.bericotech.clavin.gazetteer;
 
+import java.math.BigDecimal;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -12,6 +13,7 @@ import java.util.Set;
 import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -174,7 +176,8 @@ public class BasicGeoName implements GeoName {
     // the parent of this GeoName
     private GeoName parent;
 
-    // the gazetteer record this GeoName was parsed from
+    // the gazetteer record this GeoName was parsed from; regenerated from
+    // the fields of this GeoName when it was not provided
     private String gazetteerRecord;
 
     /**
@@ -202,7 +205,8 @@ public class BasicGeoName implements GeoName {
      * @param digitalElevationModel     another way to measure elevation
      * @param timezone                  timezone for this location
      * @param modificationDate          date of last modification for the GeoNames record
-     * @param gazetteerRecord           the gazetteer record
+     * @param gazetteerRecord           the gazetteer record; if <code>null</code>, it will be generated
+     *                                  from the other fields when requested
      */
     public BasicGeoName(
             int geonameID,
@@ -745,12 +749,55 @@ public class BasicGeoName implements GeoName {
 
     @Override
     public String getGazetteerRecord() {
+        if (gazetteerRecord == null) {
+            gazetteerRecord = formatGazetteerRecord();
+        }
         return gazetteerRecord;
     }
 
     @Override
     public String getGazetteerRecordWithAncestry() {
-        return parent != null ? String.format("%s\n%s", gazetteerRecord, parent.getGazetteerRecordWithAncestry()) : gazetteerRecord;
+        String record = getGazetteerRecord();
+        return parent != null ? String.format("%s\n%s", record, parent.getGazetteerRecordWithAncestry()) : record;
+    }
+
+    /**
+     * Generates the tab-delimited GeoNames record for this GeoName.  Unknown
+     * numeric values are written as empty fields.
+     * @return the GeoNames record
+     */
+    private String formatGazetteerRecord() {
+        StringBuilder record = new StringBuilder(256);
+        record.append(geonameID).append('\t');
+        record.append(nullToEmpty(name)).append('\t');
+        record.append(nullToEmpty(asciiName)).append('\t');
+        record.append(StringUtils.join(alternateNames, ',')).append('\t');
+        record.append(formatCoordinate(latitude)).append('\t');
+        record.append(formatCoordinate(longitude)).append('\t');
+        record.append(featureClass != null && featureClass != FeatureClass.NULL ? featureClass.name() : "").append('\t');
+        // TERRI is not a GeoNames feature code
+        FeatureCode code = featureCode == FeatureCode.TERRI ? FeatureCode.TERR : featureCode;
+        record.append(code != null && code != FeatureCode.NULL ? code.name() : "").append('\t');
+        record.append(primaryCountryCode != null && primaryCountryCode != CountryCode.NULL ? primaryCountryCode.name() : "").append('\t');
+        record.append(StringUtils.join(alternateCountryCodes, ',')).append('\t');
+        record.append(nullToEmpty(admin1Code)).append('\t');
+        record.append(nullToEmpty(admin2Code)).append('\t');
+        record.append(nullToEmpty(admin3Code)).append('\t');
+        record.append(nullToEmpty(admin4Code)).append('\t');
+        record.append(population != OUT_OF_BOUNDS ? Long.toString(population) : "").append('\t');
+        record.append(elevation != OUT_OF_BOUNDS ? Integer.toString(elevation) : "").append('\t');
+        record.append(digitalElevationModel != OUT_OF_BOUNDS ? Integer.toString(digitalElevationModel) : "").append('\t');
+        record.append(timezone != null ? timezone.getID() : "").append('\t');
+        record.append(modificationDate != null ? new SimpleDateFormat("yyyy-MM-dd").format(modificationDate) : "");
+        return record.toString();
+    }
+
+    private static String formatCoordinate(final double coordinate) {
+        return coordinate != OUT_OF_BOUNDS ? BigDecimal.valueOf(coordinate).stripTrailingZeros().toPlainString() : "";
+    }
+
+    private static String nullToEmpty(final String str) {
+        return str != null ? str : "";
     }
 
     @Override
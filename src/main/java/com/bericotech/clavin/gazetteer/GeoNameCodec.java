@@ -0,0 +1,461 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * GeoNameCodec.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.gazetteer;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Encodes GeoNames, optionally including their ancestry, in a compact
+ * binary record format and decodes them again directly from the encoded
+ * bytes.
+ *
+ * Each record starts with a format version byte followed by the number
+ * of GeoNames in the record: the encoded GeoName and then each of its
+ * ancestors, nearest first.  Integers are written as variable length
+ * (zig-zag encoded if they may be negative), feature classes, feature
+ * codes and country codes as their enum ordinals and time zones as their
+ * position in the <code>TimeZones.txt</code> dictionary.  Coordinates
+ * with at most five decimal places, as used by GeoNames, are stored as
+ * fixed-point integers.  Alternate names may be omitted from the record
+ * to reduce its size; only the alternate names required to identify
+ * top-level territories are kept in that case.
+ *
+ * The enum ordinals and time zone dictionary positions are part of the
+ * format, so changes to either require a new format version.  Records
+ * written with an unsupported version are rejected when decoded.
+ */
+public final class GeoNameCodec {
+    /**
+     * The class logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(GeoNameCodec.class);
+
+    /**
+     * The current version of the record format.
+     */
+    public static final byte FORMAT_VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int FLAG_ASCII_NAME = 0x01;
+    private static final int FLAG_ALTERNATE_NAMES = 0x02;
+    private static final int FLAG_FIXED_COORDINATES = 0x04;
+    private static final int FLAG_MODIFICATION_DATE = 0x08;
+
+    /**
+     * The scale of fixed-point coordinates.
+     */
+    private static final double COORDINATE_SCALE = 100000.0;
+
+    private static final int NO_TIMEZONE = 0;
+    private static final int INLINE_TIMEZONE = 1;
+    private static final int TIMEZONE_OFFSET = 2;
+
+    private static final String TIMEZONE_DICTIONARY = "TimeZones.txt";
+
+    private static final FeatureClass[] FEATURE_CLASSES = FeatureClass.values();
+    private static final FeatureCode[] FEATURE_CODES = FeatureCode.values();
+    private static final CountryCode[] COUNTRY_CODES = CountryCode.values();
+
+    private static final String[] TIMEZONE_IDS;
+    private static final TimeZone[] TIMEZONES;
+    private static final Map<String, Integer> TIMEZONE_INDEX;
+
+    static {
+        List<String> ids = new ArrayList<String>();
+        InputStream in = GeoNameCodec.class.getClassLoader().getResourceAsStream(TIMEZONE_DICTIONARY);
+        if (in != null) {
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF8));
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        line = line.trim();
+                        if (!line.isEmpty() && !line.startsWith("#")) {
+                            ids.add(line);
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException ioe) {
+                LOG.error("Error reading time zone dictionary.", ioe);
+                ids.clear();
+            }
+        } else {
+            LOG.error("Unable to find time zone dictionary [{}]; time zones will be stored inline.", TIMEZONE_DICTIONARY);
+        }
+        TIMEZONE_IDS = ids.toArray(new String[ids.size()]);
+        TIMEZONES = new TimeZone[TIMEZONE_IDS.length];
+        Map<String, Integer> index = new HashMap<String, Integer>();
+        for (int i = 0; i < TIMEZONE_IDS.length; i++) {
+            TIMEZONES[i] = TimeZone.getTimeZone(TIMEZONE_IDS[i]);
+            index.put(TIMEZONE_IDS[i], i);
+        }
+        TIMEZONE_INDEX = Collections.unmodifiableMap(index);
+    }
+
+    private GeoNameCodec() {
+    }
+
+    /**
+     * Checks whether the provided bytes start with a supported record format version.
+     * @param bytes the bytes
+     * @param offset the offset of the record
+     * @param length the length of the record
+     * @return <code>true</code> if the bytes hold a record this codec can decode
+     */
+    public static boolean isEncoded(final byte[] bytes, final int offset, final int length) {
+        return length > 0 && bytes[offset] == FORMAT_VERSION;
+    }
+
+    /**
+     * Encode a GeoName, including all of its alternate names.
+     * @param geoName the GeoName to encode
+     * @param withAncestry <code>true</code> to include the resolved ancestry of the GeoName
+     * @return the encoded record
+     */
+    public static byte[] encode(final GeoName geoName, final boolean withAncestry) {
+        return encode(geoName, withAncestry, true);
+    }
+
+    /**
+     * Encode a GeoName.
+     * @param geoName the GeoName to encode
+     * @param withAncestry <code>true</code> to include the resolved ancestry of the GeoName
+     * @param withAlternateNames <code>true</code> to include the alternate names of each GeoName
+     * @return the encoded record
+     */
+    public static byte[] encode(final GeoName geoName, final boolean withAncestry, final boolean withAlternateNames) {
+        List<GeoName> chain = new ArrayList<GeoName>();
+        for (GeoName current = geoName; current != null; current = withAncestry ? current.getParent() : null) {
+            chain.add(current);
+        }
+        Writer out = new Writer();
+        out.write(FORMAT_VERSION);
+        out.writeVInt(chain.size());
+        for (GeoName current : chain) {
+            encodeGeoName(current, withAlternateNames, out);
+        }
+        return out.toByteArray();
+    }
+
+    private static void encodeGeoName(final GeoName geoName, final boolean withAlternateNames, final Writer out) {
+        String name = nullToEmpty(geoName.getName());
+        String asciiName = nullToEmpty(geoName.getAsciiName());
+        List<String> alternateNames = geoName.getAlternateNames();
+        if (!withAlternateNames) {
+            // the primary country name determines whether territories are top-level divisions
+            String countryName = geoName.getPrimaryCountryCode() != null ? geoName.getPrimaryCountryCode().name : null;
+            alternateNames = alternateNames.contains(countryName) ?
+                    Collections.singletonList(countryName) : Collections.<String>emptyList();
+        }
+        long lat = Math.round(geoName.getLatitude() * COORDINATE_SCALE);
+        long lon = Math.round(geoName.getLongitude() * COORDINATE_SCALE);
+        boolean fixed = lat / COORDINATE_SCALE == geoName.getLatitude() && lon / COORDINATE_SCALE == geoName.getLongitude();
+        Date modificationDate = geoName.getModificationDate();
+
+        int flags = 0;
+        if (!asciiName.equals(name)) {
+            flags |= FLAG_ASCII_NAME;
+        }
+        if (!alternateNames.isEmpty()) {
+            flags |= FLAG_ALTERNATE_NAMES;
+        }
+        if (fixed) {
+            flags |= FLAG_FIXED_COORDINATES;
+        }
+        if (modificationDate != null) {
+            flags |= FLAG_MODIFICATION_DATE;
+        }
+
+        out.writeVInt(geoName.getGeonameID());
+        out.write(flags);
+        out.writeString(name);
+        if ((flags & FLAG_ASCII_NAME) != 0) {
+            out.writeString(asciiName);
+        }
+        if ((flags & FLAG_ALTERNATE_NAMES) != 0) {
+            out.writeVInt(alternateNames.size());
+            for (String alt : alternateNames) {
+                out.writeString(alt);
+            }
+        }
+        if (fixed) {
+            out.writeZLong(lat);
+            out.writeZLong(lon);
+        } else {
+            out.writeLong(Double.doubleToLongBits(geoName.getLatitude()));
+            out.writeLong(Double.doubleToLongBits(geoName.getLongitude()));
+        }
+        out.writeVInt(ordinal(geoName.getFeatureClass(), FeatureClass.NULL));
+        // top-level territories are identified when the record is decoded
+        FeatureCode featureCode = geoName.getFeatureCode() == FeatureCode.TERRI ? FeatureCode.TERR : geoName.getFeatureCode();
+        out.writeVInt(ordinal(featureCode, FeatureCode.NULL));
+        out.writeVInt(ordinal(geoName.getPrimaryCountryCode(), CountryCode.NULL));
+        List<CountryCode> alternateCountryCodes = geoName.getAlternateCountryCodes();
+        out.writeVInt(alternateCountryCodes.size());
+        for (CountryCode code : alternateCountryCodes) {
+            out.writeVInt(ordinal(code, CountryCode.NULL));
+        }
+        out.writeString(nullToEmpty(geoName.getAdmin1Code()));
+        out.writeString(nullToEmpty(geoName.getAdmin2Code()));
+        out.writeString(nullToEmpty(geoName.getAdmin3Code()));
+        out.writeString(nullToEmpty(geoName.getAdmin4Code()));
+        out.writeZLong(geoName.getPopulation());
+        out.writeZLong(geoName.getElevation());
+        out.writeZLong(geoName.getDigitalElevationModel());
+        TimeZone timezone = geoName.getTimezone();
+        if (timezone == null) {
+            out.writeVInt(NO_TIMEZONE);
+        } else {
+            Integer idx = TIMEZONE_INDEX.get(timezone.getID());
+            if (idx != null) {
+                out.writeVInt(idx + TIMEZONE_OFFSET);
+            } else {
+                out.writeVInt(INLINE_TIMEZONE);
+                out.writeString(timezone.getID());
+            }
+        }
+        if (modificationDate != null) {
+            out.writeZLong(modificationDate.getTime());
+        }
+    }
+
+    /**
+     * Decode a record created by {@link #encode(GeoName, boolean, boolean)}.  Strings
+     * are read directly from the provided array without intermediate copies.
+     * @param bytes the bytes holding the record
+     * @param offset the offset of the record
+     * @param length the length of the record
+     * @param preferredName the preferred name of the encoded GeoName, if known
+     * @return the decoded GeoName, with its ancestry if it was encoded
+     * @throws IllegalArgumentException if the record was written with an unsupported format version
+     */
+    public static GeoName decode(final byte[] bytes, final int offset, final int length, final String preferredName) {
+        if (length <= 0 || bytes[offset] != FORMAT_VERSION) {
+            throw new IllegalArgumentException(String.format("Unsupported GeoName record format version: %d",
+                    length > 0 ? bytes[offset] : -1));
+        }
+        Reader in = new Reader(bytes, offset + 1, offset + length);
+        int count = in.readVInt();
+        GeoName geoName = decodeGeoName(in, preferredName);
+        GeoName current = geoName;
+        for (int i = 1; i < count; i++) {
+            GeoName parent = decodeGeoName(in, null);
+            if (!current.setParent(parent)) {
+                LOG.error("Invalid ancestry path for GeoName [{}] at ancestor [{}]", geoName, parent);
+                break;
+            }
+            current = parent;
+        }
+        return geoName;
+    }
+
+    private static GeoName decodeGeoName(final Reader in, final String preferredName) {
+        int geonameID = in.readVInt();
+        int flags = in.readByte();
+        String name = in.readString();
+        String asciiName = (flags & FLAG_ASCII_NAME) != 0 ? in.readString() : name;
+        List<String> alternateNames;
+        if ((flags & FLAG_ALTERNATE_NAMES) != 0) {
+            int size = in.readVInt();
+            alternateNames = new ArrayList<String>(size);
+            for (int i = 0; i < size; i++) {
+                alternateNames.add(in.readString());
+            }
+        } else {
+            alternateNames = null;
+        }
+        double latitude;
+        double longitude;
+        if ((flags & FLAG_FIXED_COORDINATES) != 0) {
+            latitude = in.readZLong() / COORDINATE_SCALE;
+            longitude = in.readZLong() / COORDINATE_SCALE;
+        } else {
+            latitude = Double.longBitsToDouble(in.readLong());
+            longitude = Double.longBitsToDouble(in.readLong());
+        }
+        FeatureClass featureClass = FEATURE_CLASSES[in.readVInt()];
+        FeatureCode featureCode = FEATURE_CODES[in.readVInt()];
+        CountryCode primaryCountryCode = COUNTRY_CODES[in.readVInt()];
+        int altCodeCount = in.readVInt();
+        List<CountryCode> alternateCountryCodes = new ArrayList<CountryCode>(altCodeCount);
+        for (int i = 0; i < altCodeCount; i++) {
+            alternateCountryCodes.add(COUNTRY_CODES[in.readVInt()]);
+        }
+        String admin1Code = in.readString();
+        String admin2Code = in.readString();
+        String admin3Code = in.readString();
+        String admin4Code = in.readString();
+        long population = in.readZLong();
+        int elevation = (int) in.readZLong();
+        int digitalElevationModel = (int) in.readZLong();
+        int tzCode = in.readVInt();
+        TimeZone timezone;
+        if (tzCode == NO_TIMEZONE) {
+            timezone = null;
+        } else if (tzCode == INLINE_TIMEZONE) {
+            timezone = TimeZone.getTimeZone(in.readString());
+        } else {
+            timezone = TIMEZONES[tzCode - TIMEZONE_OFFSET];
+        }
+        Date modificationDate = (flags & FLAG_MODIFICATION_DATE) != 0 ? new Date(in.readZLong()) : null;
+
+        // the GeoNames record is regenerated from these fields if it is requested
+        return new BasicGeoName(geonameID, name, asciiName, alternateNames, preferredName, latitude, longitude,
+                featureClass, featureCode, primaryCountryCode, alternateCountryCodes, admin1Code, admin2Code,
+                admin3Code, admin4Code, population, elevation, digitalElevationModel, timezone, modificationDate,
+                null);
+    }
+
+    private static <E extends Enum<E>> int ordinal(final E value, final E nullValue) {
+        return value != null ? value.ordinal() : nullValue.ordinal();
+    }
+
+    private static String nullToEmpty(final String str) {
+        return str != null ? str : "";
+    }
+
+    /**
+     * Writes the variable length primitives of the record format.
+     */
+    private static final class Writer extends ByteArrayOutputStream {
+        private Writer() {
+            super(128);
+        }
+
+        private void writeVInt(final int value) {
+            writeVLong(value & 0xFFFFFFFFL);
+        }
+
+        private void writeVLong(final long value) {
+            long v = value;
+            while ((v & ~0x7FL) != 0) {
+                write((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            write((int) v);
+        }
+
+        private void writeZLong(final long value) {
+            writeVLong((value << 1) ^ (value >> 63));
+        }
+
+        private void writeLong(final long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                write((int) (value >>> shift));
+            }
+        }
+
+        private void writeString(final String value) {
+            byte[] utf8 = value.getBytes(UTF8);
+            writeVInt(utf8.length);
+            write(utf8, 0, utf8.length);
+        }
+    }
+
+    /**
+     * Reads the variable length primitives of the record format from a byte array.
+     */
+    private static final class Reader {
+        private final byte[] bytes;
+        private final int limit;
+        private int pos;
+
+        private Reader(final byte[] bytes, final int pos, final int limit) {
+            this.bytes = bytes;
+            this.pos = pos;
+            this.limit = limit;
+        }
+
+        private int readByte() {
+            if (pos >= limit) {
+                throw new IllegalArgumentException("Truncated GeoName record.");
+            }
+            return bytes[pos++] & 0xFF;
+        }
+
+        private int readVInt() {
+            return (int) readVLong();
+        }
+
+        private long readVLong() {
+            long value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        private long readZLong() {
+            long v = readVLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        private long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | readByte();
+            }
+            return value;
+        }
+
+        private String readString() {
+            int len = readVInt();
+            if (len == 0) {
+                return "";
+            }
+            if (pos + len > limit) {
+                throw new IllegalArgumentException("Truncated GeoName record.");
+            }
+            String value = new String(bytes, pos, len, UTF8);
+            pos += len;
+            return value;
+        }
+    }
+}
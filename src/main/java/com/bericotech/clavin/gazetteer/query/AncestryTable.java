@@ -0,0 +1,166 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * AncestryTable.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.gazetteer.query;
+
+import static com.bericotech.clavin.index.IndexField.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.util.Bits;
+
+/**
+ * An in-memory table of every GeoName that is the parent of another
+ * GeoName in a gazetteer index, recording the document ID of its canonical
+ * record and the ID of its own parent.  The table allows the ancestry of
+ * any GeoName to be walked with array lookups instead of index searches.
+ *
+ * The canonical record of a GeoName is its lowest document ID, matching
+ * the document returned by an ID query sorted on score and population.
+ *
+ * Tables are built from the GEONAME_ID and PARENT_ID doc values of an
+ * index reader and are immutable once built.
+ */
+final class AncestryTable {
+    /**
+     * The value returned when a GeoName is not found in the table.
+     */
+    public static final int NOT_FOUND = -1;
+
+    // the sorted IDs of all parent GeoNames
+    private final int[] geonameIds;
+    // the canonical document ID of each GeoName, aligned with geonameIds
+    private final int[] docIds;
+    // the parent ID of each GeoName, aligned with geonameIds; NOT_FOUND if it has no parent
+    private final int[] parentIds;
+
+    private AncestryTable(final int[] geonameIds, final int[] docIds, final int[] parentIds) {
+        this.geonameIds = geonameIds;
+        this.docIds = docIds;
+        this.parentIds = parentIds;
+    }
+
+    /**
+     * Builds the ancestry table for the provided index.
+     * @param reader the index reader
+     * @return the ancestry table or <code>null</code> if the index does not provide
+     *         doc values for GeoName IDs
+     * @throws IOException if an error occurs reading the index
+     */
+    public static AncestryTable build(final IndexReader reader) throws IOException {
+        // find the IDs of all GeoNames that are referenced as a parent
+        BitSet parents = new BitSet();
+        for (AtomicReaderContext ctx : reader.leaves()) {
+            AtomicReader leaf = ctx.reader();
+            NumericDocValues parentValues = leaf.getNumericDocValues(PARENT_ID.key());
+            if (parentValues == null) {
+                continue;
+            }
+            Bits hasParent = leaf.getDocsWithField(PARENT_ID.key());
+            Bits liveDocs = leaf.getLiveDocs();
+            for (int doc = 0; doc < leaf.maxDoc(); doc++) {
+                if ((liveDocs == null || liveDocs.get(doc)) && hasParent.get(doc)) {
+                    parents.set((int) parentValues.get(doc));
+                }
+            }
+        }
+
+        int[] geonameIds = new int[parents.cardinality()];
+        int idx = 0;
+        for (int id = parents.nextSetBit(0); id >= 0; id = parents.nextSetBit(id + 1)) {
+            geonameIds[idx++] = id;
+        }
+        int[] docIds = new int[geonameIds.length];
+        int[] parentIds = new int[geonameIds.length];
+        Arrays.fill(docIds, NOT_FOUND);
+        Arrays.fill(parentIds, NOT_FOUND);
+
+        // locate the canonical record of each parent; documents are visited in
+        // ascending order, so the first document seen for a GeoName is canonical
+        for (AtomicReaderContext ctx : reader.leaves()) {
+            AtomicReader leaf = ctx.reader();
+            NumericDocValues idValues = leaf.getNumericDocValues(GEONAME_ID.key());
+            if (idValues == null) {
+                if (leaf.maxDoc() > 0) {
+                    return null;
+                }
+                continue;
+            }
+            NumericDocValues parentValues = leaf.getNumericDocValues(PARENT_ID.key());
+            Bits hasParent = leaf.getDocsWithField(PARENT_ID.key());
+            Bits liveDocs = leaf.getLiveDocs();
+            for (int doc = 0; doc < leaf.maxDoc(); doc++) {
+                int id = (int) idValues.get(doc);
+                if (!parents.get(id) || (liveDocs != null && !liveDocs.get(doc))) {
+                    continue;
+                }
+                int pos = Arrays.binarySearch(geonameIds, id);
+                if (docIds[pos] == NOT_FOUND) {
+                    docIds[pos] = ctx.docBase + doc;
+                    if (parentValues != null && hasParent.get(doc)) {
+                        parentIds[pos] = (int) parentValues.get(doc);
+                    }
+                }
+            }
+        }
+        return new AncestryTable(geonameIds, docIds, parentIds);
+    }
+
+    /**
+     * Get the number of GeoNames in this table.
+     * @return the number of GeoNames in this table
+     */
+    public int size() {
+        return geonameIds.length;
+    }
+
+    /**
+     * Get the document ID of the canonical record of the requested GeoName.
+     * @param geonameId the GeoName ID
+     * @return the document ID or {@link #NOT_FOUND} if the GeoName is not in this table
+     */
+    public int getDocId(final int geonameId) {
+        int pos = Arrays.binarySearch(geonameIds, geonameId);
+        return pos >= 0 ? docIds[pos] : NOT_FOUND;
+    }
+
+    /**
+     * Get the parent ID of the requested GeoName.
+     * @param geonameId the GeoName ID
+     * @return the parent ID or {@link #NOT_FOUND} if the GeoName is not in this table or has no parent
+     */
+    public int getParentId(final int geonameId) {
+        int pos = Arrays.binarySearch(geonameIds, geonameId);
+        return pos >= 0 ? parentIds[pos] : NOT_FOUND;
+    }
+}
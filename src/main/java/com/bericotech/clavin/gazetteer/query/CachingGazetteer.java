@@ -0,0 +1,215 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * CachingGazetteer.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.gazetteer.query;
+
+import com.bericotech.clavin.ClavinException;
+import com.bericotech.clavin.extractor.LocationOccurrence;
+import com.bericotech.clavin.gazetteer.GeoName;
+import com.bericotech.clavin.resolver.ResolvedLocation;
+import com.bericotech.clavin.util.CacheStats;
+import com.bericotech.clavin.util.LruCache;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Gazetteer that caches the results of {@link #getClosestLocations(GazetteerQuery)}
+ * returned by another Gazetteer.  Results are cached on every parameter of
+ * the query except the position of the location occurrence, and cached
+ * results are bound to the occurrence of each query that requests them.
+ *
+ * All other requests are passed directly to the underlying Gazetteer.  This
+ * class is thread-safe if the underlying Gazetteer is thread-safe.
+ */
+public class CachingGazetteer implements Gazetteer {
+    /**
+     * The default maximum number of query results to cache.
+     */
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private final Gazetteer gazetteer;
+    private final LruCache<GazetteerQueryKey, List<ResolvedLocation>> cache;
+
+    /**
+     * Create a new CachingGazetteer whose results never expire.
+     * @param gazetteer the Gazetteer whose results will be cached
+     * @param maxSize the maximum number of query results to cache
+     */
+    public CachingGazetteer(final Gazetteer gazetteer, final int maxSize) {
+        this(gazetteer, maxSize, 0L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create a new CachingGazetteer.
+     * @param gazetteer the Gazetteer whose results will be cached
+     * @param maxSize the maximum number of query results to cache
+     * @param ttl the time results remain cached; values less than or equal to zero
+     *            cache results until they are evicted
+     * @param unit the unit of the ttl
+     */
+    public CachingGazetteer(final Gazetteer gazetteer, final int maxSize, final long ttl, final TimeUnit unit) {
+        if (gazetteer == null) {
+            throw new IllegalArgumentException("gazetteer must not be null");
+        }
+        this.gazetteer = gazetteer;
+        this.cache = new LruCache<GazetteerQueryKey, List<ResolvedLocation>>(maxSize, ttl, unit);
+    }
+
+    @Override
+    public List<ResolvedLocation> getClosestLocations(final GazetteerQuery query) throws ClavinException {
+        LocationOccurrence occurrence = query != null ? query.getOccurrence() : null;
+        if (occurrence == null || occurrence.getText() == null) {
+            return gazetteer.getClosestLocations(query);
+        }
+        GazetteerQueryKey key = new GazetteerQueryKey(query);
+        List<ResolvedLocation> cached = cache.get(key);
+        if (cached == null) {
+            List<ResolvedLocation> results = gazetteer.getClosestLocations(query);
+            cache.put(key, Collections.unmodifiableList(new ArrayList<ResolvedLocation>(results)));
+            return results;
+        }
+        return bind(cached, occurrence);
+    }
+
+    /**
+     * Execute a batch of queries, requesting the results of any queries that are not
+     * cached from the underlying Gazetteer in a single batch.
+     *
+     * @param queries            the queries to execute
+     * @return                   the potential matches for each query, in the order the queries were provided
+     * @throws ClavinException   if an error occurs
+     */
+    @Override
+    public List<List<ResolvedLocation>> getClosestLocations(final List<GazetteerQuery> queries) throws ClavinException {
+        List<List<ResolvedLocation>> results = new ArrayList<List<ResolvedLocation>>(queries.size());
+        // collect the distinct queries whose results are not cached, recording the
+        // position of each query's results in the list of misses
+        Map<GazetteerQueryKey, Integer> missIndex = new HashMap<GazetteerQueryKey, Integer>();
+        List<GazetteerQuery> misses = new ArrayList<GazetteerQuery>();
+        int[] resultIndex = new int[queries.size()];
+        for (int idx = 0; idx < queries.size(); idx++) {
+            GazetteerQuery query = queries.get(idx);
+            LocationOccurrence occurrence = query != null ? query.getOccurrence() : null;
+            List<ResolvedLocation> cached = null;
+            resultIndex[idx] = -1;
+            if (occurrence != null && occurrence.getText() != null) {
+                GazetteerQueryKey key = new GazetteerQueryKey(query);
+                cached = cache.get(key);
+                if (cached == null) {
+                    Integer missIdx = missIndex.get(key);
+                    if (missIdx == null) {
+                        missIdx = misses.size();
+                        missIndex.put(key, missIdx);
+                        misses.add(query);
+                    }
+                    resultIndex[idx] = missIdx;
+                }
+            } else {
+                resultIndex[idx] = misses.size();
+                misses.add(query);
+            }
+            results.add(cached != null ? bind(cached, occurrence) : null);
+        }
+        if (misses.isEmpty()) {
+            return results;
+        }
+
+        List<List<ResolvedLocation>> missResults = gazetteer.getClosestLocations(misses);
+        for (Map.Entry<GazetteerQueryKey, Integer> entry : missIndex.entrySet()) {
+            cache.put(entry.getKey(), Collections.unmodifiableList(
+                    new ArrayList<ResolvedLocation>(missResults.get(entry.getValue()))));
+        }
+        boolean[] returned = new boolean[misses.size()];
+        for (int idx = 0; idx < resultIndex.length; idx++) {
+            int missIdx = resultIndex[idx];
+            if (missIdx >= 0) {
+                // bind results shared with an identical query to this query's occurrence
+                List<ResolvedLocation> missResult = missResults.get(missIdx);
+                results.set(idx, returned[missIdx] ? bind(missResult, queries.get(idx).getOccurrence()) : missResult);
+                returned[missIdx] = true;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Binds previously returned results to the provided location occurrence.
+     * @param matches the results to bind
+     * @param occurrence the occurrence the results should refer to
+     * @return a new list of the results bound to the occurrence
+     */
+    private static List<ResolvedLocation> bind(final List<ResolvedLocation> matches, final LocationOccurrence occurrence) {
+        List<ResolvedLocation> results = new ArrayList<ResolvedLocation>(matches.size());
+        for (ResolvedLocation loc : matches) {
+            results.add(new ResolvedLocation(occurrence, loc.getGeoname(), loc.getMatchedName(), loc.isFuzzy()));
+        }
+        return results;
+    }
+
+    @Override
+    public GeoName getGeoName(final int geonameId) throws ClavinException {
+        return gazetteer.getGeoName(geonameId);
+    }
+
+    @Override
+    public GeoName getGeoName(final int geonameId, final AncestryMode ancestryMode) throws ClavinException {
+        return gazetteer.getGeoName(geonameId, ancestryMode);
+    }
+
+    @Override
+    public void loadAncestry(final GeoName... geoNames) throws ClavinException {
+        gazetteer.loadAncestry(geoNames);
+    }
+
+    @Override
+    public void loadAncestry(final Collection<GeoName> geoNames) throws ClavinException {
+        gazetteer.loadAncestry(geoNames);
+    }
+
+    /**
+     * Get the hit, miss and eviction statistics for the result cache.  Expired
+     * results are counted as evictions.
+     * @return the current cache statistics
+     */
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    /**
+     * Remove all cached results, for example after the underlying
+     * gazetteer index has been refreshed.
+     */
+    public void clear() {
+        cache.clear();
+    }
+}
@@ -0,0 +1,135 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * DirectoryMode.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.gazetteer.query;
+
+import java.io.File;
+import java.io.IOException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.RAMDirectory;
+
+/**
+ * This enum is used to indicate how the gazetteer index should be
+ * loaded from disk.
+ */
+public enum DirectoryMode {
+    /**
+     * Let Lucene choose the best directory implementation for the
+     * current platform. This is the original behavior of CLAVIN.
+     */
+    DEFAULT,
+    /**
+     * Memory-map the index files, leaving them to be paged in by the
+     * operating system as they are accessed.
+     */
+    MMAP,
+    /**
+     * Memory-map the index files and read them completely when the
+     * index is opened so they are resident in the page cache before
+     * the first query is executed.
+     */
+    MMAP_PRELOAD,
+    /**
+     * Read the index files using positional NIO reads.
+     */
+    NIO,
+    /**
+     * Copy the entire index onto the Java heap. The heap must be large
+     * enough to hold the full index, and changes made to the index on
+     * disk will not be seen until the index is re-opened with
+     * {@link LuceneGazetteer#switchIndex(File)}.
+     */
+    RAM;
+
+    /**
+     * The size of the buffer used to preload index files.
+     */
+    private static final int PRELOAD_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Opens the Lucene index found in the provided directory using this mode.
+     * @param indexDir the Lucene index directory
+     * @return the opened directory
+     * @throws IOException if an error occurs opening the directory
+     */
+    public Directory open(final File indexDir) throws IOException {
+        switch (this) {
+            case DEFAULT: return FSDirectory.open(indexDir);
+            case MMAP: return new MMapDirectory(indexDir);
+            case MMAP_PRELOAD: return preload(new MMapDirectory(indexDir));
+            case NIO: return new NIOFSDirectory(indexDir);
+            case RAM: return loadIntoMemory(indexDir);
+            default: throw new IllegalStateException("Unknown DirectoryMode: " + this.name());
+        }
+    }
+
+    /**
+     * Reads every file in the provided directory once, faulting the pages of a
+     * memory-mapped index into the page cache.
+     * @param directory the directory to preload
+     * @return the preloaded directory
+     * @throws IOException if an error occurs reading the directory
+     */
+    private static Directory preload(final Directory directory) throws IOException {
+        byte[] buffer = new byte[PRELOAD_BUFFER_SIZE];
+        for (String file : directory.listAll()) {
+            IndexInput input = directory.openInput(file, IOContext.READONCE);
+            try {
+                long remaining = input.length();
+                while (remaining > 0) {
+                    int len = (int) Math.min(buffer.length, remaining);
+                    input.readBytes(buffer, 0, len);
+                    remaining -= len;
+                }
+            } finally {
+                input.close();
+            }
+        }
+        return directory;
+    }
+
+    /**
+     * Copies the index found in the provided directory onto the heap.
+     * @param indexDir the Lucene index directory
+     * @return the heap-resident copy of the index
+     * @throws IOException if an error occurs reading the index
+     */
+    private static Directory loadIntoMemory(final File indexDir) throws IOException {
+        Directory fsDir = FSDirectory.open(indexDir);
+        try {
+            return new RAMDirectory(fsDir, IOContext.READ);
+        } finally {
+            fsDir.close();
+        }
+    }
+}
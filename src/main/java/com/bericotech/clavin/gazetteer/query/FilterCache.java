@@ -0,0 +1,205 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * FilterCache.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.gazetteer.query;
+
+import static com.bericotech.clavin.index.IndexField.*;
+
+import com.bericotech.clavin.gazetteer.FeatureCode;
+import com.bericotech.clavin.index.IndexField;
+import com.bericotech.clavin.util.CacheStats;
+import com.bericotech.clavin.util.LruCache;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queries.BooleanFilter;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.TermQuery;
+
+/**
+ * Builds and caches the Lucene filters that restrict gazetteer searches.
+ * Each restriction is wrapped in a {@link CachingWrapperFilter}, so the
+ * matching documents are computed once per index segment and re-used by
+ * every search that applies the same restriction.  Segments that are
+ * shared between index generations keep their cached results.
+ *
+ * The historical restriction and the feature code sets provided by
+ * {@link QueryBuilder} are always cached; other feature code sets and
+ * parent ID restrictions are held in bounded least-recently-used caches.
+ */
+final class FilterCache {
+    /**
+     * The set of all FeatureCodes.
+     */
+    private static final Set<FeatureCode> ALL_CODES = Collections.unmodifiableSet(EnumSet.allOf(FeatureCode.class));
+
+    private final Filter nonHistoricalFilter;
+    private final Map<Set<FeatureCode>, Filter> commonCodeFilters;
+    private final LruCache<Set<FeatureCode>, Filter> codeFilters;
+    private final LruCache<Set<Integer>, Filter> parentFilters;
+
+    /**
+     * Create a new FilterCache.
+     * @param maxSize the maximum number of feature code and parent ID filters to cache;
+     *                values less than or equal to zero disable caching of those filters
+     */
+    public FilterCache(final int maxSize) {
+        int val = IndexField.getBooleanIndexValue(false);
+        nonHistoricalFilter = new CachingWrapperFilter(new QueryWrapperFilter(
+                NumericRangeQuery.newIntRange(HISTORICAL.key(), val, val, true, true)));
+
+        commonCodeFilters = new HashMap<Set<FeatureCode>, Filter>();
+        for (Set<FeatureCode> codes : QueryBuilder.getPresetFeatureCodes()) {
+            Set<FeatureCode> key = EnumSet.copyOf(codes);
+            commonCodeFilters.put(key, buildCodeFilter(key));
+        }
+
+        codeFilters = new LruCache<Set<FeatureCode>, Filter>(maxSize);
+        parentFilters = new LruCache<Set<Integer>, Filter>(maxSize);
+    }
+
+    /**
+     * Get the filter that restricts search results to the criteria in the provided query.
+     * @param params the query configuration parameters
+     * @return a Lucene search filter that will restrict the returned documents to the criteria provided
+     *         or <code>null</code> if no filtering is necessary
+     */
+    public Filter getFilter(final GazetteerQuery params) {
+        List<Filter> filters = new ArrayList<Filter>();
+
+        // restrict to non-historical locations if we are not including historical locations
+        if (!params.isIncludeHistorical()) {
+            filters.add(nonHistoricalFilter);
+        }
+
+        // restrict to descendants of the parent IDs if we were provided at least one parent ID
+        Set<Integer> parentIds = params.getParentIds();
+        if (!parentIds.isEmpty()) {
+            filters.add(getParentFilter(parentIds));
+        }
+
+        // restrict to the feature codes if we were provided some, but not all, feature codes
+        Set<FeatureCode> codes = params.getFeatureCodes();
+        if (!(codes.isEmpty() || ALL_CODES.equals(codes))) {
+            filters.add(getCodeFilter(codes));
+        }
+
+        Filter filter;
+        switch (filters.size()) {
+            case 0:
+                filter = null;
+                break;
+            case 1:
+                filter = filters.get(0);
+                break;
+            default:
+                BooleanFilter combined = new BooleanFilter();
+                for (Filter part : filters) {
+                    combined.add(part, Occur.MUST);
+                }
+                filter = combined;
+                break;
+        }
+        return filter;
+    }
+
+    /**
+     * Computes the cached results of the always-cached filters for every segment
+     * of the provided index so they are available to the first searches.
+     * @param reader the index reader
+     * @throws IOException if an error occurs reading the index
+     */
+    public void warm(final IndexReader reader) throws IOException {
+        List<Filter> filters = new ArrayList<Filter>(commonCodeFilters.values());
+        filters.add(nonHistoricalFilter);
+        for (AtomicReaderContext ctx : reader.leaves()) {
+            for (Filter filter : filters) {
+                filter.getDocIdSet(ctx, null);
+            }
+        }
+    }
+
+    /**
+     * Get the hit, miss and eviction statistics for the parent ID filter cache.
+     * @return the current parent ID filter cache statistics
+     */
+    public CacheStats getParentFilterStats() {
+        return parentFilters.getStats();
+    }
+
+    private Filter getCodeFilter(final Set<FeatureCode> codes) {
+        Filter filter = commonCodeFilters.get(codes);
+        if (filter == null) {
+            Set<FeatureCode> key = EnumSet.copyOf(codes);
+            filter = codeFilters.get(key);
+            if (filter == null) {
+                filter = buildCodeFilter(key);
+                codeFilters.put(key, filter);
+            }
+        }
+        return filter;
+    }
+
+    private Filter getParentFilter(final Set<Integer> parentIds) {
+        Set<Integer> key = new HashSet<Integer>(parentIds);
+        Filter filter = parentFilters.get(key);
+        if (filter == null) {
+            BooleanQuery parentQuery = new BooleanQuery();
+            // locations must descend from at least one of the specified parents (OR)
+            for (Integer id : key) {
+                parentQuery.add(NumericRangeQuery.newIntRange(ANCESTOR_IDS.key(), id, id, true, true), Occur.SHOULD);
+            }
+            filter = new CachingWrapperFilter(new QueryWrapperFilter(parentQuery));
+            parentFilters.put(key, filter);
+        }
+        return filter;
+    }
+
+    private static Filter buildCodeFilter(final Set<FeatureCode> codes) {
+        BooleanQuery codeQuery = new BooleanQuery();
+        // locations must be one of the specified feature codes (OR)
+        for (FeatureCode code : codes) {
+            codeQuery.add(new TermQuery(new Term(FEATURE_CODE.key(), code.name())), Occur.SHOULD);
+        }
+        return new CachingWrapperFilter(new QueryWrapperFilter(codeQuery));
+    }
+}
@@ -0,0 +1,155 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * FuzzyConfig.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.gazetteer.query;
+
+/**
+ * Configures the fuzzy matching applied to location names when a
+ * {@link FuzzyMode} requires a fuzzy query.  Fuzzy matching is the most
+ * expensive part of a gazetteer search; requiring a longer exact prefix or
+ * allowing fewer edits and expansions trades recall for lower latency.
+ *
+ * FuzzyConfigs are immutable and may be shared between queries and threads.
+ */
+public final class FuzzyConfig {
+    /**
+     * The maximum number of edits supported by fuzzy matching.
+     */
+    public static final int MAX_SUPPORTED_EDITS = 2;
+
+    /**
+     * The original CLAVIN fuzzy matching configuration: up to two edits, no
+     * required prefix, 50 term expansions per name token and transpositions
+     * counted as a single edit.
+     */
+    public static final FuzzyConfig DEFAULT = new FuzzyConfig(2, 0, 50, true);
+
+    /**
+     * The maximum number of edits allowed for a name token to match.
+     */
+    private final int maxEdits;
+
+    /**
+     * The number of leading characters of a name token that must match exactly.
+     */
+    private final int prefixLength;
+
+    /**
+     * The maximum number of indexed terms each name token may expand to.
+     */
+    private final int maxExpansions;
+
+    /**
+     * Should transposing two adjacent characters count as a single edit?
+     */
+    private final boolean transpositions;
+
+    /**
+     * Create a new FuzzyConfig.
+     * @param maxEdits the maximum number of edits allowed for a name token to match, between
+     *                 0 and {@link #MAX_SUPPORTED_EDITS}
+     * @param prefixLength the number of leading characters of a name token that must match exactly
+     * @param maxExpansions the maximum number of indexed terms each name token may expand to
+     * @param transpositions <code>true</code> if transposing two adjacent characters should count
+     *                       as a single edit
+     */
+    public FuzzyConfig(final int maxEdits, final int prefixLength, final int maxExpansions, final boolean transpositions) {
+        if (maxEdits < 0 || maxEdits > MAX_SUPPORTED_EDITS) {
+            throw new IllegalArgumentException(String.format("maxEdits must be between 0 and %d", MAX_SUPPORTED_EDITS));
+        }
+        if (prefixLength < 0) {
+            throw new IllegalArgumentException("prefixLength cannot be negative");
+        }
+        if (maxExpansions <= 0) {
+            throw new IllegalArgumentException("maxExpansions must be positive");
+        }
+        this.maxEdits = maxEdits;
+        this.prefixLength = prefixLength;
+        this.maxExpansions = maxExpansions;
+        this.transpositions = transpositions;
+    }
+
+    /**
+     * Get the maximum number of edits allowed for a name token to match.
+     * @return the maximum number of edits
+     */
+    public int getMaxEdits() {
+        return maxEdits;
+    }
+
+    /**
+     * Get the number of leading characters of a name token that must match exactly.
+     * @return the required prefix length
+     */
+    public int getPrefixLength() {
+        return prefixLength;
+    }
+
+    /**
+     * Get the maximum number of indexed terms each name token may expand to.
+     * @return the maximum number of term expansions
+     */
+    public int getMaxExpansions() {
+        return maxExpansions;
+    }
+
+    /**
+     * Does transposing two adjacent characters count as a single edit?
+     * @return <code>true</code> if transpositions count as a single edit
+     */
+    public boolean isTranspositions() {
+        return transpositions;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        FuzzyConfig that = (FuzzyConfig) o;
+        return maxEdits == that.maxEdits &&
+                prefixLength == that.prefixLength &&
+                maxExpansions == that.maxExpansions &&
+                transpositions == that.transpositions;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = maxEdits;
+        hash = 31 * hash + prefixLength;
+        hash = 31 * hash + maxExpansions;
+        hash = 31 * hash + (transpositions ? 1 : 0);
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FuzzyConfig{maxEdits=%d, prefixLength=%d, maxExpansions=%d, transpositions=%s}",
+                maxEdits, prefixLength, maxExpansions, transpositions);
+    }
+}
@@ -46,7 +46,17 @@ public enum FuzzyMode {
      * Use fuzzy matching to fill search results, up to the requested
      * maximum number, after all exact matches have been discovered.
      */
-    FILL;
+    FILL,
+    /**
+     * Use n-gram matching only if no exact matches can be found.  Candidate
+     * names that share character n-grams with the location name are re-ranked
+     * by their Damerau-Levenshtein distance from it.  This is faster than
+     * fuzzy term matching and tolerates larger differences, such as those
+     * between transliterations of the same name (e.g. "Mogadishu" and
+     * "Muqdisho").  It requires an index built with name n-grams; other
+     * indexes fall back to fuzzy term matching.
+     */
+    NGRAM;
 
     /**
      * Indicates whether a fuzzy query should be performed in this mode based
@@ -58,7 +68,8 @@ public enum FuzzyMode {
     public boolean useFuzzyMatching(final int maxResults, final int exactResults) {
         switch (this) {
             case OFF: return false;
-            case NO_EXACT: return exactResults == 0;
+            case NO_EXACT:
+            case NGRAM: return exactResults == 0;
             case FILL: return exactResults < maxResults;
             default: throw new IllegalStateException("Unknown FuzzyMode: " + this.name());
         }
@@ -49,6 +49,18 @@ public interface Gazetteer {
      */
     List<ResolvedLocation> getClosestLocations(final GazetteerQuery query) throws ClavinException;
 
+    /**
+     * Execute a batch of queries against the gazetteer, returning the top
+     * matches for each query as {@link ResolvedLocation}s.  The results are
+     * the same as calling {@link #getClosestLocations(GazetteerQuery)} for
+     * each query, but implementations may share work across the batch.
+     *
+     * @param queries            the queries to execute
+     * @return                   the potential matches for each query, in the order the queries were provided
+     * @throws ClavinException   if an error occurs
+     */
+    List<List<ResolvedLocation>> getClosestLocations(final List<GazetteerQuery> queries) throws ClavinException;
+
     /**
      * Retrieves the GeoName with the provided ID, lazily loading its ancestry.
      * @param geonameId           the ID of the requested GeoName
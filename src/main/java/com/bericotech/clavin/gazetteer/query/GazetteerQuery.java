@@ -57,6 +57,11 @@ public class GazetteerQuery {
      */
     private final FuzzyMode fuzzyMode;
 
+    /**
+     * Configures fuzzy matching when the fuzzy mode requires it.
+     */
+    private final FuzzyConfig fuzzyConfig;
+
     /**
      * Indicates how the ancestry of the matched locations should be loaded.
      */
@@ -97,13 +102,34 @@ public class GazetteerQuery {
      * @param parentIds the set of parent IDs to restrict the search to; these will be OR'ed
      * @param featureCodes the set of feature codes to restrict the search to; these will be OR'ed
      */
-    @SuppressWarnings("unchecked")
     public GazetteerQuery(final LocationOccurrence occurrence, final int maxResults, final FuzzyMode fuzzyMode,
             final AncestryMode ancestryMode, final boolean includeHistorical, final boolean filterDupes,
             final Set<Integer> parentIds, final Set<FeatureCode> featureCodes) {
+        this(occurrence, maxResults, fuzzyMode, FuzzyConfig.DEFAULT, ancestryMode, includeHistorical, filterDupes,
+                parentIds, featureCodes);
+    }
+
+    /**
+     * Create a new GazetteerQuery.
+     * @param occurrence the location occurrence
+     * @param maxResults the maximum number of results
+     * @param fuzzyMode the fuzzy mode for this query
+     * @param fuzzyConfig the fuzzy matching configuration for this query; <code>null</code>
+     *                    will use {@link FuzzyConfig#DEFAULT}
+     * @param ancestryMode the ancestry loading mode for this query
+     * @param includeHistorical <code>true</code> to include historical locations
+     * @param filterDupes <code>true</code> to return only the highest scoring match for each individual location
+     * @param parentIds the set of parent IDs to restrict the search to; these will be OR'ed
+     * @param featureCodes the set of feature codes to restrict the search to; these will be OR'ed
+     */
+    @SuppressWarnings("unchecked")
+    public GazetteerQuery(final LocationOccurrence occurrence, final int maxResults, final FuzzyMode fuzzyMode,
+            final FuzzyConfig fuzzyConfig, final AncestryMode ancestryMode, final boolean includeHistorical,
+            final boolean filterDupes, final Set<Integer> parentIds, final Set<FeatureCode> featureCodes) {
         this.occurrence = occurrence;
         this.maxResults = maxResults;
         this.fuzzyMode = fuzzyMode;
+        this.fuzzyConfig = fuzzyConfig != null ? fuzzyConfig : FuzzyConfig.DEFAULT;
         this.ancestryMode = ancestryMode;
         this.includeHistorical = includeHistorical;
         this.filterDupes = filterDupes;
@@ -135,6 +161,14 @@ public class GazetteerQuery {
         return fuzzyMode;
     }
 
+    /**
+     * Get the configuration used for fuzzy matching.
+     * @return the fuzzy matching configuration
+     */
+    public FuzzyConfig getFuzzyConfig() {
+        return fuzzyConfig;
+    }
+
     /**
      * Indicates how the ancestry, the hierarchy of political divisions, for matching
      * locations should be loaded.
@@ -0,0 +1,104 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * GazetteerQueryKey.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.gazetteer.query;
+
+import com.bericotech.clavin.gazetteer.FeatureCode;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Identifies the results of a {@link GazetteerQuery}; all query parameters
+ * except the position of the location occurrence.  Queries with equal keys
+ * return the same matches, so their results may be shared.
+ */
+final class GazetteerQueryKey {
+    private final String text;
+    private final int maxResults;
+    private final FuzzyMode fuzzyMode;
+    private final FuzzyConfig fuzzyConfig;
+    private final AncestryMode ancestryMode;
+    private final boolean includeHistorical;
+    private final boolean filterDupes;
+    private final Set<Integer> parentIds;
+    private final Set<FeatureCode> featureCodes;
+    private final int hashCode;
+
+    /**
+     * Create the key of a query.  The query must have a location occurrence with non-null text.
+     * @param query the query
+     */
+    public GazetteerQueryKey(final GazetteerQuery query) {
+        text = query.getOccurrence().getText();
+        maxResults = query.getMaxResults();
+        fuzzyMode = query.getFuzzyMode();
+        fuzzyConfig = query.getFuzzyConfig();
+        ancestryMode = query.getAncestryMode();
+        includeHistorical = query.isIncludeHistorical();
+        filterDupes = query.isFilterDupes();
+        // copy the sets so later changes to the query cannot modify the key
+        parentIds = new HashSet<Integer>(query.getParentIds());
+        featureCodes = query.getFeatureCodes().isEmpty() ? EnumSet.noneOf(FeatureCode.class) :
+                EnumSet.copyOf(query.getFeatureCodes());
+
+        int hash = text.hashCode();
+        hash = 31 * hash + maxResults;
+        hash = 31 * hash + (fuzzyMode != null ? fuzzyMode.hashCode() : 0);
+        hash = 31 * hash + fuzzyConfig.hashCode();
+        hash = 31 * hash + (ancestryMode != null ? ancestryMode.hashCode() : 0);
+        hash = 31 * hash + (includeHistorical ? 1 : 0);
+        hash = 31 * hash + (filterDupes ? 1 : 0);
+        hash = 31 * hash + parentIds.hashCode();
+        hash = 31 * hash + featureCodes.hashCode();
+        hashCode = hash;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        GazetteerQueryKey that = (GazetteerQueryKey) o;
+        return hashCode == that.hashCode &&
+                maxResults == that.maxResults &&
+                includeHistorical == that.includeHistorical &&
+                filterDupes == that.filterDupes &&
+                fuzzyMode == that.fuzzyMode &&
+                ancestryMode == that.ancestryMode &&
+                fuzzyConfig.equals(that.fuzzyConfig) &&
+                text.equals(that.text) &&
+                parentIds.equals(that.parentIds) &&
+                featureCodes.equals(that.featureCodes);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+}
@@ -0,0 +1,118 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * GeoNameCache.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.gazetteer.query;
+
+import com.bericotech.clavin.gazetteer.GeoName;
+import com.bericotech.clavin.util.CacheStats;
+import com.bericotech.clavin.util.LruCache;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of parsed GeoNames with fully resolved ancestry, keyed by
+ * GeoName ID.  Frequently referenced GeoNames, such as countries and
+ * first and second level administrative divisions, may be pinned so
+ * they are never evicted; all other GeoNames are held in a bounded
+ * least-recently-used cache.
+ *
+ * GeoNames are only cached once their ancestry has been resolved so
+ * cached instances can be shared across queries without modification.
+ * GeoNames must be pinned before the cache is shared between threads.
+ */
+final class GeoNameCache {
+    private final Map<Integer, GeoName> pinned = new HashMap<Integer, GeoName>();
+    private final LruCache<Integer, GeoName> cache;
+    private final AtomicLong pinnedHits = new AtomicLong();
+
+    /**
+     * Create a new GeoNameCache.
+     * @param maxSize the maximum number of unpinned GeoNames to cache; values less than
+     *                or equal to zero disable caching of unpinned GeoNames
+     */
+    public GeoNameCache(final int maxSize) {
+        cache = new LruCache<Integer, GeoName>(maxSize);
+    }
+
+    /**
+     * Get the cached GeoName with the provided ID.
+     * @param geonameId the GeoName ID
+     * @return the cached GeoName or <code>null</code> if it is not cached
+     */
+    public GeoName get(final int geonameId) {
+        GeoName geoName = pinned.get(geonameId);
+        if (geoName != null) {
+            pinnedHits.incrementAndGet();
+            return geoName;
+        }
+        return cache.get(geonameId);
+    }
+
+    /**
+     * Cache a GeoName if its ancestry has been resolved.
+     * @param geoName the GeoName to cache
+     */
+    public void put(final GeoName geoName) {
+        if (geoName != null && geoName.isAncestryResolved() && !pinned.containsKey(geoName.getGeonameID())) {
+            cache.put(geoName.getGeonameID(), geoName);
+        }
+    }
+
+    /**
+     * Pin a GeoName in this cache if its ancestry has been resolved.
+     * @param geoName the GeoName to pin
+     * @return <code>true</code> if the GeoName was pinned
+     */
+    public boolean pin(final GeoName geoName) {
+        if (geoName != null && geoName.isAncestryResolved()) {
+            pinned.put(geoName.getGeonameID(), geoName);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the number of pinned GeoNames.
+     * @return the number of pinned GeoNames
+     */
+    public int getPinnedCount() {
+        return pinned.size();
+    }
+
+    /**
+     * Get a snapshot of the statistics for this cache.  Pinned GeoNames are
+     * included in the size, maximum size and hit count.
+     * @return the current cache statistics
+     */
+    public CacheStats getStats() {
+        CacheStats lru = cache.getStats();
+        return new CacheStats(lru.getHitCount() + pinnedHits.get(), lru.getMissCount(), lru.getEvictionCount(),
+                lru.getSize() + pinned.size(), Math.max(lru.getMaxSize(), 0) + pinned.size());
+    }
+}
@@ -0,0 +1,901 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * InMemoryGazetteer.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.gazetteer.query;
+
+import static com.bericotech.clavin.index.IndexField.*;
+
+import com.bericotech.clavin.ClavinException;
+import com.bericotech.clavin.extractor.LocationOccurrence;
+import com.bericotech.clavin.gazetteer.BasicGeoName;
+import com.bericotech.clavin.gazetteer.FeatureCode;
+import com.bericotech.clavin.gazetteer.GeoName;
+import com.bericotech.clavin.gazetteer.GeoNameCodec;
+import com.bericotech.clavin.gazetteer.LazyAncestryGeoName;
+import com.bericotech.clavin.index.IndexDirectoryBuilder;
+import com.bericotech.clavin.index.NameKeys;
+import com.bericotech.clavin.resolver.ResolvedLocation;
+import com.bericotech.clavin.util.CacheStats;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.SmallFloat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Gazetteer that holds every GeoName and name of a gazetteer in memory,
+ * trading heap for query latency.  It is loaded either from an existing
+ * CLAVIN index or directly from GeoNames gazetteer files and supports the
+ * full Gazetteer contract, including every {@link FuzzyMode}, query filter
+ * and {@link AncestryMode}.
+ *
+ * The fields read while searching are held in primitive arrays ordered by
+ * GeoName ID: the parent of each GeoName, its sort population and its
+ * feature code.  The gazetteer record of each GeoName is held in the
+ * binary format of {@link GeoNameCodec} and decoded only when it is
+ * returned, so GeoNames are created on demand as they are by
+ * {@link LuceneGazetteer}; decoded GeoNames whose ancestry is resolved on
+ * creation are cached.  Names are indexed by the terms
+ * produced by {@link NameKeys}, so exact matches are the same as those of
+ * the Lucene index: names containing every term of the location name, in
+ * order, ranked by how closely the length of the name matches and then by
+ * population.  Fuzzy matches are ranked by edit distance instead of the
+ * Lucene fuzzy score, so their order may differ from a LuceneGazetteer.
+ *
+ * Instances are immutable once loaded and are thread-safe.
+ */
+public class InMemoryGazetteer implements Gazetteer {
+    /**
+     * The logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(InMemoryGazetteer.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The default number of results to return.
+     */
+    private static final int DEFAULT_MAX_RESULTS = 5;
+
+    /**
+     * The value of the parents array for GeoNames without a parent.
+     */
+    private static final int NO_PARENT = -1;
+
+    private static final FeatureCode[] FEATURE_CODES = FeatureCode.values();
+    private static final Set<FeatureCode> ALL_CODES = Collections.unmodifiableSet(EnumSet.allOf(FeatureCode.class));
+
+    // the GeoNames of the gazetteer, ordered by ID; the remaining GeoName arrays are aligned with geonameIds
+    private final int[] geonameIds;
+    // the position of the parent of each GeoName or NO_PARENT
+    private final int[] parents;
+    private final long[] sortPopulations;
+    // the ordinal of the FeatureCode of each GeoName
+    private final short[] featureCodes;
+    // the gazetteer record of each GeoName, encoded by GeoNameCodec without ancestry
+    private final byte[][] records;
+    // the preferred name of each GeoName or null if it has none
+    private final String[] preferredNames;
+
+    // the names of the gazetteer; the name arrays are aligned with names
+    private final String[] names;
+    // the position of the GeoName of each name
+    private final int[] nameGeoNames;
+    // the encoded length norm of each name, as written to a Lucene index
+    private final byte[] nameNorms;
+
+    // the positions of the names containing each term, in ascending order
+    private final Map<String, int[]> termPostings;
+    // every term, ordered by length; terms of length n start at termsByLength[termLengthStarts[n]]
+    private final String[] termsByLength;
+    private final int[] termLengthStarts;
+
+    private final GeoNameCache geoNameCache;
+
+    private InMemoryGazetteer(final Loader loader, final int geoNameCacheSize) {
+        geonameIds = loader.geonameIds;
+        parents = loader.parents;
+        sortPopulations = loader.sortPopulations;
+        featureCodes = loader.featureCodes;
+        records = loader.records;
+        preferredNames = loader.preferredNames;
+        names = loader.names;
+        nameGeoNames = loader.nameGeoNames;
+        nameNorms = loader.nameNorms;
+        termPostings = loader.termPostings;
+        termsByLength = loader.termsByLength;
+        termLengthStarts = loader.termLengthStarts;
+        geoNameCache = new GeoNameCache(geoNameCacheSize);
+    }
+
+    /**
+     * Loads every GeoName and name of an existing CLAVIN index into memory.
+     * @param indexDir the Lucene index directory
+     * @return the in-memory gazetteer
+     * @throws ClavinException if an error occurs reading the index
+     */
+    public static InMemoryGazetteer fromIndex(final File indexDir) throws ClavinException {
+        return fromIndex(indexDir, LuceneGazetteer.DEFAULT_GEONAME_CACHE_SIZE);
+    }
+
+    /**
+     * Loads every GeoName and name of an existing CLAVIN index into memory.
+     * @param indexDir the Lucene index directory
+     * @param geoNameCacheSize the maximum number of GeoNames with resolved ancestry to cache;
+     *                         values less than or equal to zero disable the cache
+     * @return the in-memory gazetteer
+     * @throws ClavinException if an error occurs reading the index
+     */
+    public static InMemoryGazetteer fromIndex(final File indexDir, final int geoNameCacheSize) throws ClavinException {
+        long start = System.currentTimeMillis();
+        Loader loader = new Loader();
+        try {
+            Directory directory = FSDirectory.open(indexDir);
+            try {
+                IndexReader reader = DirectoryReader.open(directory);
+                try {
+                    NumericDocValues sortPop = MultiDocValues.getNumericValues(reader, SORT_POP.key());
+                    Bits liveDocs = MultiFields.getLiveDocs(reader);
+                    int lastId = 0;
+                    boolean first = true;
+                    for (int doc = 0; doc < reader.maxDoc(); doc++) {
+                        if (liveDocs != null && !liveDocs.get(doc)) {
+                            continue;
+                        }
+                        Document document = reader.document(doc);
+                        int geonameId = GEONAME_ID.<Integer>getValue(document);
+                        // the documents of each GeoName are written consecutively, so the GeoName
+                        // is only added for the first of them
+                        if (first || geonameId != lastId) {
+                            GeoName geoName = LuceneGazetteer.parseGeoName(document);
+                            Integer parentId = PARENT_ID.getValue(document);
+                            Long pop = sortPop != null ? sortPop.get(doc) : SORT_POP.<Long>getValue(document);
+                            loader.addGeoName(geonameId, parentId != null ? parentId : NO_PARENT, GeoNameCodec.encode(geoName, false),
+                                    PREFERRED_NAME.<String>getValue(document), geoName.getFeatureCode(), pop != null ? pop : 0L);
+                            lastId = geonameId;
+                            first = false;
+                        }
+                        // indexes with a single document per GeoName store every name in that document
+                        for (String name : document.getValues(INDEX_NAME.key())) {
+                            loader.addName(geonameId, name);
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            } finally {
+                directory.close();
+            }
+        } catch (IOException ioe) {
+            throw new ClavinException("Error loading gazetteer index: " + indexDir.getAbsolutePath(), ioe);
+        }
+        InMemoryGazetteer gazetteer = new InMemoryGazetteer(loader.build(), geoNameCacheSize);
+        LOG.info("Loaded {} GeoNames and {} names from {} in {} ms.", gazetteer.size(), gazetteer.names.length,
+                indexDir.getAbsolutePath(), System.currentTimeMillis() - start);
+        return gazetteer;
+    }
+
+    /**
+     * Loads every GeoName of the provided GeoNames gazetteer files into memory, resolving
+     * the parent of each GeoName from the administrative divisions found in the files.
+     * GeoNames are named and ranked as they are by the {@link IndexDirectoryBuilder}.
+     * @param gazetteerFiles the tab-delimited GeoNames gazetteer files
+     * @return the in-memory gazetteer
+     * @throws ClavinException if an error occurs reading the files
+     */
+    public static InMemoryGazetteer fromGeoNames(final List<File> gazetteerFiles) throws ClavinException {
+        return fromGeoNames(gazetteerFiles, LuceneGazetteer.DEFAULT_GEONAME_CACHE_SIZE);
+    }
+
+    /**
+     * Loads every GeoName of the provided GeoNames gazetteer files into memory, resolving
+     * the parent of each GeoName from the administrative divisions found in the files.
+     * GeoNames are named and ranked as they are by the {@link IndexDirectoryBuilder}.
+     * @param gazetteerFiles the tab-delimited GeoNames gazetteer files
+     * @param geoNameCacheSize the maximum number of GeoNames with resolved ancestry to cache;
+     *                         values less than or equal to zero disable the cache
+     * @return the in-memory gazetteer
+     * @throws ClavinException if an error occurs reading the files
+     */
+    public static InMemoryGazetteer fromGeoNames(final List<File> gazetteerFiles, final int geoNameCacheSize)
+            throws ClavinException {
+        long start = System.currentTimeMillis();
+        Loader loader = new Loader();
+        // the IDs of the administrative divisions, keyed by ancestry key, and the parent
+        // key of each GeoName; keys are shared between GeoNames with the same parent
+        Map<String, Integer> adminIds = new HashMap<String, Integer>();
+        Map<String, String> keys = new HashMap<String, String>();
+        List<String> parentKeys = new ArrayList<String>();
+        for (File file : gazetteerFiles) {
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        GeoName geoName;
+                        try {
+                            geoName = BasicGeoName.parseFromGeoNamesRecord(line);
+                        } catch (RuntimeException re) {
+                            LOG.info("Skipping... Error on line: {}", line);
+                            continue;
+                        }
+                        Long sortPop = IndexDirectoryBuilder.getSortPopulation(geoName);
+                        loader.addGeoName(geoName.getGeonameID(), NO_PARENT, GeoNameCodec.encode(geoName, false), null, geoName.getFeatureCode(),
+                                sortPop != null ? sortPop : 0L);
+                        for (String name : IndexDirectoryBuilder.getIndexNames(geoName, null)) {
+                            loader.addName(geoName.getGeonameID(), name);
+                        }
+                        String parentKey = geoName.getParentAncestryKey();
+                        if (parentKey != null) {
+                            String shared = keys.get(parentKey);
+                            if (shared == null) {
+                                keys.put(parentKey, parentKey);
+                                shared = parentKey;
+                            }
+                            parentKey = shared;
+                        }
+                        parentKeys.add(parentKey);
+                        String key = geoName.getAncestryKey();
+                        if (key != null) {
+                            adminIds.put(key, geoName.getGeonameID());
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException ioe) {
+                throw new ClavinException("Error reading gazetteer file: " + file.getAbsolutePath(), ioe);
+            }
+        }
+
+        // the parent of each GeoName is the division with the longest known prefix of its parent key
+        for (int idx = 0; idx < parentKeys.size(); idx++) {
+            String key = parentKeys.get(idx);
+            Integer parentId = null;
+            while (key != null && parentId == null) {
+                parentId = adminIds.get(key);
+                int lastDot = key.lastIndexOf('.');
+                key = lastDot > 0 ? key.substring(0, lastDot) : null;
+            }
+            if (parentId != null && parentId != loader.geonameIds[idx]) {
+                loader.parents[idx] = parentId;
+            }
+        }
+        InMemoryGazetteer gazetteer = new InMemoryGazetteer(loader.build(), geoNameCacheSize);
+        LOG.info("Loaded {} GeoNames and {} names from {} gazetteer files in {} ms.", gazetteer.size(),
+                gazetteer.names.length, gazetteerFiles.size(), System.currentTimeMillis() - start);
+        return gazetteer;
+    }
+
+    /**
+     * Get the number of GeoNames in this gazetteer.
+     * @return the number of GeoNames
+     */
+    public int size() {
+        return geonameIds.length;
+    }
+
+    /**
+     * Get the hit, miss and eviction statistics for the cache of GeoNames whose ancestry
+     * was resolved on creation.
+     * @return the current GeoName cache statistics
+     */
+    public CacheStats getGeoNameCacheStats() {
+        return geoNameCache.getStats();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<ResolvedLocation> getClosestLocations(final GazetteerQuery query) throws ClavinException {
+        String sanitizedName = sanitizeQueryText(query);
+        // if there is no location to query, return no results
+        if ("".equals(sanitizedName)) {
+            return Collections.EMPTY_LIST;
+        }
+        int maxResults = query.getMaxResults() > 0 ? query.getMaxResults() : DEFAULT_MAX_RESULTS;
+        String[] terms = NameKeys.toKey(sanitizedName).split(" ");
+
+        List<ResolvedLocation> matches = new ArrayList<ResolvedLocation>(maxResults);
+        // reuse GeoName instances if multiple names of the same GeoName match the query
+        Map<Integer, GeoName> geonameMap = new HashMap<Integer, GeoName>();
+        addMatches(query, findExactNames(terms), false, maxResults, matches, geonameMap);
+        // check to see if we should run a fuzzy query based on the configured FuzzyMode
+        if (query.getFuzzyMode().useFuzzyMatching(maxResults, matches.size())) {
+            addMatches(query, findFuzzyNames(terms, query.getFuzzyConfig()), true, maxResults, matches, geonameMap);
+        }
+        if (matches.isEmpty()) {
+            LOG.debug("No match found for: '{}'", query.getOccurrence().getText());
+        }
+        return matches;
+    }
+
+    @Override
+    public List<List<ResolvedLocation>> getClosestLocations(final List<GazetteerQuery> queries) throws ClavinException {
+        List<List<ResolvedLocation>> results = new ArrayList<List<ResolvedLocation>>(queries.size());
+        for (GazetteerQuery query : queries) {
+            results.add(getClosestLocations(query));
+        }
+        return results;
+    }
+
+    @Override
+    public GeoName getGeoName(final int geonameId) throws ClavinException {
+        return getGeoName(geonameId, AncestryMode.LAZY);
+    }
+
+    @Override
+    public GeoName getGeoName(final int geonameId, final AncestryMode ancestryMode) throws ClavinException {
+        int pos = Arrays.binarySearch(geonameIds, geonameId);
+        if (pos < 0) {
+            LOG.debug("No geoname found for ID: {}", geonameId);
+            return null;
+        }
+        return createGeoName(pos, ancestryMode);
+    }
+
+    @Override
+    public void loadAncestry(final GeoName... geoNames) throws ClavinException {
+        loadAncestry(Arrays.asList(geoNames));
+    }
+
+    @Override
+    public void loadAncestry(final Collection<GeoName> geoNames) throws ClavinException {
+        for (GeoName geoName : geoNames) {
+            Integer parentId = geoName.getParentId();
+            if (!geoName.isAncestryResolved() && parentId != null) {
+                GeoName parent = getGeoName(parentId, AncestryMode.ON_CREATE);
+                if (parent != null) {
+                    geoName.setParent(parent);
+                } else {
+                    LOG.info("Unable to find parent with ID [{}]", parentId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the GeoNames of the provided names to the matches if they satisfy the
+     * query filters, until maxResults matches have been found.
+     * @param query the query
+     * @param nameIds the positions of the matching names, in rank order
+     * @param fuzzy are these fuzzy matches
+     * @param maxResults the maximum number of matches
+     * @param matches the matches of the query
+     * @param geonameMap the GeoNames already created for the query, keyed by ID
+     */
+    private void addMatches(final GazetteerQuery query, final int[] nameIds, final boolean fuzzy, final int maxResults,
+            final List<ResolvedLocation> matches, final Map<Integer, GeoName> geonameMap) {
+        Set<FeatureCode> codes = query.getFeatureCodes();
+        boolean filterCodes = !(codes.isEmpty() || ALL_CODES.equals(codes));
+        Set<Integer> parentIds = query.getParentIds();
+        for (int idx = 0; idx < nameIds.length && matches.size() < maxResults; idx++) {
+            int nameId = nameIds[idx];
+            int pos = nameGeoNames[nameId];
+            FeatureCode code = FEATURE_CODES[featureCodes[pos]];
+            if ((!query.isIncludeHistorical() && code.isHistorical()) || (filterCodes && !codes.contains(code))
+                    || (!parentIds.isEmpty() && !isDescendant(pos, parentIds))) {
+                continue;
+            }
+            GeoName geoName = geonameMap.get(geonameIds[pos]);
+            if (geoName != null && query.isFilterDupes()) {
+                continue;
+            }
+            if (geoName == null) {
+                geoName = createGeoName(pos, query.getAncestryMode());
+                geonameMap.put(geonameIds[pos], geoName);
+            }
+            matches.add(new ResolvedLocation(query.getOccurrence(), geoName, names[nameId], fuzzy));
+        }
+    }
+
+    /**
+     * Does the GeoName at the provided position descend from one of the provided GeoNames?
+     * @param pos the position of the GeoName
+     * @param ancestorIds the IDs of the potential ancestors
+     * @return <code>true</code> if one of the GeoName's ancestors is in the provided set
+     */
+    private boolean isDescendant(final int pos, final Set<Integer> ancestorIds) {
+        for (int parent = parents[pos]; parent != NO_PARENT; parent = parents[parent]) {
+            if (ancestorIds.contains(geonameIds[parent])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates the GeoName at the provided position, resolving its ancestry according to
+     * the provided mode.  GeoNames whose ancestry is resolved on creation are cached.
+     * @param pos the position of the GeoName
+     * @param ancestryMode the mode used to load ancestry for the GeoName
+     * @return the GeoName
+     */
+    private GeoName createGeoName(final int pos, final AncestryMode ancestryMode) {
+        // resolved GeoNames may only be shared if ancestry is resolved on creation
+        if (ancestryMode == AncestryMode.ON_CREATE) {
+            GeoName cached = geoNameCache.get(geonameIds[pos]);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        GeoName geoName = GeoNameCodec.decode(records[pos], 0, records[pos].length, preferredNames[pos]);
+        int parent = parents[pos];
+        if (!geoName.isAncestryResolved() && parent != NO_PARENT) {
+            switch (ancestryMode) {
+                case ON_CREATE:
+                    geoName.setParent(createGeoName(parent, AncestryMode.ON_CREATE));
+                    break;
+                case LAZY:
+                    // ancestry will be loaded on request
+                    geoName = new LazyAncestryGeoName(geoName, geonameIds[parent], this);
+                    break;
+                case MANUAL:
+                    // ancestry must be loaded manually
+                    geoName = new LazyAncestryGeoName(geoName, geonameIds[parent]);
+                    break;
+            }
+        }
+        if (ancestryMode == AncestryMode.ON_CREATE) {
+            geoNameCache.put(geoName);
+        }
+        return geoName;
+    }
+
+    /**
+     * Finds the names that contain every provided term, in order, ranked by their
+     * length norm and the population of their GeoName.
+     * @param terms the terms of the location name
+     * @return the positions of the matching names, in rank order
+     */
+    private int[] findExactNames(final String[] terms) {
+        // intersect the postings of the terms, starting with the least frequent
+        int[][] postings = new int[terms.length][];
+        int rarest = 0;
+        for (int idx = 0; idx < terms.length; idx++) {
+            postings[idx] = termPostings.get(terms[idx]);
+            if (postings[idx] == null) {
+                return new int[0];
+            }
+            if (postings[idx].length < postings[rarest].length) {
+                rarest = idx;
+            }
+        }
+        int[] candidates = postings[rarest];
+        int count = 0;
+        int[] matches = new int[candidates.length];
+        for (int nameId : candidates) {
+            if (terms.length == 1 || Collections.indexOfSubList(
+                    Arrays.asList(NameKeys.toKey(names[nameId]).split(" ")), Arrays.asList(terms)) >= 0) {
+                matches[count++] = nameId;
+            }
+        }
+        return rank(Arrays.copyOf(matches, count), null);
+    }
+
+    /**
+     * Finds the names with terms within the configured edit distance of the provided terms.
+     * Names matching every term, in order, are ranked first, followed by names matching
+     * the most terms; names matching the same number of terms are ranked by total edit
+     * distance, length norm and population.  Terms of multi-term names that are no longer
+     * than the maximum number of edits are matched exactly.
+     * @param terms the terms of the location name
+     * @param fuzzyConfig the fuzzy matching configuration
+     * @return the positions of the matching names, in rank order
+     */
+    private int[] findFuzzyNames(final String[] terms, final FuzzyConfig fuzzyConfig) {
+        // expand each term to the indexed terms within the maximum edit distance
+        List<Map<String, Integer>> expansions = new ArrayList<Map<String, Integer>>(terms.length);
+        Set<Integer> candidates = new LinkedHashSet<Integer>();
+        for (int idx = 0; idx < terms.length; idx++) {
+            Map<String, Integer> expanded = terms.length > 1 && terms[idx].length() <= fuzzyConfig.getMaxEdits() ?
+                    Collections.singletonMap(terms[idx], 0) : expandTerm(terms[idx], fuzzyConfig);
+            expansions.add(expanded);
+            for (String term : expanded.keySet()) {
+                int[] postings = termPostings.get(term);
+                if (postings == null) {
+                    continue;
+                }
+                for (int nameId : postings) {
+                    candidates.add(nameId);
+                }
+            }
+        }
+
+        // score each candidate by whether it matches the full phrase, the number of matched
+        // terms and the total edit distance of the matched terms
+        int[] nameIds = new int[candidates.size()];
+        Map<Integer, int[]> scores = new HashMap<Integer, int[]>(candidates.size() * 4 / 3 + 1);
+        int count = 0;
+        for (Integer nameId : candidates) {
+            String[] nameTerms = NameKeys.toKey(names[nameId]).split(" ");
+            int matched = 0;
+            int distance = 0;
+            for (Map<String, Integer> expanded : expansions) {
+                int best = Integer.MAX_VALUE;
+                for (String nameTerm : nameTerms) {
+                    Integer termDistance = expanded.get(nameTerm);
+                    if (termDistance != null && termDistance < best) {
+                        best = termDistance;
+                    }
+                }
+                if (best != Integer.MAX_VALUE) {
+                    matched++;
+                    distance += best;
+                }
+            }
+            int phrase = 0;
+            for (int start = 0; start + expansions.size() <= nameTerms.length && phrase == 0; start++) {
+                phrase = 1;
+                for (int idx = 0; idx < expansions.size() && phrase == 1; idx++) {
+                    phrase = expansions.get(idx).containsKey(nameTerms[start + idx]) ? 1 : 0;
+                }
+            }
+            nameIds[count++] = nameId;
+            scores.put(nameId, new int[] { phrase, matched, -distance });
+        }
+        return rank(nameIds, scores);
+    }
+
+    /**
+     * Finds the indexed terms within the configured edit distance of the provided term,
+     * keeping the closest terms if there are more than the maximum number of expansions.
+     * @param term the term
+     * @param fuzzyConfig the fuzzy matching configuration
+     * @return the edit distance of each expanded term, keyed by term
+     */
+    private Map<String, Integer> expandTerm(final String term, final FuzzyConfig fuzzyConfig) {
+        int maxEdits = fuzzyConfig.getMaxEdits();
+        int prefixLength = Math.min(fuzzyConfig.getPrefixLength(), term.length());
+        String prefix = term.substring(0, prefixLength);
+        final Map<String, Integer> expanded = new HashMap<String, Integer>();
+        int minLength = Math.max(0, term.length() - maxEdits);
+        int maxLength = Math.min(termLengthStarts.length - 2, term.length() + maxEdits);
+        for (int length = minLength; length <= maxLength; length++) {
+            for (int idx = termLengthStarts[length]; idx < termLengthStarts[length + 1]; idx++) {
+                String candidate = termsByLength[idx];
+                if (candidate.startsWith(prefix)) {
+                    int distance = editDistance(term, candidate, fuzzyConfig.isTranspositions(), maxEdits);
+                    if (distance <= maxEdits) {
+                        expanded.put(candidate, distance);
+                    }
+                }
+            }
+        }
+        if (expanded.size() > fuzzyConfig.getMaxExpansions()) {
+            List<String> closest = new ArrayList<String>(expanded.keySet());
+            Collections.sort(closest, new Comparator<String>() {
+                @Override
+                public int compare(final String termA, final String termB) {
+                    int comp = expanded.get(termA) - expanded.get(termB);
+                    return comp != 0 ? comp : termA.compareTo(termB);
+                }
+            });
+            Map<String, Integer> kept = new HashMap<String, Integer>();
+            for (String candidate : closest.subList(0, fuzzyConfig.getMaxExpansions())) {
+                kept.put(candidate, expanded.get(candidate));
+            }
+            return kept;
+        }
+        return expanded;
+    }
+
+    /**
+     * Ranks the provided names by their scores, then by decreasing length norm, decreasing
+     * sort population and increasing position.
+     * @param nameIds the positions of the names
+     * @param scores the scores of each name, compared in order with higher scores ranked first;
+     *               <code>null</code> if the names are not scored
+     * @return the ranked positions of the names
+     */
+    private int[] rank(final int[] nameIds, final Map<Integer, int[]> scores) {
+        Integer[] ranked = new Integer[nameIds.length];
+        for (int idx = 0; idx < nameIds.length; idx++) {
+            ranked[idx] = nameIds[idx];
+        }
+        Arrays.sort(ranked, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer nameA, final Integer nameB) {
+                if (scores != null) {
+                    int[] scoreA = scores.get(nameA);
+                    int[] scoreB = scores.get(nameB);
+                    for (int idx = 0; idx < scoreA.length; idx++) {
+                        if (scoreA[idx] != scoreB[idx]) {
+                            return scoreA[idx] > scoreB[idx] ? -1 : 1;
+                        }
+                    }
+                }
+                int normA = nameNorms[nameA] & 0xFF;
+                int normB = nameNorms[nameB] & 0xFF;
+                if (normA != normB) {
+                    return normA > normB ? -1 : 1;
+                }
+                long popA = sortPopulations[nameGeoNames[nameA]];
+                long popB = sortPopulations[nameGeoNames[nameB]];
+                if (popA != popB) {
+                    return popA > popB ? -1 : 1;
+                }
+                return nameA.compareTo(nameB);
+            }
+        });
+        int[] result = new int[ranked.length];
+        for (int idx = 0; idx < ranked.length; idx++) {
+            result[idx] = ranked[idx];
+        }
+        return result;
+    }
+
+    /**
+     * Computes the edit distance between two terms, stopping once it exceeds the maximum.
+     * @param termA the first term
+     * @param termB the second term
+     * @param transpositions should transpositions of adjacent characters count as a single edit
+     * @param maxEdits the maximum distance of interest
+     * @return the edit distance or a value greater than maxEdits if the distance exceeds it
+     */
+    private static int editDistance(final String termA, final String termB, final boolean transpositions, final int maxEdits) {
+        int lenA = termA.length();
+        int lenB = termB.length();
+        int[] prev2 = new int[lenB + 1];
+        int[] prev = new int[lenB + 1];
+        int[] curr = new int[lenB + 1];
+        for (int j = 0; j <= lenB; j++) {
+            prev[j] = j;
+        }
+        for (int i = 1; i <= lenA; i++) {
+            curr[0] = i;
+            int rowMin = curr[0];
+            for (int j = 1; j <= lenB; j++) {
+                int cost = termA.charAt(i - 1) == termB.charAt(j - 1) ? 0 : 1;
+                curr[j] = Math.min(Math.min(curr[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                if (transpositions && i > 1 && j > 1 && termA.charAt(i - 1) == termB.charAt(j - 2)
+                        && termA.charAt(i - 2) == termB.charAt(j - 1)) {
+                    curr[j] = Math.min(curr[j], prev2[j - 2] + 1);
+                }
+                rowMin = Math.min(rowMin, curr[j]);
+            }
+            if (rowMin > maxEdits) {
+                return maxEdits + 1;
+            }
+            int[] tmp = prev2;
+            prev2 = prev;
+            prev = curr;
+            curr = tmp;
+        }
+        return prev[lenB];
+    }
+
+    /**
+     * Sanitizes the text of the LocationOccurrence in the query parameters,
+     * returning an empty string if no text is found.
+     * @param query the query configuration
+     * @return the santitized query text or the empty string if there is no query text
+     */
+    private static String sanitizeQueryText(final GazetteerQuery query) {
+        String sanitized = "";
+        if (query != null && query.getOccurrence() != null) {
+            LocationOccurrence occurrence = query.getOccurrence();
+            if (occurrence.getText() != null) {
+                sanitized = occurrence.getText().trim().toLowerCase();
+            }
+        }
+        return sanitized;
+    }
+
+    /**
+     * Accumulates the GeoNames and names of a gazetteer in load order and packs them
+     * into the arrays searched by an InMemoryGazetteer.
+     */
+    private static final class Loader {
+        private int geoNameCount = 0;
+        private int[] geonameIds = new int[1024];
+        private int[] parents = new int[1024];
+        private long[] sortPopulations = new long[1024];
+        private short[] featureCodes = new short[1024];
+        private byte[][] records = new byte[1024][];
+        private String[] preferredNames = new String[1024];
+
+        private int nameCount = 0;
+        private String[] names = new String[1024];
+        // the GeoName ID of each name until the GeoNames are packed, then the position of its GeoName
+        private int[] nameGeoNames = new int[1024];
+        private byte[] nameNorms;
+
+        private Map<String, int[]> termPostings;
+        private String[] termsByLength;
+        private int[] termLengthStarts;
+
+        /**
+         * Adds a GeoName.  Parents are recorded by ID until the gazetteer is built.
+         */
+        public void addGeoName(final int geonameId, final int parentId, final byte[] record, final String preferredName,
+                final FeatureCode featureCode, final long sortPopulation) {
+            if (geoNameCount == geonameIds.length) {
+                geonameIds = ArrayUtil.grow(geonameIds);
+                parents = ArrayUtil.grow(parents, geonameIds.length);
+                sortPopulations = ArrayUtil.grow(sortPopulations, geonameIds.length);
+                featureCodes = ArrayUtil.grow(featureCodes, geonameIds.length);
+                records = Arrays.copyOf(records, geonameIds.length);
+                preferredNames = Arrays.copyOf(preferredNames, geonameIds.length);
+            }
+            geonameIds[geoNameCount] = geonameId;
+            parents[geoNameCount] = parentId;
+            sortPopulations[geoNameCount] = sortPopulation;
+            featureCodes[geoNameCount] = (short) featureCode.ordinal();
+            records[geoNameCount] = record;
+            preferredNames[geoNameCount] = preferredName;
+            geoNameCount++;
+        }
+
+        /**
+         * Adds a name of the GeoName with the provided ID.
+         */
+        public void addName(final int geonameId, final String name) {
+            if (nameCount == names.length) {
+                nameGeoNames = ArrayUtil.grow(nameGeoNames);
+                names = Arrays.copyOf(names, nameGeoNames.length);
+            }
+            names[nameCount] = name;
+            nameGeoNames[nameCount] = geonameId;
+            nameCount++;
+        }
+
+        /**
+         * Orders the GeoNames by ID, keeping the first GeoName loaded for each ID, and
+         * indexes the terms of every name.
+         * @return this
+         */
+        public Loader build() {
+            // sort the GeoNames by ID and load order, packing the ID and position into a single key
+            long[] order = new long[geoNameCount];
+            for (int pos = 0; pos < geoNameCount; pos++) {
+                order[pos] = ((long) geonameIds[pos] << 32) | pos;
+            }
+            Arrays.sort(order);
+            int unique = 0;
+            int[] ids = new int[geoNameCount];
+            int[] sourcePos = new int[geoNameCount];
+            for (long key : order) {
+                int id = (int) (key >> 32);
+                if (unique == 0 || ids[unique - 1] != id) {
+                    ids[unique] = id;
+                    sourcePos[unique] = (int) key;
+                    unique++;
+                }
+            }
+            int[] packedIds = Arrays.copyOf(ids, unique);
+            int[] packedParents = new int[unique];
+            long[] packedPops = new long[unique];
+            short[] packedCodes = new short[unique];
+            byte[][] packedRecords = new byte[unique][];
+            String[] packedPreferred = new String[unique];
+            for (int pos = 0; pos < unique; pos++) {
+                int src = sourcePos[pos];
+                int parentPos = parents[src] != NO_PARENT ? Arrays.binarySearch(packedIds, parents[src]) : NO_PARENT;
+                packedParents[pos] = parentPos >= 0 ? parentPos : NO_PARENT;
+                packedPops[pos] = sortPopulations[src];
+                packedCodes[pos] = featureCodes[src];
+                packedRecords[pos] = records[src];
+                packedPreferred[pos] = preferredNames[src];
+            }
+            geonameIds = packedIds;
+            parents = packedParents;
+            sortPopulations = packedPops;
+            featureCodes = packedCodes;
+            records = packedRecords;
+            preferredNames = packedPreferred;
+
+            // resolve the GeoName of each name and index its terms
+            names = Arrays.copyOf(names, nameCount);
+            nameGeoNames = Arrays.copyOf(nameGeoNames, nameCount);
+            nameNorms = new byte[nameCount];
+            Map<String, int[]> termCounts = new HashMap<String, int[]>();
+            for (int nameId = 0; nameId < nameCount; nameId++) {
+                nameGeoNames[nameId] = Arrays.binarySearch(geonameIds, nameGeoNames[nameId]);
+                String[] terms = NameKeys.toKey(names[nameId]).split(" ");
+                nameNorms[nameId] = SmallFloat.floatToByte315((float) (1.0 / Math.sqrt(terms.length)));
+                for (String term : distinct(terms)) {
+                    if (term.isEmpty()) {
+                        continue;
+                    }
+                    int[] termCount = termCounts.get(term);
+                    if (termCount == null) {
+                        termCount = new int[1];
+                        termCounts.put(term, termCount);
+                    }
+                    termCount[0]++;
+                }
+            }
+            termPostings = new HashMap<String, int[]>(termCounts.size() * 4 / 3 + 1);
+            for (Map.Entry<String, int[]> entry : termCounts.entrySet()) {
+                termPostings.put(entry.getKey(), new int[entry.getValue()[0]]);
+                entry.getValue()[0] = 0;
+            }
+            for (int nameId = 0; nameId < nameCount; nameId++) {
+                for (String term : distinct(NameKeys.toKey(names[nameId]).split(" "))) {
+                    if (term.isEmpty()) {
+                        continue;
+                    }
+                    int[] termCount = termCounts.get(term);
+                    termPostings.get(term)[termCount[0]++] = nameId;
+                }
+            }
+
+            // order the terms by length for fuzzy expansion
+            termsByLength = termPostings.keySet().toArray(new String[termPostings.size()]);
+            Arrays.sort(termsByLength, new Comparator<String>() {
+                @Override
+                public int compare(final String termA, final String termB) {
+                    int comp = termA.length() - termB.length();
+                    return comp != 0 ? comp : termA.compareTo(termB);
+                }
+            });
+            int maxLength = termsByLength.length > 0 ? termsByLength[termsByLength.length - 1].length() : 0;
+            termLengthStarts = new int[maxLength + 2];
+            int idx = 0;
+            for (int length = 0; length <= maxLength + 1; length++) {
+                while (idx < termsByLength.length && termsByLength[idx].length() < length) {
+                    idx++;
+                }
+                termLengthStarts[length] = idx;
+            }
+            return this;
+        }
+
+        private static Collection<String> distinct(final String[] terms) {
+            if (terms.length == 1) {
+                return Arrays.asList(terms);
+            }
+            return new LinkedHashSet<String>(Arrays.asList(terms));
+        }
+    }
+}
@@ -29,18 +29,22 @@
 package com.bericotech.clavin.gazetteer.query;
 
 import static com.bericotech.clavin.index.IndexField.*;
-import static org.apache.lucene.queryparser.classic.QueryParserBase.escape;
 
 import com.bericotech.clavin.ClavinException;
 import com.bericotech.clavin.extractor.LocationOccurrence;
 import com.bericotech.clavin.gazetteer.BasicGeoName;
 import com.bericotech.clavin.gazetteer.FeatureCode;
 import com.bericotech.clavin.gazetteer.GeoName;
+import com.bericotech.clavin.gazetteer.GeoNameCodec;
 import com.bericotech.clavin.gazetteer.LazyAncestryGeoName;
 import com.bericotech.clavin.index.BinarySimilarity;
-import com.bericotech.clavin.index.IndexField;
+import com.bericotech.clavin.index.NameKeys;
+import com.bericotech.clavin.index.NameNGrams;
 import com.bericotech.clavin.index.WhitespaceLowerCaseAnalyzer;
 import com.bericotech.clavin.resolver.ResolvedLocation;
+import com.bericotech.clavin.util.CacheStats;
+import com.bericotech.clavin.util.DamerauLevenshtein;
+import com.bericotech.clavin.util.LruCache;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -50,36 +54,75 @@ import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.apache.commons.lang.StringUtils;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.queryparser.analyzing.AnalyzingQueryParser;
-import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.FuzzyQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.QueryWrapperFilter;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.store.FSDirectory;
-import org.apache.lucene.util.Version;
+import org.apache.lucene.search.payloads.MaxPayloadFunction;
+import org.apache.lucene.search.payloads.PayloadNearQuery;
+import org.apache.lucene.search.payloads.PayloadTermQuery;
+import org.apache.lucene.search.spans.SpanMultiTermQueryWrapper;
+import org.apache.lucene.search.spans.SpanNearQuery;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CloseableThreadLocal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * An implementation of Gazetteer that uses Lucene to rapidly search
  * known locations.
+ *
+ * Searchers are acquired from a {@link SearcherManager} for the duration
+ * of each request, so the underlying index can be reopened with
+ * {@link #refresh()} or replaced entirely with {@link #switchIndex(File)}
+ * while queries are in flight.  New searchers are warmed before they are
+ * published to callers.
+ *
+ * Indexes holding a single document per GeoName are searched with exact
+ * queries that score the length payload of the best matching name, so
+ * they rank exact matches as indexes with a document per name do; fuzzy
+ * matches are ranked without regard to name length.  The matched name of
+ * each result is selected from the stored names of its document.
  */
 public class LuceneGazetteer implements Gazetteer {
     /**
@@ -95,7 +138,9 @@ public class LuceneGazetteer implements Gazetteer {
     /**
      * Custom Lucene sorting based on Lucene match score and the
      * population of the GeoNames gazetteer entry represented by the
-     * matched index document.
+     * matched index document.  The sort population is read from doc
+     * values when the index provides them; older indexes fall back to
+     * un-inverting the indexed sort population field.
      */
     private static final Sort POPULATION_SORT = new Sort(new SortField[] {
         SortField.FIELD_SCORE,
@@ -103,29 +148,110 @@ public class LuceneGazetteer implements Gazetteer {
         new SortField(SORT_POP.key(), SortField.Type.LONG, true)
     });
 
+    /**
+     * The stored fields loaded to read GeoName and parent IDs from indexes
+     * that do not provide doc values for them.
+     */
+    private static final Set<String> ID_FIELDS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            GEONAME_ID.key(),
+            PARENT_ID.key()
+    )));
+
+    /**
+     * The stored fields loaded to read the matched name of n-gram candidates.
+     */
+    private static final Set<String> NAME_FIELDS = Collections.singleton(INDEX_NAME.key());
+
+    /**
+     * The minimum fraction of a location name's n-grams a candidate name must share.
+     */
+    private static final double NGRAM_MIN_SHARED = 0.2;
+
+    /**
+     * The number of n-gram candidates retrieved for each requested result.
+     */
+    private static final int NGRAM_CANDIDATE_FACTOR = 10;
+
+    /**
+     * The minimum number of n-gram candidates retrieved for a query.
+     */
+    private static final int NGRAM_MIN_CANDIDATES = 50;
+
+    /**
+     * The maximum number of terms in a name answered from the name dictionary.  The
+     * index stores the length of each name in a lossy norm that cannot distinguish
+     * names of three terms from names of four, so a search for a longer name may
+     * rank names that only contain it alongside names that match it entirely.
+     */
+    private static final int MAX_DICTIONARY_TERMS = 2;
+
     /**
      * The default number of results to return.
      */
-    private static final int DEFAULT_MAX_RESULTS = 5;
+    static final int DEFAULT_MAX_RESULTS = 5;
+
+    /**
+     * The default maximum number of compiled name queries to cache.
+     */
+    public static final int DEFAULT_QUERY_CACHE_SIZE = 10000;
 
     /**
-     * The set of all FeatureCodes.
+     * The default maximum number of resolved GeoNames to cache.
      */
-    private static final Set<FeatureCode> ALL_CODES = Collections.unmodifiableSet(EnumSet.allOf(FeatureCode.class));
+    public static final int DEFAULT_GEONAME_CACHE_SIZE = 10000;
 
     /**
-     * The format string for exact match queries.
+     * The default maximum number of feature code and parent ID filters to cache.
      */
-    private static final String EXACT_MATCH_FMT = "\"%s\"";
+    public static final int DEFAULT_FILTER_CACHE_SIZE = 1000;
 
     /**
-     * The format string for fuzzy queries.
+     * The feature codes of the administrative divisions that may be pinned in the GeoName cache.
      */
-    private static final String FUZZY_FMT = "%s~";
+    private static final Set<FeatureCode> PINNED_CODES = Collections.unmodifiableSet(EnumSet.of(
+            FeatureCode.PCL,
+            FeatureCode.PCLD,
+            FeatureCode.PCLF,
+            FeatureCode.PCLH,
+            FeatureCode.PCLI,
+            FeatureCode.PCLIX,
+            FeatureCode.PCLS,
+            FeatureCode.ADM1,
+            FeatureCode.ADM2
+    ));
+
+    /**
+     * The boost applied to fuzzy matches of every name token, in order, so they outrank
+     * matches of individual tokens.
+     */
+    private static final float FUZZY_PHRASE_BOOST = 2.0f;
+
+    // Lucene index built from GeoNames gazetteer; replaced atomically by switchIndex()
+    private volatile Directory index;
+    private volatile SearcherManager searcherManager;
+
+    // guards index generation swaps and close
+    private final Object switchLock = new Object();
+
+    // the mode used to open index directories
+    private final DirectoryMode directoryMode;
+
+    // compiled name queries, keyed on the sanitized location name and fuzzy configuration
+    private final LruCache<QueryKey, Query> queryCache;
 
-    // Lucene index built from GeoNames gazetteer
-    private final FSDirectory index;
-    private final IndexSearcher indexSearcher;
+    // cached search restrictions, shared across index generations
+    private final FilterCache filterCache;
+
+    // executes the distinct queries of a batch in parallel; batches run on the calling thread if null
+    private final ExecutorService batchExecutor;
+
+    // searches the segments of the index in parallel; segments are searched on the calling thread if null
+    private final ExecutorService searchExecutor;
+
+    // the GeoName cache configuration applied to each index generation
+    private final int geoNameCacheSize;
+    private final boolean pinAdminDivisions;
+    private final boolean nameDictionary;
 
     /**
      * Builds a {@link LuceneGazetteer} by loading a pre-built Lucene
@@ -136,27 +262,241 @@ public class LuceneGazetteer implements Gazetteer {
      * @throws ClavinException      if an error occurs opening the index
      */
     public LuceneGazetteer(final File indexDir) throws ClavinException {
-        try {
+        this(indexDir, DEFAULT_QUERY_CACHE_SIZE);
+    }
+
+    /**
+     * Builds a {@link LuceneGazetteer} by loading a pre-built Lucene
+     * index from disk and setting configuration parameters for
+     * resolving location names to GeoName objects.
+     *
+     * @param indexDir              Lucene index directory to be loaded
+     * @param queryCacheSize        the maximum number of compiled name queries to cache; values
+     *                              less than or equal to zero disable the query cache
+     * @throws ClavinException      if an error occurs opening the index
+     */
+    public LuceneGazetteer(final File indexDir, final int queryCacheSize) throws ClavinException {
+        this(indexDir, new LuceneGazetteerConfig().queryCacheSize(queryCacheSize));
+    }
+
+    /**
+     * Builds a {@link LuceneGazetteer} by loading a pre-built Lucene
+     * index from disk using the provided configuration.
+     *
+     * @param indexDir              Lucene index directory to be loaded
+     * @param config                the gazetteer configuration
+     * @throws ClavinException      if an error occurs opening the index
+     */
+    public LuceneGazetteer(final File indexDir, final LuceneGazetteerConfig config) throws ClavinException {
+        queryCache = new LruCache<QueryKey, Query>(config.queryCacheSize());
+        filterCache = new FilterCache(config.filterCacheSize());
+        directoryMode = config.directoryMode();
+        geoNameCacheSize = config.geoNameCacheSize();
+        pinAdminDivisions = config.pinAdminDivisions();
+        nameDictionary = config.nameDictionary();
+        batchExecutor = config.batchExecutor();
+        searchExecutor = config.searchExecutor();
         // load the Lucene index directory from disk
-        index = FSDirectory.open(indexDir);
+        index = openDirectory(indexDir);
+        searcherManager = openSearcherManager(index);
+    }
+
+    /**
+     * Reopens the current index if it has changed since the active searcher
+     * was opened.  The new searcher is warmed before it is published; queries
+     * already in progress complete against the searcher they started with.
+     * @return <code>true</code> if a new index generation was published, <code>false</code>
+     *         if the active searcher was already current
+     * @throws ClavinException if an error occurs reopening the index
+     */
+    public boolean refresh() throws ClavinException {
+        SearcherManager manager = searcherManager;
+        try {
+            if (manager.isSearcherCurrent()) {
+                return false;
+            }
+            manager.maybeRefreshBlocking();
+            return true;
+        } catch (AlreadyClosedException ace) {
+            // the index was switched while we were refreshing; if the gazetteer
+            // is still open, a new generation has been published
+            if (manager != searcherManager) {
+                return true;
+            }
+            throw new ClavinException("Gazetteer index has been closed.", ace);
+        } catch (IOException ioe) {
+            throw new ClavinException("Error refreshing gazetteer index.", ioe);
+        }
+    }
 
-        indexSearcher = new IndexSearcher(DirectoryReader.open(index));
+    /**
+     * Switches this gazetteer to the index found in the provided directory.  The new
+     * index is opened and warmed before it replaces the current index, so queries are
+     * never served by a cold searcher.  Queries already in progress complete against
+     * the previous index, which is released once they finish.
+     * @param indexDir the Lucene index directory to be loaded
+     * @throws ClavinException if an error occurs opening the new index; the current index
+     *                         remains active if the switch fails
+     */
+    public void switchIndex(final File indexDir) throws ClavinException {
+        Directory newIndex = openDirectory(indexDir);
+        SearcherManager newManager;
+        try {
+            newManager = openSearcherManager(newIndex);
+        } catch (ClavinException ce) {
+            closeQuietly(newIndex);
+            throw ce;
+        }
+        Directory oldIndex;
+        SearcherManager oldManager;
+        synchronized (switchLock) {
+            oldIndex = index;
+            oldManager = searcherManager;
+            index = newIndex;
+            searcherManager = newManager;
+        }
+        LOG.info("Switched gazetteer index to {}", indexDir);
+        closeIndex(oldManager, oldIndex);
+    }
 
-        // override default TF/IDF score to ignore multiple appearances
-        indexSearcher.setSimilarity(new BinarySimilarity());
+    /**
+     * Closes the gazetteer index.  Queries already in progress will complete, but
+     * this gazetteer may not be used once it has been closed.
+     * @throws ClavinException if an error occurs closing the index
+     */
+    public void close() throws ClavinException {
+        synchronized (switchLock) {
+            closeIndex(searcherManager, index);
+        }
+    }
+
+    /**
+     * Opens the Lucene directory containing the gazetteer index using the
+     * configured {@link DirectoryMode}.
+     * @param indexDir the Lucene index directory
+     * @return the opened directory
+     * @throws ClavinException if an error occurs opening the directory
+     */
+    private Directory openDirectory(final File indexDir) throws ClavinException {
+        try {
+            return directoryMode.open(indexDir);
+        } catch (IOException ioe) {
+            throw new ClavinException("Error opening gazetteer index.", ioe);
+        }
+    }
 
-        // run an initial throw-away query just to "prime the pump" for
-        // the cache, so we can accurately measure performance speed
-        // per: http://wiki.apache.org/lucene-java/ImproveSearchingSpeed
-        indexSearcher.search(new AnalyzingQueryParser(Version.LUCENE_4_9, INDEX_NAME.key(),
-                INDEX_ANALYZER).parse("Reston"), null, DEFAULT_MAX_RESULTS, POPULATION_SORT);
-        } catch (ParseException pe) {
-            throw new ClavinException("Error executing priming query.", pe);
+    /**
+     * Opens a SearcherManager for the provided index.  The initial searcher is
+     * warmed by the {@link GazetteerSearcherFactory} before this method returns.
+     * @param directory the gazetteer index
+     * @return the SearcherManager for the index
+     * @throws ClavinException if an error occurs opening the index
+     */
+    private SearcherManager openSearcherManager(final Directory directory) throws ClavinException {
+        try {
+            return new SearcherManager(directory, new GazetteerSearcherFactory());
         } catch (IOException ioe) {
             throw new ClavinException("Error opening gazetteer index.", ioe);
         }
     }
 
+    /**
+     * Closes a SearcherManager and its directory.  Searchers that have already been
+     * acquired remain usable until they are released.
+     * @param manager the SearcherManager to close
+     * @param directory the directory to close
+     * @throws ClavinException if an error occurs closing the index
+     */
+    private static void closeIndex(final SearcherManager manager, final Directory directory) throws ClavinException {
+        try {
+            manager.close();
+            directory.close();
+        } catch (IOException ioe) {
+            throw new ClavinException("Error closing gazetteer index.", ioe);
+        }
+    }
+
+    /**
+     * Closes a directory, logging any errors.
+     * @param directory the directory to close
+     */
+    private static void closeQuietly(final Directory directory) {
+        try {
+            directory.close();
+        } catch (IOException ioe) {
+            LOG.warn("Error closing gazetteer index.", ioe);
+        }
+    }
+
+    /**
+     * Acquires the current searcher.  Every searcher acquired by this method must
+     * be returned with {@link #releaseSearcher(IndexSearcher)}.
+     * @return the current searcher
+     * @throws ClavinException if the gazetteer has been closed
+     */
+    private GazetteerSearcher acquireSearcher() throws ClavinException {
+        while (true) {
+            SearcherManager manager = searcherManager;
+            try {
+                return (GazetteerSearcher) manager.acquire();
+            } catch (AlreadyClosedException ace) {
+                // retry against the new manager if the index was switched
+                // between reading the field and acquiring the searcher
+                if (manager == searcherManager) {
+                    throw new ClavinException("Gazetteer index has been closed.", ace);
+                }
+            } catch (IOException ioe) {
+                throw new ClavinException("Error acquiring gazetteer searcher.", ioe);
+            }
+        }
+    }
+
+    /**
+     * Releases a searcher acquired by {@link #acquireSearcher()}.  The reference is
+     * released directly on the reader because the manager the searcher came from may
+     * have been replaced and closed since it was acquired.
+     * @param searcher the searcher to release
+     * @throws ClavinException if an error occurs releasing the searcher
+     */
+    private void releaseSearcher(final IndexSearcher searcher) throws ClavinException {
+        try {
+            searcher.getIndexReader().decRef();
+        } catch (IOException ioe) {
+            throw new ClavinException("Error releasing gazetteer searcher.", ioe);
+        }
+    }
+
+    /**
+     * Get the hit, miss and eviction statistics for the compiled query cache.
+     * @return the current query cache statistics
+     */
+    public CacheStats getQueryCacheStats() {
+        return queryCache.getStats();
+    }
+
+    /**
+     * Get the hit, miss and eviction statistics for the parent ID filter cache.
+     * @return the current parent ID filter cache statistics
+     */
+    public CacheStats getFilterCacheStats() {
+        return filterCache.getParentFilterStats();
+    }
+
+    /**
+     * Get the hit, miss and eviction statistics for the resolved GeoName cache of the
+     * current index generation.  Statistics are reset when a new generation is opened.
+     * @return the current GeoName cache statistics
+     * @throws ClavinException if the gazetteer has been closed
+     */
+    public CacheStats getGeoNameCacheStats() throws ClavinException {
+        GazetteerSearcher searcher = acquireSearcher();
+        try {
+            return searcher.getGeoNameCache().getStats();
+        } finally {
+            releaseSearcher(searcher);
+        }
+    }
+
     /**
      * Execute a query against the Lucene gazetteer index using the provided configuration,
      * returning the top matches as {@link ResolvedLocation}s.
@@ -168,75 +508,269 @@ public class LuceneGazetteer implements Gazetteer {
     @Override
     @SuppressWarnings("unchecked")
     public List<ResolvedLocation> getClosestLocations(final GazetteerQuery query) throws ClavinException {
-        // sanitize the query input
-        String sanitizedLocationName = sanitizeQueryText(query);
-
         // if there is no location to query, return no results
-        if ("".equals(sanitizedLocationName)) {
+        if ("".equals(sanitizeQueryText(query))) {
             return Collections.EMPTY_LIST;
         }
 
-        LocationOccurrence location = query.getOccurrence();
-        int maxResults = query.getMaxResults() > 0 ? query.getMaxResults() : DEFAULT_MAX_RESULTS;
-        Filter filter = buildFilter(query);
-        List<ResolvedLocation> matches;
+        // use the same searcher for the exact and fuzzy queries so results come from a single index generation
+        GazetteerSearcher searcher = acquireSearcher();
         try {
-            // attempt to find an exact match for the query
-            matches = executeQuery(location, sanitizedLocationName, filter, maxResults, false, query.isFilterDupes(), query.getAncestryMode(), null);
-            if (LOG.isDebugEnabled()) {
-                for (ResolvedLocation loc : matches) {
-                    LOG.debug("{}", loc);
+            QueryResult result = searchLocations(searcher, query);
+            resolveAncestry(searcher, result.parentMap);
+            return result.matches;
+        } catch (IOException ioe) {
+            throw new ClavinException(String.format("Error executing query for: '%s'}", query.getOccurrence().getText()), ioe);
+        } finally {
+            releaseSearcher(searcher);
+        }
+    }
+
+    /**
+     * Execute a batch of queries against the Lucene gazetteer index.  Identical queries are
+     * executed once and their results shared, the distinct queries are executed in parallel
+     * on the configured batch executor and the ancestry of all matches is resolved in a
+     * single pass.  All queries in the batch are executed against the same index generation.
+     *
+     * @param queries            the queries to execute
+     * @return                   the potential matches for each query, in the order the queries were provided
+     * @throws ClavinException   if an error occurs
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<List<ResolvedLocation>> getClosestLocations(final List<GazetteerQuery> queries) throws ClavinException {
+        // group identical queries so each distinct query is only executed once, recording
+        // the position of each query's results in the list of distinct queries
+        Map<GazetteerQueryKey, Integer> keyIndex = new HashMap<GazetteerQueryKey, Integer>();
+        List<GazetteerQuery> distinct = new ArrayList<GazetteerQuery>();
+        int[] resultIndex = new int[queries.size()];
+        for (int idx = 0; idx < queries.size(); idx++) {
+            GazetteerQuery query = queries.get(idx);
+            if ("".equals(sanitizeQueryText(query))) {
+                resultIndex[idx] = -1;
+                continue;
+            }
+            GazetteerQueryKey key = new GazetteerQueryKey(query);
+            Integer distinctIdx = keyIndex.get(key);
+            if (distinctIdx == null) {
+                distinctIdx = distinct.size();
+                keyIndex.put(key, distinctIdx);
+                distinct.add(query);
+            }
+            resultIndex[idx] = distinctIdx;
+        }
+
+        List<List<ResolvedLocation>> results = new ArrayList<List<ResolvedLocation>>(queries.size());
+        if (distinct.isEmpty()) {
+            for (int idx = 0; idx < queries.size(); idx++) {
+                results.add(Collections.EMPTY_LIST);
+            }
+            return results;
+        }
+
+        GazetteerSearcher searcher = acquireSearcher();
+        try {
+            List<QueryResult> distinctResults = searchLocations(searcher, distinct);
+
+            // merge the parents required by every query so ancestry is resolved in a single pass;
+            // separate queries may have created distinct instances of the same GeoName, so the
+            // children of each parent are tracked by identity
+            Map<Integer, Set<GeoName>> parentMap = new HashMap<Integer, Set<GeoName>>();
+            for (QueryResult result : distinctResults) {
+                for (Map.Entry<Integer, Set<GeoName>> entry : result.parentMap.entrySet()) {
+                    Set<GeoName> geos = parentMap.get(entry.getKey());
+                    if (geos == null) {
+                        geos = Collections.newSetFromMap(new IdentityHashMap<GeoName, Boolean>());
+                        parentMap.put(entry.getKey(), geos);
+                    }
+                    geos.addAll(entry.getValue());
                 }
             }
-            // check to see if we should run a fuzzy query based on the configured FuzzyMode
-            if (query.getFuzzyMode().useFuzzyMatching(maxResults, matches.size())) {
-                // provide any exact matches if we are running a fuzzy query so they can be considered for deduplication
-                // and result count
-                matches = executeQuery(location, sanitizedLocationName, filter, maxResults, true, query.isFilterDupes(), query.getAncestryMode(), matches);
-                if (LOG.isDebugEnabled()) {
+            resolveAncestry(searcher, parentMap);
+
+            boolean[] returned = new boolean[distinct.size()];
+            for (int idx = 0; idx < queries.size(); idx++) {
+                int distinctIdx = resultIndex[idx];
+                if (distinctIdx < 0) {
+                    results.add(Collections.EMPTY_LIST);
+                } else if (returned[distinctIdx]) {
+                    // bind the results shared with an identical query to this query's occurrence
+                    LocationOccurrence location = queries.get(idx).getOccurrence();
+                    List<ResolvedLocation> matches = distinctResults.get(distinctIdx).matches;
+                    List<ResolvedLocation> bound = new ArrayList<ResolvedLocation>(matches.size());
                     for (ResolvedLocation loc : matches) {
-                        LOG.debug("{}[fuzzy]", loc);
+                        bound.add(new ResolvedLocation(location, loc.getGeoname(), loc.getMatchedName(), loc.isFuzzy()));
                     }
+                    results.add(bound);
+                } else {
+                    results.add(distinctResults.get(distinctIdx).matches);
+                    returned[distinctIdx] = true;
                 }
             }
-            if (matches.isEmpty()) {
-                LOG.debug("No match found for: '{}'", location.getText());
-            }
-        } catch (ParseException pe) {
-            throw new ClavinException(String.format("Error parsing query for: '%s'}", location.getText()), pe);
         } catch (IOException ioe) {
-            throw new ClavinException(String.format("Error executing query for: '%s'}", location.getText()), ioe);
+            throw new ClavinException("Error executing batch query.", ioe);
+        } finally {
+            releaseSearcher(searcher);
+        }
+        return results;
+    }
+
+    /**
+     * Executes the provided queries, in parallel if a batch executor has been configured.
+     * Ancestry of the matches is not resolved.
+     * @param searcher the searcher used to execute the queries
+     * @param queries the queries; every query must have location text
+     * @return the results of each query, in the order the queries were provided
+     * @throws IOException if an error occurs executing the queries
+     * @throws ClavinException if the batch is interrupted
+     */
+    private List<QueryResult> searchLocations(final GazetteerSearcher searcher, final List<GazetteerQuery> queries)
+            throws IOException, ClavinException {
+        List<QueryResult> results = new ArrayList<QueryResult>(queries.size());
+        if (batchExecutor == null || queries.size() < 2) {
+            for (GazetteerQuery query : queries) {
+                results.add(searchLocations(searcher, query));
+            }
+            return results;
+        }
+
+        List<Future<QueryResult>> futures = new ArrayList<Future<QueryResult>>(queries.size());
+        try {
+            for (final GazetteerQuery query : queries) {
+                futures.add(batchExecutor.submit(new Callable<QueryResult>() {
+                    @Override
+                    public QueryResult call() throws IOException {
+                        return searchLocations(searcher, query);
+                    }
+                }));
+            }
+            for (Future<QueryResult> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ClavinException("Interrupted while executing batch query.", ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ClavinException("Error executing batch query.", cause);
+        } finally {
+            // the searcher is released once the batch completes, so stop any queries that have not
+            // started; running queries are not interrupted because interrupting NIO reads closes the index
+            for (Future<QueryResult> future : futures) {
+                future.cancel(false);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Executes the exact and, if required, fuzzy searches for a single query without resolving the
+     * ancestry of the matches.
+     * @param searcher the searcher used to execute the query
+     * @param query the query; it must have location text
+     * @return the matches and the parents that must be resolved for them
+     * @throws IOException if an error occurs executing the query
+     */
+    private QueryResult searchLocations(final GazetteerSearcher searcher, final GazetteerQuery query) throws IOException {
+        String sanitizedLocationName = sanitizeQueryText(query);
+        LocationOccurrence location = query.getOccurrence();
+        int maxResults = query.getMaxResults() > 0 ? query.getMaxResults() : DEFAULT_MAX_RESULTS;
+        Filter filter = filterCache.getFilter(query);
+        Map<Integer, Set<GeoName>> parentMap = new HashMap<Integer, Set<GeoName>>();
+
+        // attempt to find an exact match for the query, answering unfiltered queries from the
+        // name dictionary when it holds enough matches
+        List<ResolvedLocation> matches = null;
+        if (filter == null) {
+            matches = executeDictionaryQuery(searcher, location, sanitizedLocationName, maxResults,
+                    query.isFilterDupes(), query.getAncestryMode(), parentMap);
+        }
+        if (matches == null) {
+            matches = executeQuery(searcher, location, sanitizedLocationName, filter, maxResults, null,
+                    query.isFilterDupes(), query.getAncestryMode(), null, parentMap);
+        }
+        if (LOG.isDebugEnabled()) {
+            for (ResolvedLocation loc : matches) {
+                LOG.debug("{}", loc);
+            }
+        }
+        // check to see if we should run a fuzzy query based on the configured FuzzyMode
+        if (query.getFuzzyMode().useFuzzyMatching(maxResults, matches.size())) {
+            // provide any exact matches if we are running a fuzzy query so they can be considered for deduplication
+            // and result count
+            if (query.getFuzzyMode() == FuzzyMode.NGRAM && searcher.hasNameNGrams()) {
+                matches = executeNGramQuery(searcher, location, sanitizedLocationName, filter, maxResults,
+                        query.isFilterDupes(), query.getAncestryMode(), matches, parentMap);
+            } else {
+                matches = executeQuery(searcher, location, sanitizedLocationName, filter, maxResults, query.getFuzzyConfig(),
+                        query.isFilterDupes(), query.getAncestryMode(), matches, parentMap);
+            }
+            if (LOG.isDebugEnabled()) {
+                for (ResolvedLocation loc : matches) {
+                    LOG.debug("{}[fuzzy]", loc);
+                }
+            }
+        }
+        if (matches.isEmpty()) {
+            LOG.debug("No match found for: '{}'", location.getText());
+        }
+        return new QueryResult(matches, parentMap);
+    }
+
+    /**
+     * Resolves the ancestry of the GeoNames in the provided parent map and caches the resolved GeoNames.
+     * @param searcher the searcher used to look up the parents
+     * @param parentMap the map of parent geonameID to the set of children that belong to it; this map
+     *                  should only contain GeoNames if ancestryMode == ON_CREATE
+     * @throws IOException if an error occurs during parent resolution
+     */
+    private void resolveAncestry(final GazetteerSearcher searcher, final Map<Integer, Set<GeoName>> parentMap) throws IOException {
+        if (!parentMap.isEmpty()) {
+            resolveParents(searcher, parentMap);
+            GeoNameCache cache = searcher.getGeoNameCache();
+            for (Set<GeoName> geos : parentMap.values()) {
+                for (GeoName geo : geos) {
+                    cache.put(geo);
+                }
+            }
         }
-        return matches;
     }
 
     /**
      * Executes a query against the Lucene index, processing the results and returning
-     * at most maxResults ResolvedLocations with ancestry resolved.
+     * at most maxResults ResolvedLocations.  If ancestry is resolved on creation, the
+     * matches are added to the parent map and must be resolved by the caller.
+     * @param searcher the searcher used to execute the query
      * @param location the location occurrence
      * @param sanitizedName the sanitized name of the search location
      * @param filter the filter used to restrict the search results
      * @param maxResults the maximum number of results
-     * @param fuzzy is this a fuzzy query
+     * @param fuzzyConfig the fuzzy matching configuration or <code>null</code> for an exact query
      * @param dedupe should duplicate locations be filtered from the results
      * @param ancestryMode the hierarchy resolution mode
      * @param previousResults the results of a previous query that should be used for duplicate filtering and appended to until
      *                        no additional matches are found or maxResults has been reached; the input list will not be modified
      *                        and may be <code>null</code>
-     * @return the ResolvedLocations with ancestry resolved matching the query
-     * @throws ParseException if an error occurs generating the query
+     * @param parentMap the map of parent geonameID to the set of children that belong to it; matches whose ancestry
+     *                  must be resolved are added to this map
+     * @return the ResolvedLocations matching the query
      * @throws IOException if an error occurs executing the query
      */
-    private List<ResolvedLocation> executeQuery(final LocationOccurrence location, final String sanitizedName, final Filter filter,
-            final int maxResults, final boolean fuzzy, final boolean dedupe, final AncestryMode ancestryMode,
-            final List<ResolvedLocation> previousResults) throws ParseException, IOException {
-        Query query = new AnalyzingQueryParser(Version.LUCENE_4_9, INDEX_NAME.key(), INDEX_ANALYZER)
-                .parse(String.format(fuzzy ? FUZZY_FMT : EXACT_MATCH_FMT, sanitizedName));
+    private List<ResolvedLocation> executeQuery(final GazetteerSearcher searcher, final LocationOccurrence location, final String sanitizedName, final Filter filter,
+            final int maxResults, final FuzzyConfig fuzzyConfig, final boolean dedupe, final AncestryMode ancestryMode,
+            final List<ResolvedLocation> previousResults, final Map<Integer, Set<GeoName>> parentMap) throws IOException {
+        Query query = getNameQuery(sanitizedName, fuzzyConfig, searcher.hasGeoNameDocuments());
+        boolean fuzzy = fuzzyConfig != null;
 
         List<ResolvedLocation> matches = new ArrayList<ResolvedLocation>(maxResults);
 
-        Map<Integer, Set<GeoName>> parentMap = new HashMap<Integer, Set<GeoName>>();
-
         // reuse GeoName instances so all ancestry is correctly resolved if multiple names for
         // the same GeoName match the query
         Map<Integer, GeoName> geonameMap = new HashMap<Integer, GeoName>();
@@ -263,63 +797,280 @@ public class LuceneGazetteer implements Gazetteer {
             // collect all the hits up to maxResults, and sort them based
             // on Lucene match score and population for the associated
             // GeoNames record
-            TopDocs results = indexSearcher.searchAfter(lastDoc, query, filter, maxResults, POPULATION_SORT);
+            TopDocs results = searcher.searchAfter(lastDoc, query, filter, maxResults, POPULATION_SORT);
             // set lastDoc to null so we don't infinite loop if results is empty
             lastDoc = null;
             // populate results if matches were discovered
             for (ScoreDoc scoreDoc : results.scoreDocs) {
                 lastDoc = scoreDoc;
-                Document doc = indexSearcher.doc(scoreDoc.doc);
-                // reuse GeoName instances so all ancestry is correctly resolved if multiple names for
-                // the same GeoName match the query
-                int geonameID = GEONAME_ID.getValue(doc);
-                GeoName geoname = geonameMap.get(geonameID);
-                if (geoname == null) {
-                    geoname = BasicGeoName.parseFromGeoNamesRecord((String) GEONAME.getValue(doc), (String) PREFERRED_NAME.getValue(doc));
-                    geonameMap.put(geonameID, geoname);
-                } else if (dedupe) {
-                    // if we have already seen this GeoName and we are removing duplicates, skip to the next doc
+                int geonameID = searcher.getGeonameId(scoreDoc.doc);
+                if (dedupe && geonameMap.containsKey(geonameID)) {
+                    // if we have already seen this GeoName and we are removing duplicates, skip to the
+                    // next doc without loading its stored fields
                     continue;
                 }
-                String matchedName = INDEX_NAME.getValue(doc);
-                if (!geoname.isAncestryResolved()) {
-                    IndexableField parentIdField = doc.getField(IndexField.PARENT_ID.key());
-                    Integer parentId = parentIdField != null && parentIdField.numericValue() != null ?
-                            parentIdField.numericValue().intValue() : null;
-                    if (parentId != null) {
-                        // if we are lazily or manually loading ancestry, replace GeoName with a LazyAncestryGeoName
-                        // otherwide, build the parent resolution map
-                        switch (ancestryMode) {
-                            case LAZY:
-                                geoname = new LazyAncestryGeoName(geoname, parentId, this);
-                                break;
-                            case MANUAL:
-                                geoname = new LazyAncestryGeoName(geoname, parentId);
-                                break;
-                            case ON_CREATE:
-                                Set<GeoName> geos = parentMap.get(parentId);
-                                if (geos == null) {
-                                    geos = new HashSet<GeoName>();
-                                    parentMap.put(parentId, geos);
-                                }
-                                geos.add(geoname);
-                                break;
-                        }
-                    }
-                }
-                matches.add(new ResolvedLocation(location, geoname, matchedName, fuzzy));
+                matches.add(createMatch(searcher, scoreDoc.doc, geonameID, location, sanitizedName, fuzzy, ancestryMode,
+                        geonameMap, parentMap));
                 // stop processing results if we have reached maxResults matches
                 if (matches.size() >= maxResults) {
                     break;
                 }
             }
         } while (dedupe && lastDoc != null && matches.size() < maxResults);
-        // if any results need ancestry resolution, resolve parents
-        // this map should only contain GeoNames if ancestryMode == ON_CREATE
-        if (!parentMap.isEmpty()) {
-            resolveParents(parentMap);
+
+        return matches;
+    }
+
+    /**
+     * Answers an exact query from the name dictionary of the searcher, returning
+     * <code>null</code> if the searcher has no dictionary or the dictionary does not
+     * hold maxResults locations whose entire name matches the location name.  Those
+     * locations score higher than any name that only contains the location name, so
+     * they are the top results of the equivalent index search and are returned in
+     * the same order.  Only names of up to {@link #MAX_DICTIONARY_TERMS} terms are
+     * answered from the dictionary.
+     * @param searcher the searcher used to execute the query
+     * @param location the location occurrence
+     * @param sanitizedName the sanitized name of the search location
+     * @param maxResults the maximum number of results
+     * @param dedupe should duplicate locations be filtered from the results
+     * @param ancestryMode the hierarchy resolution mode
+     * @param parentMap the map of parent geonameID to the set of children that belong to it; matches whose ancestry
+     *                  must be resolved are added to this map
+     * @return the ResolvedLocations matching the query or <code>null</code> if the index must be searched
+     * @throws IOException if an error occurs reading the dictionary
+     */
+    private List<ResolvedLocation> executeDictionaryQuery(final GazetteerSearcher searcher, final LocationOccurrence location,
+            final String sanitizedName, final int maxResults, final boolean dedupe, final AncestryMode ancestryMode,
+            final Map<Integer, Set<GeoName>> parentMap) throws IOException {
+        NameDictionary dictionary = searcher.getNameDictionary();
+        if (dictionary == null) {
+            return null;
+        }
+        String key = NameKeys.toKey(sanitizedName);
+        if (StringUtils.countMatches(key, " ") >= MAX_DICTIONARY_TERMS) {
+            return null;
+        }
+        NameDictionary.Postings postings = dictionary.get(key);
+        if (postings == null || postings.size() < maxResults) {
+            return null;
+        }
+
+        // select the matching documents from their IDs alone so nothing is loaded if the
+        // index must be searched after all
+        int[] docIds = new int[maxResults];
+        int[] geonameIds = new int[maxResults];
+        Set<Integer> seen = dedupe ? new HashSet<Integer>() : null;
+        int count = 0;
+        for (int idx = 0; idx < postings.size() && count < maxResults; idx++) {
+            int docId = postings.getDocId(idx);
+            int geonameID = searcher.getGeonameId(docId);
+            if (seen == null || seen.add(geonameID)) {
+                docIds[count] = docId;
+                geonameIds[count] = geonameID;
+                count++;
+            }
+        }
+        if (count < maxResults) {
+            return null;
+        }
+
+        List<ResolvedLocation> matches = new ArrayList<ResolvedLocation>(maxResults);
+        Map<Integer, GeoName> geonameMap = new HashMap<Integer, GeoName>();
+        for (int idx = 0; idx < count; idx++) {
+            matches.add(createMatch(searcher, docIds[idx], geonameIds[idx], location, sanitizedName, false, ancestryMode,
+                    geonameMap, parentMap));
+        }
+        return matches;
+    }
+
+    /**
+     * Creates the match for a search result.  GeoNames are re-used for every document that
+     * indexes the same location so all ancestry is correctly resolved if multiple names for
+     * the same GeoName match the query.
+     * @param searcher the searcher that found the document
+     * @param docId the ID of the matching document
+     * @param geonameID the ID of the GeoName indexed by the document
+     * @param location the location occurrence
+     * @param sanitizedName the sanitized name of the search location
+     * @param fuzzy is this a fuzzy match
+     * @param ancestryMode the hierarchy resolution mode
+     * @param geonameMap the GeoNames already created for the query, keyed by ID; the GeoName of this
+     *                   match is added if it is not found
+     * @param parentMap the map of parent geonameID to the set of children that belong to it; the GeoName
+     *                  of this match is added if its ancestry must be resolved
+     * @return the match
+     * @throws IOException if an error occurs loading the document
+     */
+    private ResolvedLocation createMatch(final GazetteerSearcher searcher, final int docId, final int geonameID,
+            final LocationOccurrence location, final String sanitizedName, final boolean fuzzy, final AncestryMode ancestryMode,
+            final Map<Integer, GeoName> geonameMap, final Map<Integer, Set<GeoName>> parentMap) throws IOException {
+        Document doc = searcher.doc(docId);
+        GeoName geoname = geonameMap.get(geonameID);
+        if (geoname == null) {
+            // resolved GeoNames may only be shared if ancestry is resolved on creation
+            if (ancestryMode == AncestryMode.ON_CREATE) {
+                geoname = searcher.getGeoNameCache().get(geonameID);
+            }
+            if (geoname == null) {
+                geoname = parseGeoName(doc);
+            }
+            geonameMap.put(geonameID, geoname);
+        }
+        String matchedName = selectMatchedName(doc.getValues(INDEX_NAME.key()), sanitizedName, fuzzy);
+        if (!geoname.isAncestryResolved()) {
+            Integer parentId = searcher.getParentId(docId);
+            if (parentId != null) {
+                // if we are lazily or manually loading ancestry, replace GeoName with a LazyAncestryGeoName
+                // otherwide, build the parent resolution map
+                switch (ancestryMode) {
+                    case LAZY:
+                        geoname = new LazyAncestryGeoName(geoname, parentId, this);
+                        break;
+                    case MANUAL:
+                        geoname = new LazyAncestryGeoName(geoname, parentId);
+                        break;
+                    case ON_CREATE:
+                        Set<GeoName> geos = parentMap.get(parentId);
+                        if (geos == null) {
+                            geos = new HashSet<GeoName>();
+                            parentMap.put(parentId, geos);
+                        }
+                        geos.add(geoname);
+                        break;
+                }
+            }
+        }
+        return new ResolvedLocation(location, geoname, matchedName, fuzzy);
+    }
+
+    /**
+     * Selects the name of a matching document that matched the query.  Documents indexing
+     * a single name matched with that name.  For documents indexing every name of a GeoName,
+     * exact matches are attributed to the first name with the highest length norm that
+     * contains the location name and fuzzy matches to the first name closest to the location
+     * name, so the name is the one the matching document of a single name index would hold.
+     * @param names the names indexed by the document
+     * @param sanitizedName the sanitized name of the search location
+     * @param fuzzy is this a fuzzy match
+     * @return the matched name
+     */
+    static String selectMatchedName(final String[] names, final String sanitizedName, final boolean fuzzy) {
+        if (names.length <= 1) {
+            return names.length > 0 ? names[0] : null;
+        }
+        String[] queryTerms = NameKeys.toKey(sanitizedName).split(" ");
+        String matched = null;
+        float bestNorm = -1.0f;
+        int bestDistance = Integer.MAX_VALUE;
+        for (String name : names) {
+            String[] terms = NameKeys.toKey(name).split(" ");
+            float norm = BinarySimilarity.getNameNorm(terms.length);
+            if (fuzzy) {
+                int distance = DamerauLevenshtein.damerauLevenshteinDistanceCaseInsensitive(sanitizedName, name);
+                if (distance < bestDistance || (distance == bestDistance && norm > bestNorm)) {
+                    matched = name;
+                    bestDistance = distance;
+                    bestNorm = norm;
+                }
+            } else if (norm > bestNorm && containsTerms(terms, queryTerms)) {
+                matched = name;
+                bestNorm = norm;
+            }
+        }
+        return matched != null ? matched : names[0];
+    }
+
+    /**
+     * Does a name contain the query terms, in order, as a phrase?
+     * @param terms the terms of the name
+     * @param queryTerms the terms of the query
+     * @return <code>true</code> if the query terms are found in the name
+     */
+    private static boolean containsTerms(final String[] terms, final String[] queryTerms) {
+        for (int start = 0; start + queryTerms.length <= terms.length; start++) {
+            int idx = 0;
+            while (idx < queryTerms.length && terms[start + idx].equals(queryTerms[idx])) {
+                idx++;
+            }
+            if (idx == queryTerms.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Executes an n-gram query against the Lucene index, returning at most maxResults
+     * ResolvedLocations.  Names sharing enough character n-grams with the location name
+     * are retrieved as candidates, then ranked by their Damerau-Levenshtein distance from
+     * the location name and by population.  Candidates that differ from the location name
+     * in more than half of its characters are discarded.  If ancestry is resolved on creation,
+     * the matches are added to the parent map and must be resolved by the caller.
+     * @param searcher the searcher used to execute the query
+     * @param location the location occurrence
+     * @param sanitizedName the sanitized name of the search location
+     * @param filter the filter used to restrict the search results
+     * @param maxResults the maximum number of results
+     * @param dedupe should duplicate locations be filtered from the results
+     * @param ancestryMode the hierarchy resolution mode
+     * @param previousResults the results of a previous query that should be used for duplicate filtering and appended to;
+     *                        the input list will not be modified and may be <code>null</code>
+     * @param parentMap the map of parent geonameID to the set of children that belong to it; matches whose ancestry
+     *                  must be resolved are added to this map
+     * @return the ResolvedLocations matching the query
+     * @throws IOException if an error occurs executing the query
+     */
+    private List<ResolvedLocation> executeNGramQuery(final GazetteerSearcher searcher, final LocationOccurrence location,
+            final String sanitizedName, final Filter filter, final int maxResults, final boolean dedupe,
+            final AncestryMode ancestryMode, final List<ResolvedLocation> previousResults,
+            final Map<Integer, Set<GeoName>> parentMap) throws IOException {
+        List<ResolvedLocation> matches = new ArrayList<ResolvedLocation>(maxResults);
+        Map<Integer, GeoName> geonameMap = new HashMap<Integer, GeoName>();
+        if (previousResults != null) {
+            matches.addAll(previousResults);
+            for (ResolvedLocation loc : previousResults) {
+                geonameMap.put(loc.getGeoname().getGeonameID(), loc.getGeoname());
+            }
+        }
+        if (matches.size() >= maxResults) {
+            return matches;
         }
 
+        // require a minimum share of the n-grams so names that only share a common n-gram are not considered
+        Set<String> grams = new LinkedHashSet<String>(NameNGrams.getNGrams(sanitizedName));
+        BooleanQuery query = new BooleanQuery();
+        for (String gram : grams) {
+            query.add(new TermQuery(new Term(NAME_NGRAMS.key(), gram)), Occur.SHOULD);
+        }
+        query.setMinimumNumberShouldMatch(Math.max(1, (int) Math.ceil(grams.size() * NGRAM_MIN_SHARED)));
+        TopDocs results = searcher.search(query, filter, Math.max(maxResults * NGRAM_CANDIDATE_FACTOR, NGRAM_MIN_CANDIDATES));
+
+        // re-rank the candidates by edit distance, loading only their names
+        int maxDistance = Math.max(1, sanitizedName.codePointCount(0, sanitizedName.length()) / 2);
+        List<NGramCandidate> candidates = new ArrayList<NGramCandidate>(results.scoreDocs.length);
+        for (ScoreDoc scoreDoc : results.scoreDocs) {
+            int distance = Integer.MAX_VALUE;
+            for (String name : searcher.doc(scoreDoc.doc, NAME_FIELDS).getValues(INDEX_NAME.key())) {
+                distance = Math.min(distance, DamerauLevenshtein.damerauLevenshteinDistanceCaseInsensitive(sanitizedName, name));
+            }
+            if (distance <= maxDistance) {
+                candidates.add(new NGramCandidate(scoreDoc.doc, distance, searcher.getSortPopulation(scoreDoc.doc)));
+            }
+        }
+        Collections.sort(candidates);
+
+        for (NGramCandidate candidate : candidates) {
+            int geonameID = searcher.getGeonameId(candidate.docId);
+            if (dedupe && geonameMap.containsKey(geonameID)) {
+                continue;
+            }
+            matches.add(createMatch(searcher, candidate.docId, geonameID, location, sanitizedName, true, ancestryMode,
+                    geonameMap, parentMap));
+            if (matches.size() >= maxResults) {
+                break;
+            }
+        }
         return matches;
     }
 
@@ -334,78 +1085,245 @@ public class LuceneGazetteer implements Gazetteer {
         if (query != null && query.getOccurrence() != null) {
             String text = query.getOccurrence().getText();
             if (text != null) {
-                sanitized = escape(text.trim().toLowerCase());
+                sanitized = text.trim().toLowerCase();
             }
         }
         return sanitized;
     }
 
     /**
-     * Builds a Lucene search filter based on the provided parameters.
-     * @param params the query configuration parameters
-     * @return a Lucene search filter that will restrict the returned documents to the criteria provided or <code>null</code>
-     *         if no filtering is necessary
+     * Gets the compiled Lucene query for the provided location name, building
+     * and caching it if it has not been seen recently.
+     * @param sanitizedName the sanitized name of the search location
+     * @param fuzzyConfig the fuzzy matching configuration or <code>null</code> for an exact query
+     * @param namePayloads do the searched names carry length payloads
+     * @return the Lucene query matching the location name
+     * @throws IOException if an error occurs analyzing the location name
+     */
+    private Query getNameQuery(final String sanitizedName, final FuzzyConfig fuzzyConfig, final boolean namePayloads)
+            throws IOException {
+        QueryKey key = new QueryKey(sanitizedName, fuzzyConfig, namePayloads);
+        Query query = queryCache.get(key);
+        if (query == null) {
+            query = buildNameQuery(sanitizedName, fuzzyConfig, namePayloads);
+            queryCache.put(key, query);
+        }
+        return query;
+    }
+
+    /**
+     * Builds the Lucene query for the provided location name directly from the
+     * tokens produced by the index analyzer.  Exact queries match the tokens as a
+     * phrase.  Fuzzy queries of a single token match the token within the configured
+     * number of edits.  Fuzzy queries of multiple tokens match every token, in order,
+     * within the configured number of edits; matches of individual tokens are also
+     * returned, ranked below names that match every token.  Tokens of multi-token
+     * names that are no longer than the maximum number of edits are matched exactly
+     * since a fuzzy match would accept any short term.  If names carry length payloads,
+     * exact queries are scored by the payload of the shortest matching name.
+     * @param sanitizedName the sanitized name of the search location
+     * @param fuzzyConfig the fuzzy matching configuration or <code>null</code> for an exact query
+     * @param namePayloads do the searched names carry length payloads
+     * @return the Lucene query matching the location name
+     * @throws IOException if an error occurs analyzing the location name
+     */
+    private static Query buildNameQuery(final String sanitizedName, final FuzzyConfig fuzzyConfig, final boolean namePayloads)
+            throws IOException {
+        List<Term> terms = new ArrayList<Term>();
+        TokenStream stream = INDEX_ANALYZER.tokenStream(INDEX_NAME.key(), sanitizedName);
+        try {
+            CharTermAttribute termAttr = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                terms.add(new Term(INDEX_NAME.key(), termAttr.toString()));
+            }
+            stream.end();
+        } finally {
+            stream.close();
+        }
+
+        Query query;
+        if (namePayloads && fuzzyConfig == null) {
+            // score exact matches by the length of the best matching name
+            if (terms.size() == 1) {
+                query = new PayloadTermQuery(terms.get(0), new MaxPayloadFunction(), false);
+            } else {
+                SpanQuery[] clauses = new SpanQuery[terms.size()];
+                for (int idx = 0; idx < terms.size(); idx++) {
+                    clauses[idx] = new SpanTermQuery(terms.get(idx));
+                }
+                query = new PayloadNearQuery(clauses, 0, true, new MaxPayloadFunction());
+            }
+        } else if (terms.size() == 1) {
+            Term term = terms.get(0);
+            query = fuzzyConfig != null ? buildFuzzyQuery(term, fuzzyConfig) : new TermQuery(term);
+        } else if (fuzzyConfig != null) {
+            BooleanQuery bq = new BooleanQuery();
+            SpanQuery[] clauses = new SpanQuery[terms.size()];
+            for (int idx = 0; idx < terms.size(); idx++) {
+                Term term = terms.get(idx);
+                if (term.text().length() > fuzzyConfig.getMaxEdits()) {
+                    SpanMultiTermQueryWrapper<FuzzyQuery> fuzzyTerm =
+                            new SpanMultiTermQueryWrapper<FuzzyQuery>(buildFuzzyQuery(term, fuzzyConfig));
+                    fuzzyTerm.setRewriteMethod(new SpanMultiTermQueryWrapper.TopTermsSpanBooleanQueryRewrite(
+                            fuzzyConfig.getMaxExpansions()));
+                    clauses[idx] = fuzzyTerm;
+                    bq.add(buildFuzzyQuery(term, fuzzyConfig), Occur.SHOULD);
+                } else {
+                    clauses[idx] = new SpanTermQuery(term);
+                    bq.add(new TermQuery(term), Occur.SHOULD);
+                }
+            }
+            SpanNearQuery phrase = new SpanNearQuery(clauses, 0, true);
+            phrase.setBoost(FUZZY_PHRASE_BOOST);
+            bq.add(phrase, Occur.SHOULD);
+            query = bq;
+        } else {
+            PhraseQuery pq = new PhraseQuery();
+            for (Term term : terms) {
+                pq.add(term);
+            }
+            query = pq;
+        }
+        return query;
+    }
+
+    /**
+     * Builds a fuzzy query for a single name token.
+     * @param term the name token
+     * @param fuzzyConfig the fuzzy matching configuration
+     * @return the fuzzy query
+     */
+    private static FuzzyQuery buildFuzzyQuery(final Term term, final FuzzyConfig fuzzyConfig) {
+        return new FuzzyQuery(term, fuzzyConfig.getMaxEdits(), fuzzyConfig.getPrefixLength(),
+                fuzzyConfig.getMaxExpansions(), fuzzyConfig.isTranspositions());
+    }
+
+    /**
+     * Retrieves and sets the parents of the provided children.
+     * @param searcher the searcher used to look up the parents
+     * @param childMap the map of parent geonameID to the set of children that belong to it
+     * @throws IOException if an error occurs during parent resolution
      */
-    private Filter buildFilter(final GazetteerQuery params) {
-        List<Query> queryParts = new ArrayList<Query>();
+    private void resolveParents(final GazetteerSearcher searcher, final Map<Integer, Set<GeoName>> childMap) throws IOException {
+        AncestryTable ancestry = searcher.getAncestryTable();
+        if (ancestry != null) {
+            resolveParentsFromTable(searcher, ancestry, childMap);
+        } else {
+            resolveParentsByQuery(searcher, childMap);
+        }
+    }
 
-        // create the historical locations restriction if we are not including historical locations
-        if (!params.isIncludeHistorical()) {
-            int val = IndexField.getBooleanIndexValue(false);
-            queryParts.add(NumericRangeQuery.newIntRange(HISTORICAL.key(), val, val, true, true));
+    /**
+     * Retrieves and sets the parents of the provided children, walking the full ancestry
+     * of every child in the ancestry table and loading all ancestors in a single pass over
+     * their stored documents.
+     * @param searcher the searcher used to load the parents
+     * @param ancestry the ancestry table of the searcher's index
+     * @param childMap the map of parent geonameID to the set of children that belong to it
+     * @throws IOException if an error occurs during parent resolution
+     */
+    private void resolveParentsFromTable(final GazetteerSearcher searcher, final AncestryTable ancestry,
+            final Map<Integer, Set<GeoName>> childMap) throws IOException {
+        GeoNameCache cache = searcher.getGeoNameCache();
+        Map<Integer, GeoName> parentMap = new HashMap<Integer, GeoName>();
+        // collect the canonical document of every uncached ancestor, ordered by document ID
+        Map<Integer, Integer> ancestorDocs = new TreeMap<Integer, Integer>();
+        Set<Integer> visited = new HashSet<Integer>();
+        List<Integer> pending = new ArrayList<Integer>(childMap.keySet());
+        while (!pending.isEmpty()) {
+            int ancestorId = pending.remove(pending.size() - 1);
+            if (!visited.add(ancestorId)) {
+                continue;
+            }
+            // cached ancestors are already resolved, so there is no need to walk past them
+            GeoName cached = cache.get(ancestorId);
+            if (cached != null) {
+                parentMap.put(ancestorId, cached);
+                continue;
+            }
+            int docId = ancestry.getDocId(ancestorId);
+            if (docId == AncestryTable.NOT_FOUND) {
+                LOG.error("Unable to find parent GeoName [{}]", ancestorId);
+                continue;
+            }
+            ancestorDocs.put(docId, ancestorId);
+            int grandParentId = ancestry.getParentId(ancestorId);
+            if (grandParentId != AncestryTable.NOT_FOUND) {
+                pending.add(grandParentId);
+            }
         }
 
-        // create the parent ID restrictions if we were provided at least one parent ID
-        Set<Integer> parentIds = params.getParentIds();
-        if (!parentIds.isEmpty()) {
-            BooleanQuery parentQuery = new BooleanQuery();
-            // locations must descend from at least one of the specified parents (OR)
-            for (Integer id : parentIds) {
-                parentQuery.add(NumericRangeQuery.newIntRange(ANCESTOR_IDS.key(), id, id, true, true), Occur.SHOULD);
+        // load the ancestors, noting those whose own parent must be set
+        List<GeoName> loaded = new ArrayList<GeoName>(ancestorDocs.size());
+        List<GeoName> unresolved = new ArrayList<GeoName>();
+        for (Integer docId : ancestorDocs.keySet()) {
+            Document doc = searcher.doc(docId);
+            GeoName parent = parseGeoName(doc);
+            parentMap.put(parent.getGeonameID(), parent);
+            loaded.add(parent);
+            if (!parent.isAncestryResolved()) {
+                unresolved.add(parent);
             }
-            queryParts.add(parentQuery);
         }
 
-        // create the feature code restrictions if we were provided some, but not all, feature codes
-        Set<FeatureCode> codes = params.getFeatureCodes();
-        if (!(codes.isEmpty() || ALL_CODES.equals(codes))) {
-            BooleanQuery codeQuery = new BooleanQuery();
-            // locations must be one of the specified feature codes (OR)
-            for (FeatureCode code : codes) {
-                codeQuery.add(new TermQuery(new Term(FEATURE_CODE.key(), code.name())), Occur.SHOULD);
+        // link the ancestors to their parents
+        for (GeoName parent : unresolved) {
+            int grandParentId = ancestry.getParentId(parent.getGeonameID());
+            if (grandParentId != AncestryTable.NOT_FOUND) {
+                GeoName grandParent = parentMap.get(grandParentId);
+                if (grandParent != null) {
+                    parent.setParent(grandParent);
+                } else {
+                    LOG.info("Unable to find parent with ID [{}]", grandParentId);
+                }
             }
-            queryParts.add(codeQuery);
+        }
+        for (GeoName parent : loaded) {
+            cache.put(parent);
         }
 
-        Filter filter = null;
-        if (!queryParts.isEmpty()) {
-            BooleanQuery bq = new BooleanQuery();
-            for (Query part : queryParts) {
-                bq.add(part, Occur.MUST);
+        // set parents of children
+        for (Integer parentId : childMap.keySet()) {
+            GeoName parent = parentMap.get(parentId);
+            if (parent == null) {
+                LOG.info("Unable to find parent with ID [{}]", parentId);
+                continue;
+            }
+            for (GeoName child : childMap.get(parentId)) {
+                child.setParent(parent);
             }
-            filter = new QueryWrapperFilter(bq);
         }
-        return filter;
     }
 
     /**
-     * Retrieves and sets the parents of the provided children.
+     * Retrieves and sets the parents of the provided children, searching the index for
+     * each parent.  This is used for indexes that do not provide the doc values required
+     * to build an ancestry table.
+     * @param searcher the searcher used to look up the parents
      * @param childMap the map of parent geonameID to the set of children that belong to it
      * @throws IOException if an error occurs during parent resolution
      */
-    private void resolveParents(final Map<Integer, Set<GeoName>> childMap) throws IOException {
+    private void resolveParentsByQuery(final GazetteerSearcher searcher, final Map<Integer, Set<GeoName>> childMap) throws IOException {
+        GeoNameCache cache = searcher.getGeoNameCache();
         Map<Integer, GeoName> parentMap = new HashMap<Integer, GeoName>();
         Map<Integer, Set<GeoName>> grandParentMap = new HashMap<Integer, Set<GeoName>>();
         for (Integer parentId : childMap.keySet()) {
+            GeoName cached = cache.get(parentId);
+            if (cached != null) {
+                parentMap.put(parentId, cached);
+                continue;
+            }
             // Lucene query used to look for exact match on the "geonameID" field
             Query q = NumericRangeQuery.newIntRange(GEONAME_ID.key(), parentId, parentId, true, true);
-            TopDocs results = indexSearcher.search(q, null, 1, POPULATION_SORT);
+            TopDocs results = searcher.search(q, null, 1, POPULATION_SORT);
             if (results.scoreDocs.length > 0) {
-                Document doc = indexSearcher.doc(results.scoreDocs[0].doc);
-                GeoName parent = BasicGeoName.parseFromGeoNamesRecord(doc.get(GEONAME.key()), doc.get(PREFERRED_NAME.key()));
+                int docId = results.scoreDocs[0].doc;
+                Document doc = searcher.doc(docId);
+                GeoName parent = parseGeoName(doc);
                 parentMap.put(parent.getGeonameID(), parent);
                 if (!parent.isAncestryResolved()) {
-                    Integer grandParentId = PARENT_ID.getValue(doc);
+                    Integer grandParentId = searcher.getParentId(docId);
                     if (grandParentId != null) {
                         Set<GeoName> geos = grandParentMap.get(grandParentId);
                         if (geos == null) {
@@ -422,7 +1340,7 @@ public class LuceneGazetteer implements Gazetteer {
 
         // find all parents of the parents
         if (!grandParentMap.isEmpty()) {
-            resolveParents(grandParentMap);
+            resolveParentsByQuery(searcher, grandParentMap);
         }
 
         // set parents of children
@@ -435,6 +1353,7 @@ public class LuceneGazetteer implements Gazetteer {
             for (GeoName child : childMap.get(parentId)) {
                 child.setParent(parent);
             }
+            cache.put(parent);
         }
     }
 
@@ -445,23 +1364,29 @@ public class LuceneGazetteer implements Gazetteer {
 
     @Override
     public GeoName getGeoName(final int geonameId, final AncestryMode ancestryMode) throws ClavinException {
+        GazetteerSearcher searcher = acquireSearcher();
         try {
             GeoName geoName = null;
-            // Lucene query used to look for exact match on the "geonameID" field
-            Query q = NumericRangeQuery.newIntRange(GEONAME_ID.key(), geonameId, geonameId, true, true);
-            // retrieve only one matching document
-            TopDocs results = indexSearcher.search(q, 1);
-            if (results.scoreDocs.length > 0) {
-                Document doc = indexSearcher.doc(results.scoreDocs[0].doc);
-                geoName = BasicGeoName.parseFromGeoNamesRecord(doc.get(GEONAME.key()), doc.get(PREFERRED_NAME.key()));
+            // resolved GeoNames may only be shared if ancestry is resolved on creation
+            GeoNameCache cache = searcher.getGeoNameCache();
+            if (ancestryMode == AncestryMode.ON_CREATE) {
+                geoName = cache.get(geonameId);
+                if (geoName != null) {
+                    return geoName;
+                }
+            }
+            int docId = searcher.findDocId(geonameId);
+            if (docId != AncestryTable.NOT_FOUND) {
+                Document doc = searcher.doc(docId);
+                geoName = parseGeoName(doc);
                 if (!geoName.isAncestryResolved()) {
-                    Integer parentId = PARENT_ID.getValue(doc);
+                    Integer parentId = searcher.getParentId(docId);
                     if (parentId != null) {
                         switch (ancestryMode) {
                             case ON_CREATE:
                                 Map<Integer, Set<GeoName>> childMap = new HashMap<Integer, Set<GeoName>>();
                                 childMap.put(parentId, Collections.singleton(geoName));
-                                resolveParents(childMap);
+                                resolveParents(searcher, childMap);
                                 break;
                             case LAZY:
                                 // ancestry will be loaded on request
@@ -474,6 +1399,9 @@ public class LuceneGazetteer implements Gazetteer {
                         }
                     }
                 }
+                if (ancestryMode == AncestryMode.ON_CREATE) {
+                    cache.put(geoName);
+                }
             } else {
                 LOG.debug("No geoname found for ID: {}", geonameId);
             }
@@ -482,6 +1410,8 @@ public class LuceneGazetteer implements Gazetteer {
             String msg = String.format("Error retrieving geoname with ID : %d", geonameId);
             LOG.error(msg, e);
             throw new ClavinException(msg, e);
+        } finally {
+            releaseSearcher(searcher);
         }
     }
 
@@ -505,11 +1435,367 @@ public class LuceneGazetteer implements Gazetteer {
             }
         }
         if (!parentMap.isEmpty()) {
+            GazetteerSearcher searcher = acquireSearcher();
             try {
-                resolveParents(parentMap);
+                resolveParents(searcher, parentMap);
             } catch (IOException ioe) {
                 throw new ClavinException("Error loading ancestry.", ioe);
+            } finally {
+                releaseSearcher(searcher);
+            }
+        }
+    }
+
+    /**
+     * Loads every country and first and second level administrative division in the
+     * searcher's index, resolves their ancestry and pins them in its GeoName cache.
+     * @param searcher the searcher to pin administrative divisions for
+     * @throws IOException if an error occurs loading the administrative divisions
+     */
+    private void pinAdminDivisions(final GazetteerSearcher searcher) throws IOException {
+        long start = System.currentTimeMillis();
+        BooleanQuery codeQuery = new BooleanQuery();
+        for (FeatureCode code : PINNED_CODES) {
+            codeQuery.add(new TermQuery(new Term(FEATURE_CODE.key(), code.name())), Occur.SHOULD);
+        }
+        // collect the matching documents in index order so the canonical record of each GeoName is loaded
+        final List<Integer> docIds = new ArrayList<Integer>();
+        searcher.search(codeQuery, new Collector() {
+            private int docBase;
+
+            @Override
+            public void setScorer(final Scorer scorer) {
+            }
+
+            @Override
+            public void collect(final int doc) {
+                docIds.add(docBase + doc);
+            }
+
+            @Override
+            public void setNextReader(final AtomicReaderContext context) {
+                docBase = context.docBase;
+            }
+
+            @Override
+            public boolean acceptsDocsOutOfOrder() {
+                return false;
+            }
+        });
+
+        Map<Integer, GeoName> divisions = new HashMap<Integer, GeoName>();
+        Map<GeoName, Integer> parentIds = new HashMap<GeoName, Integer>();
+        for (Integer docId : docIds) {
+            int geonameId = searcher.getGeonameId(docId);
+            if (divisions.containsKey(geonameId)) {
+                continue;
+            }
+            Document doc = searcher.doc(docId);
+            GeoName division = parseGeoName(doc);
+            divisions.put(geonameId, division);
+            if (!division.isAncestryResolved()) {
+                Integer parentId = searcher.getParentId(docId);
+                if (parentId != null) {
+                    parentIds.put(division, parentId);
+                }
+            }
+        }
+
+        // link divisions to parents that were also loaded, resolving any others from the index
+        Map<Integer, Set<GeoName>> childMap = new HashMap<Integer, Set<GeoName>>();
+        for (Map.Entry<GeoName, Integer> entry : parentIds.entrySet()) {
+            GeoName parent = divisions.get(entry.getValue());
+            if (parent != null) {
+                entry.getKey().setParent(parent);
+            } else {
+                Set<GeoName> geos = childMap.get(entry.getValue());
+                if (geos == null) {
+                    geos = new HashSet<GeoName>();
+                    childMap.put(entry.getValue(), geos);
+                }
+                geos.add(entry.getKey());
+            }
+        }
+        if (!childMap.isEmpty()) {
+            resolveParents(searcher, childMap);
+        }
+
+        GeoNameCache cache = searcher.getGeoNameCache();
+        for (GeoName division : divisions.values()) {
+            cache.pin(division);
+        }
+        LOG.info("Pinned {} administrative divisions in {} ms.", cache.getPinnedCount(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Parse the GeoName stored in a document, decoding the binary record format
+     * when it is present and the tab-delimited GeoNames records stored by older
+     * indexes otherwise.
+     * @param doc the document
+     * @return the parsed GeoName
+     */
+    static GeoName parseGeoName(final Document doc) {
+        String preferredName = PREFERRED_NAME.getValue(doc);
+        BytesRef record = doc.getBinaryValue(GEONAME.key());
+        if (record != null) {
+            return GeoNameCodec.decode(record.bytes, record.offset, record.length, preferredName);
+        }
+        return BasicGeoName.parseFromGeoNamesRecord((String) GEONAME.getValue(doc), preferredName);
+    }
+
+    /**
+     * An IndexSearcher that provides access to the per-document GeoName and
+     * parent IDs of the index generation it searches.  IDs are read from doc
+     * values when the index provides them and from stored fields otherwise.
+     * Doc values instances may not be shared between threads, so each thread
+     * reads IDs through its own instances.
+     */
+    private static class GazetteerSearcher extends IndexSearcher {
+        private final boolean hasIdValues;
+        private final boolean hasNameNGrams;
+        private final boolean hasGeoNameDocuments;
+        private final CloseableThreadLocal<IdValues> idValues = new CloseableThreadLocal<IdValues>();
+        private final AncestryTable ancestryTable;
+        private final GeoNameCache geoNameCache;
+        private final NameDictionary nameDictionary;
+
+        public GazetteerSearcher(final IndexReader reader, final ExecutorService executor, final GeoNameCache geoNameCache,
+                final boolean buildNameDictionary) throws IOException {
+            super(reader, executor);
+            this.geoNameCache = geoNameCache;
+            hasIdValues = MultiDocValues.getNumericValues(reader, GEONAME_ID.key()) != null;
+            hasNameNGrams = MultiFields.getTerms(reader, NAME_NGRAMS.key()) != null;
+            FieldInfo nameInfo = MultiFields.getMergedFieldInfos(reader).fieldInfo(INDEX_NAME.key());
+            hasGeoNameDocuments = nameInfo != null && nameInfo.hasPayloads();
+            if (hasIdValues) {
+                long start = System.currentTimeMillis();
+                ancestryTable = AncestryTable.build(reader);
+                if (ancestryTable != null) {
+                    LOG.info("Built ancestry table for {} parent GeoNames in {} ms.", ancestryTable.size(),
+                            System.currentTimeMillis() - start);
+                }
+            } else {
+                LOG.info("Gazetteer index does not contain doc values; reading IDs from stored fields.");
+                ancestryTable = null;
+            }
+            NameDictionary dictionary = null;
+            if (buildNameDictionary) {
+                long start = System.currentTimeMillis();
+                dictionary = NameDictionary.build(reader);
+                if (dictionary != null) {
+                    LOG.info("Built name dictionary for {} names ({} bytes) in {} ms.", dictionary.size(),
+                            dictionary.ramBytesUsed(), System.currentTimeMillis() - start);
+                } else {
+                    LOG.info("Gazetteer index does not contain name keys; exact queries will search the index.");
+                }
+            }
+            nameDictionary = dictionary;
+            reader.addReaderClosedListener(new IndexReader.ReaderClosedListener() {
+                @Override
+                public void onClose(final IndexReader closed) {
+                    idValues.close();
+                }
+            });
+        }
+
+        /**
+         * Get the ID doc values for the calling thread.
+         * @return the ID doc values
+         * @throws IOException if an error occurs opening the doc values
+         */
+        private IdValues getIdValues() throws IOException {
+            IdValues values = idValues.get();
+            if (values == null) {
+                values = new IdValues(getIndexReader());
+                idValues.set(values);
+            }
+            return values;
+        }
+
+        /**
+         * Get the cache of resolved GeoNames for this searcher's index.
+         * @return the GeoName cache
+         */
+        public GeoNameCache getGeoNameCache() {
+            return geoNameCache;
+        }
+
+        /**
+         * Get the name dictionary for this searcher's index.
+         * @return the name dictionary or <code>null</code> if it is disabled or the index does not support one
+         */
+        public NameDictionary getNameDictionary() {
+            return nameDictionary;
+        }
+
+        /**
+         * Does this searcher's index contain name n-grams?
+         * @return <code>true</code> if the index supports n-gram queries
+         */
+        public boolean hasNameNGrams() {
+            return hasNameNGrams;
+        }
+
+        /**
+         * Does this searcher's index hold a single document per GeoName?
+         * @return <code>true</code> if each document indexes every name of its GeoName
+         */
+        public boolean hasGeoNameDocuments() {
+            return hasGeoNameDocuments;
+        }
+
+        /**
+         * Get the ancestry table for this searcher's index.
+         * @return the ancestry table or <code>null</code> if the index does not support one
+         */
+        public AncestryTable getAncestryTable() {
+            return ancestryTable;
+        }
+
+        /**
+         * Finds the document ID of the canonical record of the requested GeoName,
+         * using the ancestry table if it contains the GeoName.
+         * @param geonameId the GeoName ID
+         * @return the document ID or {@link AncestryTable#NOT_FOUND} if no record was found
+         * @throws IOException if an error occurs searching the index
+         */
+        public int findDocId(final int geonameId) throws IOException {
+            int docId = ancestryTable != null ? ancestryTable.getDocId(geonameId) : AncestryTable.NOT_FOUND;
+            if (docId == AncestryTable.NOT_FOUND) {
+                // Lucene query used to look for exact match on the "geonameID" field
+                Query q = NumericRangeQuery.newIntRange(GEONAME_ID.key(), geonameId, geonameId, true, true);
+                // retrieve only one matching document
+                TopDocs results = search(q, 1);
+                if (results.scoreDocs.length > 0) {
+                    docId = results.scoreDocs[0].doc;
+                }
+            }
+            return docId;
+        }
+
+        /**
+         * Get the ID of the GeoName indexed by the provided document.
+         * @param docId the document ID
+         * @return the GeoName ID
+         * @throws IOException if an error occurs reading the ID
+         */
+        public int getGeonameId(final int docId) throws IOException {
+            if (hasIdValues) {
+                return (int) getIdValues().geonameIds.get(docId);
+            }
+            return GEONAME_ID.<Integer>getValue(doc(docId, ID_FIELDS));
+        }
+
+        /**
+         * Get the sort population of the GeoName indexed by the provided document.
+         * @param docId the document ID
+         * @return the sort population or 0 if the index does not provide it as a doc value
+         * @throws IOException if an error occurs reading the population
+         */
+        public long getSortPopulation(final int docId) throws IOException {
+            NumericDocValues sortPopulation = hasIdValues ? getIdValues().sortPopulation : null;
+            return sortPopulation != null ? sortPopulation.get(docId) : 0L;
+        }
+
+        /**
+         * Get the ID of the parent of the GeoName indexed by the provided document.
+         * @param docId the document ID
+         * @return the parent ID or <code>null</code> if the GeoName has no parent
+         * @throws IOException if an error occurs reading the ID
+         */
+        public Integer getParentId(final int docId) throws IOException {
+            if (hasIdValues) {
+                IdValues values = getIdValues();
+                return values.parentIds != null && values.hasParentId.get(docId) ?
+                        Integer.valueOf((int) values.parentIds.get(docId)) : null;
+            }
+            return PARENT_ID.getValue(doc(docId, ID_FIELDS));
+        }
+    }
+
+    /**
+     * The GeoName ID, parent ID and sort population doc values of an index, opened for
+     * use by a single thread.
+     */
+    private static final class IdValues {
+        public final NumericDocValues geonameIds;
+        public final NumericDocValues parentIds;
+        public final Bits hasParentId;
+        public final NumericDocValues sortPopulation;
+
+        public IdValues(final IndexReader reader) throws IOException {
+            geonameIds = MultiDocValues.getNumericValues(reader, GEONAME_ID.key());
+            parentIds = MultiDocValues.getNumericValues(reader, PARENT_ID.key());
+            hasParentId = MultiDocValues.getDocsWithField(reader, PARENT_ID.key());
+            sortPopulation = MultiDocValues.getNumericValues(reader, SORT_POP.key());
+        }
+    }
+
+    /**
+     * A candidate match of an n-gram query, ordered by increasing edit distance
+     * and decreasing population.
+     */
+    private static final class NGramCandidate implements Comparable<NGramCandidate> {
+        public final int docId;
+        public final int distance;
+        public final long population;
+
+        public NGramCandidate(final int docId, final int distance, final long population) {
+            this.docId = docId;
+            this.distance = distance;
+            this.population = population;
+        }
+
+        @Override
+        public int compareTo(final NGramCandidate other) {
+            if (distance != other.distance) {
+                return distance < other.distance ? -1 : 1;
             }
+            if (population != other.population) {
+                return population > other.population ? -1 : 1;
+            }
+            return docId < other.docId ? -1 : (docId == other.docId ? 0 : 1);
+        }
+    }
+
+    /**
+     * Creates the searchers published by the SearcherManager, configuring
+     * scoring and warming each new searcher before it is used for queries.
+     */
+    private class GazetteerSearcherFactory extends SearcherFactory {
+        @Override
+        public IndexSearcher newSearcher(final IndexReader reader) throws IOException {
+            GazetteerSearcher searcher = new GazetteerSearcher(reader, searchExecutor, new GeoNameCache(geoNameCacheSize),
+                    nameDictionary);
+
+            // override default TF/IDF score to ignore multiple appearances
+            searcher.setSimilarity(new BinarySimilarity());
+
+            if (pinAdminDivisions) {
+                pinAdminDivisions(searcher);
+            }
+
+            // compute the commonly used filters for any new segments
+            filterCache.warm(reader);
+
+            // run an initial throw-away query just to "prime the pump" for
+            // the cache, so we can accurately measure performance speed
+            // per: http://wiki.apache.org/lucene-java/ImproveSearchingSpeed
+            searcher.search(buildNameQuery("reston", null, searcher.hasGeoNameDocuments()), null, DEFAULT_MAX_RESULTS, POPULATION_SORT);
+            return searcher;
+        }
+    }
+
+    /**
+     * The matches of a single query and the parents that must be resolved for them.
+     */
+    private static final class QueryResult {
+        public final List<ResolvedLocation> matches;
+        public final Map<Integer, Set<GeoName>> parentMap;
+
+        public QueryResult(final List<ResolvedLocation> matches, final Map<Integer, Set<GeoName>> parentMap) {
+            this.matches = matches;
+            this.parentMap = parentMap;
         }
     }
 
@@ -522,4 +1808,35 @@ public class LuceneGazetteer implements Gazetteer {
             this.occur = occur;
         }
     }
+
+    /**
+     * The key of a compiled name query in the query cache.
+     */
+    private static final class QueryKey {
+        private final String name;
+        private final FuzzyConfig fuzzyConfig;
+        private final boolean namePayloads;
+
+        public QueryKey(final String name, final FuzzyConfig fuzzyConfig, final boolean namePayloads) {
+            this.name = name;
+            this.fuzzyConfig = fuzzyConfig;
+            this.namePayloads = namePayloads;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            QueryKey that = (QueryKey) o;
+            return name.equals(that.name) && namePayloads == that.namePayloads &&
+                    (fuzzyConfig != null ? fuzzyConfig.equals(that.fuzzyConfig) : that.fuzzyConfig == null);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 31 * name.hashCode() + (fuzzyConfig != null ? fuzzyConfig.hashCode() : 0);
+            return 31 * hash + (namePayloads ? 1 : 0);
+        }
+    }
 }
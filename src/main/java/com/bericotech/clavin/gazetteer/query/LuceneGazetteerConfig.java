@@ -0,0 +1,222 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * LuceneGazetteerConfig.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.gazetteer.query;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Configuration options for a {@link LuceneGazetteer}.  Configurations
+ * are not thread-safe and should not be modified once they have been
+ * used to create a gazetteer.
+ */
+public class LuceneGazetteerConfig {
+    private static final DirectoryMode DEFAULT_DIRECTORY_MODE = DirectoryMode.DEFAULT;
+
+    private DirectoryMode directoryMode = DEFAULT_DIRECTORY_MODE;
+    private int queryCacheSize = LuceneGazetteer.DEFAULT_QUERY_CACHE_SIZE;
+    private int geoNameCacheSize = LuceneGazetteer.DEFAULT_GEONAME_CACHE_SIZE;
+    private int filterCacheSize = LuceneGazetteer.DEFAULT_FILTER_CACHE_SIZE;
+    private boolean pinAdminDivisions = false;
+    private boolean nameDictionary = false;
+    private ExecutorService batchExecutor = null;
+    private ExecutorService searchExecutor = null;
+
+    /**
+     * Get the mode used to load the index from disk.
+     * @return the directory mode
+     */
+    public DirectoryMode directoryMode() {
+        return directoryMode;
+    }
+
+    /**
+     * Set the mode used to load the index from disk.
+     * @param mode the directory mode; <code>null</code> will use the default mode
+     * @return this
+     */
+    public LuceneGazetteerConfig directoryMode(final DirectoryMode mode) {
+        this.directoryMode = mode != null ? mode : DEFAULT_DIRECTORY_MODE;
+        return this;
+    }
+
+    /**
+     * Get the maximum number of compiled name queries to cache.
+     * @return the maximum query cache size
+     */
+    public int queryCacheSize() {
+        return queryCacheSize;
+    }
+
+    /**
+     * Set the maximum number of compiled name queries to cache.
+     * @param size the maximum query cache size; values less than or equal
+     *             to zero disable the query cache
+     * @return this
+     */
+    public LuceneGazetteerConfig queryCacheSize(final int size) {
+        this.queryCacheSize = size;
+        return this;
+    }
+
+    /**
+     * Get the maximum number of feature code and parent ID search filters to cache.
+     * @return the maximum filter cache size
+     */
+    public int filterCacheSize() {
+        return filterCacheSize;
+    }
+
+    /**
+     * Set the maximum number of feature code and parent ID search filters to cache.
+     * The historical location filter and the feature code sets provided by
+     * {@link QueryBuilder} are always cached.
+     * @param size the maximum filter cache size; values less than or equal to zero
+     *             disable caching of other feature code and parent ID filters
+     * @return this
+     */
+    public LuceneGazetteerConfig filterCacheSize(final int size) {
+        this.filterCacheSize = size;
+        return this;
+    }
+
+    /**
+     * Get the maximum number of resolved GeoNames to cache, not including
+     * any pinned administrative divisions.
+     * @return the maximum GeoName cache size
+     */
+    public int geoNameCacheSize() {
+        return geoNameCacheSize;
+    }
+
+    /**
+     * Set the maximum number of resolved GeoNames to cache, not including
+     * any pinned administrative divisions.
+     * @param size the maximum GeoName cache size; values less than or equal
+     *             to zero disable the GeoName cache
+     * @return this
+     */
+    public LuceneGazetteerConfig geoNameCacheSize(final int size) {
+        this.geoNameCacheSize = size;
+        return this;
+    }
+
+    /**
+     * Should all countries and first and second level administrative divisions
+     * be loaded into the GeoName cache when the index is opened?
+     * @return <code>true</code> if administrative divisions are pinned in the cache
+     */
+    public boolean pinAdminDivisions() {
+        return pinAdminDivisions;
+    }
+
+    /**
+     * Set whether all countries and first and second level administrative divisions
+     * should be loaded into the GeoName cache when the index is opened.  Pinned
+     * divisions are never evicted from the cache.
+     * @param pin <code>true</code> to pin administrative divisions in the cache
+     * @return this
+     */
+    public LuceneGazetteerConfig pinAdminDivisions(final boolean pin) {
+        this.pinAdminDivisions = pin;
+        return this;
+    }
+
+    /**
+     * Get the executor used to run the distinct queries of a batch in parallel.
+     * @return the batch executor or <code>null</code> if batches run on the calling thread
+     */
+    public ExecutorService batchExecutor() {
+        return batchExecutor;
+    }
+
+    /**
+     * Set the executor used to run the distinct queries of a batch in parallel.  The
+     * gazetteer does not shut down the executor when it is closed.
+     * @param executor the batch executor; <code>null</code> will run batches on the
+     *                 calling thread
+     * @return this
+     */
+    public LuceneGazetteerConfig batchExecutor(final ExecutorService executor) {
+        this.batchExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Get the executor used to search the segments of the index in parallel.
+     * @return the search executor or <code>null</code> if segments are searched
+     *         on the calling thread
+     */
+    public ExecutorService searchExecutor() {
+        return searchExecutor;
+    }
+
+    /**
+     * Set the executor used to search the segments of the index in parallel.  The
+     * gazetteer does not shut down the executor when it is closed.
+     *
+     * A search executor reduces the latency of expensive queries, such as fuzzy
+     * queries, against indexes with many segments like the full GeoNames index.
+     * It does not help an index with a single segment and, because every query
+     * is split into a task per segment, it lowers total throughput when the
+     * gazetteer is already serving concurrent queries from more threads than
+     * there are cores.  Prefer it for latency-sensitive services with spare cores;
+     * prefer a {@link #batchExecutor(ExecutorService) batch executor} or more
+     * request threads for bulk processing.
+     * @param executor the search executor; <code>null</code> will search segments on
+     *                 the calling thread
+     * @return this
+     */
+    public LuceneGazetteerConfig searchExecutor(final ExecutorService executor) {
+        this.searchExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Does the gazetteer answer exact queries from an in-memory name dictionary?
+     * @return <code>true</code> if the name dictionary is enabled
+     */
+    public boolean nameDictionary() {
+        return nameDictionary;
+    }
+
+    /**
+     * Configure whether the gazetteer loads an in-memory dictionary of every indexed
+     * name and answers exact queries from it.  Unfiltered exact queries that find
+     * enough locations whose entire name matches the query text are answered without
+     * searching the index; other queries, and indexes built without name keys, are
+     * searched as usual.  The dictionary is rebuilt for each index generation and
+     * requires roughly 4 bytes per indexed name in addition to the compressed keys.
+     * @param enabled <code>true</code> to enable the name dictionary
+     * @return this
+     */
+    public LuceneGazetteerConfig nameDictionary(final boolean enabled) {
+        this.nameDictionary = enabled;
+        return this;
+    }
+}
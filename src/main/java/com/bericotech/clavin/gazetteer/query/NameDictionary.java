@@ -0,0 +1,222 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * NameDictionary.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.gazetteer.query;
+
+import static com.bericotech.clavin.index.IndexField.*;
+
+import com.bericotech.clavin.index.NameKeys;
+import java.io.IOException;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.InPlaceMergeSorter;
+import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.fst.Builder;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.PositiveIntOutputs;
+import org.apache.lucene.util.fst.Util;
+
+/**
+ * An in-memory dictionary of every distinct name key in a gazetteer index,
+ * mapping each key to the documents that index a name with that key.  The
+ * keys are held in a finite state transducer whose output is the position
+ * of the key's postings, and the postings of all keys are packed into a
+ * single array of document IDs.  The postings of each key are ordered by
+ * decreasing sort population and then by increasing document ID, matching
+ * the order of documents with equal scores in a population sorted search.
+ *
+ * Dictionaries are built from the NAME_KEY and SORT_POP doc values of an
+ * index reader and are immutable once built.  Indexes with one document
+ * per GeoName list each document under every key of its names.
+ */
+final class NameDictionary {
+    private final FST<Long> keys;
+    // the start of the postings of each key in docIds; offsets[ord + 1] is the end
+    private final int[] offsets;
+    private final int[] docIds;
+
+    private NameDictionary(final FST<Long> keys, final int[] offsets, final int[] docIds) {
+        this.keys = keys;
+        this.offsets = offsets;
+        this.docIds = docIds;
+    }
+
+    /**
+     * Builds the name dictionary for the provided index.
+     * @param reader the index reader
+     * @return the name dictionary or <code>null</code> if the index does not provide
+     *         doc values for name keys
+     * @throws IOException if an error occurs reading the index
+     */
+    public static NameDictionary build(final IndexReader reader) throws IOException {
+        // indexes with a single document per GeoName hold a set of name keys for each document
+        SortedDocValues singleKeys = MultiDocValues.getSortedValues(reader, NAME_KEY.key());
+        final SortedSetDocValues nameKeys = singleKeys != null ? DocValues.singleton(singleKeys) :
+                MultiDocValues.getSortedSetValues(reader, NAME_KEY.key());
+        if (nameKeys == null) {
+            return null;
+        }
+        int keyCount = (int) nameKeys.getValueCount();
+        final NumericDocValues sortPop = MultiDocValues.getNumericValues(reader, SORT_POP.key());
+        Bits liveDocs = MultiFields.getLiveDocs(reader);
+        int maxDoc = reader.maxDoc();
+
+        // count the postings of each key, then assign documents to their key's postings
+        // in ascending order
+        int[] offsets = new int[keyCount + 1];
+        for (int doc = 0; doc < maxDoc; doc++) {
+            if (liveDocs == null || liveDocs.get(doc)) {
+                nameKeys.setDocument(doc);
+                for (long ord = nameKeys.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = nameKeys.nextOrd()) {
+                    offsets[(int) ord + 1]++;
+                }
+            }
+        }
+        for (int ord = 0; ord < keyCount; ord++) {
+            offsets[ord + 1] += offsets[ord];
+        }
+        final int[] docIds = new int[offsets[offsets.length - 1]];
+        int[] next = new int[keyCount];
+        System.arraycopy(offsets, 0, next, 0, next.length);
+        for (int doc = 0; doc < maxDoc; doc++) {
+            if (liveDocs == null || liveDocs.get(doc)) {
+                nameKeys.setDocument(doc);
+                for (long ord = nameKeys.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = nameKeys.nextOrd()) {
+                    docIds[next[(int) ord]++] = doc;
+                }
+            }
+        }
+
+        // order each key's postings by decreasing population; the sort is stable so
+        // documents with equal populations remain in ascending order
+        if (sortPop != null) {
+            InPlaceMergeSorter sorter = new InPlaceMergeSorter() {
+                @Override
+                protected int compare(final int i, final int j) {
+                    long popI = sortPop.get(docIds[i]);
+                    long popJ = sortPop.get(docIds[j]);
+                    return popI > popJ ? -1 : (popI == popJ ? 0 : 1);
+                }
+
+                @Override
+                protected void swap(final int i, final int j) {
+                    int tmp = docIds[i];
+                    docIds[i] = docIds[j];
+                    docIds[j] = tmp;
+                }
+            };
+            for (int ord = 0; ord < keyCount; ord++) {
+                if (offsets[ord + 1] - offsets[ord] > 1) {
+                    sorter.sort(offsets[ord], offsets[ord + 1]);
+                }
+            }
+        }
+
+        // the keys are enumerated in sorted order, as required to build the transducer
+        Builder<Long> builder = new Builder<Long>(FST.INPUT_TYPE.BYTE1, PositiveIntOutputs.getSingleton());
+        IntsRef scratch = new IntsRef();
+        TermsEnum terms = nameKeys.termsEnum();
+        BytesRef term;
+        long ord = 0;
+        while ((term = terms.next()) != null) {
+            builder.add(Util.toIntsRef(term, scratch), ord++);
+        }
+        return new NameDictionary(builder.finish(), offsets, docIds);
+    }
+
+    /**
+     * Get the number of distinct name keys in this dictionary.
+     * @return the number of name keys
+     */
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Get the approximate number of bytes of heap used by this dictionary.
+     * @return the approximate heap size of this dictionary
+     */
+    public long ramBytesUsed() {
+        return keys.ramBytesUsed() + 4L * offsets.length + 4L * docIds.length;
+    }
+
+    /**
+     * Get the documents that index a name with the provided key.
+     * @param key the name key, as produced by {@link NameKeys#toKey(String)}
+     * @return the postings of the key or <code>null</code> if no document indexes a name with the key
+     * @throws IOException if an error occurs reading the dictionary
+     */
+    public Postings get(final String key) throws IOException {
+        Long ord = Util.get(keys, new BytesRef(key));
+        if (ord == null) {
+            return null;
+        }
+        int idx = ord.intValue();
+        return new Postings(docIds, offsets[idx], offsets[idx + 1]);
+    }
+
+    /**
+     * The documents indexing a single name key, in population order.
+     */
+    public static final class Postings {
+        private final int[] docIds;
+        private final int start;
+        private final int end;
+
+        private Postings(final int[] docIds, final int start, final int end) {
+            this.docIds = docIds;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Get the number of documents indexing the name key.
+         * @return the number of documents
+         */
+        public int size() {
+            return end - start;
+        }
+
+        /**
+         * Get a document indexing the name key.
+         * @param idx the position of the document, from 0 to size() - 1
+         * @return the document ID
+         */
+        public int getDocId(final int idx) {
+            return docIds[start + idx];
+        }
+    }
+}
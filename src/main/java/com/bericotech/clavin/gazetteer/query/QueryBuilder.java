@@ -36,6 +36,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -46,6 +47,7 @@ import java.util.Set;
 public class QueryBuilder {
     private static final int DEFAULT_MAX_RESULTS = 10;
     private static final FuzzyMode DEFAULT_FUZZY_MODE = FuzzyMode.OFF;
+    private static final FuzzyConfig DEFAULT_FUZZY_CONFIG = FuzzyConfig.DEFAULT;
     private static final AncestryMode DEFAULT_HIERARCHY_MODE = AncestryMode.LAZY;
     private static final boolean DEFAULT_INCLUDE_HISTORICAL = true;
     private static final boolean DEFAULT_FILTER_DUPES = false;
@@ -88,6 +90,34 @@ public class QueryBuilder {
             FeatureCode.PRSH
     ));
 
+    private static final Set<FeatureCode> ADMIN1_CODES = Collections.unmodifiableSet(EnumSet.of(
+            FeatureCode.ADM1,
+            FeatureCode.ADM1H,
+            FeatureCode.TERR,
+            FeatureCode.PRSH
+    ));
+
+    private static final Set<FeatureCode> ADMIN2_CODES = Collections.unmodifiableSet(EnumSet.of(
+            FeatureCode.ADM2,
+            FeatureCode.ADM2H
+    ));
+
+    private static final Set<FeatureCode> ADMIN3_CODES = Collections.unmodifiableSet(EnumSet.of(
+            FeatureCode.ADM3,
+            FeatureCode.ADM3H
+    ));
+
+    private static final Set<FeatureCode> ADMIN4_CODES = Collections.unmodifiableSet(EnumSet.of(
+            FeatureCode.ADM4,
+            FeatureCode.ADM4H
+    ));
+
+    private static final Set<FeatureCode> OTHER_ADMIN_CODES = Collections.unmodifiableSet(EnumSet.of(
+            FeatureCode.ADM5,
+            FeatureCode.ADMD,
+            FeatureCode.ADMDH
+    ));
+
     private static final Set<FeatureCode> CITY_CODES = Collections.unmodifiableSet(EnumSet.of(
             FeatureCode.PPL,
             FeatureCode.PPLA,
@@ -108,9 +138,25 @@ public class QueryBuilder {
             FeatureCode.STLMT
     ));
 
+    /**
+     * The feature code sets added by the convenience methods of this builder.
+     */
+    private static final List<Set<FeatureCode>> PRESET_CODES = Collections.unmodifiableList(Arrays.asList(
+            COUNTRY_CODES,
+            ANCESTRY_ADMIN_CODES,
+            ADMIN_CODES,
+            ADMIN1_CODES,
+            ADMIN2_CODES,
+            ADMIN3_CODES,
+            ADMIN4_CODES,
+            OTHER_ADMIN_CODES,
+            CITY_CODES
+    ));
+
     private LocationOccurrence location;
     private int maxResults = DEFAULT_MAX_RESULTS;
     private FuzzyMode fuzzyMode = DEFAULT_FUZZY_MODE;
+    private FuzzyConfig fuzzyConfig = DEFAULT_FUZZY_CONFIG;
     private AncestryMode ancestryMode = DEFAULT_HIERARCHY_MODE;
     private boolean includeHistorical = DEFAULT_INCLUDE_HISTORICAL;
     private boolean filterDupes = DEFAULT_FILTER_DUPES;
@@ -122,7 +168,8 @@ public class QueryBuilder {
      * @return a {@link GazetteerQuery} configuration object
      */
     public GazetteerQuery build() {
-        return new GazetteerQuery(location, maxResults, fuzzyMode, ancestryMode, includeHistorical, filterDupes, parentIds, featureCodes);
+        return new GazetteerQuery(location, maxResults, fuzzyMode, fuzzyConfig, ancestryMode, includeHistorical, filterDupes,
+                parentIds, featureCodes);
     }
 
     /**
@@ -190,6 +237,24 @@ public class QueryBuilder {
         return this;
     }
 
+    /**
+     * Get the current fuzzy matching configuration.
+     * @return the fuzzy matching configuration
+     */
+    public FuzzyConfig fuzzyConfig() {
+        return fuzzyConfig;
+    }
+
+    /**
+     * Configure how fuzzy matching is performed when the fuzzy matching mode requires it.
+     * @param config the fuzzy matching configuration; <code>null</code> will use {@link FuzzyConfig#DEFAULT}
+     * @return this
+     */
+    public QueryBuilder fuzzyConfig(final FuzzyConfig config) {
+        fuzzyConfig = config != null ? config : DEFAULT_FUZZY_CONFIG;
+        return this;
+    }
+
     /**
      * Get the current ancestry loading mode.
      * @return the ancestry loading mode
@@ -510,6 +575,106 @@ public class QueryBuilder {
         return removeFeatureCodes(ANCESTRY_ADMIN_CODES);
     }
 
+    /**
+     * Convenience method to add the {@link FeatureCode}s representing first-level
+     * administrative divisions (ADM1), territories (TERR) and parishes (PRSH) to the
+     * restriction list. This method modifies the existing set of codes.
+     * @return this
+     */
+    public QueryBuilder addAdmin1Codes() {
+        return addFeatureCodes(ADMIN1_CODES);
+    }
+
+    /**
+     * Convenience method to remove the {@link FeatureCode}s representing first-level
+     * administrative divisions (ADM1), territories (TERR) and parishes (PRSH) from the
+     * restriction list. This method modifies the existing set of codes.
+     * @return this
+     */
+    public QueryBuilder removeAdmin1Codes() {
+        return removeFeatureCodes(ADMIN1_CODES);
+    }
+
+    /**
+     * Convenience method to add the {@link FeatureCode}s representing second-level
+     * administrative divisions (ADM2) to the restriction list. This method modifies
+     * the existing set of codes.
+     * @return this
+     */
+    public QueryBuilder addAdmin2Codes() {
+        return addFeatureCodes(ADMIN2_CODES);
+    }
+
+    /**
+     * Convenience method to remove the {@link FeatureCode}s representing second-level
+     * administrative divisions (ADM2) from the restriction list. This method modifies
+     * the existing set of codes.
+     * @return this
+     */
+    public QueryBuilder removeAdmin2Codes() {
+        return removeFeatureCodes(ADMIN2_CODES);
+    }
+
+    /**
+     * Convenience method to add the {@link FeatureCode}s representing third-level
+     * administrative divisions (ADM3) to the restriction list. This method modifies
+     * the existing set of codes.
+     * @return this
+     */
+    public QueryBuilder addAdmin3Codes() {
+        return addFeatureCodes(ADMIN3_CODES);
+    }
+
+    /**
+     * Convenience method to remove the {@link FeatureCode}s representing third-level
+     * administrative divisions (ADM3) from the restriction list. This method modifies
+     * the existing set of codes.
+     * @return this
+     */
+    public QueryBuilder removeAdmin3Codes() {
+        return removeFeatureCodes(ADMIN3_CODES);
+    }
+
+    /**
+     * Convenience method to add the {@link FeatureCode}s representing fourth-level
+     * administrative divisions (ADM4) to the restriction list. This method modifies
+     * the existing set of codes.
+     * @return this
+     */
+    public QueryBuilder addAdmin4Codes() {
+        return addFeatureCodes(ADMIN4_CODES);
+    }
+
+    /**
+     * Convenience method to remove the {@link FeatureCode}s representing fourth-level
+     * administrative divisions (ADM4) from the restriction list. This method modifies
+     * the existing set of codes.
+     * @return this
+     */
+    public QueryBuilder removeAdmin4Codes() {
+        return removeFeatureCodes(ADMIN4_CODES);
+    }
+
+    /**
+     * Convenience method to add the {@link FeatureCode}s representing administrative
+     * divisions outside the ancestry tree (ADM5 and ADMD) to the restriction list. This
+     * method modifies the existing set of codes.
+     * @return this
+     */
+    public QueryBuilder addOtherAdminCodes() {
+        return addFeatureCodes(OTHER_ADMIN_CODES);
+    }
+
+    /**
+     * Convenience method to remove the {@link FeatureCode}s representing administrative
+     * divisions outside the ancestry tree (ADM5 and ADMD) from the restriction list. This
+     * method modifies the existing set of codes.
+     * @return this
+     */
+    public QueryBuilder removeOtherAdminCodes() {
+        return removeFeatureCodes(OTHER_ADMIN_CODES);
+    }
+
     /**
      * Convenience method to add the {@link FeatureCode}s representing cities and other
      * populated places to the restriction list. This method modifies the existing set
@@ -530,6 +695,14 @@ public class QueryBuilder {
         return removeFeatureCodes(CITY_CODES);
     }
 
+    /**
+     * Get the feature code sets added by the convenience methods of this builder.
+     * @return the preset feature code sets
+     */
+    static List<Set<FeatureCode>> getPresetFeatureCodes() {
+        return PRESET_CODES;
+    }
+
     @Override
     public String toString() {
         return String.format("loc: %s, maxResults: %s, fuzzyMode: %s, historical? %s, filterDupes? %s, parents: %s, codes: %s",
@@ -0,0 +1,536 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * ShardedGazetteer.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.gazetteer.query;
+
+import com.bericotech.clavin.ClavinException;
+import com.bericotech.clavin.gazetteer.CountryCode;
+import com.bericotech.clavin.gazetteer.GeoName;
+import com.bericotech.clavin.index.BinarySimilarity;
+import com.bericotech.clavin.index.IndexDirectoryBuilder;
+import com.bericotech.clavin.index.NameKeys;
+import com.bericotech.clavin.index.ShardLayout;
+import com.bericotech.clavin.resolver.ResolvedLocation;
+import com.bericotech.clavin.util.DamerauLevenshtein;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Gazetteer that searches an index built in shards by the
+ * {@link IndexDirectoryBuilder}, each shard holding the GeoNames of a group
+ * of countries.  Each shard is searched by its own {@link LuceneGazetteer};
+ * only the requested shards need be loaded, so a deployment may hold just the
+ * regions it serves.
+ *
+ * Queries are sent to every loaded shard, in parallel if a shard executor has
+ * been configured, and the top results of the shards are merged.  Queries
+ * restricted to the descendants of countries are only sent to the shards
+ * holding those countries.  Exact matches are merged by the length norm of the
+ * matched name and by sort population, the order in which each shard ranks
+ * them, and always precede fuzzy matches.  The Lucene scores of fuzzy matches
+ * depend on the term statistics of each shard, so fuzzy matches are merged by
+ * the edit distance of the matched name, its length norm and sort population.
+ *
+ * Every GeoName is held in the same shard as its ancestors, so ancestry is
+ * resolved by the shard that found each match.  This class is thread-safe.
+ */
+public class ShardedGazetteer implements Gazetteer {
+    /**
+     * The logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ShardedGazetteer.class);
+
+    // the layout of the sharded index
+    private final ShardLayout layout;
+
+    // the loaded shards, in layout order
+    private final Map<String, LuceneGazetteer> shards;
+
+    // the shard holding each country, keyed by the GeoName ID of the country
+    private final Map<Integer, String> countryShards;
+
+    // searches the shards in parallel; shards are searched on the calling thread if null
+    private final ExecutorService shardExecutor;
+
+    /**
+     * Opens every shard of a sharded index using the default configuration.
+     * @param indexDir              the sharded index directory
+     * @throws ClavinException      if an error occurs opening the shards
+     */
+    public ShardedGazetteer(final File indexDir) throws ClavinException {
+        this(indexDir, new LuceneGazetteerConfig(), null, null);
+    }
+
+    /**
+     * Opens every shard of a sharded index.
+     * @param indexDir              the sharded index directory
+     * @param config                the configuration applied to each shard
+     * @param shardExecutor         the executor used to search shards in parallel; <code>null</code>
+     *                              will search shards on the calling thread.  The gazetteer does not
+     *                              shut down the executor when it is closed.
+     * @throws ClavinException      if an error occurs opening the shards
+     */
+    public ShardedGazetteer(final File indexDir, final LuceneGazetteerConfig config, final ExecutorService shardExecutor)
+            throws ClavinException {
+        this(indexDir, config, shardExecutor, null);
+    }
+
+    /**
+     * Opens the requested shards of a sharded index.  GeoNames held in other shards
+     * will not be found.
+     * @param indexDir              the sharded index directory
+     * @param config                the configuration applied to each shard
+     * @param shardExecutor         the executor used to search shards in parallel; <code>null</code>
+     *                              will search shards on the calling thread.  The gazetteer does not
+     *                              shut down the executor when it is closed.
+     * @param shardNames            the names of the shards to open; <code>null</code> to open every shard
+     * @throws ClavinException      if an error occurs opening the shards or a requested shard does not exist
+     */
+    public ShardedGazetteer(final File indexDir, final LuceneGazetteerConfig config, final ExecutorService shardExecutor,
+            final Collection<String> shardNames) throws ClavinException {
+        try {
+            layout = ShardLayout.read(indexDir);
+        } catch (IOException ioe) {
+            throw new ClavinException(String.format("Error reading shard layout of %s", indexDir), ioe);
+        }
+        Set<String> requested = shardNames != null ? new HashSet<String>(shardNames) : layout.getShardNames();
+        if (!layout.getShardNames().containsAll(requested)) {
+            Set<String> unknown = new HashSet<String>(requested);
+            unknown.removeAll(layout.getShardNames());
+            throw new ClavinException(String.format("Unknown shards: %s", unknown));
+        }
+        this.shardExecutor = shardExecutor;
+        shards = new LinkedHashMap<String, LuceneGazetteer>();
+        try {
+            for (String shard : layout.getShardNames()) {
+                if (requested.contains(shard)) {
+                    shards.put(shard, new LuceneGazetteer(layout.getShardDirectory(indexDir, shard), config));
+                }
+            }
+        } catch (ClavinException ce) {
+            for (LuceneGazetteer gazetteer : shards.values()) {
+                try {
+                    gazetteer.close();
+                } catch (ClavinException closeError) {
+                    LOG.warn("Error closing shard.", closeError);
+                }
+            }
+            throw ce;
+        }
+        countryShards = new HashMap<Integer, String>();
+        for (CountryCode country : CountryCode.values()) {
+            if (country != CountryCode.NULL) {
+                countryShards.put(country.geonameID, layout.getShard(country));
+            }
+        }
+        LOG.info("Opened shards {} of {}", shards.keySet(), indexDir);
+    }
+
+    /**
+     * Get the names of the loaded shards.
+     * @return the loaded shards, in layout order
+     */
+    public Set<String> getShardNames() {
+        return Collections.unmodifiableSet(shards.keySet());
+    }
+
+    /**
+     * Closes every shard.  This gazetteer may not be used once it has been closed.
+     * @throws ClavinException if an error occurs closing a shard; every shard is closed
+     *                         before the first error is thrown
+     */
+    public void close() throws ClavinException {
+        ClavinException error = null;
+        for (LuceneGazetteer gazetteer : shards.values()) {
+            try {
+                gazetteer.close();
+            } catch (ClavinException ce) {
+                if (error == null) {
+                    error = ce;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<ResolvedLocation> getClosestLocations(final GazetteerQuery query) throws ClavinException {
+        final List<LuceneGazetteer> targets = getShards(query);
+        if (targets.isEmpty()) {
+            return Collections.EMPTY_LIST;
+        } else if (targets.size() == 1) {
+            return targets.get(0).getClosestLocations(query);
+        }
+        List<Callable<List<ResolvedLocation>>> tasks = new ArrayList<Callable<List<ResolvedLocation>>>(targets.size());
+        for (final LuceneGazetteer target : targets) {
+            tasks.add(new Callable<List<ResolvedLocation>>() {
+                @Override
+                public List<ResolvedLocation> call() throws ClavinException {
+                    return target.getClosestLocations(query);
+                }
+            });
+        }
+        return merge(query, invokeAll(tasks));
+    }
+
+    /**
+     * Execute a batch of queries against the shards.  The queries sent to each shard are
+     * executed as a single batch by that shard and the shards are searched in parallel if
+     * a shard executor has been configured.
+     *
+     * @param queries            the queries to execute
+     * @return                   the potential matches for each query, in the order the queries were provided
+     * @throws ClavinException   if an error occurs
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<List<ResolvedLocation>> getClosestLocations(final List<GazetteerQuery> queries) throws ClavinException {
+        // collect the queries sent to each shard, recording the position of each query in the batch
+        Map<LuceneGazetteer, List<Integer>> shardQueries = new LinkedHashMap<LuceneGazetteer, List<Integer>>();
+        for (int idx = 0; idx < queries.size(); idx++) {
+            for (LuceneGazetteer target : getShards(queries.get(idx))) {
+                List<Integer> positions = shardQueries.get(target);
+                if (positions == null) {
+                    positions = new ArrayList<Integer>();
+                    shardQueries.put(target, positions);
+                }
+                positions.add(idx);
+            }
+        }
+
+        List<List<Integer>> positions = new ArrayList<List<Integer>>(shardQueries.size());
+        List<Callable<List<List<ResolvedLocation>>>> tasks =
+                new ArrayList<Callable<List<List<ResolvedLocation>>>>(shardQueries.size());
+        for (Map.Entry<LuceneGazetteer, List<Integer>> entry : shardQueries.entrySet()) {
+            final LuceneGazetteer target = entry.getKey();
+            final List<GazetteerQuery> batch = new ArrayList<GazetteerQuery>(entry.getValue().size());
+            for (Integer idx : entry.getValue()) {
+                batch.add(queries.get(idx));
+            }
+            positions.add(entry.getValue());
+            tasks.add(new Callable<List<List<ResolvedLocation>>>() {
+                @Override
+                public List<List<ResolvedLocation>> call() throws ClavinException {
+                    return target.getClosestLocations(batch);
+                }
+            });
+        }
+        List<List<List<ResolvedLocation>>> shardResults = invokeAll(tasks);
+
+        // gather the results of each query from the shards that executed it
+        List<List<List<ResolvedLocation>>> queryResults = new ArrayList<List<List<ResolvedLocation>>>(queries.size());
+        for (int idx = 0; idx < queries.size(); idx++) {
+            queryResults.add(new ArrayList<List<ResolvedLocation>>());
+        }
+        for (int shard = 0; shard < shardResults.size(); shard++) {
+            List<Integer> shardPositions = positions.get(shard);
+            for (int idx = 0; idx < shardPositions.size(); idx++) {
+                queryResults.get(shardPositions.get(idx)).add(shardResults.get(shard).get(idx));
+            }
+        }
+        List<List<ResolvedLocation>> results = new ArrayList<List<ResolvedLocation>>(queries.size());
+        for (int idx = 0; idx < queries.size(); idx++) {
+            List<List<ResolvedLocation>> matches = queryResults.get(idx);
+            if (matches.isEmpty()) {
+                results.add(Collections.EMPTY_LIST);
+            } else if (matches.size() == 1) {
+                results.add(matches.get(0));
+            } else {
+                results.add(merge(queries.get(idx), matches));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public GeoName getGeoName(final int geonameId) throws ClavinException {
+        return getGeoName(geonameId, AncestryMode.LAZY);
+    }
+
+    @Override
+    public GeoName getGeoName(final int geonameId, final AncestryMode ancestryMode) throws ClavinException {
+        // countries are found directly in their shard; other GeoNames are looked up in each shard in turn
+        String countryShard = countryShards.get(geonameId);
+        if (countryShard != null) {
+            LuceneGazetteer gazetteer = shards.get(countryShard);
+            return gazetteer != null ? gazetteer.getGeoName(geonameId, ancestryMode) : null;
+        }
+        for (LuceneGazetteer gazetteer : shards.values()) {
+            GeoName geoName = gazetteer.getGeoName(geonameId, ancestryMode);
+            if (geoName != null) {
+                return geoName;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void loadAncestry(final GeoName... geoNames) throws ClavinException {
+        loadAncestry(Arrays.asList(geoNames));
+    }
+
+    @Override
+    public void loadAncestry(final Collection<GeoName> geoNames) throws ClavinException {
+        Map<String, List<GeoName>> shardGeoNames = new HashMap<String, List<GeoName>>();
+        for (GeoName geoName : geoNames) {
+            String shard = layout.getShard(geoName.getPrimaryCountryCode());
+            List<GeoName> geos = shardGeoNames.get(shard);
+            if (geos == null) {
+                geos = new ArrayList<GeoName>();
+                shardGeoNames.put(shard, geos);
+            }
+            geos.add(geoName);
+        }
+        for (Map.Entry<String, List<GeoName>> entry : shardGeoNames.entrySet()) {
+            LuceneGazetteer gazetteer = shards.get(entry.getKey());
+            if (gazetteer != null) {
+                gazetteer.loadAncestry(entry.getValue());
+            } else {
+                LOG.debug("Unable to load ancestry; shard {} is not loaded.", entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Get the loaded shards that may hold matches for the provided query.  Queries
+     * restricted to the descendants of countries are routed to the shards holding
+     * those countries; all other queries are sent to every loaded shard.
+     * @param query the query
+     * @return the shards to search, in layout order
+     */
+    private List<LuceneGazetteer> getShards(final GazetteerQuery query) {
+        Set<String> routed = null;
+        if (!query.getParentIds().isEmpty()) {
+            routed = new HashSet<String>();
+            for (Integer parentId : query.getParentIds()) {
+                String shard = countryShards.get(parentId);
+                if (shard == null) {
+                    // descendants of other GeoNames may be held in any shard
+                    routed = null;
+                    break;
+                }
+                routed.add(shard);
+            }
+        }
+        List<LuceneGazetteer> targets = new ArrayList<LuceneGazetteer>(shards.size());
+        for (Map.Entry<String, LuceneGazetteer> entry : shards.entrySet()) {
+            if (routed == null || routed.contains(entry.getKey())) {
+                targets.add(entry.getValue());
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Executes the provided tasks, in parallel if a shard executor has been configured.
+     * @param tasks the tasks
+     * @return the results of the tasks, in the order the tasks were provided
+     * @throws ClavinException if a task fails or the search is interrupted
+     */
+    private <T> List<T> invokeAll(final List<Callable<T>> tasks) throws ClavinException {
+        List<T> results = new ArrayList<T>(tasks.size());
+        try {
+            if (shardExecutor == null) {
+                for (Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+                return results;
+            }
+        } catch (ClavinException ce) {
+            throw ce;
+        } catch (RuntimeException re) {
+            throw re;
+        } catch (Exception e) {
+            throw new ClavinException("Error searching shards.", e);
+        }
+
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        try {
+            for (Callable<T> task : tasks) {
+                futures.add(shardExecutor.submit(task));
+            }
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ClavinException("Interrupted while searching shards.", ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof ClavinException) {
+                throw (ClavinException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ClavinException("Error searching shards.", cause);
+        } finally {
+            // stop any searches that have not started if a shard failed
+            for (Future<T> future : futures) {
+                future.cancel(false);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Merges the results of a query returned by several shards, returning at most the
+     * maximum number of results requested by the query.  Each shard returns its exact
+     * matches followed by any fuzzy matches; exact matches of every shard are merged
+     * first, then fuzzy matches fill the results if the query's fuzzy mode calls for
+     * them given the merged exact matches.  The order of each shard's results is kept.
+     * @param query the query
+     * @param shardResults the results of each shard
+     * @return the merged results
+     */
+    private List<ResolvedLocation> merge(final GazetteerQuery query, final List<List<ResolvedLocation>> shardResults) {
+        int maxResults = query.getMaxResults() > 0 ? query.getMaxResults() : LuceneGazetteer.DEFAULT_MAX_RESULTS;
+        List<List<ResolvedLocation>> exact = new ArrayList<List<ResolvedLocation>>(shardResults.size());
+        List<List<ResolvedLocation>> fuzzy = new ArrayList<List<ResolvedLocation>>(shardResults.size());
+        for (List<ResolvedLocation> results : shardResults) {
+            int firstFuzzy = 0;
+            while (firstFuzzy < results.size() && !results.get(firstFuzzy).isFuzzy()) {
+                firstFuzzy++;
+            }
+            exact.add(results.subList(0, firstFuzzy));
+            fuzzy.add(results.subList(firstFuzzy, results.size()));
+        }
+
+        List<ResolvedLocation> matches = new ArrayList<ResolvedLocation>(maxResults);
+        mergeTop(exact, EXACT_ORDER, maxResults, matches);
+        if (query.getFuzzyMode().useFuzzyMatching(maxResults, matches.size())) {
+            String text = query.getOccurrence() != null ? query.getOccurrence().getText() : null;
+            mergeTop(fuzzy, new FuzzyOrder(text != null ? text.trim().toLowerCase() : ""), maxResults, matches);
+        }
+        return matches;
+    }
+
+    /**
+     * Merges the heads of the provided ranked lists into the matches until the matches
+     * hold maxResults locations or the lists are exhausted.  Ties are taken from the
+     * earliest list.
+     * @param ranked the ranked results of each shard
+     * @param order the order of results across shards
+     * @param maxResults the maximum number of matches
+     * @param matches the merged matches
+     */
+    private static void mergeTop(final List<List<ResolvedLocation>> ranked, final Comparator<ResolvedLocation> order,
+            final int maxResults, final List<ResolvedLocation> matches) {
+        int[] heads = new int[ranked.size()];
+        while (matches.size() < maxResults) {
+            int best = -1;
+            for (int shard = 0; shard < ranked.size(); shard++) {
+                List<ResolvedLocation> results = ranked.get(shard);
+                if (heads[shard] < results.size() && (best < 0 ||
+                        order.compare(results.get(heads[shard]), ranked.get(best).get(heads[best])) < 0)) {
+                    best = shard;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            matches.add(ranked.get(best).get(heads[best]++));
+        }
+    }
+
+    /**
+     * Get the length norm of the name that matched a location.
+     * @param location the location
+     * @return the length norm of the matched name
+     */
+    private static float getNameNorm(final ResolvedLocation location) {
+        String name = location.getMatchedName();
+        return BinarySimilarity.getNameNorm(name != null ? NameKeys.toKey(name).split(" ").length : 0);
+    }
+
+    /**
+     * Get the population used to rank a location.
+     * @param location the location
+     * @return the sort population of the location
+     */
+    private static long getSortPopulation(final ResolvedLocation location) {
+        Long sortPop = IndexDirectoryBuilder.getSortPopulation(location.getGeoname());
+        return sortPop != null ? sortPop : 0L;
+    }
+
+    /**
+     * Orders exact matches by the length norm of their matched name and their sort population.
+     */
+    private static final Comparator<ResolvedLocation> EXACT_ORDER = new Comparator<ResolvedLocation>() {
+        @Override
+        public int compare(final ResolvedLocation loc1, final ResolvedLocation loc2) {
+            int cmp = Float.compare(getNameNorm(loc2), getNameNorm(loc1));
+            return cmp != 0 ? cmp : Long.compare(getSortPopulation(loc2), getSortPopulation(loc1));
+        }
+    };
+
+    /**
+     * Orders fuzzy matches by the edit distance of their matched name from the location
+     * name, then as exact matches.
+     */
+    private static final class FuzzyOrder implements Comparator<ResolvedLocation> {
+        private final String sanitizedName;
+
+        public FuzzyOrder(final String sanitizedName) {
+            this.sanitizedName = sanitizedName;
+        }
+
+        @Override
+        public int compare(final ResolvedLocation loc1, final ResolvedLocation loc2) {
+            int cmp = getDistance(loc1) - getDistance(loc2);
+            return cmp != 0 ? cmp : EXACT_ORDER.compare(loc1, loc2);
+        }
+
+        private int getDistance(final ResolvedLocation location) {
+            String name = location.getMatchedName();
+            return name != null ? DamerauLevenshtein.damerauLevenshteinDistanceCaseInsensitive(sanitizedName, name) :
+                    Integer.MAX_VALUE;
+        }
+    }
+}
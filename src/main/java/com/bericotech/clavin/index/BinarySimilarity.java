@@ -1,6 +1,7 @@
 package com.bericotech.clavin.index;
 
 import org.apache.lucene.search.similarities.DefaultSimilarity;
+import org.apache.lucene.util.BytesRef;
 
 /*#####################################################################
  * 
@@ -33,9 +34,27 @@ import org.apache.lucene.search.similarities.DefaultSimilarity;
 /**
  * Turns TF (term frequency) into a binary (yes/no) proposition in
  * calculating Lucene relevance score.
+ *
+ * Names indexed with a {@link NameLengthPayloadFilter} carry the number
+ * of terms in their name as a payload; those payloads are scored as the
+ * length norm the name would have been given had it been indexed in a
+ * field of its own.
  * 
  */
 public class BinarySimilarity extends DefaultSimilarity {
+
+    /**
+     * The encoded length norm of names of each number of terms.
+     */
+    private static final float[] NAME_NORMS = new float[NameLengthPayloadFilter.MAX_NAME_LENGTH + 1];
+
+    static {
+        DefaultSimilarity similarity = new DefaultSimilarity();
+        NAME_NORMS[0] = 0.0f;
+        for (int length = 1; length < NAME_NORMS.length; length++) {
+            NAME_NORMS[length] = similarity.decodeNormValue(similarity.encodeNormValue((float) (1.0 / Math.sqrt(length))));
+        }
+    }
     
     /**
      * Simple default constructor for {@link BinarySimilarity}.
@@ -58,4 +77,29 @@ public class BinarySimilarity extends DefaultSimilarity {
         else return 0.0f;
     }
 
+    /**
+     * Scores the name length payload written by {@link NameLengthPayloadFilter}
+     * as the length norm of the name.
+     *
+     * @param doc       the document
+     * @param start     the start position of the match
+     * @param end       the end position of the match
+     * @param payload   the payload
+     */
+    @Override
+    public float scorePayload(int doc, int start, int end, BytesRef payload) {
+        return payload != null && payload.length > 0 ? getNameNorm(NameLengthPayloadFilter.getNameLength(payload)) : 1.0f;
+    }
+
+    /**
+     * Get the length norm of a name with the provided number of terms, as it is
+     * encoded in the index.
+     *
+     * @param length    the number of terms in the name
+     * @return          the length norm of the name
+     */
+    public static float getNameNorm(int length) {
+        return NAME_NORMS[Math.max(0, Math.min(length, NameLengthPayloadFilter.MAX_NAME_LENGTH))];
+    }
+
 }
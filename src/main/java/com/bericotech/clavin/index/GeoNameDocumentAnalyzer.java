@@ -0,0 +1,76 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * GeoNameDocumentAnalyzer.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.index;
+
+import static com.bericotech.clavin.index.IndexField.*;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.AnalyzerWrapper;
+
+/**
+ * The analyzer used to build indexes with a single document for each
+ * GeoName.  Fields are analyzed by the {@link WhitespaceLowerCaseAnalyzer};
+ * the tokens of each INDEX_NAME value are also given a name length payload
+ * by the {@link NameLengthPayloadFilter}.  Successive values of a field are
+ * separated by a position gap so phrase queries cannot match across names.
+ */
+public class GeoNameDocumentAnalyzer extends AnalyzerWrapper {
+    /**
+     * The position gap between the values of a multi-valued field.
+     */
+    public static final int NAME_POSITION_GAP = 100;
+
+    private final Analyzer analyzer = new WhitespaceLowerCaseAnalyzer();
+
+    /**
+     * Simple default constructor for {@link GeoNameDocumentAnalyzer}.
+     */
+    public GeoNameDocumentAnalyzer() {
+        super(PER_FIELD_REUSE_STRATEGY);
+    }
+
+    @Override
+    protected Analyzer getWrappedAnalyzer(final String fieldName) {
+        return analyzer;
+    }
+
+    @Override
+    protected TokenStreamComponents wrapComponents(final String fieldName, final TokenStreamComponents components) {
+        if (INDEX_NAME.key().equals(fieldName)) {
+            return new TokenStreamComponents(components.getTokenizer(),
+                    new NameLengthPayloadFilter(components.getTokenStream()));
+        }
+        return components;
+    }
+
+    @Override
+    public int getPositionIncrementGap(final String fieldName) {
+        return NAME_POSITION_GAP;
+    }
+}
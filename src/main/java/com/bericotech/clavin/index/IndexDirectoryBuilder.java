@@ -8,24 +8,39 @@ import com.bericotech.clavin.gazetteer.CountryCode;
 import com.bericotech.clavin.gazetteer.FeatureClass;
 import com.bericotech.clavin.gazetteer.FeatureCode;
 import com.bericotech.clavin.gazetteer.GeoName;
+import com.bericotech.clavin.gazetteer.GeoNameCodec;
+import com.bericotech.clavin.util.LruCache;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.GnuParser;
@@ -38,14 +53,35 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.IntField;
 import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.NumericUtils;
 import org.apache.lucene.util.Version;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -82,7 +118,9 @@ import org.slf4j.LoggerFactory;
  * Builds a Lucene index of geographic entries based on
  * the GeoNames gazetteer.
  *
- * This program is run one-time before CLAVIN can be used.
+ * This program is run one-time before CLAVIN can be used.  Existing
+ * indexes may then be refreshed from the daily GeoNames modifications
+ * and deletes files instead of being rebuilt.
  *
  */
 public class IndexDirectoryBuilder {
@@ -93,6 +131,54 @@ public class IndexDirectoryBuilder {
     private static final String INDEX_PATH_OPTION = "index-path";
     private static final String REPLACE_INDEX_OPTION = "replace-index";
     private static final String ALTERNATE_NAMES_OPTION = "alt-names-file";
+    private static final String NAME_NGRAMS_OPTION = "with-name-ngrams";
+    private static final String OMIT_ALTERNATE_NAMES_OPTION = "without-stored-alternate-names";
+    private static final String GEONAME_DOCUMENTS_OPTION = "one-document-per-geoname";
+    private static final String THREADS_OPTION = "threads";
+    private static final String RAM_BUFFER_OPTION = "ram-buffer-size";
+    private static final String TWO_PASS_OPTION = "two-pass";
+    private static final String MODIFICATIONS_FILES_OPTION = "modifications-files";
+    private static final String DELETES_FILES_OPTION = "deletes-files";
+    private static final String RESUME_OPTION = "resume";
+    private static final String SHARDS_OPTION = "shards";
+
+    /**
+     * The commit data recording the progress of a build: the phase of the build, the
+     * countries whose unresolved GeoNames have been indexed and the options that shape
+     * the documents of the index.
+     */
+    private static final String BUILD_PHASE_KEY = "clavin.build.phase";
+    private static final String RESOLVED_COUNTRIES_KEY = "clavin.build.resolvedCountries";
+    private static final String BUILD_OPTION_KEY_PREFIX = "clavin.build.option.";
+    private static final String RESOLVING_PHASE = "resolving";
+    private static final String COMPLETE_PHASE = "complete";
+
+    /**
+     * The number of gazetteer records parsed or indexed by a single task of a
+     * multi-threaded build.
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * The maximum number of decoded administrative divisions held by a two-pass build.
+     */
+    private static final int ADMIN_CACHE_SIZE = 10000;
+
+    /**
+     * The column of the feature class in a GeoNames record.
+     */
+    private static final int FEATURE_CLASS_COLUMN = 6;
+
+    /**
+     * The type of the INDEX_NAME field when all names of a GeoName are indexed in a single
+     * document.  Names are scored by their length payloads, so norms are not required.
+     */
+    private static final FieldType MULTI_NAME_TYPE = new FieldType(TextField.TYPE_STORED);
+
+    static {
+        MULTI_NAME_TYPE.setOmitNorms(true);
+        MULTI_NAME_TYPE.freeze();
+    }
 
     private static final String[] DEFAULT_GAZETTEER_FILES = new String[] {
         "./allCountries.txt",
@@ -102,90 +188,261 @@ public class IndexDirectoryBuilder {
 
     private final Map<String, GeoName> adminMap;
     private final Map<String, Set<GeoName>> unresolvedMap;
-    private final Map<Integer, AlternateName> alternateNameMap;
+    private final PreferredNames preferredNames;
     private final boolean fullAncestry;
+    private final boolean nameNGrams;
+    private final boolean storeAlternateNames;
+    private final boolean geoNameDocuments;
+    private final int threads;
+    private final double ramBufferSizeMB;
+    private final boolean twoPass;
+    private final boolean resume;
+    private final ShardLayout shardLayout;
+    private final AtomicInteger indexCount;
 
     private IndexWriter indexWriter;
-    private int indexCount;
-
-    private IndexDirectoryBuilder(final boolean fullAncestryIn) {
+    private Map<String, IndexWriter> shardWriters;
+    private ExecutorService parserPool;
+    private ExecutorService indexerPool;
+    private Deque<Future<List<GeoName>>> pendingParses;
+    private Deque<Future<Void>> pendingIndexes;
+    private List<GeoName> indexBatch;
+    private Map<String, byte[]> adminRecords;
+    private Map<String, Integer> adminPositions;
+    private Map<String, List<AdminRecord>> duplicateAdmins;
+    private int adminPosition;
+    private LruCache<String, GeoName> adminCache;
+    private Map<Integer, String> adminKeys;
+    private int unresolvedCount;
+    private Set<String> resolvedCountries;
+    private Set<Integer> replacedIds;
+    private boolean resuming;
+
+    private IndexDirectoryBuilder(final boolean fullAncestryIn, final boolean nameNGramsIn,
+            final boolean storeAlternateNamesIn, final boolean geoNameDocumentsIn, final int threadsIn,
+            final double ramBufferSizeMBIn, final boolean twoPassIn, final boolean resumeIn,
+            final ShardLayout shardLayoutIn) {
         adminMap = new TreeMap<String, GeoName>();
         unresolvedMap = new TreeMap<String, Set<GeoName>>();
-        alternateNameMap = new HashMap<Integer, AlternateName>();
+        preferredNames = new PreferredNames();
         this.fullAncestry = fullAncestryIn;
+        this.nameNGrams = nameNGramsIn;
+        this.storeAlternateNames = storeAlternateNamesIn;
+        this.geoNameDocuments = geoNameDocumentsIn;
+        this.threads = threadsIn;
+        this.ramBufferSizeMB = ramBufferSizeMBIn;
+        this.twoPass = twoPassIn;
+        this.resume = resumeIn;
+        this.shardLayout = shardLayoutIn;
+        this.indexCount = new AtomicInteger();
     }
 
+    /**
+     * Builds the index.  When more than one thread is configured, the build is run
+     * as a pipeline: the gazetteer files are read in batches of lines on the calling
+     * thread, each batch is parsed by a pool of parser threads and the parsed
+     * GeoNames are returned to the calling thread in file order, where their ancestry
+     * is resolved.  Resolved GeoNames are handed to a pool of indexing threads that
+     * add their documents to the shared IndexWriter concurrently.  Documents of
+     * multi-threaded builds are not added in file order, so matches with identical
+     * scores and populations may be ranked differently than in a single-threaded build.
+     *
+     * A two-pass build first reads the administrative divisions of all gazetteer
+     * files and then resolves the ancestry of every GeoName as soon as it is parsed
+     * in the second pass, so GeoNames never wait on the heap for their parents.
+     *
+     * A single-pass build commits the index once the gazetteer files have been read
+     * and again each time the GeoNames waiting for the administrative divisions of a
+     * country have been resolved and indexed.  If the build is resumed, the gazetteer
+     * files are read again without indexing to rebuild the unresolved GeoNames and
+     * only the countries missing from the last commit are resolved.
+     *
+     * If a {@link ShardLayout} was provided, the GeoNames of each shard are written to
+     * a separate index in a sub-directory of the index directory and the layout is
+     * recorded alongside them.  Every GeoName is indexed in the same shard as its
+     * ancestors.  The RAM buffer is divided between the shards.  Sharded and two-pass
+     * builds cannot be resumed.
+     *
+     * @param indexDir      the index directory
+     * @param gazetteerFiles the gazetteer files to index
+     * @param altNamesFile  the alternate names file; may be <code>null</code>
+     * @throws IOException  if an error occurs while building the index or a build is
+     *                      resumed in a directory holding an index that is not a build
+     *                      to resume
+     */
     public void buildIndex(final File indexDir, final List<File> gazetteerFiles, final File altNamesFile) throws IOException {
         LOG.info("Indexing... please wait.");
 
-        indexCount = 0;
+        indexCount.set(0);
 
         // Create a new index file on disk, allowing Lucene to choose
-        // the best FSDirectory implementation given the environment.
-        FSDirectory index = FSDirectory.open(indexDir);
+        // the best FSDirectory implementation given the environment;
+        // sharded indexes open a directory for each shard below
+        if (resume && (twoPass || shardLayout != null)) {
+            throw new IOException("Sharded and two-pass builds cannot be resumed.");
+        }
+        FSDirectory index = shardLayout == null ? FSDirectory.open(indexDir) : null;
 
         // indexing by lower-casing & tokenizing on whitespace
-        Analyzer indexAnalyzer = new WhitespaceLowerCaseAnalyzer();
+        Analyzer indexAnalyzer = geoNameDocuments ? new GeoNameDocumentAnalyzer() : new WhitespaceLowerCaseAnalyzer();
+
+        // find the countries resolved by the build being resumed
+        resolvedCountries = new HashSet<String>();
+        replacedIds = Collections.synchronizedSet(new HashSet<Integer>());
+        resuming = false;
+        if (resume && DirectoryReader.indexExists(index)) {
+            DirectoryReader reader = DirectoryReader.open(index);
+            Map<String, String> commitData = reader.getIndexCommit().getUserData();
+            reader.close();
+            if (COMPLETE_PHASE.equals(commitData.get(BUILD_PHASE_KEY))) {
+                LOG.info("The index is complete; nothing to resume.");
+                index.close();
+                return;
+            } else if (RESOLVING_PHASE.equals(commitData.get(BUILD_PHASE_KEY))) {
+                try {
+                    checkBuildOptions(commitData, Collections.<String, Boolean>emptyMap(), indexDir);
+                } catch (IOException ioe) {
+                    index.close();
+                    throw ioe;
+                }
+                String countries = commitData.get(RESOLVED_COUNTRIES_KEY);
+                if (countries != null && !countries.isEmpty()) {
+                    resolvedCountries.addAll(Arrays.asList(countries.split(",")));
+                }
+                resuming = true;
+                LOG.info("Resuming build; {} countries were resolved.", resolvedCountries.size());
+            } else {
+                // never replace an index that was not written by a build of this tool
+                index.close();
+                throw new IOException(String.format("%s holds no build to resume. Replace the index with -r.",
+                        indexDir.getAbsolutePath()));
+            }
+        }
+        if (resume && !resuming) {
+            LOG.info("No build to resume; building a new index.");
+        }
+
+        // create the object that will actually build the Lucene index; each indexing
+        // thread requires its own thread state to add documents concurrently
+        if (shardLayout == null) {
+            indexWriter = new IndexWriter(index, getIndexWriterConfig(indexAnalyzer, ramBufferSizeMB));
+        } else {
+            LOG.info("Indexing {} shards.", shardLayout.getShardNames().size());
+            if (!indexDir.isDirectory() && !indexDir.mkdirs()) {
+                throw new IOException(String.format("Unable to create index directory: %s", indexDir.getAbsolutePath()));
+            }
+            shardWriters = new LinkedHashMap<String, IndexWriter>();
+            double shardBufferSizeMB = ramBufferSizeMB / shardLayout.getShardNames().size();
+            for (String shard : shardLayout.getShardNames()) {
+                FSDirectory shardIndex = FSDirectory.open(shardLayout.getShardDirectory(indexDir, shard));
+                shardWriters.put(shard, new IndexWriter(shardIndex, getIndexWriterConfig(indexAnalyzer, shardBufferSizeMB)));
+            }
+            shardLayout.write(indexDir);
+        }
 
-        // create the object that will actually build the Lucene index
-        indexWriter = new IndexWriter(index, new IndexWriterConfig(Version.LUCENE_4_9, indexAnalyzer));
+        if (threads > 1) {
+            LOG.info("Parsing and indexing with {} threads each.", threads);
+            parserPool = Executors.newFixedThreadPool(threads);
+            indexerPool = Executors.newFixedThreadPool(threads);
+            pendingParses = new ArrayDeque<Future<List<GeoName>>>();
+            pendingIndexes = new ArrayDeque<Future<Void>>();
+            indexBatch = new ArrayList<GeoName>(BATCH_SIZE);
+        }
 
         // let's see how long this takes...
         Date start = new Date();
+        Date stop;
+        int count = 0;
+        try {
+            // if we were given an alternate names file, process it
+            if (altNamesFile != null) {
+                loadAlternateNames(altNamesFile);
+            }
 
-        // if we were given an alternate names file, process it
-        if (altNamesFile != null) {
-            loadAlternateNames(altNamesFile);
-        }
+            // collect the administrative divisions before indexing any GeoNames
+            if (twoPass) {
+                loadAdminDivisions(gazetteerFiles);
+            }
 
-        // load GeoNames gazetteer into Lucene index
-        String line;
-        int count = 0;
-        for (File gazetteer : gazetteerFiles) {
-            LOG.info("Processing Gazetteer: {}", gazetteer.getAbsolutePath());
-            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(gazetteer), "UTF-8"));
-            while ((line = reader.readLine()) != null) {
-                try {
+            // load GeoNames gazetteer into Lucene index
+            String line;
+            for (File gazetteer : gazetteerFiles) {
+                LOG.info("Processing Gazetteer: {}", gazetteer.getAbsolutePath());
+                BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(gazetteer), "UTF-8"));
+                List<String> lines = new ArrayList<String>(BATCH_SIZE);
+                while ((line = reader.readLine()) != null) {
                     count += 1;
                     // print progress update to console
                     if (count % 100000 == 0 ) {
-                        LOG.info("rowcount: " + count);
+                        LOG.info("rowcount: {} ({} records/second)", count, getRate(count, start));
+                    }
+                    lines.add(line);
+                    if (lines.size() == BATCH_SIZE) {
+                        parseLines(lines);
+                        lines = new ArrayList<String>(BATCH_SIZE);
                     }
-                    GeoName geoName = BasicGeoName.parseFromGeoNamesRecord(line);
-                    resolveAncestry(geoName);
-                } catch (IOException e) {
-                    LOG.info("Skipping... Error on line: {}", line);
-                } catch (RuntimeException re) {
-                    LOG.info("Skipping... Error on line: {}", line);
                 }
+                reader.close();
+                parseLines(lines);
+            }
+            // wait for the remaining lines to be parsed so every admin division is known
+            while (pendingParses != null && !pendingParses.isEmpty()) {
+                resolveAncestry(waitFor(pendingParses.removeFirst()));
             }
-            reader.close();
-        }
 
-        // that wasn't so long, was it?
-        Date stop = new Date();
+            // that wasn't so long, was it?
+            stop = new Date();
 
-        LOG.info("Unresolved GeoNames (Pre-resolution)");
-        logUnresolved();
+            // wait for all indexing tasks to complete
+            finishIndexing();
 
-        resolveUnresolved();
+            if (twoPass) {
+                LOG.info("Found {} administrative divisions.", adminRecords.size());
+                LOG.info("{} total unresolved GeoNames", unresolvedCount);
+            } else {
+                LOG.info("Unresolved GeoNames (Pre-resolution)");
+                logUnresolved();
 
-        LOG.info("Unresolved GeoNames (Post-resolution)");
-        logUnresolved();
+                // checkpoint the GeoNames resolved while reading the gazetteer files
+                if (!resuming) {
+                    commitCheckpoint(null);
+                }
+
+                resolveUnresolved();
 
-        LOG.info("Indexing unresolved GeoNames.");
-        for (Set<GeoName> geos : unresolvedMap.values()) {
-            for (GeoName nm : geos) {
-                indexGeoName(nm);
+                LOG.info("Unresolved GeoNames (Post-resolution)");
+                logUnresolved();
+            }
+        } finally {
+            adminRecords = null;
+            adminPositions = null;
+            duplicateAdmins = null;
+            adminCache = null;
+            adminKeys = null;
+            if (parserPool != null) {
+                parserPool.shutdownNow();
+                indexerPool.shutdownNow();
+                parserPool = null;
+                indexerPool = null;
             }
         }
 
         LOG.info("[DONE]");
-        LOG.info("{} geonames added to index. ({} records)", indexWriter.maxDoc(), indexCount);
+        int docCount = 0;
+        for (IndexWriter writer : getIndexWriters()) {
+            docCount += writer.maxDoc();
+        }
+        LOG.info("{} geonames added to index. ({} records)", docCount, indexCount.get());
         LOG.info("Merging indices... please wait.");
 
-        indexWriter.close();
-        index.close();
+        Map<String, String> commitData = getCommitData(COMPLETE_PHASE);
+        for (IndexWriter writer : getIndexWriters()) {
+            writer.setCommitData(commitData);
+            writer.close();
+            writer.getDirectory().close();
+        }
+        indexWriter = null;
+        shardWriters = null;
 
         LOG.info("[DONE]");
 
@@ -193,49 +450,686 @@ public class IndexDirectoryBuilder {
         long elapsed_MILLIS = stop.getTime() - start.getTime();
         LOG.info("Process started: " + df.format(start) + ", ended: " + df.format(stop)
                 + "; elapsed time: " + MILLISECONDS.toSeconds(elapsed_MILLIS) + " seconds.");
+        LOG.info("Processed {} gazetteer records in {} seconds. ({} records/second)", count,
+                MILLISECONDS.toSeconds(System.currentTimeMillis() - start.getTime()), getRate(count, start));
+    }
+
+    /**
+     * Create the configuration of a new index writer for the build.
+     * @param indexAnalyzer     the analyzer used to index names
+     * @param bufferSizeMB      the size of the writer's RAM buffer
+     * @return the writer configuration
+     */
+    private IndexWriterConfig getIndexWriterConfig(final Analyzer indexAnalyzer, final double bufferSizeMB) {
+        IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_4_9, indexAnalyzer);
+        config.setOpenMode(resuming ? OpenMode.APPEND : OpenMode.CREATE);
+        config.setRAMBufferSizeMB(bufferSizeMB);
+        config.setMaxThreadStates(Math.max(threads, IndexWriterConfig.DEFAULT_MAX_THREAD_STATES));
+        return config;
+    }
+
+    /**
+     * Get the writer of the index holding the provided GeoName.
+     * @param geoName       the GeoName
+     * @return the writer of the index or shard holding the GeoName
+     */
+    private IndexWriter getIndexWriter(final GeoName geoName) {
+        return shardWriters != null ? shardWriters.get(shardLayout.getShard(geoName.getPrimaryCountryCode())) : indexWriter;
+    }
+
+    /**
+     * Get the writers of the index or of each of its shards.
+     * @return the index writers
+     */
+    private Collection<IndexWriter> getIndexWriters() {
+        return shardWriters != null ? shardWriters.values() : Collections.singletonList(indexWriter);
+    }
+
+    private static long getRate(final int count, final Date start) {
+        long elapsed = Math.max(System.currentTimeMillis() - start.getTime(), 1L);
+        return count * 1000L / elapsed;
+    }
+
+    /**
+     * Parses a batch of gazetteer lines, resolving the ancestry of the parsed GeoNames.
+     * If the build is multi-threaded, the batch is parsed by the parser pool and the
+     * GeoNames of the oldest pending batches are resolved once too many batches are
+     * waiting.
+     * @param lines         the gazetteer lines
+     * @throws IOException  if an error occurs while indexing
+     */
+    private void parseLines(final List<String> lines) throws IOException {
+        if (lines.isEmpty()) {
+            return;
+        }
+        if (parserPool == null) {
+            resolveAncestry(parseGeoNames(lines));
+            return;
+        }
+        pendingParses.addLast(parserPool.submit(new Callable<List<GeoName>>() {
+            @Override
+            public List<GeoName> call() {
+                return parseGeoNames(lines);
+            }
+        }));
+        // bound the number of parsed records waiting for ancestry resolution
+        while (pendingParses.size() > 2 * threads) {
+            resolveAncestry(waitFor(pendingParses.removeFirst()));
+        }
+    }
+
+    private static List<GeoName> parseGeoNames(final List<String> lines) {
+        List<GeoName> geoNames = new ArrayList<GeoName>(lines.size());
+        for (String line : lines) {
+            try {
+                geoNames.add(BasicGeoName.parseFromGeoNamesRecord(line));
+            } catch (RuntimeException re) {
+                LOG.info("Skipping... Error on line: {}", line);
+            }
+        }
+        return geoNames;
+    }
+
+    private void resolveAncestry(final List<GeoName> geoNames) throws IOException {
+        for (GeoName geoName : geoNames) {
+            try {
+                if (twoPass) {
+                    // the position of the GeoName among the divisions read by the first pass
+                    int position = adminPosition;
+                    if (geoName.getFeatureClass() == FeatureClass.A && geoName.getAncestryKey() != null) {
+                        adminPosition++;
+                    }
+                    setParent(geoName, position);
+                    if (!geoName.isAncestryResolved()) {
+                        unresolvedCount++;
+                    }
+                    indexGeoName(geoName);
+                } else {
+                    resolveAncestry(geoName);
+                }
+            } catch (RuntimeException re) {
+                LOG.info("Skipping... Error resolving GeoName: {}", geoName);
+            }
+        }
+    }
+
+    /**
+     * Reads the administrative divisions of the provided gazetteer files, keeping only
+     * their compact records and the order they were read in by ancestry key.  Only lines
+     * of the administrative feature class are parsed.  Every division read for a
+     * duplicate key is kept so the second pass can choose the division a single-pass
+     * build would use; see {@link #getAdminDivision(String, int)}.
+     * @param gazetteerFiles the gazetteer files
+     * @throws IOException  if an error occurs while reading the files
+     */
+    private void loadAdminDivisions(final List<File> gazetteerFiles) throws IOException {
+        adminRecords = new HashMap<String, byte[]>();
+        adminPositions = new HashMap<String, Integer>();
+        duplicateAdmins = new HashMap<String, List<AdminRecord>>();
+        adminPosition = 0;
+        adminCache = new LruCache<String, GeoName>(ADMIN_CACHE_SIZE);
+        unresolvedCount = 0;
+        int position = 0;
+        String line;
+        for (File gazetteer : gazetteerFiles) {
+            LOG.info("Reading administrative divisions: {}", gazetteer.getAbsolutePath());
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(gazetteer), "UTF-8"));
+            while ((line = reader.readLine()) != null) {
+                if (!FeatureClass.A.name().equals(getColumn(line, FEATURE_CLASS_COLUMN))) {
+                    continue;
+                }
+                GeoName geoName;
+                try {
+                    geoName = BasicGeoName.parseFromGeoNamesRecord(line);
+                } catch (RuntimeException re) {
+                    // reported when the line is indexed
+                    continue;
+                }
+                String key = geoName.getAncestryKey();
+                if (key != null) {
+                    byte[] record = GeoNameCodec.encode(geoName, false);
+                    byte[] conflict = adminRecords.get(key);
+                    if (conflict == null) {
+                        adminRecords.put(key, record);
+                        adminPositions.put(key, position);
+                    } else {
+                        GeoName other = GeoNameCodec.decode(conflict, 0, conflict.length, null);
+                        LOG.error(String.format("Resolved duplicate admin key [%s] for GeoNames (%d %s:%s %s) and (%d %s:%s %s)",
+                                key, other.getGeonameID(), other.getFeatureClass(), other.getFeatureCode(), other.getName(),
+                                geoName.getGeonameID(), geoName.getFeatureClass(), geoName.getFeatureCode(), geoName.getName()));
+                        List<AdminRecord> duplicates = duplicateAdmins.get(key);
+                        if (duplicates == null) {
+                            duplicates = new ArrayList<AdminRecord>();
+                            duplicates.add(new AdminRecord(adminPositions.get(key), conflict));
+                            duplicateAdmins.put(key, duplicates);
+                        }
+                        duplicates.add(new AdminRecord(position, record));
+                    }
+                    position++;
+                }
+            }
+            reader.close();
+        }
+        LOG.info("Found {} administrative divisions.", adminRecords.size());
     }
 
-    private static final int ALT_NAMES_ID_FIELD = 1;
-    private static final int ALT_NAMES_LANG_FIELD = 2;
-    private static final int ALT_NAMES_NAME_FIELD = 3;
-    private static final int ALT_NAMES_PREFERRED_FIELD = 4;
-    private static final int ALT_NAMES_SHORT_FIELD = 5;
-    private static final String ALT_NAMES_TRUE = "1";
-    private static final String ISO2_ENGLISH = "en";
-    private static final String ISO3_ENGLISH = "eng";
+    private static String getColumn(final String line, final int column) {
+        int start = 0;
+        for (int i = 0; i < column && start >= 0; i++) {
+            start = line.indexOf('\t', start);
+            start = start >= 0 ? start + 1 : start;
+        }
+        if (start < 0) {
+            return null;
+        }
+        int end = line.indexOf('\t', start);
+        return end >= 0 ? line.substring(start, end) : line.substring(start);
+    }
+
+    /**
+     * Sets the parent of the provided GeoName from the known administrative divisions.
+     * If the division identified by the parent key of the GeoName is not known, the
+     * closest known division above it is used.
+     * @param geoName       the GeoName
+     */
+    private void setParent(final GeoName geoName) {
+        setParent(geoName, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Sets the parent of the provided GeoName from the administrative divisions read by
+     * the first pass of a two-pass build.  If the division identified by the parent key
+     * of the GeoName is not known, the closest known division above it is used; like the
+     * divisions a single-pass build falls back to, it is the last division read for its key.
+     * @param geoName       the GeoName
+     * @param position      the number of divisions read by the first pass before the GeoName
+     */
+    private void setParent(final GeoName geoName, final int position) {
+        String selfKey = geoName.getAncestryKey();
+        String key = geoName.getParentAncestryKey();
+        int keyPosition = position;
+        GeoName parent = null;
+        while (parent == null && key != null) {
+            if (!key.equals(selfKey)) {
+                parent = getAdminDivision(key, keyPosition);
+            }
+            int lastDot = key.lastIndexOf('.');
+            key = lastDot > 0 ? key.substring(0, lastDot) : null;
+            keyPosition = Integer.MAX_VALUE;
+        }
+        if (parent != null && !geoName.setParent(parent)) {
+            LOG.error("Unable to set parent of {} to {}", geoName, parent);
+        }
+    }
+
+    /**
+     * Gets the administrative division with the provided ancestry key, with its
+     * ancestry resolved.
+     * @param key           the ancestry key
+     * @return the administrative division or <code>null</code> if it is not known
+     */
+    private GeoName getAdminDivision(final String key) {
+        return getAdminDivision(key, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets the administrative division with the provided ancestry key, with its
+     * ancestry resolved.  When more than one division was read for the key, the
+     * division a single-pass build would resolve a GeoName at the provided position
+     * to is returned: the last division read before that position or, if there is
+     * none, the first division read after it.
+     * @param key           the ancestry key
+     * @param position      the number of divisions read by the first pass before the
+     *                      GeoName whose parent is requested
+     * @return the administrative division or <code>null</code> if it is not known
+     */
+    private GeoName getAdminDivision(final String key, final int position) {
+        List<AdminRecord> duplicates = duplicateAdmins != null ? duplicateAdmins.get(key) : null;
+        AdminRecord chosen = null;
+        String cacheKey = key;
+        if (duplicates != null) {
+            chosen = duplicates.get(0);
+            for (AdminRecord duplicate : duplicates) {
+                if (duplicate.position < position) {
+                    chosen = duplicate;
+                }
+            }
+            cacheKey = key + "@" + chosen.position;
+        }
+        GeoName admin = adminCache.get(cacheKey);
+        if (admin == null) {
+            byte[] record;
+            int recordPosition;
+            if (chosen != null) {
+                record = chosen.record;
+                recordPosition = chosen.position;
+            } else {
+                record = adminRecords.get(key);
+                if (record == null) {
+                    return null;
+                }
+                recordPosition = adminPositions != null ? adminPositions.get(key) : Integer.MAX_VALUE;
+            }
+            admin = GeoNameCodec.decode(record, 0, record.length, null);
+            setParent(admin, recordPosition);
+            adminCache.put(cacheKey, admin);
+        }
+        return admin;
+    }
+
+    /**
+     * Wait for a pipeline task to complete.
+     * @param future        the task
+     * @return the result of the task
+     * @throws IOException  if the task failed with an IOException
+     */
+    private static <T> T waitFor(final Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while building index", ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Error building index", cause);
+        }
+    }
+
+    /**
+     * Applies GeoNames modification and deletion files, such as the daily
+     * <code>modifications-*.txt</code> and <code>deletes-*.txt</code> files published by
+     * GeoNames.org, to an existing index.  The index must have been built with the same
+     * options as this builder; the options recorded in its commit data are checked.
+     *
+     * Deleted GeoNames are removed by their GeoName ID term and modified GeoNames replace
+     * the documents indexed for their ID, keeping any preferred name already stored for
+     * them.  The administrative divisions of the index are read to resolve the ancestry
+     * of the modified GeoNames; when a division is modified or deleted, or a division
+     * appears under an ancestry key that was not known, the GeoNames below it are
+     * re-indexed with their new ancestry under the names stored by their documents, as
+     * their stored records may omit their alternate names.  New countries are not attached to GeoNames
+     * indexed before them; the index must be rebuilt to resolve those.
+     *
+     * @param indexDir          the index directory
+     * @param modificationFiles the files listing added or modified GeoNames in the gazetteer format
+     * @param deletionFiles     the files listing the IDs of deleted GeoNames in their first column
+     * @param altNamesFile      the alternate names file; may be <code>null</code>
+     * @throws IOException      if an error occurs while updating the index
+     */
+    public void updateIndex(final File indexDir, final List<File> modificationFiles, final List<File> deletionFiles,
+            final File altNamesFile) throws IOException {
+        LOG.info("Updating index: {}", indexDir.getAbsolutePath());
+        Date start = new Date();
+        indexCount.set(0);
+
+        FSDirectory index = FSDirectory.open(indexDir);
+        DirectoryReader reader = DirectoryReader.open(index);
+        try {
+            // indexes built before their options were recorded only reveal the options
+            // that add fields to their documents
+            FieldInfos fieldInfos = MultiFields.getMergedFieldInfos(reader);
+            FieldInfo nameInfo = fieldInfos.fieldInfo(INDEX_NAME.key());
+            Map<String, Boolean> fieldOptions = new HashMap<String, Boolean>();
+            fieldOptions.put(GEONAME_DOCUMENTS_OPTION, nameInfo != null && nameInfo.hasPayloads());
+            fieldOptions.put(NAME_NGRAMS_OPTION, fieldInfos.fieldInfo(NAME_NGRAMS.key()) != null);
+            checkBuildOptions(reader.getIndexCommit().getUserData(), fieldOptions, indexDir);
+            IndexSearcher searcher = new IndexSearcher(reader);
+
+            Analyzer indexAnalyzer = geoNameDocuments ? new GeoNameDocumentAnalyzer() : new WhitespaceLowerCaseAnalyzer();
+            IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_4_9, indexAnalyzer);
+            config.setOpenMode(OpenMode.APPEND);
+            config.setRAMBufferSizeMB(ramBufferSizeMB);
+            indexWriter = new IndexWriter(index, config);
+
+            if (altNamesFile != null) {
+                loadAlternateNames(altNamesFile);
+            }
+            loadAdminDivisions(searcher);
+
+            Set<Integer> deleted = new HashSet<Integer>();
+            for (File deletionFile : deletionFiles) {
+                LOG.info("Reading deletions: {}", deletionFile.getAbsolutePath());
+                BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(deletionFile), "UTF-8"));
+                String line;
+                while ((line = in.readLine()) != null) {
+                    try {
+                        deleted.add(Integer.parseInt(getColumn(line, 0).trim()));
+                    } catch (RuntimeException re) {
+                        LOG.info("Skipping... Error on line: {}", line);
+                    }
+                }
+                in.close();
+            }
+            // later modifications of a GeoName replace earlier ones
+            Map<Integer, GeoName> modified = new LinkedHashMap<Integer, GeoName>();
+            for (File modificationFile : modificationFiles) {
+                LOG.info("Reading modifications: {}", modificationFile.getAbsolutePath());
+                BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(modificationFile), "UTF-8"));
+                String line;
+                while ((line = in.readLine()) != null) {
+                    try {
+                        GeoName geoName = BasicGeoName.parseFromGeoNamesRecord(line);
+                        modified.remove(geoName.getGeonameID());
+                        modified.put(geoName.getGeonameID(), geoName);
+                    } catch (RuntimeException re) {
+                        LOG.info("Skipping... Error on line: {}", line);
+                    }
+                }
+                in.close();
+            }
+            modified.keySet().removeAll(deleted);
+
+            // update the administrative divisions, tracking the divisions whose descendants
+            // must be re-indexed and the ancestry keys that did not exist before
+            Set<Integer> changedAdmins = new HashSet<Integer>();
+            Set<String> addedKeys = new HashSet<String>();
+            for (Integer geonameId : deleted) {
+                if (removeAdminDivision(geonameId) != null) {
+                    changedAdmins.add(geonameId);
+                }
+            }
+            for (GeoName geoName : modified.values()) {
+                // descendants only store the IDs of their ancestors unless the index holds the full
+                // ancestry, so they are unaffected by modifications that keep the ancestry key
+                String oldKey = removeAdminDivision(geoName.getGeonameID());
+                if (oldKey != null && (fullAncestry || !oldKey.equals(geoName.getAncestryKey()))) {
+                    changedAdmins.add(geoName.getGeonameID());
+                }
+                String key = geoName.getAncestryKey();
+                if (key != null && putAdminDivision(geoName) && !key.equals(oldKey)) {
+                    addedKeys.add(key);
+                }
+            }
+
+            // find the GeoNames whose ancestry may have changed and the names they are indexed under
+            Map<Integer, GeoName> descendants = new HashMap<Integer, GeoName>();
+            Map<Integer, Set<String>> descendantNames = new HashMap<Integer, Set<String>>();
+            for (Integer geonameId : changedAdmins) {
+                findDescendants(searcher, geonameId, null, descendants, descendantNames);
+            }
+            for (String key : addedKeys) {
+                GeoName ancestor = null;
+                for (String parentKey = getParentKey(key); ancestor == null && parentKey != null; parentKey = getParentKey(parentKey)) {
+                    ancestor = getAdminDivision(parentKey);
+                }
+                if (ancestor != null) {
+                    findDescendants(searcher, ancestor.getGeonameID(), key, descendants, descendantNames);
+                } else {
+                    LOG.warn("GeoNames indexed before the division [{}] will not be resolved to it; rebuild the index.", key);
+                }
+            }
+            descendants.keySet().removeAll(deleted);
+            descendants.keySet().removeAll(modified.keySet());
+
+            for (Integer geonameId : deleted) {
+                indexWriter.deleteDocuments(getIdTerm(geonameId));
+            }
+            for (GeoName geoName : modified.values()) {
+                setParent(geoName);
+                String preferredName = getPreferredName(searcher, geoName.getGeonameID());
+                indexWriter.deleteDocuments(getIdTerm(geoName.getGeonameID()));
+                addDocuments(geoName, preferredName);
+            }
+            for (GeoName geoName : descendants.values()) {
+                setParent(geoName);
+                String preferredName = getPreferredName(searcher, geoName.getGeonameID());
+                // the stored records may omit the alternate names, so keep the indexed names
+                Set<String> names = descendantNames.get(geoName.getGeonameID());
+                names.addAll(getIndexNames(geoName, preferredName));
+                indexWriter.deleteDocuments(getIdTerm(geoName.getGeonameID()));
+                addDocuments(geoName, preferredName, names);
+            }
+
+            LOG.info("Deleted {} GeoNames, updated {} GeoNames and re-indexed {} descendants of {} changed administrative divisions.",
+                    deleted.size(), modified.size(), descendants.size(), changedAdmins.size() + addedKeys.size());
+            indexWriter.close();
+            indexWriter = null;
+        } finally {
+            if (indexWriter != null) {
+                indexWriter.rollback();
+                indexWriter = null;
+            }
+            adminRecords = null;
+            adminCache = null;
+            adminKeys = null;
+            reader.close();
+            index.close();
+        }
+        LOG.info("Updated {} records in {} seconds.", indexCount.get(),
+                MILLISECONDS.toSeconds(System.currentTimeMillis() - start.getTime()));
+    }
+
+    /**
+     * Reads the administrative divisions of an existing index, keeping their compact
+     * records by ancestry key as the first pass of a two-pass build does.  When the
+     * index holds several divisions for an ancestry key, the last division in document
+     * order that is the parent of an indexed GeoName is kept, or the last division if
+     * none is; see {@link #chooseAdminDivision(IndexSearcher, List)}.
+     * @param searcher      the searcher of the index
+     * @throws IOException  if an error occurs while reading the index
+     */
+    private void loadAdminDivisions(final IndexSearcher searcher) throws IOException {
+        adminRecords = new HashMap<String, byte[]>();
+        adminCache = new LruCache<String, GeoName>(ADMIN_CACHE_SIZE);
+        adminKeys = new HashMap<Integer, String>();
+        BooleanQuery codeQuery = new BooleanQuery();
+        for (FeatureCode code : FeatureCode.values()) {
+            if (code.getFeatureClass() == FeatureClass.A) {
+                codeQuery.add(new TermQuery(new Term(FEATURE_CODE.key(), code.name())), Occur.SHOULD);
+            }
+        }
+        BooleanQuery.setMaxClauseCount(Math.max(BooleanQuery.getMaxClauseCount(), codeQuery.clauses().size()));
+        Map<String, List<GeoName>> divisions = new LinkedHashMap<String, List<GeoName>>();
+        Set<Integer> seen = new HashSet<Integer>();
+        for (Integer docId : getDocIds(searcher, codeQuery)) {
+            Document doc = searcher.doc(docId);
+            Integer geonameId = GEONAME_ID.getValue(doc);
+            if (seen.add(geonameId)) {
+                GeoName geoName = readGeoName(doc);
+                String key = geoName.getAncestryKey();
+                if (key != null) {
+                    List<GeoName> keyDivisions = divisions.get(key);
+                    if (keyDivisions == null) {
+                        keyDivisions = new ArrayList<GeoName>(1);
+                        divisions.put(key, keyDivisions);
+                    }
+                    keyDivisions.add(geoName);
+                }
+            }
+        }
+        for (Map.Entry<String, List<GeoName>> entry : divisions.entrySet()) {
+            List<GeoName> keyDivisions = entry.getValue();
+            GeoName division = keyDivisions.get(keyDivisions.size() - 1);
+            if (keyDivisions.size() > 1) {
+                division = chooseAdminDivision(searcher, keyDivisions);
+                // duplicate keys are read from the gazetteer data, not introduced by the update
+                LOG.debug("Found {} administrative divisions for the admin key [{}]; resolving to GeoName ({}).",
+                        keyDivisions.size(), entry.getKey(), division.getGeonameID());
+            }
+            putAdminDivision(division);
+        }
+        LOG.info("Found {} administrative divisions.", adminRecords.size());
+    }
+
+    /**
+     * Chooses the division the index resolves an ancestry key to from the divisions
+     * indexed for that key: the last division in document order that is the parent of
+     * an indexed GeoName.  If no division has children, the last division is chosen, as
+     * a single-pass build resolves GeoNames to the last division read for their key.
+     * @param searcher      the searcher of the index
+     * @param divisions     the divisions indexed for the ancestry key, in document order
+     * @return the chosen division
+     * @throws IOException  if an error occurs while reading the index
+     */
+    private static GeoName chooseAdminDivision(final IndexSearcher searcher, final List<GeoName> divisions)
+            throws IOException {
+        for (int idx = divisions.size() - 1; idx >= 0; idx--) {
+            int geonameId = divisions.get(idx).getGeonameID();
+            Query query = NumericRangeQuery.newIntRange(PARENT_ID.key(), geonameId, geonameId, true, true);
+            if (searcher.search(query, 1).totalHits > 0) {
+                return divisions.get(idx);
+            }
+        }
+        return divisions.get(divisions.size() - 1);
+    }
+
+    /**
+     * Adds an administrative division to the divisions used to resolve ancestry.  The
+     * first division added for an ancestry key is kept.
+     * @param geoName       the administrative division
+     * @return <code>true</code> if the division was added
+     */
+    private boolean putAdminDivision(final GeoName geoName) {
+        String key = geoName.getAncestryKey();
+        byte[] conflict = adminRecords.get(key);
+        if (conflict != null) {
+            LOG.error("Resolved duplicate admin key [{}] for GeoNames ({}) and ({})", key,
+                    GeoNameCodec.decode(conflict, 0, conflict.length, null).getGeonameID(), geoName.getGeonameID());
+            return false;
+        }
+        adminRecords.put(key, GeoNameCodec.encode(geoName, false));
+        adminKeys.put(geoName.getGeonameID(), key);
+        adminCache.clear();
+        return true;
+    }
+
+    /**
+     * Removes an administrative division from the divisions used to resolve ancestry.
+     * @param geonameId     the ID of the administrative division
+     * @return the ancestry key of the removed division or <code>null</code> if it was not
+     *         an administrative division
+     */
+    private String removeAdminDivision(final int geonameId) {
+        String key = adminKeys.remove(geonameId);
+        if (key != null) {
+            adminRecords.remove(key);
+            adminCache.clear();
+        }
+        return key;
+    }
+
+    /**
+     * Finds the indexed GeoNames below an administrative division and the names stored
+     * by their documents.
+     * @param searcher      the searcher of the index
+     * @param ancestorId    the ID of the administrative division
+     * @param parentKey     if not <code>null</code>, only GeoNames whose parent ancestry key
+     *                      starts with this key are found
+     * @param descendants   the map the GeoNames are added to by ID
+     * @param names         the map the indexed names of the GeoNames are added to by ID
+     * @throws IOException  if an error occurs while reading the index
+     */
+    private void findDescendants(final IndexSearcher searcher, final int ancestorId, final String parentKey,
+            final Map<Integer, GeoName> descendants, final Map<Integer, Set<String>> names) throws IOException {
+        Query query = NumericRangeQuery.newIntRange(ANCESTOR_IDS.key(), ancestorId, ancestorId, true, true);
+        Set<Integer> seen = new HashSet<Integer>();
+        Set<Integer> found = new HashSet<Integer>();
+        for (Integer docId : getDocIds(searcher, query)) {
+            Document doc = searcher.doc(docId);
+            Integer geonameId = GEONAME_ID.getValue(doc);
+            if (seen.add(geonameId) && !descendants.containsKey(geonameId)) {
+                GeoName geoName = readGeoName(doc);
+                String key = geoName.getParentAncestryKey();
+                if (parentKey == null || (key != null && (key.equals(parentKey) || key.startsWith(parentKey + ".")))) {
+                    descendants.put(geonameId, geoName);
+                    names.put(geonameId, new HashSet<String>());
+                    found.add(geonameId);
+                }
+            }
+            // each name is stored by its own document unless the index holds a document per GeoName
+            if (found.contains(geonameId)) {
+                names.get(geonameId).addAll(Arrays.asList(doc.getValues(INDEX_NAME.key())));
+            }
+        }
+    }
+
+    private static String getParentKey(final String key) {
+        int lastDot = key.lastIndexOf('.');
+        return lastDot > 0 ? key.substring(0, lastDot) : null;
+    }
+
+    private String getPreferredName(final IndexSearcher searcher, final int geonameId) throws IOException {
+        String preferredName = preferredNames.get(geonameId);
+        if (preferredName != null) {
+            return preferredName;
+        }
+        Query query = NumericRangeQuery.newIntRange(GEONAME_ID.key(), geonameId, geonameId, true, true);
+        List<Integer> docIds = getDocIds(searcher, query);
+        return docIds.isEmpty() ? null : (String) PREFERRED_NAME.getValue(searcher.doc(docIds.get(0)));
+    }
+
+    /**
+     * Parse the GeoName stored in a document, without its ancestry.
+     * @param doc           the document
+     * @return the GeoName
+     */
+    private static GeoName readGeoName(final Document doc) {
+        String preferredName = PREFERRED_NAME.getValue(doc);
+        BytesRef record = doc.getBinaryValue(GEONAME.key());
+        if (record != null) {
+            byte[] encoded = GeoNameCodec.encode(GeoNameCodec.decode(record.bytes, record.offset, record.length, null), false);
+            return GeoNameCodec.decode(encoded, 0, encoded.length, preferredName);
+        }
+        String gazetteerRecord = GEONAME.getValue(doc);
+        int newline = gazetteerRecord.indexOf('\n');
+        return BasicGeoName.parseFromGeoNamesRecord(newline >= 0 ? gazetteerRecord.substring(0, newline) : gazetteerRecord,
+                preferredName);
+    }
+
+    private static List<Integer> getDocIds(final IndexSearcher searcher, final Query query) throws IOException {
+        final List<Integer> docIds = new ArrayList<Integer>();
+        searcher.search(query, new Collector() {
+            private int docBase;
+
+            @Override
+            public void setScorer(final Scorer scorer) {
+            }
+
+            @Override
+            public void collect(final int doc) {
+                docIds.add(docBase + doc);
+            }
+
+            @Override
+            public void setNextReader(final AtomicReaderContext context) {
+                docBase = context.docBase;
+            }
+
+            @Override
+            public boolean acceptsDocsOutOfOrder() {
+                return false;
+            }
+        });
+        return docIds;
+    }
+
+    private static Term getIdTerm(final int geonameId) {
+        BytesRef bytes = new BytesRef(NumericUtils.BUF_SIZE_INT);
+        NumericUtils.intToPrefixCoded(geonameId, 0, bytes);
+        return new Term(GEONAME_ID.key(), bytes);
+    }
 
     private void loadAlternateNames(final File altNamesFile) throws IOException {
         LOG.info("Reading alternate names file: {}", altNamesFile.getAbsolutePath());
 
         // parse all lines of the alternate names database and store only the 'en' names
         // marked as preferred or short names for each location
-        //
-        // Column format (see http://download.geonames.org/export/dump/)
-        // ------------------------------------------------------
-        // alternateNameId   : the id of this alternate name, int
-        // geonameid         : geonameId referring to id in table 'geoname', int
-        // isolanguage       : iso 639 language code 2- or 3-characters; 4-characters 'post' for postal
-        //                     codes and 'iata','icao' and faac for airport codes, fr_1793 for French
-        //                     Revolution names,  abbr for abbreviation, link for a website, varchar(7)
-        // alternate name    : alternate name or name variant, varchar(200)
-        // isPreferredName   : '1', if this alternate name is an official/preferred name
-        // isShortName       : '1', if this is a short name like 'California' for 'State of California'
-        // isColloquial      : '1', if this alternate name is a colloquial or slang term
-        // isHistoric        : '1', if this alternate name is historic and was used in the past
-
-        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(altNamesFile), "UTF-8"));
-        String line;
-        int lineNum = 0;
-        while ((line = reader.readLine()) != null) {
-            lineNum++;
-            AlternateName name = new AlternateName(line);
-            if (name.isEnglish() && name.isPrefOrShort()) {
-                alternateNameMap.put(name.geonameId, name.bestName(alternateNameMap.get(name.geonameId)));
-            }
+        InputStream in = new FileInputStream(altNamesFile);
+        int lineNum;
+        try {
+            lineNum = preferredNames.load(in);
+        } finally {
+            in.close();
         }
-        reader.close();
 
-        LOG.info("Processed {} alternate names.  Found {} names.", lineNum, alternateNameMap.size());
+        LOG.info("Processed {} alternate names.  Found {} names.", lineNum, preferredNames.size());
     }
 
     private void resolveAncestry(final GeoName geoname) throws IOException {
@@ -275,47 +1169,184 @@ public class IndexDirectoryBuilder {
     }
 
     private void checkDescendantsResolved(final GeoName geoname, final boolean setParent) throws IOException {
-        String key = geoname.getAncestryKey();
-        if (key != null) {
-            Set<GeoName> descendants = unresolvedMap.get(key);
-            if (descendants != null) {
-                // use an iterator so we can remove elements
-                Iterator<GeoName> iter = descendants.iterator();
-                while (iter.hasNext()) {
-                    GeoName desc = iter.next();
-                    if (setParent) {
-                        if (!desc.setParent(geoname)) {
-                            LOG.error("Error setting parent [{}] of GeoName [{}].", geoname, desc);
-                        }
-                    }
-                    if (desc.isAncestryResolved()) {
-                        checkDescendantsResolved(desc, false);
-                        indexGeoName(desc);
-                        iter.remove();
+        // walk the newly resolved subtree with an explicit stack instead of recursion; each
+        // resolved descendant is indexed once its own descendants have been checked
+        Deque<DescendantCheck> stack = new ArrayDeque<DescendantCheck>();
+        stack.push(new DescendantCheck(geoname, setParent));
+        while (!stack.isEmpty()) {
+            DescendantCheck check = stack.peek();
+            if (check.iter != null && check.iter.hasNext()) {
+                GeoName desc = check.iter.next();
+                if (check.setParent) {
+                    if (!desc.setParent(check.geoName)) {
+                        LOG.error("Error setting parent [{}] of GeoName [{}].", check.geoName, desc);
                     }
                 }
-                if (descendants.isEmpty()) {
-                    unresolvedMap.remove(key);
+                if (desc.isAncestryResolved()) {
+                    stack.push(new DescendantCheck(desc, false));
                 }
+                continue;
+            }
+            stack.pop();
+            if (check.descendants != null && check.descendants.isEmpty()) {
+                unresolvedMap.remove(check.key);
+            }
+            DescendantCheck parentCheck = stack.peek();
+            if (parentCheck != null) {
+                indexGeoName(check.geoName);
+                // the iterator is positioned on the GeoName that was just checked
+                parentCheck.iter.remove();
             }
         }
     }
 
+    /**
+     * The compact record of an administrative division read by the first pass of a
+     * two-pass build, with the number of divisions read before it.
+     */
+    private static final class AdminRecord {
+        private final int position;
+        private final byte[] record;
+
+        public AdminRecord(final int position, final byte[] record) {
+            this.position = position;
+            this.record = record;
+        }
+    }
+
+    /**
+     * The state of the descendants check of a single GeoName.
+     */
+    private final class DescendantCheck {
+        private final GeoName geoName;
+        private final boolean setParent;
+        private final String key;
+        private final Set<GeoName> descendants;
+        private final Iterator<GeoName> iter;
+
+        private DescendantCheck(final GeoName geoNameIn, final boolean setParentIn) {
+            this.geoName = geoNameIn;
+            this.setParent = setParentIn;
+            this.key = geoNameIn.getAncestryKey();
+            this.descendants = key != null ? unresolvedMap.get(key) : null;
+            // use an iterator so we can remove elements
+            this.iter = descendants != null ? descendants.iterator() : null;
+        }
+    }
+
+    /**
+     * Get the depth of an ancestry key; the number of administrative levels it identifies.
+     * @param key the ancestry key
+     * @return the depth of the key
+     */
+    private static int getKeyDepth(final String key) {
+        int depth = 1;
+        for (int idx = key.indexOf('.'); idx >= 0; idx = key.indexOf('.', idx + 1)) {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * Resolves the GeoNames still waiting for their administrative parents once all
+     * gazetteer files have been read, using the closest known administrative division
+     * above their parent key.  Ancestry keys never cross countries, so each country is
+     * resolved and indexed independently, in parallel when the build is multi-threaded,
+     * and the index is committed as each country completes.  Countries resolved by a
+     * resumed build are skipped.
+     * @throws IOException  if an error occurs while indexing
+     */
     private void resolveUnresolved() throws IOException {
-        // sort keys in ascending order by level of specificity and name
-        Set<String> keys = new TreeSet<String>(new Comparator<String>() {
+        // group keys by country, computing the depth of each key once
+        final Map<String, Integer> depths = new HashMap<String, Integer>();
+        Map<String, List<String>> countryKeys = new TreeMap<String, List<String>>();
+        for (String key : unresolvedMap.keySet()) {
+            depths.put(key, getKeyDepth(key));
+            int dot = key.indexOf('.');
+            String country = dot >= 0 ? key.substring(0, dot) : key;
+            List<String> keys = countryKeys.get(country);
+            if (keys == null) {
+                keys = new ArrayList<String>();
+                countryKeys.put(country, keys);
+            }
+            keys.add(key);
+        }
+        // sort keys in ascending order by level of specificity and name so less specific
+        // keys are resolved first; if they are resolved, this may result in more specific
+        // keys being resolved as well
+        Comparator<String> specificity = new Comparator<String>() {
             @Override
             public int compare(final String strA, final String strB) {
-                int specA = strA.split("\\.").length;
-                int specB = strB.split("\\.").length;
+                int specA = depths.get(strA);
+                int specB = depths.get(strB);
                 return specA != specB ? specA - specB : strA.compareTo(strB);
             }
-        });
-        keys.addAll(unresolvedMap.keySet());
+        };
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (Map.Entry<String, List<String>> entry : countryKeys.entrySet()) {
+            final String country = entry.getKey();
+            final List<String> keys = entry.getValue();
+            if (resolvedCountries.contains(country)) {
+                continue;
+            }
+            Collections.sort(keys, specificity);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    resolveCountry(keys);
+                    commitCheckpoint(country);
+                    return null;
+                }
+            });
+        }
+        LOG.info("Resolving unresolved GeoNames of {} countries.", tasks.size());
+
+        if (threads > 1) {
+            ExecutorService resolverPool = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Void>> results = new ArrayList<Future<Void>>(tasks.size());
+                for (Callable<Void> task : tasks) {
+                    results.add(resolverPool.submit(task));
+                }
+                for (Future<Void> result : results) {
+                    waitFor(result);
+                }
+            } finally {
+                resolverPool.shutdownNow();
+            }
+        } else {
+            for (Callable<Void> task : tasks) {
+                try {
+                    task.call();
+                } catch (IOException ioe) {
+                    throw ioe;
+                } catch (Exception e) {
+                    throw new IOException("Error resolving GeoNames", e);
+                }
+            }
+        }
+
+        // the remaining GeoNames were indexed with their partial ancestry
+        for (List<String> keys : countryKeys.values()) {
+            for (String key : keys) {
+                Set<GeoName> unresolved = unresolvedMap.get(key);
+                if (unresolved != null && unresolved.isEmpty()) {
+                    unresolvedMap.remove(key);
+                }
+            }
+        }
+    }
 
-        // iterate over keys, attempting to resolve less specific keys first; if
-        // they are resolved, this may result in more specific keys being resolved
-        // as well
+    /**
+     * Resolves and indexes the unresolved GeoNames of a single country.  GeoNames that
+     * cannot be resolved are indexed with their partial ancestry and left in the
+     * unresolved map.  The unresolved map is not structurally modified, so countries may
+     * be resolved concurrently.
+     * @param keys          the unresolved ancestry keys of the country, ordered by specificity
+     * @throws IOException  if an error occurs while indexing
+     */
+    private void resolveCountry(final List<String> keys) throws IOException {
         for (String key : keys) {
             String subKey = key;
             GeoName parent = null;
@@ -324,24 +1355,20 @@ public class IndexDirectoryBuilder {
                 subKey = key.substring(0, lastDot);
                 parent = adminMap.get(subKey);
             }
+            Set<GeoName> unresolved = unresolvedMap.get(key);
             if (parent != null) {
-                Set<GeoName> unresolved = unresolvedMap.get(key);
-                if (unresolved == null) {
-                    // resolving a higher-level key also resolved this key; do nothing
-                    break;
-                }
                 Iterator<GeoName> iter = unresolved.iterator();
                 // use iterator so we can remove
                 while (iter.hasNext()) {
                     GeoName geoName = iter.next();
                     // first check to see if a previous loop resolved all parents
                     if (geoName.isAncestryResolved()) {
-                        indexGeoName(geoName);
+                        indexResolvedGeoName(geoName);
                         iter.remove();
                     } else if (geoName.setParent(parent)) {
                         if (geoName.isAncestryResolved()) {
                             // ancestry has been resolved, remove from the unresolved collection
-                            indexGeoName(geoName);
+                            indexResolvedGeoName(geoName);
                             iter.remove();
                         } else {
                             LOG.error("GeoName [{}] should be fully resolved. (parent: {})", geoName, parent);
@@ -350,63 +1377,215 @@ public class IndexDirectoryBuilder {
                         LOG.error("Unable to set parent of {} to {}", geoName, parent);
                     }
                 }
-                if (unresolved.isEmpty()) {
-                    unresolvedMap.remove(key);
-                }
             } else {
                 LOG.error("Unable to resolve parent for GeoName key: {}", key);
             }
         }
+        for (String key : keys) {
+            for (GeoName geoName : unresolvedMap.get(key)) {
+                indexResolvedGeoName(geoName);
+            }
+        }
+    }
+
+    /**
+     * Index a GeoName from the resolution phase of a single-pass build.  A resumed build
+     * may have committed the GeoName before it stopped, so the documents committed for
+     * its ID are replaced the first time the ID is indexed.  Pending GeoNames are tracked
+     * by ID, so a resumed build keeps a single record for an ID that appears in more than
+     * one gazetteer file while waiting for its parent.
+     * @param geoName       the GeoName to index
+     * @throws IOException  if an error occurs while indexing
+     */
+    private void indexResolvedGeoName(final GeoName geoName) throws IOException {
+        if (resuming && replacedIds.add(geoName.getGeonameID())) {
+            getIndexWriter(geoName).deleteDocuments(getIdTerm(geoName.getGeonameID()));
+        }
+        addDocuments(geoName);
     }
 
     /**
      * Builds a set of Lucene documents for the provided GeoName, indexing
      * each using all available names and storing the entire ancestry path
-     * for each GeoName in the index.  See {@link IndexField} for descriptions
-     * of the fields indexed for each document.
+     * for each GeoName in the index.  If the index holds one document per
+     * GeoName, a single document indexing every name is built instead.  See
+     * {@link IndexField} for descriptions of the fields indexed for each document.
      *
      * @param geoName       the GeoName to index
      * @throws IOException  if an error occurs while indexing
      */
     private void indexGeoName(final GeoName geoName) throws IOException {
-        indexCount++;
-        // find all unique names for this GeoName
-        String nm = geoName.getName();
-        String asciiNm = geoName.getAsciiName();
-        Set<String> names = new HashSet<String>();
-        names.add(nm);
-        names.add(asciiNm);
-        names.addAll(geoName.getAlternateNames());
-        // if this is a top-level administrative division, add its primary and alternate country codes
-        // if they are not already found in the name or alternate names
-        if (geoName.isTopLevelAdminDivision()) {
-            if (geoName.getPrimaryCountryCode() != null) {
-                names.add(geoName.getPrimaryCountryCode().name());
+        // GeoNames resolved while reading the gazetteer files were committed by the resumed build
+        if (resuming) {
+            return;
+        }
+        if (indexerPool == null) {
+            addDocuments(geoName);
+            return;
+        }
+        indexBatch.add(geoName);
+        if (indexBatch.size() == BATCH_SIZE) {
+            flushIndexBatch();
+        }
+    }
+
+    /**
+     * Wait for all GeoNames handed to the indexing pool to be indexed.
+     * @throws IOException  if an error occurs while indexing
+     */
+    private void finishIndexing() throws IOException {
+        if (indexerPool != null) {
+            flushIndexBatch();
+            while (!pendingIndexes.isEmpty()) {
+                waitFor(pendingIndexes.removeFirst());
             }
-            for (CountryCode cc : geoName.getAlternateCountryCodes()) {
-                names.add(cc.name());
+        }
+    }
+
+    /**
+     * Get the options of this builder that shape the documents of an index, by the name
+     * of their command line option.
+     * @return the options of this builder
+     */
+    private Map<String, Boolean> getBuildOptions() {
+        Map<String, Boolean> options = new LinkedHashMap<String, Boolean>();
+        options.put(FULL_ANCESTRY_OPTION, fullAncestry);
+        options.put(NAME_NGRAMS_OPTION, nameNGrams);
+        options.put(OMIT_ALTERNATE_NAMES_OPTION, !storeAlternateNames);
+        options.put(GEONAME_DOCUMENTS_OPTION, geoNameDocuments);
+        return options;
+    }
+
+    /**
+     * Get the commit data of a build in the provided phase, recording the options of
+     * this builder.
+     * @param phase         the phase of the build
+     * @return the commit data
+     */
+    private Map<String, String> getCommitData(final String phase) {
+        Map<String, String> commitData = new HashMap<String, String>();
+        commitData.put(BUILD_PHASE_KEY, phase);
+        for (Map.Entry<String, Boolean> option : getBuildOptions().entrySet()) {
+            commitData.put(BUILD_OPTION_KEY_PREFIX + option.getKey(), option.getValue().toString());
+        }
+        return commitData;
+    }
+
+    /**
+     * Ensures the options of this builder match the options used to build an index.
+     * @param commitData    the commit data of the index
+     * @param fieldOptions  the options found from the fields of the index, used when the
+     *                      commit data does not record them
+     * @param indexDir      the index directory
+     * @throws IOException  if an option does not match the option used to build the index
+     */
+    private void checkBuildOptions(final Map<String, String> commitData, final Map<String, Boolean> fieldOptions,
+            final File indexDir) throws IOException {
+        List<String> mismatched = new ArrayList<String>();
+        for (Map.Entry<String, Boolean> option : getBuildOptions().entrySet()) {
+            String recorded = commitData.get(BUILD_OPTION_KEY_PREFIX + option.getKey());
+            Boolean used = recorded != null ? Boolean.valueOf(recorded) : fieldOptions.get(option.getKey());
+            if (used != null && !used.equals(option.getValue())) {
+                mismatched.add("--" + option.getKey());
             }
         }
-        AlternateName preferredName = alternateNameMap.get(geoName.getGeonameID());
-        // ensure preferred name is found in alternate names
-        if (preferredName != null) {
-            names.add(preferredName.name);
+        if (!mismatched.isEmpty()) {
+            throw new IOException(String.format("The %s options must match the options used to build %s.",
+                    StringUtils.join(mismatched, ", "), indexDir.getAbsolutePath()));
         }
-        names.remove(null);
-        names.remove("");
+    }
+
+    /**
+     * Commit the index, recording the countries whose unresolved GeoNames have been indexed.
+     * @param country       the country that was resolved; <code>null</code> to record the
+     *                      GeoNames resolved while reading the gazetteer files
+     * @throws IOException  if an error occurs while committing the index
+     */
+    private synchronized void commitCheckpoint(final String country) throws IOException {
+        if (country != null) {
+            resolvedCountries.add(country);
+        }
+        Map<String, String> commitData = getCommitData(RESOLVING_PHASE);
+        commitData.put(RESOLVED_COUNTRIES_KEY, StringUtils.join(new TreeSet<String>(resolvedCountries), ','));
+        for (IndexWriter writer : getIndexWriters()) {
+            writer.setCommitData(commitData);
+            writer.commit();
+        }
+    }
+
+    /**
+     * Hand the current batch of resolved GeoNames to the indexing pool, waiting for the
+     * oldest pending batches if too many batches are waiting to be indexed.
+     * @throws IOException  if an error occurs while indexing
+     */
+    private void flushIndexBatch() throws IOException {
+        if (indexBatch.isEmpty()) {
+            return;
+        }
+        final List<GeoName> batch = indexBatch;
+        indexBatch = new ArrayList<GeoName>(BATCH_SIZE);
+        pendingIndexes.addLast(indexerPool.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                for (GeoName geoName : batch) {
+                    addDocuments(geoName);
+                }
+                return null;
+            }
+        }));
+        while (pendingIndexes.size() > 2 * threads) {
+            waitFor(pendingIndexes.removeFirst());
+        }
+    }
+
+    /**
+     * Adds the Lucene documents for the provided GeoName to the index.  This
+     * method may be called concurrently by the indexing threads.
+     *
+     * @param geoName       the GeoName to index
+     * @throws IOException  if an error occurs while indexing
+     */
+    private void addDocuments(final GeoName geoName) throws IOException {
+        addDocuments(geoName, preferredNames.get(geoName.getGeonameID()));
+    }
+
+    /**
+     * Adds the Lucene documents for the provided GeoName to the index.
+     *
+     * @param geoName       the GeoName to index
+     * @param preferredName the preferred name of the GeoName; may be <code>null</code>
+     * @throws IOException  if an error occurs while indexing
+     */
+    private void addDocuments(final GeoName geoName, final String preferredName) throws IOException {
+        addDocuments(geoName, preferredName, getIndexNames(geoName, preferredName));
+    }
+
+    /**
+     * Adds the Lucene documents for the provided GeoName to the index under the provided names.
+     *
+     * @param geoName       the GeoName to index
+     * @param preferredName the preferred name of the GeoName; may be <code>null</code>
+     * @param names         the names to index the GeoName under
+     * @throws IOException  if an error occurs while indexing
+     */
+    private void addDocuments(final GeoName geoName, final String preferredName, final Set<String> names)
+            throws IOException {
+        indexCount.incrementAndGet();
 
         // reuse a single Document and field instances
         Document doc = new Document();
-        doc.add(new StoredField(GEONAME.key(), fullAncestry ? geoName.getGazetteerRecordWithAncestry() : geoName.getGazetteerRecord()));
+        doc.add(new StoredField(GEONAME.key(), GeoNameCodec.encode(geoName, fullAncestry, storeAlternateNames)));
         doc.add(new IntField(GEONAME_ID.key(), geoName.getGeonameID(), Field.Store.YES));
+        doc.add(new NumericDocValuesField(GEONAME_ID.key(), geoName.getGeonameID()));
         // if the alternate names file was loaded and we found a preferred name for this GeoName, store it
         if (preferredName != null) {
-            doc.add(new StoredField(PREFERRED_NAME.key(), preferredName.name));
+            doc.add(new StoredField(PREFERRED_NAME.key(), preferredName));
         }
         // index the direct parent ID in the PARENT_ID field
         GeoName parent = geoName.getParent();
         if (parent != null) {
             doc.add(new IntField(PARENT_ID.key(), parent.getGeonameID(), Field.Store.YES));
+            doc.add(new NumericDocValuesField(PARENT_ID.key(), parent.getGeonameID()));
         }
         // index all ancestor IDs in the ANCESTOR_IDS field; this is a secondary field
         // so it can be used to restrict searches and PARENT_ID can be used for ancestor
@@ -416,27 +1595,107 @@ public class IndexDirectoryBuilder {
             parent = parent.getParent();
         }
         doc.add(new LongField(POPULATION.key(), geoName.getPopulation(), Field.Store.YES));
-        // set up sort field based on population and geographic feature type
-        if (geoName.getFeatureClass().equals(FeatureClass.P) || geoName.getFeatureCode().name().startsWith("PCL")) {
-            if (geoName.getGeonameID() != 2643741) // todo: temporary hack until GeoNames.org fixes the population for City of London
-                // boost cities and countries when sorting results by population
-                doc.add(new LongField(SORT_POP.key(), geoName.getPopulation() * 11, Field.Store.YES));
-        } else {
-            // don't boost anything else, because people rarely talk about other stuff
-            // (e.g., Washington State's population is more than 10x that of Washington, DC
-            // but Washington, DC is mentioned far more frequently than Washington State)
-            doc.add(new LongField(SORT_POP.key(), geoName.getPopulation(), Field.Store.YES));
+        // set up sort field based on population and geographic feature type; the sort
+        // population is only stored as a doc value so sorting does not require the
+        // field to be un-inverted onto the heap
+        Long sortPop = getSortPopulation(geoName);
+        if (sortPop != null) {
+            doc.add(new NumericDocValuesField(SORT_POP.key(), sortPop));
         }
         doc.add(new IntField(HISTORICAL.key(), IndexField.getBooleanIndexValue(geoName.getFeatureCode().isHistorical()), Field.Store.NO));
         doc.add(new StringField(FEATURE_CODE.key(), geoName.getFeatureCode().name(), Field.Store.NO));
 
+        if (geoNameDocuments) {
+            // index every name in a single Document; the name length payloads and the
+            // position gap between names keep each name distinct for scoring and phrase queries
+            Set<String> keys = new HashSet<String>();
+            for (String name : names) {
+                doc.add(new Field(INDEX_NAME.key(), name, MULTI_NAME_TYPE));
+                String key = NameKeys.toKey(name);
+                if (keys.add(key)) {
+                    doc.add(new SortedSetDocValuesField(NAME_KEY.key(), new BytesRef(key)));
+                }
+                if (nameNGrams) {
+                    doc.add(new TextField(NAME_NGRAMS.key(), NameNGrams.toIndexText(name), Field.Store.NO));
+                }
+            }
+            getIndexWriter(geoName).addDocument(doc);
+            return;
+        }
+
         // create a unique Document for each name of this GeoName
         TextField nameField = new TextField(INDEX_NAME.key(), "", Field.Store.YES);
         doc.add(nameField);
+        SortedDocValuesField keyField = new SortedDocValuesField(NAME_KEY.key(), new BytesRef());
+        doc.add(keyField);
+        // if requested, index the character n-grams of each name for approximate matching
+        TextField ngramField = null;
+        if (nameNGrams) {
+            ngramField = new TextField(NAME_NGRAMS.key(), "", Field.Store.NO);
+            doc.add(ngramField);
+        }
+        IndexWriter writer = getIndexWriter(geoName);
         for (String name : names) {
             nameField.setStringValue(name);
-            indexWriter.addDocument(doc);
+            keyField.setBytesValue(new BytesRef(NameKeys.toKey(name)));
+            if (ngramField != null) {
+                ngramField.setStringValue(NameNGrams.toIndexText(name));
+            }
+            writer.addDocument(doc);
+        }
+    }
+
+    /**
+     * Get the unique names under which the provided GeoName is indexed: its name, ASCII
+     * name and alternate names, its preferred name and, for top-level administrative
+     * divisions, its country codes.
+     * @param geoName       the GeoName
+     * @param preferredName the preferred name of the GeoName; may be <code>null</code>
+     * @return the names of the GeoName
+     */
+    public static Set<String> getIndexNames(final GeoName geoName, final String preferredName) {
+        // find all unique names for this GeoName
+        Set<String> names = new HashSet<String>();
+        names.add(geoName.getName());
+        names.add(geoName.getAsciiName());
+        names.addAll(geoName.getAlternateNames());
+        // if this is a top-level administrative division, add its primary and alternate country codes
+        // if they are not already found in the name or alternate names
+        if (geoName.isTopLevelAdminDivision()) {
+            if (geoName.getPrimaryCountryCode() != null) {
+                names.add(geoName.getPrimaryCountryCode().name());
+            }
+            for (CountryCode cc : geoName.getAlternateCountryCodes()) {
+                names.add(cc.name());
+            }
+        }
+        // ensure preferred name is found in alternate names
+        names.add(preferredName);
+        names.remove(null);
+        names.remove("");
+        return names;
+    }
+
+    /**
+     * Get the population used to rank matches of the provided GeoName.  Cities and
+     * countries are boosted over other locations of similar population.
+     * @param geoName the GeoName
+     * @return the sort population or <code>null</code> if the GeoName should not be
+     *         ranked by population
+     */
+    public static Long getSortPopulation(final GeoName geoName) {
+        Long sortPop;
+        if (geoName.getFeatureClass().equals(FeatureClass.P) || geoName.getFeatureCode().name().startsWith("PCL")) {
+            // todo: temporary hack until GeoNames.org fixes the population for City of London
+            // boost cities and countries when sorting results by population
+            sortPop = geoName.getGeonameID() != 2643741 ? geoName.getPopulation() * 11 : null;
+        } else {
+            // don't boost anything else, because people rarely talk about other stuff
+            // (e.g., Washington State's population is more than 10x that of Washington, DC
+            // but Washington, DC is mentioned far more frequently than Washington State)
+            sortPop = geoName.getPopulation();
         }
+        return sortPop;
     }
 
     private void logUnresolved() {
@@ -447,7 +1706,7 @@ public class IndexDirectoryBuilder {
             LOG.trace("{}: {} unresolved GeoNames", entry.getKey(), entry.getValue().size());
             unresolvedGeoCount += entry.getValue().size();
             FeatureCode code;
-            switch (entry.getKey().split("\\.").length) {
+            switch (getKeyDepth(entry.getKey())) {
                 case 1:
                     code = FeatureCode.PCL;
                     break;
@@ -525,11 +1784,85 @@ public class IndexDirectoryBuilder {
         }
         boolean replaceIndex = cmd.hasOption(REPLACE_INDEX_OPTION);
         boolean fullAncestry = cmd.hasOption(FULL_ANCESTRY_OPTION);
+        boolean nameNGrams = cmd.hasOption(NAME_NGRAMS_OPTION);
+        boolean storeAlternateNames = !cmd.hasOption(OMIT_ALTERNATE_NAMES_OPTION);
+        boolean geoNameDocuments = cmd.hasOption(GEONAME_DOCUMENTS_OPTION);
+        boolean twoPass = cmd.hasOption(TWO_PASS_OPTION);
+        boolean resume = cmd.hasOption(RESUME_OPTION);
+        int threads = 1;
+        double ramBufferSizeMB = IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB;
+        try {
+            if (cmd.hasOption(THREADS_OPTION)) {
+                threads = Integer.parseInt(cmd.getOptionValue(THREADS_OPTION));
+            }
+            if (cmd.hasOption(RAM_BUFFER_OPTION)) {
+                ramBufferSizeMB = Double.parseDouble(cmd.getOptionValue(RAM_BUFFER_OPTION));
+            }
+        } catch (NumberFormatException nfe) {
+            LOG.error("Invalid number: {}", nfe.getMessage());
+            printHelp(options);
+            System.exit(-1);
+        }
+        if (threads < 1 || ramBufferSizeMB <= 0.0) {
+            LOG.error("The thread count and RAM buffer size must be positive.");
+            printHelp(options);
+            System.exit(-1);
+        }
+
+        String altNamesPath = cmd.getOptionValue(ALTERNATE_NAMES_OPTION);
+        File altNamesFile = altNamesPath != null ? new File(altNamesPath) : null;
+        if (altNamesFile != null && !(altNamesFile.isFile() && altNamesFile.canRead())) {
+            LOG.error("Unable to read alternate names file: {}", altNamesPath);
+            System.exit(-1);
+        }
+
+        ShardLayout shardLayout = null;
+        if (cmd.hasOption(SHARDS_OPTION)) {
+            try {
+                shardLayout = ShardLayout.parse(cmd.getOptionValue(SHARDS_OPTION));
+            } catch (IllegalArgumentException iae) {
+                LOG.error("Invalid shards: {}", iae.getMessage());
+                printHelp(options);
+                System.exit(-1);
+            }
+            if (resume || cmd.hasOption(MODIFICATIONS_FILES_OPTION) || cmd.hasOption(DELETES_FILES_OPTION)) {
+                LOG.error("Sharded indexes cannot be resumed or updated.");
+                System.exit(-1);
+            }
+        }
+        if (resume && twoPass) {
+            LOG.error("Two-pass builds cannot be resumed.");
+            System.exit(-1);
+        }
+
+        IndexDirectoryBuilder builder = new IndexDirectoryBuilder(fullAncestry, nameNGrams, storeAlternateNames,
+                geoNameDocuments, threads, ramBufferSizeMB, twoPass, resume, shardLayout);
 
         File idir = new File(indexPath);
+        // apply modification and deletion files to an existing index
+        if (cmd.hasOption(MODIFICATIONS_FILES_OPTION) || cmd.hasOption(DELETES_FILES_OPTION)) {
+            if (!idir.isDirectory()) {
+                LOG.error("Unable to update index; {} does not exist.", idir.getAbsolutePath());
+                System.exit(-1);
+            }
+            if (ShardLayout.isSharded(idir)) {
+                LOG.error("Unable to update index; {} is sharded.", idir.getAbsolutePath());
+                System.exit(-1);
+            }
+            List<File> modificationFiles = getReadableFiles(cmd.getOptionValues(MODIFICATIONS_FILES_OPTION), "modifications");
+            List<File> deletionFiles = getReadableFiles(cmd.getOptionValues(DELETES_FILES_OPTION), "deletes");
+            if (modificationFiles.isEmpty() && deletionFiles.isEmpty()) {
+                LOG.error("No modifications or deletes files found.");
+                System.exit(-1);
+            }
+            builder.updateIndex(idir, modificationFiles, deletionFiles, altNamesFile);
+            return;
+        }
+
         // if the index directory exists, delete it if we are replacing, otherwise
-        // exit gracefully
-        if (idir.exists() ) {
+        // exit gracefully; a resumed build continues the existing index if it holds
+        // a build to resume
+        if (idir.exists() && !(resume && (!replaceIndex || isResumable(idir)))) {
             if (replaceIndex) {
                 LOG.info("Replacing index: {}", idir.getAbsolutePath());
                 FileUtils.deleteDirectory(idir);
@@ -539,28 +1872,53 @@ public class IndexDirectoryBuilder {
             }
         }
 
-        List<File> gazetteerFiles = new ArrayList<File>();
-        for (String gp : gazetteerPaths) {
-            File gf = new File(gp);
-            if (gf.isFile() && gf.canRead()) {
-                gazetteerFiles.add(gf);
-            } else {
-                LOG.info("Unable to read Gazetteer file: {}", gf.getAbsolutePath());
-            }
-        }
+        List<File> gazetteerFiles = getReadableFiles(gazetteerPaths, "Gazetteer");
         if (gazetteerFiles.isEmpty()) {
             LOG.error("No Gazetteer files found.");
             System.exit(-1);
         }
 
-        String altNamesPath = cmd.getOptionValue(ALTERNATE_NAMES_OPTION);
-        File altNamesFile = altNamesPath != null ? new File(altNamesPath) : null;
-        if (altNamesFile != null && !(altNamesFile.isFile() && altNamesFile.canRead())) {
-            LOG.error("Unable to read alternate names file: {}", altNamesPath);
-            System.exit(-1);
+        builder.buildIndex(idir, gazetteerFiles, altNamesFile);
+    }
+
+    /**
+     * Determines whether a directory holds an index written by a build of this tool
+     * that may be resumed, whether or not the build completed.
+     * @param indexDir      the index directory
+     * @return <code>true</code> if the index records the phase of its build
+     * @throws IOException  if an error occurs while reading the index
+     */
+    private static boolean isResumable(final File indexDir) throws IOException {
+        FSDirectory index = FSDirectory.open(indexDir);
+        try {
+            if (!DirectoryReader.indexExists(index)) {
+                return false;
+            }
+            DirectoryReader reader = DirectoryReader.open(index);
+            try {
+                String phase = reader.getIndexCommit().getUserData().get(BUILD_PHASE_KEY);
+                return RESOLVING_PHASE.equals(phase) || COMPLETE_PHASE.equals(phase);
+            } finally {
+                reader.close();
+            }
+        } finally {
+            index.close();
         }
+    }
 
-        new IndexDirectoryBuilder(fullAncestry).buildIndex(idir, gazetteerFiles, altNamesFile);
+    private static List<File> getReadableFiles(final String[] paths, final String type) {
+        List<File> files = new ArrayList<File>();
+        if (paths != null) {
+            for (String path : paths) {
+                File file = new File(path);
+                if (file.isFile() && file.canRead()) {
+                    files.add(file);
+                } else {
+                    LOG.info("Unable to read {} file: {}", type, file.getAbsolutePath());
+                }
+            }
+        }
+        return files;
     }
 
     private static Options getOptions() {
@@ -577,6 +1935,62 @@ public class IndexDirectoryBuilder {
                         + " This will increase performance at the expense of a larger index.")
                 .create());
 
+        options.addOption(OptionBuilder
+                .withLongOpt(NAME_NGRAMS_OPTION)
+                .withDescription("Index the character n-grams of each name to support the NGRAM fuzzy matching mode."
+                        + " This will increase the size of the index.")
+                .create());
+
+        options.addOption(OptionBuilder
+                .withLongOpt(OMIT_ALTERNATE_NAMES_OPTION)
+                .withDescription("Do not store the alternate names of each element in the gazetteer records. All names are"
+                        + " still searchable, but will not be available from the resolved GeoNames. This will reduce the size of the index.")
+                .create());
+
+        options.addOption(OptionBuilder
+                .withLongOpt(GEONAME_DOCUMENTS_OPTION)
+                .withDescription("Index all names of each element in a single document instead of one document per name."
+                        + " This will reduce the size of the index; duplicate results are never returned from these indexes.")
+                .create());
+
+        options.addOption(OptionBuilder
+                .withLongOpt(THREADS_OPTION)
+                .withDescription("The number of threads used to parse gazetteer records and the number of threads used to"
+                        + " index them. Default: 1")
+                .hasArg()
+                .create('t'));
+
+        options.addOption(OptionBuilder
+                .withLongOpt(RAM_BUFFER_OPTION)
+                .withDescription(String.format("The size, in MB, of the buffer holding added documents before they are"
+                        + " flushed to the index. Default: %s", IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB))
+                .hasArg()
+                .create());
+
+        options.addOption(OptionBuilder
+                .withLongOpt(TWO_PASS_OPTION)
+                .withDescription("Read the gazetteer files twice, collecting the administrative divisions in the first pass"
+                        + " and indexing every element with its ancestry in the second. This bounds memory use by the number"
+                        + " of administrative divisions instead of the number of elements listed before their parents.")
+                .create());
+
+        options.addOption(OptionBuilder
+                .withLongOpt(RESUME_OPTION)
+                .withDescription("Resume a build that stopped while resolving ancestry, keeping the countries committed to"
+                        + " the existing index. The gazetteer files and options must match the stopped build. If the"
+                        + " directory holds no index, a new index is built; any other index is only replaced with -r.")
+                .create());
+
+        options.addOption(OptionBuilder
+                .withLongOpt(SHARDS_OPTION)
+                .withDescription(String.format("Partition the index into shards, each holding the elements of a group of"
+                        + " countries, such as the countries of a continent. Shards are given as a ';'-separated list of"
+                        + " name=country codes entries, e.g. \"americas=US,CA,MX;europe=GB,IE,FR\". Elements of other"
+                        + " countries are indexed in the '%s' shard. Each shard is written to a sub-directory of the"
+                        + " index path.", ShardLayout.DEFAULT_SHARD))
+                .hasArg()
+                .create());
+
         options.addOption(OptionBuilder
                 .withLongOpt(GAZETTEER_FILES_OPTION)
                 .withDescription(String.format("The ':'-separated list of input Gazetteer files to parse.  Default: %s",
@@ -585,6 +1999,22 @@ public class IndexDirectoryBuilder {
                 .withValueSeparator(':')
                 .create('i'));
 
+        options.addOption(OptionBuilder
+                .withLongOpt(MODIFICATIONS_FILES_OPTION)
+                .withDescription("The ':'-separated list of GeoNames modifications files to apply to the existing index."
+                        + " The index must have been built with the same options.")
+                .hasArgs()
+                .withValueSeparator(':')
+                .create());
+
+        options.addOption(OptionBuilder
+                .withLongOpt(DELETES_FILES_OPTION)
+                .withDescription("The ':'-separated list of GeoNames deletes files to apply to the existing index."
+                        + " The index must have been built with the same options.")
+                .hasArgs()
+                .withValueSeparator(':')
+                .create());
+
         options.addOption(OptionBuilder
                 .withLongOpt(ALTERNATE_NAMES_OPTION)
                 .withDescription("When provided, the path to the GeoNames.org alternate names file for resolution of common and "
@@ -611,68 +2041,4 @@ public class IndexDirectoryBuilder {
         HelpFormatter formatter = new HelpFormatter();
         formatter.printHelp("run", options, true);
     }
-
-    private static class AlternateName implements Comparable<AlternateName> {
-        private final int geonameId;
-        private final String name;
-        private final String lang;
-        private final boolean preferredName;
-        private final boolean shortName;
-
-        public AlternateName(final String line) {
-            String[] fields = line.split("\t");
-
-            geonameId = Integer.parseInt(fields[ALT_NAMES_ID_FIELD]);
-            lang = fields[ALT_NAMES_LANG_FIELD];
-            name = fields[ALT_NAMES_NAME_FIELD];
-            preferredName = fields.length > ALT_NAMES_PREFERRED_FIELD && ALT_NAMES_TRUE.equals(fields[ALT_NAMES_PREFERRED_FIELD].trim());
-            shortName = fields.length > ALT_NAMES_SHORT_FIELD && ALT_NAMES_TRUE.equals(fields[ALT_NAMES_SHORT_FIELD].trim());
-        }
-
-        public boolean isEnglish() {
-            return ISO2_ENGLISH.equalsIgnoreCase(lang) || ISO3_ENGLISH.equalsIgnoreCase(lang);
-        }
-
-        public boolean isPrefOrShort() {
-            return preferredName || shortName;
-        }
-
-        @Override
-        public int compareTo(final AlternateName other) {
-            int comp = geonameId - other.geonameId;
-            comp = comp == 0 ? Boolean.compare(preferredName, other.preferredName) : comp;
-            comp = comp == 0 ? Boolean.compare(shortName, other.shortName) : comp;
-            comp = comp == 0 ? name.compareTo(other.name) : comp;
-            return comp;
-        }
-
-        /**
-         * Get the "best" alternate name for the target GeoName.  The best name
-         * is selected in the following order:
-         *
-         * 1. non-null
-         * 2. preferred AND short
-         * 3. preferred only
-         * 4. short only
-         * 5. this
-         *
-         * Note that if the preferred and short name flags are identical, this method
-         * returns the object on which it was called.
-         *
-         * @param other the object to compare to
-         * @return the "best" AlternateName determined by the criteria listed above
-         */
-        public AlternateName bestName(final AlternateName other) {
-            if (other == null) {
-                return this;
-            }
-
-            // if one name is preferred and the other is not, use the preferred name
-            int comp = Boolean.compare(preferredName, other.preferredName);
-            // if preferred is the same, use a short name over a non-short name
-            comp = comp != 0 ? Boolean.compare(shortName, other.shortName) : comp;
-            // if all things are still equal, use this
-            return comp >= 0 ? this : other;
-        }
-    }
 }
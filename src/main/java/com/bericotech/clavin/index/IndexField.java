@@ -35,9 +35,40 @@ import org.slf4j.LoggerFactory;
 
 /**
  * The fields of the Lucene gazetteer index.
+ *
+ * GEONAME_ID, PARENT_ID and SORT_POP are also written as numeric doc
+ * values so they can be read and sorted on without loading stored fields
+ * or un-inverting the index.  Indexes built before doc values were added
+ * store SORT_POP as an indexed, stored numeric field instead; the parent
+ * ID doc value is only set for documents that have a parent.
+ *
+ * NAME_NGRAMS is an optional, unstored field holding the character
+ * n-grams of INDEX_NAME produced by {@link NameNGrams}.  It is only
+ * written when the index is built with n-gram support.
+ *
+ * GEONAME holds the gazetteer record of the GeoName, and optionally its
+ * ancestry, encoded by {@link com.bericotech.clavin.gazetteer.GeoNameCodec}.
+ * Indexes built before the binary format was introduced store the
+ * tab-delimited GeoNames records as a string instead, so
+ * {@link #getValue(Document)} only returns the GEONAME value of those
+ * indexes.
+ *
+ * Indexes are built with one document for each name of a GeoName unless
+ * they are built with one document per GeoName.  Those indexes hold every
+ * name of the GeoName as a value of INDEX_NAME, NAME_KEY and NAME_NGRAMS;
+ * INDEX_NAME has no norms and the tokens of each name carry the length
+ * of the name as a payload (see {@link NameLengthPayloadFilter}), which
+ * identifies the layout of the index.
+ *
+ * NAME_KEY holds the normalized form of INDEX_NAME produced by
+ * {@link NameKeys} as a sorted doc value, or a sorted set doc value in
+ * indexes with one document per GeoName, so the distinct names of an
+ * index can be enumerated in order without loading stored fields.
  */
 public enum IndexField {
     INDEX_NAME("indexName"),
+    NAME_NGRAMS("nameNGrams"),
+    NAME_KEY("nameKey"),
     GEONAME("geoname"),
     GEONAME_ID("geonameID"),
     PARENT_ID("parentID"),
@@ -97,6 +128,8 @@ public enum IndexField {
                 case SORT_POP:
                     value = field.numericValue().longValue();
                     break;
+                case NAME_NGRAMS:
+                case NAME_KEY:
                 case HISTORICAL:
                 case FEATURE_CODE:
                     // these fields are not stored
@@ -0,0 +1,69 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * NameKeys.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.index;
+
+/**
+ * Normalizes location names into the keys written to the
+ * {@link IndexField#NAME_KEY} field.  A name key is the sequence of tokens
+ * produced for the name by the {@link WhitespaceLowerCaseAnalyzer}, joined
+ * by a single space, so two names have the same key exactly when they are
+ * indexed as the same sequence of terms.
+ */
+public final class NameKeys {
+    private NameKeys() {
+    }
+
+    /**
+     * Get the key of the provided name.
+     * @param name the location name
+     * @return the lower-cased, whitespace-normalized key of the name; empty if the
+     *         name contains no text
+     */
+    public static String toKey(final String name) {
+        if (name == null) {
+            return "";
+        }
+        StringBuilder key = new StringBuilder(name.length());
+        boolean space = false;
+        for (int offset = 0; offset < name.length(); ) {
+            int cp = name.codePointAt(offset);
+            offset += Character.charCount(cp);
+            if (Character.isWhitespace(cp)) {
+                space = key.length() > 0;
+                continue;
+            }
+            if (space) {
+                key.append(' ');
+                space = false;
+            }
+            key.appendCodePoint(Character.toLowerCase(cp));
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,104 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * NameLengthPayloadFilter.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Sets the payload of every token of a name to the number of terms in the
+ * name.  When several names are indexed in the same field of a document,
+ * the payloads identify the length of the name that matched a query so it
+ * can be scored as though it was the only name of the document.  Names are
+ * short, so the tokens of each name are buffered until its length is known.
+ */
+public final class NameLengthPayloadFilter extends TokenFilter {
+    /**
+     * The maximum name length recorded in a payload; longer names are recorded
+     * with this length.
+     */
+    public static final int MAX_NAME_LENGTH = 127;
+
+    private final PayloadAttribute payloadAttr = addAttribute(PayloadAttribute.class);
+    private final PositionIncrementAttribute posIncAttr = addAttribute(PositionIncrementAttribute.class);
+    private final List<State> tokens = new ArrayList<State>();
+    private BytesRef payload;
+    private int next;
+
+    /**
+     * Create a new NameLengthPayloadFilter.
+     * @param input the tokens of a single name
+     */
+    public NameLengthPayloadFilter(final TokenStream input) {
+        super(input);
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        if (payload == null) {
+            int length = 0;
+            while (input.incrementToken()) {
+                if (posIncAttr.getPositionIncrement() > 0) {
+                    length++;
+                }
+                tokens.add(captureState());
+            }
+            payload = new BytesRef(new byte[] { (byte) Math.min(length, MAX_NAME_LENGTH) });
+        }
+        if (next >= tokens.size()) {
+            return false;
+        }
+        restoreState(tokens.get(next++));
+        payloadAttr.setPayload(payload);
+        return true;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        tokens.clear();
+        payload = null;
+        next = 0;
+    }
+
+    /**
+     * Get the name length recorded in a payload written by this filter.
+     * @param payload the payload
+     * @return the number of terms in the name
+     */
+    public static int getNameLength(final BytesRef payload) {
+        return payload.bytes[payload.offset] & 0x7F;
+    }
+}
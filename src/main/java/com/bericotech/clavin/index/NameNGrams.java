@@ -0,0 +1,111 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * NameNGrams.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits location names into the character n-grams indexed in the
+ * {@link IndexField#NAME_NGRAMS} field.  Names are lower-cased, runs of
+ * whitespace are replaced by a single '_' and the name is padded with '^'
+ * and '$' so the n-grams at the start and end of a name are distinct from
+ * those in its interior.  Names that share many n-grams are likely to be
+ * within a small edit distance of each other, so the n-gram field can be
+ * used to find approximate matches with a term query per n-gram instead of
+ * enumerating the entire name dictionary.
+ */
+public final class NameNGrams {
+    /**
+     * The number of characters in each n-gram.
+     */
+    public static final int GRAM_SIZE = 3;
+
+    private static final int START = '^';
+    private static final int END = '$';
+    private static final int SPACE = '_';
+
+    private NameNGrams() {
+    }
+
+    /**
+     * Get the n-grams of the provided name, in order of appearance.
+     * @param name the location name
+     * @return the n-grams of the name; empty if the name contains no text
+     */
+    public static List<String> getNGrams(final String name) {
+        String trimmed = name != null ? name.trim() : "";
+        if (trimmed.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // normalize the name, working with code points so supplementary characters are not split
+        int[] codePoints = new int[trimmed.codePointCount(0, trimmed.length()) + 2];
+        int length = 0;
+        codePoints[length++] = START;
+        boolean space = false;
+        for (int offset = 0; offset < trimmed.length(); ) {
+            int cp = trimmed.codePointAt(offset);
+            offset += Character.charCount(cp);
+            if (Character.isWhitespace(cp)) {
+                space = true;
+                continue;
+            }
+            if (space) {
+                codePoints[length++] = SPACE;
+                space = false;
+            }
+            codePoints[length++] = Character.toLowerCase(cp);
+        }
+        codePoints[length++] = END;
+
+        List<String> grams = new ArrayList<String>(Math.max(1, length - GRAM_SIZE + 1));
+        for (int start = 0; start + GRAM_SIZE <= length; start++) {
+            grams.add(new String(codePoints, start, GRAM_SIZE));
+        }
+        return grams;
+    }
+
+    /**
+     * Get the n-grams of the provided name as a single string of whitespace-separated
+     * n-grams, suitable for indexing with the {@link WhitespaceLowerCaseAnalyzer}.
+     * @param name the location name
+     * @return the whitespace-separated n-grams of the name
+     */
+    public static String toIndexText(final String name) {
+        StringBuilder text = new StringBuilder();
+        for (String gram : getNGrams(name)) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(gram);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,272 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * PreferredNames.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.index;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * The preferred English names of GeoNames, selected from the GeoNames.org
+ * alternate names file.  Lines are parsed directly from the bytes of the file:
+ * only lines with an English language code and the preferred or short name flag
+ * set are decoded, and the selected names are held in an open-addressing table
+ * keyed by GeoName ID, so the heap holds one entry per named GeoName instead of
+ * one object per line of the file.
+ *
+ * Column format (see http://download.geonames.org/export/dump/)
+ * ------------------------------------------------------
+ * alternateNameId   : the id of this alternate name, int
+ * geonameid         : geonameId referring to id in table 'geoname', int
+ * isolanguage       : iso 639 language code 2- or 3-characters; 4-characters 'post' for postal
+ *                     codes and 'iata','icao' and faac for airport codes, fr_1793 for French
+ *                     Revolution names,  abbr for abbreviation, link for a website, varchar(7)
+ * alternate name    : alternate name or name variant, varchar(200)
+ * isPreferredName   : '1', if this alternate name is an official/preferred name
+ * isShortName       : '1', if this is a short name like 'California' for 'State of California'
+ * isColloquial      : '1', if this alternate name is a colloquial or slang term
+ * isHistoric        : '1', if this alternate name is historic and was used in the past
+ *
+ * Instances may be read concurrently once they have been loaded.
+ */
+final class PreferredNames {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte TAB = '\t';
+    private static final byte NEWLINE = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+    private static final int PREFERRED_RANK = 2;
+    private static final int SHORT_RANK = 1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int[] ids;
+    private String[] names;
+    private byte[] ranks;
+    private int size;
+
+    PreferredNames() {
+        ids = new int[INITIAL_CAPACITY];
+        names = new String[INITIAL_CAPACITY];
+        ranks = new byte[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Get the preferred name of a GeoName.
+     * @param geonameId the GeoName ID
+     * @return the preferred name or <code>null</code> if no name was found for the GeoName
+     */
+    public String get(final int geonameId) {
+        int mask = ids.length - 1;
+        for (int slot = hash(geonameId) & mask; ids[slot] != 0; slot = (slot + 1) & mask) {
+            if (ids[slot] == geonameId) {
+                return names[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the number of GeoNames with a preferred name.
+     * @return the number of GeoNames with a preferred name
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Read the lines of an alternate names file.
+     * @param in the stream to read; it is not closed by this method
+     * @return the number of lines read
+     * @throws IOException if an error occurs while reading the stream
+     */
+    public int load(final InputStream in) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        byte[] line = new byte[1024];
+        int length = 0;
+        int lines = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            for (int idx = 0; idx < read; idx++) {
+                byte b = buffer[idx];
+                if (b == NEWLINE) {
+                    addAlternateName(line, length);
+                    lines++;
+                    length = 0;
+                } else {
+                    if (length == line.length) {
+                        line = Arrays.copyOf(line, length * 2);
+                    }
+                    line[length++] = b;
+                }
+            }
+        }
+        if (length > 0) {
+            addAlternateName(line, length);
+            lines++;
+        }
+        return lines;
+    }
+
+    /**
+     * Add the name found on a line of the alternate names file if it is an English
+     * preferred or short name that is at least as good as the name already selected
+     * for its GeoName.  Names are selected in the following order:
+     *
+     * 1. preferred AND short
+     * 2. preferred only
+     * 3. short only
+     *
+     * The name read last is selected between names of the same kind.
+     *
+     * @param line the line
+     * @return <code>true</code> if the name was selected
+     */
+    public boolean addAlternateName(final String line) {
+        byte[] bytes = line.getBytes(UTF_8);
+        return addAlternateName(bytes, bytes.length);
+    }
+
+    private boolean addAlternateName(final byte[] line, final int lineLength) {
+        int length = lineLength > 0 && line[lineLength - 1] == CARRIAGE_RETURN ? lineLength - 1 : lineLength;
+        int idStart = indexOf(line, TAB, 0, length) + 1;
+        int langStart = idStart > 0 ? indexOf(line, TAB, idStart, length) + 1 : 0;
+        int nameStart = langStart > 0 ? indexOf(line, TAB, langStart, length) + 1 : 0;
+        // reject lines in other languages before decoding any part of the line
+        if (nameStart <= 0 || !isEnglish(line, langStart, nameStart - 1)) {
+            return false;
+        }
+        int nameEnd = end(line, nameStart, length);
+        int preferredEnd = nameEnd < length ? end(line, nameEnd + 1, length) : -1;
+        int shortEnd = preferredEnd >= 0 && preferredEnd < length ? end(line, preferredEnd + 1, length) : -1;
+        int rank = (preferredEnd >= 0 && isTrue(line, nameEnd + 1, preferredEnd) ? PREFERRED_RANK : 0)
+                + (shortEnd >= 0 && isTrue(line, preferredEnd + 1, shortEnd) ? SHORT_RANK : 0);
+        int geonameId = parseId(line, idStart, langStart - 1);
+        if (rank == 0 || geonameId <= 0) {
+            return false;
+        }
+        return put(geonameId, new String(line, nameStart, nameEnd - nameStart, UTF_8), rank);
+    }
+
+    private boolean put(final int geonameId, final String name, final int rank) {
+        if ((size + 1) * 4 > ids.length * 3) {
+            resize();
+        }
+        int mask = ids.length - 1;
+        int slot = hash(geonameId) & mask;
+        while (ids[slot] != 0 && ids[slot] != geonameId) {
+            slot = (slot + 1) & mask;
+        }
+        if (ids[slot] == 0) {
+            ids[slot] = geonameId;
+            size++;
+        } else if (ranks[slot] > rank) {
+            return false;
+        }
+        names[slot] = name;
+        ranks[slot] = (byte) rank;
+        return true;
+    }
+
+    private void resize() {
+        int[] oldIds = ids;
+        String[] oldNames = names;
+        byte[] oldRanks = ranks;
+        ids = new int[oldIds.length * 2];
+        names = new String[ids.length];
+        ranks = new byte[ids.length];
+        int mask = ids.length - 1;
+        for (int idx = 0; idx < oldIds.length; idx++) {
+            if (oldIds[idx] != 0) {
+                int slot = hash(oldIds[idx]) & mask;
+                while (ids[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                ids[slot] = oldIds[idx];
+                names[slot] = oldNames[idx];
+                ranks[slot] = oldRanks[idx];
+            }
+        }
+    }
+
+    private static int hash(final int geonameId) {
+        // spread sequential IDs across the table
+        int h = geonameId * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int indexOf(final byte[] line, final byte b, final int from, final int length) {
+        for (int idx = from; idx < length; idx++) {
+            if (line[idx] == b) {
+                return idx;
+            }
+        }
+        return -1;
+    }
+
+    private static int end(final byte[] line, final int from, final int length) {
+        int idx = indexOf(line, TAB, from, length);
+        return idx >= 0 ? idx : length;
+    }
+
+    private static boolean isEnglish(final byte[] line, final int start, final int end) {
+        // matches "en" and "eng", ignoring case
+        int length = end - start;
+        return (length == 2 || length == 3)
+                && (line[start] | 0x20) == 'e'
+                && (line[start + 1] | 0x20) == 'n'
+                && (length == 2 || (line[start + 2] | 0x20) == 'g');
+    }
+
+    private static boolean isTrue(final byte[] line, final int start, final int end) {
+        int from = start;
+        int to = end;
+        while (from < to && (line[from] & 0xff) <= ' ') {
+            from++;
+        }
+        while (to > from && (line[to - 1] & 0xff) <= ' ') {
+            to--;
+        }
+        return to - from == 1 && line[from] == '1';
+    }
+
+    private static int parseId(final byte[] line, final int start, final int end) {
+        if (start >= end || end - start > 10) {
+            return -1;
+        }
+        long value = 0;
+        for (int idx = start; idx < end; idx++) {
+            int digit = line[idx] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value <= Integer.MAX_VALUE ? (int) value : -1;
+    }
+}
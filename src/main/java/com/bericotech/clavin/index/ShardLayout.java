@@ -0,0 +1,254 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * ShardLayout.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.index;
+
+import com.bericotech.clavin.gazetteer.CountryCode;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Describes how a sharded gazetteer index partitions GeoNames between shards.
+ * Each named shard holds the GeoNames of a group of countries, such as the
+ * countries of a continent; GeoNames of all other countries, and those with no
+ * country, are held in the {@link #DEFAULT_SHARD default shard}.  GeoNames are
+ * assigned to shards by their primary country code, so every GeoName is held in
+ * the same shard as its administrative ancestors.
+ *
+ * Each shard is a complete Lucene index in a sub-directory of the sharded index
+ * directory named for the shard.  The layout is recorded in the
+ * {@link #LAYOUT_FILE layout file} of the sharded index directory.
+ */
+public final class ShardLayout {
+    /**
+     * The name of the shard holding the GeoNames of countries that are not assigned
+     * to another shard.
+     */
+    public static final String DEFAULT_SHARD = "other";
+
+    /**
+     * The name of the file recording the layout of a sharded index directory.
+     */
+    public static final String LAYOUT_FILE = "shards.properties";
+
+    private static final String SHARD_PREFIX = "shard.";
+    private static final Pattern SHARD_NAME = Pattern.compile("[A-Za-z0-9_-]+");
+
+    // the country codes of each shard, in the order the shards were defined
+    private final Map<String, List<CountryCode>> shards;
+    private final Map<CountryCode, String> countryShards;
+
+    private ShardLayout(final Map<String, List<CountryCode>> shardsIn) {
+        shards = new LinkedHashMap<String, List<CountryCode>>();
+        countryShards = new EnumMap<CountryCode, String>(CountryCode.class);
+        for (Map.Entry<String, List<CountryCode>> entry : shardsIn.entrySet()) {
+            shards.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+            for (CountryCode code : entry.getValue()) {
+                countryShards.put(code, entry.getKey());
+            }
+        }
+        if (!shards.containsKey(DEFAULT_SHARD)) {
+            shards.put(DEFAULT_SHARD, Collections.<CountryCode>emptyList());
+        }
+    }
+
+    /**
+     * Parses a shard specification: a ';'-separated list of shards, each defined as
+     * the shard name followed by '=' and the ','-separated country codes of the shard
+     * (e.g. <code>northamerica=US,CA,MX;europe=GB,IE,FR</code>).
+     * @param spec the shard specification
+     * @return the shard layout
+     * @throws IllegalArgumentException if the specification is invalid, names a shard more
+     *                                  than once or assigns a country to more than one shard
+     */
+    public static ShardLayout parse(final String spec) {
+        Map<String, List<CountryCode>> shards = new LinkedHashMap<String, List<CountryCode>>();
+        Set<CountryCode> assigned = Collections.newSetFromMap(new EnumMap<CountryCode, Boolean>(CountryCode.class));
+        for (String shardSpec : StringUtils.split(spec != null ? spec : "", ';')) {
+            int eq = shardSpec.indexOf('=');
+            String name = (eq >= 0 ? shardSpec.substring(0, eq) : shardSpec).trim();
+            if (!SHARD_NAME.matcher(name).matches()) {
+                throw new IllegalArgumentException(String.format("Invalid shard name: '%s'", name));
+            }
+            if (shards.containsKey(name)) {
+                throw new IllegalArgumentException(String.format("Shard '%s' is defined more than once.", name));
+            }
+            List<CountryCode> codes = new ArrayList<CountryCode>();
+            if (eq >= 0) {
+                for (String code : StringUtils.split(shardSpec.substring(eq + 1), ',')) {
+                    CountryCode country = toCountryCode(code.trim());
+                    if (!assigned.add(country)) {
+                        throw new IllegalArgumentException(String.format("Country '%s' is assigned to more than one shard.", country));
+                    }
+                    codes.add(country);
+                }
+            }
+            if (codes.isEmpty() && !DEFAULT_SHARD.equals(name)) {
+                throw new IllegalArgumentException(String.format("Shard '%s' has no countries.", name));
+            }
+            if (!codes.isEmpty() && DEFAULT_SHARD.equals(name)) {
+                throw new IllegalArgumentException(String.format("Countries may not be assigned to the '%s' shard.", DEFAULT_SHARD));
+            }
+            shards.put(name, codes);
+        }
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("No shards were defined.");
+        }
+        return new ShardLayout(shards);
+    }
+
+    private static CountryCode toCountryCode(final String code) {
+        try {
+            CountryCode country = CountryCode.valueOf(code.toUpperCase());
+            if (country != CountryCode.NULL) {
+                return country;
+            }
+        } catch (IllegalArgumentException iae) {
+            // fall through to the error below
+        }
+        throw new IllegalArgumentException(String.format("Unknown country code: '%s'", code));
+    }
+
+    /**
+     * Is the provided directory a sharded index directory?
+     * @param indexDir the index directory
+     * @return <code>true</code> if the directory holds a shard layout file
+     */
+    public static boolean isSharded(final File indexDir) {
+        return new File(indexDir, LAYOUT_FILE).isFile();
+    }
+
+    /**
+     * Reads the shard layout of a sharded index directory.
+     * @param indexDir the sharded index directory
+     * @return the shard layout
+     * @throws IOException if the layout file cannot be read or is invalid
+     */
+    public static ShardLayout read(final File indexDir) throws IOException {
+        Properties props = new Properties();
+        InputStream in = new FileInputStream(new File(indexDir, LAYOUT_FILE));
+        try {
+            props.load(in);
+        } finally {
+            in.close();
+        }
+        // shards are recorded with their position so they are read in the order they were defined
+        String[] specs = new String[props.size()];
+        for (String key : props.stringPropertyNames()) {
+            String[] parts = StringUtils.split(key, '.');
+            int position;
+            try {
+                position = parts.length == 3 && key.startsWith(SHARD_PREFIX) ? Integer.parseInt(parts[1]) : -1;
+            } catch (NumberFormatException nfe) {
+                position = -1;
+            }
+            if (position < 0 || position >= specs.length || specs[position] != null) {
+                throw new IOException(String.format("Invalid shard layout entry: '%s'", key));
+            }
+            specs[position] = String.format("%s=%s", parts[2], props.getProperty(key));
+        }
+        try {
+            return parse(StringUtils.join(specs, ';'));
+        } catch (IllegalArgumentException iae) {
+            throw new IOException("Invalid shard layout.", iae);
+        }
+    }
+
+    /**
+     * Records this layout in the provided sharded index directory.
+     * @param indexDir the sharded index directory
+     * @throws IOException if an error occurs writing the layout file
+     */
+    public void write(final File indexDir) throws IOException {
+        Properties props = new Properties();
+        int position = 0;
+        for (Map.Entry<String, List<CountryCode>> entry : shards.entrySet()) {
+            props.setProperty(String.format("%s%d.%s", SHARD_PREFIX, position++, entry.getKey()),
+                    StringUtils.join(entry.getValue(), ','));
+        }
+        OutputStream out = new FileOutputStream(new File(indexDir, LAYOUT_FILE));
+        try {
+            props.store(out, "CLAVIN gazetteer shards");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Get the names of the shards, in the order they were defined.  The default
+     * shard is always included.
+     * @return the shard names
+     */
+    public Set<String> getShardNames() {
+        return Collections.unmodifiableSet(shards.keySet());
+    }
+
+    /**
+     * Get the countries assigned to a shard.
+     * @param shard the shard name
+     * @return the countries of the shard; the default shard has no assigned countries
+     */
+    public List<CountryCode> getCountries(final String shard) {
+        List<CountryCode> codes = shards.get(shard);
+        return codes != null ? codes : Collections.<CountryCode>emptyList();
+    }
+
+    /**
+     * Get the shard holding the GeoNames of a country.
+     * @param country the country code; may be <code>null</code>
+     * @return the name of the shard holding the country's GeoNames
+     */
+    public String getShard(final CountryCode country) {
+        String shard = country != null ? countryShards.get(country) : null;
+        return shard != null ? shard : DEFAULT_SHARD;
+    }
+
+    /**
+     * Get the index directory of a shard.
+     * @param indexDir the sharded index directory
+     * @param shard the shard name
+     * @return the index directory of the shard
+     */
+    public File getShardDirectory(final File indexDir, final String shard) {
+        return new File(indexDir, shard);
+    }
+}
@@ -31,9 +31,11 @@ package com.bericotech.clavin.resolver;
 import com.bericotech.clavin.ClavinException;
 import com.bericotech.clavin.extractor.LocationOccurrence;
 import com.bericotech.clavin.gazetteer.CountryCode;
+import com.bericotech.clavin.gazetteer.GeoName;
 import com.bericotech.clavin.gazetteer.query.AncestryMode;
 import com.bericotech.clavin.gazetteer.query.FuzzyMode;
 import com.bericotech.clavin.gazetteer.query.Gazetteer;
+import com.bericotech.clavin.gazetteer.query.GazetteerQuery;
 import com.bericotech.clavin.gazetteer.query.QueryBuilder;
 import com.bericotech.clavin.util.ListUtils;
 
@@ -42,10 +44,12 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Resolves location names into GeoName objects.
@@ -54,6 +58,14 @@ import java.util.Set;
  * {@link com.bericotech.clavin.extractor.LocationExtractor} and resolves them into the appropriate
  * geographic entities (as intended by the document's author based on
  * context) by finding the best match in a gazetteer.
+ *
+ * A resolver created with a {@link ForkJoinPool} queries the gazetteer for
+ * the candidates of long documents in concurrent sub-batches and scores
+ * the context windows of the document in parallel.  The locations are
+ * always returned in document order and are the same locations a resolver
+ * without a pool would select, provided the gazetteer returns the same
+ * candidates for a query whether it is batched with others or not.  The
+ * gazetteer must be safe for use by multiple threads.
  */
 public class ClavinLocationResolver {
     /**
@@ -71,11 +83,23 @@ public class ClavinLocationResolver {
      */
     public static final AncestryMode DEFAULT_ANCESTRY_MODE = AncestryMode.LAZY;
 
+    /**
+     * The fewest location names queried in each concurrent sub-batch when
+     * retrieving candidates with a pool.
+     */
+    static final int MIN_PARALLEL_BATCH_SIZE = 16;
+
     /**
      * The Gazetteer.
      */
     private final Gazetteer gazetteer;
 
+    /**
+     * The pool used to retrieve and score candidates in parallel, or
+     * <code>null</code> to resolve locations on the calling thread.
+     */
+    private final ForkJoinPool pool;
+
     /**
      * Set of demonyms to filter out from extracted location names.
      */
@@ -86,7 +110,19 @@ public class ClavinLocationResolver {
      * @param gazetteer the Gazetteer to query
      */
     public ClavinLocationResolver(final Gazetteer gazetteer) {
+        this(gazetteer, null);
+    }
+
+    /**
+     * Create a new ClavinLocationResolver that retrieves and scores candidates
+     * in parallel.  The resolver does not shut down the pool.
+     * @param gazetteer the Gazetteer to query; it must be thread-safe
+     * @param pool      the pool to resolve locations with; <code>null</code> will
+     *                  resolve locations on the calling thread
+     */
+    public ClavinLocationResolver(final Gazetteer gazetteer, final ForkJoinPool pool) {
         this.gazetteer = gazetteer;
+        this.pool = pool;
     }
 
     /**
@@ -97,13 +133,22 @@ public class ClavinLocationResolver {
         return gazetteer;
     }
 
+    /**
+     * Get the pool used by this resolver.
+     * @return the configured pool or <code>null</code> if locations are resolved
+     *         on the calling thread
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
     /**
      * Resolves the supplied list of location names into
      * {@link ResolvedLocation}s containing {@link com.bericotech.clavin.gazetteer.GeoName} objects
      * using the defaults for maxHitDepth and maxContentWindow.
      *
-     * Calls {@link Gazetteer#getClosestLocations} on
-     * each location name to find all possible matches, then uses
+     * Calls {@link Gazetteer#getClosestLocations} with a
+     * batch of all location names to find all possible matches, then uses
      * heuristics to select the best match for each by calling
      * {@link ClavinLocationResolver#pickBestCandidates}.
      *
@@ -121,8 +166,8 @@ public class ClavinLocationResolver {
      * Resolves the supplied list of location names into
      * {@link ResolvedLocation}s containing {@link com.bericotech.clavin.gazetteer.GeoName} objects.
      *
-     * Calls {@link Gazetteer#getClosestLocations} on
-     * each location name to find all possible matches, then uses
+     * Calls {@link Gazetteer#getClosestLocations} with a
+     * batch of all location names to find all possible matches, then uses
      * heuristics to select the best match for each by calling
      * {@link ClavinLocationResolver#pickBestCandidates}.
      *
@@ -143,11 +188,14 @@ public class ClavinLocationResolver {
      * Resolves the supplied list of location names into
      * {@link ResolvedLocation}s containing {@link com.bericotech.clavin.gazetteer.GeoName} objects.
      *
-     * Calls {@link Gazetteer#getClosestLocations} on
-     * each location name to find all possible matches, then uses
+     * Calls {@link Gazetteer#getClosestLocations} with a
+     * batch of all location names to find all possible matches, then uses
      * heuristics to select the best match for each by calling
      * {@link ClavinLocationResolver#pickBestCandidates}.
      *
+     * Each distinct location name is queried and resolved once; repeated
+     * occurrences of a name are all resolved to the match chosen for it.
+     *
      * @param locations          list of location names to be resolved
      * @param maxHitDepth        number of candidate matches to consider
      * @param maxContextWindow   how much context to consider when resolving
@@ -180,6 +228,25 @@ public class ClavinLocationResolver {
             return Collections.EMPTY_LIST;
         }
 
+        /* Documents tend to mention the same place many times, so repeated
+         * location names are collapsed into a single lookup and a single
+         * choice for the heuristics; the choice is then assigned to every
+         * occurrence of the name.
+         */
+        Map<String, Integer> nameIndex = new HashMap<String, Integer>();
+        List<LocationOccurrence> distinctLocations = new ArrayList<LocationOccurrence>();
+        int[] distinctIndex = new int[filteredLocations.size()];
+        for (int idx = 0; idx < filteredLocations.size(); idx++) {
+            LocationOccurrence location = filteredLocations.get(idx);
+            Integer nameIdx = nameIndex.get(location.getText());
+            if (nameIdx == null) {
+                nameIdx = distinctLocations.size();
+                nameIndex.put(location.getText(), nameIdx);
+                distinctLocations.add(location);
+            }
+            distinctIndex[idx] = nameIdx;
+        }
+
         QueryBuilder builder = new QueryBuilder()
                 .maxResults(maxHitDepth)
                 // translate CLAVIN 1.x 'fuzzy' parameter into NO_EXACT or OFF; it isn't
@@ -188,54 +255,112 @@ public class ClavinLocationResolver {
                 .ancestryMode(ancestryMode)
                 .includeHistorical(true);
 
+        // query the gazetteer for all distinct location names in a single batch
+        List<GazetteerQuery> queries = new ArrayList<GazetteerQuery>(distinctLocations.size());
+        for (LocationOccurrence location : distinctLocations) {
+            queries.add(builder.location(location).build());
+        }
+        List<List<ResolvedLocation>> batchCandidates = getCandidates(queries);
+
+        // the best match for each distinct location name, if one was found
+        ResolvedLocation[] bestMatches = new ResolvedLocation[distinctLocations.size()];
+
         if (maxHitDepth > 1) { // perform context-based heuristic matching
             // stores all possible matches for each location name
             List<List<ResolvedLocation>> allCandidates = new ArrayList<List<ResolvedLocation>>();
+            List<Integer> candidateIndex = new ArrayList<Integer>();
 
             // loop through all the location names
-            for (LocationOccurrence location : filteredLocations) {
-                // get all possible matches
-                List<ResolvedLocation> candidates = gazetteer.getClosestLocations(builder.location(location).build());
-
+            for (int nameIdx = 0; nameIdx < batchCandidates.size(); nameIdx++) {
+                List<ResolvedLocation> candidates = batchCandidates.get(nameIdx);
                 // if we found some possible matches, save them
                 if (candidates.size() > 0) {
                     allCandidates.add(candidates);
+                    candidateIndex.add(nameIdx);
                 }
             }
 
-            // initialize return object
-            List<ResolvedLocation> bestCandidates = new ArrayList<ResolvedLocation>();
-
             // split-up allCandidates into reasonably-sized chunks to
             // limit computational load when heuristically selecting
             // the best matches
-            for (List<List<ResolvedLocation>> theseCandidates : ListUtils.chunkifyList(allCandidates, maxContextWindow)) {
-                // select the best match for each location name based
-                // based on heuristics
-                bestCandidates.addAll(pickBestCandidates(theseCandidates));
+            List<List<List<ResolvedLocation>>> windows = ListUtils.chunkifyList(allCandidates, maxContextWindow);
+
+            List<ResolvedLocation> bestCandidates;
+            // the windows are independent, so score them in parallel if we can
+            if (pool != null && windows.size() > 1) {
+                bestCandidates = pool.invoke(new WindowTask(windows, 0, windows.size()));
+            } else {
+                bestCandidates = new ArrayList<ResolvedLocation>(allCandidates.size());
+                for (List<List<ResolvedLocation>> theseCandidates : windows) {
+                    // select the best match for each location name based
+                    // based on heuristics
+                    bestCandidates.addAll(pickBestCandidates(theseCandidates));
+                }
             }
 
-            return bestCandidates;
+            for (int idx = 0; idx < bestCandidates.size(); idx++) {
+                bestMatches[candidateIndex.get(idx)] = bestCandidates.get(idx);
+            }
         } else { // use no heuristics, simply choose matching location with greatest population
-            // initialize return object
-            List<ResolvedLocation> resolvedLocations = new ArrayList<ResolvedLocation>();
-
-            // stores possible matches for each location name
-            List<ResolvedLocation> candidateLocations;
-
             // loop through all the location names
-            for (LocationOccurrence location : filteredLocations) {
+            for (int nameIdx = 0; nameIdx < batchCandidates.size(); nameIdx++) {
                 // choose the top-sorted candidate for each individual
-                // location name
-                candidateLocations = gazetteer.getClosestLocations(builder.location(location).build());
-
-                // if a match was found, add it to the return list
+                // location name, if a match was found
+                List<ResolvedLocation> candidateLocations = batchCandidates.get(nameIdx);
                 if (candidateLocations.size() > 0) {
-                    resolvedLocations.add(candidateLocations.get(0));
+                    bestMatches[nameIdx] = candidateLocations.get(0);
                 }
             }
+        }
 
-            return resolvedLocations;
+        // initialize return object
+        List<ResolvedLocation> resolvedLocations = new ArrayList<ResolvedLocation>(filteredLocations.size());
+
+        // assign the best match for each name to all of its occurrences, in document order
+        for (int idx = 0; idx < filteredLocations.size(); idx++) {
+            LocationOccurrence location = filteredLocations.get(idx);
+            ResolvedLocation match = bestMatches[distinctIndex[idx]];
+            if (match == null) {
+                continue;
+            }
+            if (location == distinctLocations.get(distinctIndex[idx])) {
+                resolvedLocations.add(match);
+            } else {
+                resolvedLocations.add(new ResolvedLocation(location, match.getGeoname(), match.getMatchedName(),
+                        match.isFuzzy()));
+            }
+        }
+
+        return resolvedLocations;
+    }
+
+    /**
+     * Queries the gazetteer for the candidates of each location name.  With a
+     * pool, large batches are split into contiguous sub-batches of at least
+     * {@link #MIN_PARALLEL_BATCH_SIZE} queries, one for each thread of the pool,
+     * that are queried concurrently.
+     *
+     * @param queries           the queries for each location name
+     * @return                  the candidates for each query, in the order the queries were provided
+     * @throws ClavinException  if an error occurs querying the gazetteer
+     */
+    private List<List<ResolvedLocation>> getCandidates(final List<GazetteerQuery> queries) throws ClavinException {
+        if (pool == null || queries.size() <= MIN_PARALLEL_BATCH_SIZE) {
+            return gazetteer.getClosestLocations(queries);
+        }
+        int parallelism = pool.getParallelism();
+        int batchSize = Math.max(MIN_PARALLEL_BATCH_SIZE, (queries.size() + parallelism - 1) / parallelism);
+        try {
+            return pool.invoke(new CandidateTask(queries, batchSize));
+        } catch (RuntimeException re) {
+            // the pool may rethrow a copy of an exception raised on another thread
+            // that wraps the original exception
+            for (Throwable cause = re; cause != null; cause = cause.getCause()) {
+                if (cause instanceof GazetteerException) {
+                    throw ((GazetteerException) cause).error;
+                }
+            }
+            throw re;
         }
     }
 
@@ -255,19 +380,27 @@ public class ClavinLocationResolver {
      * ought to choose Springfield, MA over Springfield, IL or
      * Springfield, MO.
      *
+     * Combinations are scored on the number of distinct countries and
+     * admin1 codes they span and the depth of the search, and the first
+     * combination, in the order the candidates are ranked, with the best
+     * score at each depth is selected.  The best combination at each depth
+     * is found with a {@link CandidateSearch} rather than by enumerating
+     * every combination.
+     *
      * TODO: consider lat/lon distance in addition to shared
      *       CountryCodes and Admin1Codes.
      *
      * @param allCandidates list of lists of candidate matches for locations names
      * @return              list of best matches for each location name
      */
-    private List<ResolvedLocation> pickBestCandidates(final List<List<ResolvedLocation>> allCandidates) {
+    List<ResolvedLocation> pickBestCandidates(final List<List<ResolvedLocation>> allCandidates) {
         // initialize return object
         List<ResolvedLocation> bestCandidates = new ArrayList<ResolvedLocation>();
+        if (allCandidates.isEmpty()) {
+            return bestCandidates;
+        }
 
-        // variables used in heuristic matching
-        Set<CountryCode> countries;
-        Set<String> states;
+        CandidateSearch search = new CandidateSearch(allCandidates);
         float score;
 
         // initial values for variables controlling recursion
@@ -285,40 +418,35 @@ public class ClavinLocationResolver {
             // reset the threshold for recursion
             oldMaxScore = newMaxScore;
 
-            // loop through all combinations up to the specified depth.
-            // first recursive call for each depth starts at index 0
-            for (List<ResolvedLocation> combo : generateAllCombos(allCandidates, 0, candidateDepth)) {
-                // these lists store the country codes & admin1 codes for each candidate
-                countries = EnumSet.noneOf(CountryCode.class);
-                states = new HashSet<String>();
-                for (ResolvedLocation location: combo) {
-                    countries.add(location.getGeoname().getPrimaryCountryCode());
-                    states.add(location.getGeoname().getPrimaryCountryCode() + location.getGeoname().getAdmin1Code());
-                }
-
-                // calculate a score for this particular combination based on commonality
-                // of country codes & admin1 codes, and the cost of searching this deep
-                // TODO: tune this score calculation!
-                score = ((float)allCandidates.size() / (countries.size() + states.size())) / candidateDepth;
-
-                /* ***********************************************************
-                 * "So, at last we meet for the first time for the last time."
-                 *
-                 * The fact that you're interested enough in CLAVIN to be
-                 * reading this means we're interested in talking with you.
-                 *
-                 * Are you looking for a job, or are you in need of a
-                 * customized solution built around CLAVIN?
-                 *
-                 * Drop us a line at clavin@bericotechnologies.com
-                 *
-                 * "What's the matter, Colonel Sandurz? CHICKEN?"
-                 * **********************************************************/
-
-                // if this is the best we've seen during this loop, update the return value
-                if (score > newMaxScore) {
-                    newMaxScore = score;
-                    bestCandidates = combo;
+            // find the first combination up to the specified depth that spans the
+            // fewest country codes & admin1 codes
+            int[] combo = search.findBest(candidateDepth);
+
+            // calculate a score for this particular combination based on commonality
+            // of country codes & admin1 codes, and the cost of searching this deep
+            // TODO: tune this score calculation!
+            score = ((float)allCandidates.size() / search.getBestCost()) / candidateDepth;
+
+            /* ***********************************************************
+             * "So, at last we meet for the first time for the last time."
+             *
+             * The fact that you're interested enough in CLAVIN to be
+             * reading this means we're interested in talking with you.
+             *
+             * Are you looking for a job, or are you in need of a
+             * customized solution built around CLAVIN?
+             *
+             * Drop us a line at clavin@bericotechnologies.com
+             *
+             * "What's the matter, Colonel Sandurz? CHICKEN?"
+             * **********************************************************/
+
+            // if this is the best we've seen so far, update the return value
+            if (score > newMaxScore) {
+                newMaxScore = score;
+                bestCandidates = new ArrayList<ResolvedLocation>(combo.length);
+                for (int index = 0; index < combo.length; index++) {
+                    bestCandidates.add(allCandidates.get(index).get(combo[index]));
                 }
             }
 
@@ -332,53 +460,263 @@ public class ClavinLocationResolver {
     }
 
     /**
-     * Recursive helper function for
-     * {@link #pickBestCandidates}.
-     *
-     * Generates all combinations of candidate matches from each
-     * location, down to the specified depth through the lists.
+     * Queries the gazetteer for the candidates of a contiguous range of queries,
+     * splitting the range in half until it fits in a single sub-batch.
+     */
+    private final class CandidateTask extends RecursiveTask<List<List<ResolvedLocation>>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<GazetteerQuery> queries;
+        private final int batchSize;
+
+        public CandidateTask(final List<GazetteerQuery> queries, final int batchSize) {
+            this.queries = queries;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        protected List<List<ResolvedLocation>> compute() {
+            if (queries.size() <= batchSize) {
+                try {
+                    return gazetteer.getClosestLocations(queries);
+                } catch (ClavinException ce) {
+                    throw new GazetteerException(ce);
+                }
+            }
+            int mid = queries.size() / 2;
+            CandidateTask head = new CandidateTask(queries.subList(0, mid), batchSize);
+            CandidateTask tail = new CandidateTask(queries.subList(mid, queries.size()), batchSize);
+            tail.fork();
+            List<List<ResolvedLocation>> results = new ArrayList<List<ResolvedLocation>>(queries.size());
+            results.addAll(head.compute());
+            results.addAll(tail.join());
+            return results;
+        }
+    }
+
+    /**
+     * Selects the best candidates for a contiguous range of context windows,
+     * splitting the range in half until it holds a single window.
+     */
+    private final class WindowTask extends RecursiveTask<List<ResolvedLocation>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<List<List<ResolvedLocation>>> windows;
+        private final int start;
+        private final int end;
+
+        public WindowTask(final List<List<List<ResolvedLocation>>> windows, final int start, final int end) {
+            this.windows = windows;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected List<ResolvedLocation> compute() {
+            if (end - start == 1) {
+                return pickBestCandidates(windows.get(start));
+            }
+            int mid = (start + end) >>> 1;
+            WindowTask head = new WindowTask(windows, start, mid);
+            WindowTask tail = new WindowTask(windows, mid, end);
+            tail.fork();
+            List<ResolvedLocation> results = new ArrayList<ResolvedLocation>();
+            results.addAll(head.compute());
+            results.addAll(tail.join());
+            return results;
+        }
+    }
+
+    /**
+     * Carries a gazetteer failure out of a {@link CandidateTask}.
+     */
+    private static final class GazetteerException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final ClavinException error;
+
+        public GazetteerException(final ClavinException error) {
+            super(error);
+            this.error = error;
+        }
+    }
+
+    /**
+     * Branch-and-bound search for {@link #pickBestCandidates}.
      *
-     * Adapted from:
-     * http://www.daniweb.com/software-development/java/threads/177956/generating-all-possible-combinations-from-list-of-sublists#post882553
+     * Finds the combination of candidate matches, down to a given depth
+     * through the lists, that spans the fewest distinct country codes and
+     * admin1 codes.  Ties are broken in favor of the combination that would
+     * be generated first when enumerating combinations in order, with the
+     * first location's candidate varying slowest.
      *
-     * @param allCandidates list of lists of candidate matches for all location names
-     * @param index         keeps track of which location we're working on for recursive calls
-     * @param depth         max depth into list we're searching during this recursion
-     * @return              all combinations of candidate matches for each location, down to the specified depth
+     * Combinations are built one location at a time, maintaining counts of
+     * the countries and admin1 codes in use so the cost of a partial
+     * combination is updated as each candidate is added and removed.  A
+     * partial combination is abandoned once its cost, plus the fewest codes
+     * the remaining locations are certain to add, cannot beat the best
+     * combination found so far.  Candidates of a location sharing the codes
+     * of a higher-ranked candidate are never tried, since the higher-ranked
+     * candidate always scores as well and comes first.
      */
-    private List<List<ResolvedLocation>> generateAllCombos(final List<List<ResolvedLocation>> allCandidates,
-            final int index, final int depth) {
-        // stopping condition
-        if (index == allCandidates.size()) {
-            // return a list with an empty list
-            List<List<ResolvedLocation>> result = new ArrayList<List<ResolvedLocation>>();
-            result.add(new ArrayList<ResolvedLocation>());
-            return result;
+    private static final class CandidateSearch {
+        private final int locationCount;
+        // the country and admin1 code IDs of each candidate of each location
+        private final int[][] countryIds;
+        private final int[][] stateIds;
+        // the number of candidates of the current combination using each code
+        private final int[] countryCounts;
+        private final int[] stateCounts;
+        // marks the codes claimed while computing the lower bound
+        private final boolean[] countryMarks;
+        private final boolean[] stateMarks;
+        // the candidates tried for each location at the current depth
+        private final int[][] options;
+        private final int[] optionCounts;
+        private final int[] current;
+        private final int[] best;
+        private int cost;
+        private int bestCost;
+
+        public CandidateSearch(final List<List<ResolvedLocation>> allCandidates) {
+            locationCount = allCandidates.size();
+            countryIds = new int[locationCount][];
+            stateIds = new int[locationCount][];
+            options = new int[locationCount][];
+            optionCounts = new int[locationCount];
+            current = new int[locationCount];
+            best = new int[locationCount];
+            Map<CountryCode, Integer> countries = new HashMap<CountryCode, Integer>();
+            Map<String, Integer> states = new HashMap<String, Integer>();
+            for (int index = 0; index < locationCount; index++) {
+                List<ResolvedLocation> candidates = allCandidates.get(index);
+                countryIds[index] = new int[candidates.size()];
+                stateIds[index] = new int[candidates.size()];
+                options[index] = new int[candidates.size()];
+                for (int candidate = 0; candidate < candidates.size(); candidate++) {
+                    GeoName geoName = candidates.get(candidate).getGeoname();
+                    countryIds[index][candidate] = getId(countries, geoName.getPrimaryCountryCode());
+                    stateIds[index][candidate] = getId(states, geoName.getPrimaryCountryCode() + geoName.getAdmin1Code());
+                }
+            }
+            countryCounts = new int[countries.size()];
+            stateCounts = new int[states.size()];
+            countryMarks = new boolean[countries.size()];
+            stateMarks = new boolean[states.size()];
         }
 
-        // initialize return object
-        List<List<ResolvedLocation>> result = new ArrayList<List<ResolvedLocation>>();
-
-        // recursive call
-        List<List<ResolvedLocation>> recursive = generateAllCombos(allCandidates, index+1, depth);
-
-        // for each element of the first list of input, up to depth or list size
-        for (int j = 0; j < Math.min(allCandidates.get(index).size(), depth); j++) {
-            // add the element to all combinations obtained for the rest of the lists
-            for (List<ResolvedLocation> recList : recursive) {
-                List<ResolvedLocation> newList = new ArrayList<ResolvedLocation>();
-                // add element of the first list
-                newList.add(allCandidates.get(index).get(j));
-                // copy a combination from recursive
-                for (ResolvedLocation listItem : recList) {
-                    newList.add(listItem);
+        private static <K> int getId(final Map<K, Integer> ids, final K key) {
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = ids.size();
+                ids.put(key, id);
+            }
+            return id;
+        }
+
+        /**
+         * Find the best combination of the candidates down to the provided depth.
+         * @param depth the number of candidates considered for each location
+         * @return the index of the selected candidate of each location; the array is
+         *         reused by subsequent searches
+         */
+        public int[] findBest(final int depth) {
+            for (int index = 0; index < locationCount; index++) {
+                // only try the first candidate with each pair of codes
+                int count = 0;
+                for (int candidate = 0; candidate < Math.min(countryIds[index].length, depth); candidate++) {
+                    boolean seen = false;
+                    for (int option = 0; option < count && !seen; option++) {
+                        seen = countryIds[index][options[index][option]] == countryIds[index][candidate] &&
+                                stateIds[index][options[index][option]] == stateIds[index][candidate];
+                    }
+                    if (!seen) {
+                        options[index][count++] = candidate;
+                    }
                 }
-                // add new combination to result
-                result.add(newList);
+                optionCounts[index] = count;
             }
+            cost = 0;
+            bestCost = Integer.MAX_VALUE;
+            search(0);
+            return best;
+        }
+
+        /**
+         * Get the number of distinct country and admin1 codes spanned by the best combination.
+         * @return the cost of the best combination
+         */
+        public int getBestCost() {
+            return bestCost;
         }
 
-        return result;
+        private void search(final int index) {
+            if (index == locationCount) {
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    System.arraycopy(current, 0, best, 0, locationCount);
+                }
+                return;
+            }
+            if (cost + getLowerBound(index) >= bestCost) {
+                return;
+            }
+            for (int option = 0; option < optionCounts[index]; option++) {
+                int candidate = options[index][option];
+                int country = countryIds[index][candidate];
+                int state = stateIds[index][candidate];
+                if (countryCounts[country]++ == 0) {
+                    cost++;
+                }
+                if (stateCounts[state]++ == 0) {
+                    cost++;
+                }
+                current[index] = candidate;
+                search(index + 1);
+                if (--countryCounts[country] == 0) {
+                    cost--;
+                }
+                if (--stateCounts[state] == 0) {
+                    cost--;
+                }
+            }
+        }
+
+        /**
+         * Get the fewest codes the locations from the provided index onward must add to
+         * the current combination.  A location whose candidates all have country codes
+         * not yet in use adds a country code, and no other location can add the same code
+         * if their candidates share no country codes; the same holds for admin1 codes.
+         * @param index the first location without a selected candidate
+         * @return the lower bound of the cost of the remaining locations
+         */
+        private int getLowerBound(final int index) {
+            return getLowerBound(index, countryIds, countryCounts, countryMarks) +
+                    getLowerBound(index, stateIds, stateCounts, stateMarks);
+        }
+
+        private int getLowerBound(final int index, final int[][] ids, final int[] counts, final boolean[] marks) {
+            int bound = 0;
+            for (int location = index; location < locationCount; location++) {
+                boolean independent = true;
+                for (int option = 0; option < optionCounts[location] && independent; option++) {
+                    int id = ids[location][options[location][option]];
+                    independent = counts[id] == 0 && !marks[id];
+                }
+                if (independent) {
+                    bound++;
+                    for (int option = 0; option < optionCounts[location]; option++) {
+                        marks[ids[location][options[location][option]]] = true;
+                    }
+                }
+            }
+            for (int location = index; location < locationCount; location++) {
+                for (int option = 0; option < optionCounts[location]; option++) {
+                    marks[ids[location][options[location][option]]] = false;
+                }
+            }
+            return bound;
+        }
     }
 
     /**
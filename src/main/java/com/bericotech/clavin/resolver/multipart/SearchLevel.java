@@ -29,7 +29,6 @@
 package com.bericotech.clavin.resolver.multipart;
 
 import com.bericotech.clavin.gazetteer.FeatureClass;
-import com.bericotech.clavin.gazetteer.FeatureCode;
 import com.bericotech.clavin.gazetteer.GeoName;
 import com.bericotech.clavin.gazetteer.query.QueryBuilder;
 
@@ -91,19 +90,19 @@ public enum SearchLevel {
                 builder.addCountryCodes();
                 break;
             case ADMIN1:
-                builder.addFeatureCodes(FeatureCode.ADM1, FeatureCode.ADM1H, FeatureCode.TERR, FeatureCode.PRSH);
+                builder.addAdmin1Codes();
                 break;
             case ADMIN2:
-                builder.addFeatureCodes(FeatureCode.ADM2, FeatureCode.ADM2H);
+                builder.addAdmin2Codes();
                 break;
             case ADMIN3:
-                builder.addFeatureCodes(FeatureCode.ADM3, FeatureCode.ADM3H);
+                builder.addAdmin3Codes();
                 break;
             case ADMIN4:
-                builder.addFeatureCodes(FeatureCode.ADM4, FeatureCode.ADM4H);
+                builder.addAdmin4Codes();
                 break;
             case ADMINX:
-                builder.addFeatureCodes(FeatureCode.ADM5, FeatureCode.ADMD, FeatureCode.ADMDH);
+                builder.addOtherAdminCodes();
                 break;
             case CITY:
                 builder.addCityCodes();
@@ -0,0 +1,119 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * CacheStats.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.util;
+
+/**
+ * An immutable snapshot of the usage statistics for a cache.
+ */
+public class CacheStats {
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final int size;
+    private final int maxSize;
+
+    /**
+     * Create a new CacheStats snapshot.
+     * @param hitCount the number of lookups that found a cached value
+     * @param missCount the number of lookups that did not find a cached value
+     * @param evictionCount the number of entries evicted to honor the maximum size
+     * @param size the number of entries currently cached
+     * @param maxSize the maximum number of entries the cache will hold
+     */
+    public CacheStats(final long hitCount, final long missCount, final long evictionCount, final int size, final int maxSize) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.size = size;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the number of lookups that found a cached value.
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Get the number of lookups that did not find a cached value.
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Get the total number of lookups.
+     * @return the number of hits and misses
+     */
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * Get the ratio of hits to total lookups.
+     * @return the hit rate, or <code>0.0</code> if no lookups have been made
+     */
+    public double getHitRate() {
+        long requests = getRequestCount();
+        return requests > 0 ? (double) hitCount / requests : 0.0;
+    }
+
+    /**
+     * Get the number of entries evicted to honor the maximum size.
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Get the number of entries in the cache when this snapshot was taken.
+     * @return the cache size
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Get the maximum number of entries the cache will hold.
+     * @return the maximum cache size
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits: %d, misses: %d, hitRate: %.3f, evictions: %d, size: %d/%d",
+                hitCount, missCount, getHitRate(), evictionCount, size, maxSize);
+    }
+}
@@ -0,0 +1,208 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * LruCache.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, thread-safe, least-recently-used cache that tracks hit,
+ * miss and eviction counts so it can be sized appropriately.
+ *
+ * A cache configured with a maximum size less than or equal to zero
+ * is disabled; it never stores values and every lookup is a miss.
+ * Entries may optionally expire a fixed time after they are stored;
+ * expired entries are removed when they are next requested and are
+ * counted as evictions.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class LruCache<K, V> {
+    /**
+     * The maximum number of entries held by this cache.
+     */
+    private final int maxSize;
+
+    /**
+     * The time, in nanoseconds, entries remain valid after they are stored;
+     * values less than or equal to zero disable expiration.
+     */
+    private final long ttlNanos;
+
+    /**
+     * The access-ordered backing map; all access is synchronized on this map.
+     */
+    private final Map<K, Entry<V>> map;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Create a new LruCache.
+     * @param maxSize the maximum number of entries; values less than or equal to zero disable the cache
+     */
+    public LruCache(final int maxSize) {
+        this(maxSize, 0L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create a new LruCache whose entries expire a fixed time after they are stored.
+     * @param maxSize the maximum number of entries; values less than or equal to zero disable the cache
+     * @param ttl the time entries remain valid after they are stored; values less than or equal
+     *            to zero disable expiration
+     * @param unit the unit of the ttl
+     */
+    public LruCache(final int maxSize, final long ttl, final TimeUnit unit) {
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<K, Entry<V>> eldest) {
+                boolean evict = size() > LruCache.this.maxSize;
+                if (evict) {
+                    evictions.incrementAndGet();
+                }
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * Get the value cached for the provided key, marking it as most recently used.
+     * @param key the key
+     * @return the cached value or <code>null</code> if it is not found
+     */
+    public V get(final K key) {
+        V value = null;
+        synchronized (map) {
+            Entry<V> entry = map.get(key);
+            if (entry != null) {
+                if (entry.isExpired(System.nanoTime())) {
+                    map.remove(key);
+                    evictions.incrementAndGet();
+                } else {
+                    value = entry.value;
+                }
+            }
+        }
+        if (value != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Cache a value, evicting the least recently used entry if this cache is full.
+     * <code>null</code> keys and values are ignored.
+     * @param key the key
+     * @param value the value
+     */
+    public void put(final K key, final V value) {
+        if (maxSize <= 0 || key == null || value == null) {
+            return;
+        }
+        Entry<V> entry = new Entry<V>(value, ttlNanos > 0L ? System.nanoTime() + ttlNanos : 0L);
+        synchronized (map) {
+            map.put(key, entry);
+        }
+    }
+
+    /**
+     * Remove the value cached for the provided key.
+     * @param key the key
+     * @return the removed value or <code>null</code> if it was not cached
+     */
+    public V remove(final K key) {
+        Entry<V> entry;
+        synchronized (map) {
+            entry = map.remove(key);
+        }
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * Remove all entries from this cache. Statistics are not reset.
+     */
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+        }
+    }
+
+    /**
+     * Get the number of entries currently cached.
+     * @return the number of cached entries
+     */
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    /**
+     * Get the maximum number of entries this cache will hold.
+     * @return the maximum size of this cache
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Get a snapshot of the statistics for this cache.
+     * @return the current cache statistics
+     */
+    public CacheStats getStats() {
+        return new CacheStats(hits.get(), misses.get(), evictions.get(), size(), maxSize);
+    }
+
+    /**
+     * A cached value and the time it expires.
+     * @param <V> the value type
+     */
+    private static final class Entry<V> {
+        private final V value;
+        // the System.nanoTime() at which this entry expires; 0 if it never expires
+        private final long expires;
+
+        public Entry(final V value, final long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+
+        public boolean isExpired(final long now) {
+            return expires != 0L && now - expires >= 0L;
+        }
+    }
+}
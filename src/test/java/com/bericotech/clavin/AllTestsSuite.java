@@ -43,7 +43,11 @@ import org.junit.runners.Suite.SuiteClasses;
     com.bericotech.clavin.extractor.ApacheExtractorTest.class,
     com.bericotech.clavin.extractor.LocationOccurrenceTest.class,
     BasicGeoNameTest.class,
+    com.bericotech.clavin.gazetteer.GeoNameCodecTest.class,
     com.bericotech.clavin.index.BinarySimilarityTest.class,
+    com.bericotech.clavin.index.NameNGramsTest.class,
+    com.bericotech.clavin.index.PreferredNamesTest.class,
+    com.bericotech.clavin.index.ShardLayoutTest.class,
     com.bericotech.clavin.resolver.ResolvedLocationTest.class,
     com.bericotech.clavin.resolver.ClavinLocationResolverTest.class,
     com.bericotech.clavin.resolver.ClavinLocationResolverHeuristicsTest.class,
@@ -53,6 +57,11 @@ import org.junit.runners.Suite.SuiteClasses;
     com.bericotech.clavin.util.ListUtilsTest.class,
     com.bericotech.clavin.util.TextUtilsTest.class,
     com.bericotech.clavin.gazetteer.query.LuceneGazetteerTest.class,
+    com.bericotech.clavin.gazetteer.query.AncestryTableTest.class,
+    com.bericotech.clavin.gazetteer.query.FilterCacheTest.class,
+    com.bericotech.clavin.gazetteer.query.NameDictionaryTest.class,
+    com.bericotech.clavin.gazetteer.query.InMemoryGazetteerTest.class,
+    com.bericotech.clavin.gazetteer.query.ShardedGazetteerTest.class,
     // this one comes last as it's more of an integration test
     com.bericotech.clavin.GeoParserTest.class
 })
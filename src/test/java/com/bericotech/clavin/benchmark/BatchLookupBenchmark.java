@@ -0,0 +1,142 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * BatchLookupBenchmark.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.benchmark;
+
+import com.bericotech.clavin.ClavinException;
+import com.bericotech.clavin.extractor.LocationOccurrence;
+import com.bericotech.clavin.gazetteer.query.AncestryMode;
+import com.bericotech.clavin.gazetteer.query.FuzzyMode;
+import com.bericotech.clavin.gazetteer.query.GazetteerQuery;
+import com.bericotech.clavin.gazetteer.query.LuceneGazetteer;
+import com.bericotech.clavin.gazetteer.query.LuceneGazetteerConfig;
+import com.bericotech.clavin.gazetteer.query.QueryBuilder;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares the latency of resolving every location mentioned in a document
+ * with a loop of individual queries and with a single batch query, on the
+ * calling thread and in parallel.
+ *
+ * Usage: BatchLookupBenchmark [indexDir] [iterations] [threads] [locationsFile]
+ *
+ * The locations file contains one location name per line, in the order they
+ * are mentioned in the document.  If no file is provided, a document of 60
+ * mentions of the locations in the sample gazetteer is used.  The query cache
+ * is disabled so every iteration compiles and executes its queries.
+ */
+public class BatchLookupBenchmark {
+    private static final String[] SAMPLE_NAMES = {
+        "Reston", "Virginia", "Fairfax County", "United States", "Boston", "Reston", "Gun Barrel City",
+        "Straßenhaus", "Virginia", "Antarctica", "Boston", "Chihuahua Desert", "Campo", "Reston",
+        "American Samoa", "Coral Sea Islands Territory", "United States", "Bostonn", "Fairfax County", "Reston",
+        "Murray Canyon", "Virginia", "Springfield", "Boston", "Reston", "Straßenhaus", "Commonwealth of Australia",
+        "United States", "Restn", "Gun Barrel City", "Virginia", "Mogadishu", "Boston", "Reston", "Fairfax County",
+        "Antarctica", "No Man's Land", "United States", "Virginia", "Boston", "Reston", "Campo", "Chihuahua Desert",
+        "Reston", "Virginia", "Straßenhaus", "Fairfax County", "Boston", "United States", "Reston", "Virginia",
+        "Gun Barrel City", "Boston", "Reston", "Fairfax County", "United States", "Murray Canyon", "Virginia",
+        "Boston", "Reston"
+    };
+
+    public static void main(String[] args) throws ClavinException, IOException {
+        File indexDir = new File(args.length > 0 ? args[0] : "./IndexDirectory");
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        List<String> names = args.length > 3 ?
+                Files.readAllLines(new File(args[3]).toPath(), Charset.forName("UTF-8")) : Arrays.asList(SAMPLE_NAMES);
+
+        List<GazetteerQuery> queries = buildQueries(names);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        LuceneGazetteer serial = new LuceneGazetteer(indexDir, new LuceneGazetteerConfig().queryCacheSize(0).geoNameCacheSize(0));
+        LuceneGazetteer parallel = new LuceneGazetteer(indexDir, new LuceneGazetteerConfig().queryCacheSize(0).geoNameCacheSize(0)
+                .batchExecutor(executor));
+        try {
+            // warm up each strategy before it is measured
+            for (int iter = 0; iter < Math.min(iterations, 100); iter++) {
+                runLoop(serial, queries);
+                serial.getClosestLocations(queries);
+                parallel.getClosestLocations(queries);
+            }
+            long loopNanos = 0;
+            long batchNanos = 0;
+            long parallelNanos = 0;
+            for (int iter = 0; iter < iterations; iter++) {
+                loopNanos += runLoop(serial, queries);
+                batchNanos += runBatch(serial, queries);
+                parallelNanos += runBatch(parallel, queries);
+            }
+            System.out.println(String.format("%d locations, %d iterations, %d threads", queries.size(), iterations, threads));
+            System.out.println(String.format("%-16s %14s", "strategy", "ms/document"));
+            System.out.println(String.format("%-16s %14.3f", "serial loop", loopNanos / 1e6 / iterations));
+            System.out.println(String.format("%-16s %14.3f", "batch", batchNanos / 1e6 / iterations));
+            System.out.println(String.format("%-16s %14.3f", "parallel batch", parallelNanos / 1e6 / iterations));
+        } finally {
+            serial.close();
+            parallel.close();
+            executor.shutdown();
+        }
+    }
+
+    private static List<GazetteerQuery> buildQueries(final List<String> names) {
+        // the configuration used by ClavinLocationResolver
+        QueryBuilder builder = new QueryBuilder()
+                .maxResults(5)
+                .fuzzyMode(FuzzyMode.NO_EXACT)
+                .ancestryMode(AncestryMode.ON_CREATE)
+                .includeHistorical(true);
+        List<GazetteerQuery> queries = new ArrayList<GazetteerQuery>(names.size());
+        int position = 0;
+        for (String name : names) {
+            queries.add(builder.location(new LocationOccurrence(name, position)).build());
+            position += name.length() + 1;
+        }
+        return queries;
+    }
+
+    private static long runLoop(final LuceneGazetteer gazetteer, final List<GazetteerQuery> queries) throws ClavinException {
+        long start = System.nanoTime();
+        for (GazetteerQuery query : queries) {
+            gazetteer.getClosestLocations(query);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runBatch(final LuceneGazetteer gazetteer, final List<GazetteerQuery> queries) throws ClavinException {
+        long start = System.nanoTime();
+        gazetteer.getClosestLocations(queries);
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,110 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * DirectoryModeBenchmark.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.benchmark;
+
+import com.bericotech.clavin.ClavinException;
+import com.bericotech.clavin.gazetteer.query.DirectoryMode;
+import com.bericotech.clavin.gazetteer.query.FuzzyMode;
+import com.bericotech.clavin.gazetteer.query.GazetteerQuery;
+import com.bericotech.clavin.gazetteer.query.LuceneGazetteer;
+import com.bericotech.clavin.gazetteer.query.LuceneGazetteerConfig;
+import com.bericotech.clavin.gazetteer.query.QueryBuilder;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the time to open the gazetteer index and the cold and warm query
+ * latency of each {@link DirectoryMode}.
+ *
+ * Usage: DirectoryModeBenchmark [indexDir] [iterations] [mode...]
+ *
+ * The cold pass is the first execution of each query after the index is
+ * opened.  The operating system page cache is not dropped between modes, so
+ * run a single mode per JVM after clearing the page cache to measure truly
+ * cold disk access.
+ */
+public class DirectoryModeBenchmark {
+    private static final String[] QUERY_NAMES = {
+        "Reston", "reston", "RESTON", "Рестон", "Straßenhaus", "Boston", "Gun Barrel City",
+        "Virginia", "Fairfax County", "United States", "Bostonn", "Straßenhaus12", "Bostn", "Straßenha"
+    };
+
+    public static void main(String[] args) throws ClavinException {
+        File indexDir = new File(args.length > 0 ? args[0] : "./IndexDirectory");
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        List<DirectoryMode> modes = new ArrayList<DirectoryMode>();
+        for (int idx = 2; idx < args.length; idx++) {
+            modes.add(DirectoryMode.valueOf(args[idx]));
+        }
+        if (modes.isEmpty()) {
+            for (DirectoryMode mode : DirectoryMode.values()) {
+                modes.add(mode);
+            }
+        }
+
+        List<GazetteerQuery> queries = buildQueries();
+        System.out.println(String.format("%-14s %12s %14s %14s", "mode", "open (ms)", "cold (us/q)", "warm (us/q)"));
+        for (DirectoryMode mode : modes) {
+            long start = System.nanoTime();
+            // disable the query cache so each iteration compiles and executes its queries
+            LuceneGazetteer gazetteer = new LuceneGazetteer(indexDir,
+                    new LuceneGazetteerConfig().directoryMode(mode).queryCacheSize(0));
+            long openNanos = System.nanoTime() - start;
+            try {
+                long coldNanos = runQueries(gazetteer, queries);
+                long warmNanos = 0;
+                for (int iter = 0; iter < iterations; iter++) {
+                    warmNanos += runQueries(gazetteer, queries);
+                }
+                System.out.println(String.format("%-14s %12.1f %14.1f %14.1f", mode, openNanos / 1e6,
+                        coldNanos / 1e3 / queries.size(), warmNanos / 1e3 / ((long) iterations * queries.size())));
+            } finally {
+                gazetteer.close();
+            }
+        }
+    }
+
+    private static List<GazetteerQuery> buildQueries() {
+        QueryBuilder builder = new QueryBuilder().maxResults(5).fuzzyMode(FuzzyMode.NO_EXACT);
+        List<GazetteerQuery> queries = new ArrayList<GazetteerQuery>(QUERY_NAMES.length);
+        for (String name : QUERY_NAMES) {
+            queries.add(builder.location(name).build());
+        }
+        return queries;
+    }
+
+    private static long runQueries(final LuceneGazetteer gazetteer, final List<GazetteerQuery> queries) throws ClavinException {
+        long start = System.nanoTime();
+        for (GazetteerQuery query : queries) {
+            gazetteer.getClosestLocations(query);
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,135 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * FuzzyConfigBenchmark.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.benchmark;
+
+import com.bericotech.clavin.ClavinException;
+import com.bericotech.clavin.gazetteer.query.FuzzyConfig;
+import com.bericotech.clavin.gazetteer.query.FuzzyMode;
+import com.bericotech.clavin.gazetteer.query.GazetteerQuery;
+import com.bericotech.clavin.gazetteer.query.LuceneGazetteer;
+import com.bericotech.clavin.gazetteer.query.LuceneGazetteerConfig;
+import com.bericotech.clavin.gazetteer.query.QueryBuilder;
+import com.bericotech.clavin.resolver.ResolvedLocation;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures the latency and recall of fuzzy matching for a range of
+ * {@link FuzzyConfig}s.  Every query is a misspelling of a location in the
+ * sample gazetteer, so the fuzzy query runs for every name.  Recall@1 is the
+ * fraction of queries whose intended location is the top result and recall@5
+ * the fraction where it is among the top five.
+ *
+ * Usage: FuzzyConfigBenchmark [indexDir] [iterations]
+ */
+public class FuzzyConfigBenchmark {
+    private static final Object[][] MISSPELLINGS = {
+        { "Bostonn", 4930956 },
+        { "Bostn", 4930956 },
+        { "Botson", 4930956 },
+        { "Bsoton", 4930956 },
+        { "Restn", 4781530 },
+        { "Rseton", 4781530 },
+        { "Restonn", 4781530 },
+        { "Straßenhaus12", 2826158 },
+        { "Straßenha", 2826158 },
+        { "Strassenhaus", 2826158 },
+        { "Virgina", 6254928 },
+        { "Virgnia", 6254928 },
+        { "Fairfx County", 4758041 },
+        { "Fiarfax Conty", 4758041 },
+        { "Gun Barel City", 4695535 },
+        { "Gunn Barrel Cty", 4695535 },
+        { "Untied States", 6252001 },
+        { "United Staets", 6252001 },
+        { "Antartica", 6697173 },
+        { "Chihuahua Dessert", 7910633 }
+    };
+
+    private static final FuzzyConfig[] CONFIGS = {
+        FuzzyConfig.DEFAULT,
+        new FuzzyConfig(2, 1, 50, true),
+        new FuzzyConfig(2, 2, 50, true),
+        new FuzzyConfig(2, 0, 10, true),
+        new FuzzyConfig(1, 0, 50, true),
+        new FuzzyConfig(1, 1, 50, true),
+        new FuzzyConfig(1, 0, 50, false)
+    };
+
+    public static void main(String[] args) throws ClavinException {
+        File indexDir = new File(args.length > 0 ? args[0] : "./IndexDirectory");
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        // disable the query and GeoName caches so every iteration builds and executes its queries
+        LuceneGazetteer gazetteer = new LuceneGazetteer(indexDir,
+                new LuceneGazetteerConfig().queryCacheSize(0).geoNameCacheSize(0));
+        try {
+            System.out.println(String.format("%-8s %-8s %-8s %-8s %12s %12s %10s %10s", "edits", "prefix", "expand",
+                    "transp", "mean (us)", "p99 (us)", "recall@1", "recall@5"));
+            for (FuzzyConfig config : CONFIGS) {
+                QueryBuilder builder = new QueryBuilder().maxResults(5).fuzzyMode(FuzzyMode.NO_EXACT).fuzzyConfig(config);
+                int top1 = 0;
+                int top5 = 0;
+                for (Object[] misspelling : MISSPELLINGS) {
+                    List<ResolvedLocation> results = gazetteer.getClosestLocations(builder.location((String) misspelling[0]).build());
+                    for (int idx = 0; idx < results.size(); idx++) {
+                        if (results.get(idx).getGeoname().getGeonameID() == (Integer) misspelling[1]) {
+                            top1 += idx == 0 ? 1 : 0;
+                            top5++;
+                            break;
+                        }
+                    }
+                }
+
+                long[] latencies = new long[iterations * MISSPELLINGS.length];
+                int idx = 0;
+                for (int iter = 0; iter < iterations; iter++) {
+                    for (Object[] misspelling : MISSPELLINGS) {
+                        GazetteerQuery query = builder.location((String) misspelling[0]).build();
+                        long start = System.nanoTime();
+                        gazetteer.getClosestLocations(query);
+                        latencies[idx++] = System.nanoTime() - start;
+                    }
+                }
+                long total = 0;
+                for (long latency : latencies) {
+                    total += latency;
+                }
+                Arrays.sort(latencies);
+                System.out.println(String.format("%-8d %-8d %-8d %-8s %12.1f %12.1f %10.2f %10.2f", config.getMaxEdits(),
+                        config.getPrefixLength(), config.getMaxExpansions(), config.isTranspositions(),
+                        total / 1e3 / latencies.length, latencies[(int) Math.ceil(0.99 * latencies.length) - 1] / 1e3,
+                        (double) top1 / MISSPELLINGS.length, (double) top5 / MISSPELLINGS.length));
+            }
+        } finally {
+            gazetteer.close();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * InMemoryGazetteerBenchmark.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.benchmark;
+
+import com.bericotech.clavin.ClavinException;
+import com.bericotech.clavin.gazetteer.query.FuzzyMode;
+import com.bericotech.clavin.gazetteer.query.Gazetteer;
+import com.bericotech.clavin.gazetteer.query.GazetteerQuery;
+import com.bericotech.clavin.gazetteer.query.InMemoryGazetteer;
+import com.bericotech.clavin.gazetteer.query.LuceneGazetteer;
+import com.bericotech.clavin.gazetteer.query.QueryBuilder;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the load time, heap footprint and query latency of an
+ * {@link InMemoryGazetteer} with a {@link LuceneGazetteer} on the same index.
+ *
+ * Usage: InMemoryGazetteerBenchmark [indexDir] [iterations]
+ *
+ * The heap footprint is the growth of the used heap after garbage collection,
+ * so run with a heap large enough to hold the in-memory gazetteer.
+ */
+public class InMemoryGazetteerBenchmark {
+    private static final String[] EXACT_NAMES = {
+        "Reston", "reston", "Straßenhaus", "Boston", "Virginia", "Fairfax County", "United States",
+        "US", "Springfield", "Washington", "Paris", "London", "Moscow", "Gun Barrel City"
+    };
+    private static final String[] FUZZY_NAMES = {
+        "Bostonn", "Straßenhaus12", "Bostn", "Straßenha", "Virgina", "Gunn Barel Citty", "Londn"
+    };
+
+    public static void main(String[] args) throws ClavinException {
+        File indexDir = new File(args.length > 0 ? args[0] : "./IndexDirectory");
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        List<GazetteerQuery> exact = buildQueries(EXACT_NAMES, FuzzyMode.OFF);
+        List<GazetteerQuery> fuzzy = buildQueries(FUZZY_NAMES, FuzzyMode.NO_EXACT);
+
+        System.out.println(String.format("%-12s %10s %10s %14s %14s", "gazetteer", "load (ms)", "heap (MB)",
+                "exact (us/q)", "fuzzy (us/q)"));
+        for (boolean inMemory : new boolean[] { false, true }) {
+            long heap = usedHeap();
+            long start = System.nanoTime();
+            Gazetteer gazetteer = inMemory ? InMemoryGazetteer.fromIndex(indexDir) : new LuceneGazetteer(indexDir);
+            long loadNanos = System.nanoTime() - start;
+            heap = usedHeap() - heap;
+            try {
+                System.out.println(String.format("%-12s %10.1f %10.1f %14.2f %14.2f", inMemory ? "in-memory" : "lucene",
+                        loadNanos / 1e6, heap / 1048576.0, measure(gazetteer, exact, iterations),
+                        measure(gazetteer, fuzzy, iterations / 10)));
+            } finally {
+                if (gazetteer instanceof LuceneGazetteer) {
+                    ((LuceneGazetteer) gazetteer).close();
+                }
+            }
+        }
+    }
+
+    private static List<GazetteerQuery> buildQueries(final String[] names, final FuzzyMode fuzzyMode) {
+        QueryBuilder builder = new QueryBuilder().maxResults(5).fuzzyMode(fuzzyMode);
+        List<GazetteerQuery> queries = new ArrayList<GazetteerQuery>(names.length);
+        for (String name : names) {
+            queries.add(builder.location(name).build());
+        }
+        return queries;
+    }
+
+    private static double measure(final Gazetteer gazetteer, final List<GazetteerQuery> queries, final int iterations)
+            throws ClavinException {
+        // warm up before measuring
+        for (int iter = 0; iter < Math.max(1, iterations / 10); iter++) {
+            runQueries(gazetteer, queries);
+        }
+        long nanos = 0;
+        for (int iter = 0; iter < iterations; iter++) {
+            nanos += runQueries(gazetteer, queries);
+        }
+        return nanos / 1e3 / ((long) iterations * queries.size());
+    }
+
+    private static long runQueries(final Gazetteer gazetteer, final List<GazetteerQuery> queries) throws ClavinException {
+        long start = System.nanoTime();
+        for (GazetteerQuery query : queries) {
+            gazetteer.getClosestLocations(query);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int idx = 0; idx < 3; idx++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,95 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * NameDictionaryBenchmark.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.benchmark;
+
+import com.bericotech.clavin.ClavinException;
+import com.bericotech.clavin.gazetteer.query.FuzzyMode;
+import com.bericotech.clavin.gazetteer.query.GazetteerQuery;
+import com.bericotech.clavin.gazetteer.query.LuceneGazetteer;
+import com.bericotech.clavin.gazetteer.query.LuceneGazetteerConfig;
+import com.bericotech.clavin.gazetteer.query.QueryBuilder;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the latency of exact queries answered by searching the index with
+ * queries answered from the in-memory name dictionary.
+ *
+ * Usage: NameDictionaryBenchmark [indexDir] [iterations] [maxResults]
+ *
+ * The index must be built with name keys for the dictionary to be loaded.
+ */
+public class NameDictionaryBenchmark {
+    private static final String[] QUERY_NAMES = {
+        "Reston", "reston", "RESTON", "Straßenhaus", "Boston", "Virginia", "Fairfax County",
+        "United States", "US", "Springfield", "Washington", "Paris", "London", "Moscow"
+    };
+
+    public static void main(String[] args) throws ClavinException {
+        File indexDir = new File(args.length > 0 ? args[0] : "./IndexDirectory");
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int maxResults = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+        QueryBuilder builder = new QueryBuilder().maxResults(maxResults).fuzzyMode(FuzzyMode.OFF);
+        List<GazetteerQuery> queries = new ArrayList<GazetteerQuery>(QUERY_NAMES.length);
+        for (String name : QUERY_NAMES) {
+            queries.add(builder.location(name).build());
+        }
+
+        System.out.println(String.format("%-12s %12s %12s", "dictionary", "open (ms)", "us/query"));
+        for (boolean dictionary : new boolean[] { false, true }) {
+            long start = System.nanoTime();
+            LuceneGazetteer gazetteer = new LuceneGazetteer(indexDir, new LuceneGazetteerConfig().nameDictionary(dictionary));
+            long openNanos = System.nanoTime() - start;
+            try {
+                // warm up before measuring
+                for (int iter = 0; iter < iterations / 10; iter++) {
+                    runQueries(gazetteer, queries);
+                }
+                long nanos = 0;
+                for (int iter = 0; iter < iterations; iter++) {
+                    nanos += runQueries(gazetteer, queries);
+                }
+                System.out.println(String.format("%-12s %12.1f %12.2f", dictionary, openNanos / 1e6,
+                        nanos / 1e3 / ((long) iterations * queries.size())));
+            } finally {
+                gazetteer.close();
+            }
+        }
+    }
+
+    private static long runQueries(final LuceneGazetteer gazetteer, final List<GazetteerQuery> queries) throws ClavinException {
+        long start = System.nanoTime();
+        for (GazetteerQuery query : queries) {
+            gazetteer.getClosestLocations(query);
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,126 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * RecordFormatBenchmark.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.benchmark;
+
+import com.bericotech.clavin.gazetteer.BasicGeoName;
+import com.bericotech.clavin.gazetteer.GeoName;
+import com.bericotech.clavin.gazetteer.GeoNameCodec;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the size and decoding cost of the tab-delimited GeoNames records
+ * stored by older indexes with the binary records of {@link GeoNameCodec}.
+ *
+ * Usage: RecordFormatBenchmark [gazetteerFile] [iterations]
+ */
+public class RecordFormatBenchmark {
+    public static void main(String[] args) throws IOException {
+        File gazetteerFile = new File(args.length > 0 ? args[0] : "./src/test/resources/gazetteers/GeoNamesSampleSet.txt");
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+        List<String> text = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(gazetteerFile), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                text.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        List<byte[]> binary = new ArrayList<byte[]>(text.size());
+        List<byte[]> compact = new ArrayList<byte[]>(text.size());
+        long textBytes = 0;
+        long binaryBytes = 0;
+        long compactBytes = 0;
+        for (String line : text) {
+            GeoName geoName = BasicGeoName.parseFromGeoNamesRecord(line);
+            binary.add(GeoNameCodec.encode(geoName, false));
+            compact.add(GeoNameCodec.encode(geoName, false, false));
+            textBytes += line.getBytes("UTF-8").length;
+            binaryBytes += binary.get(binary.size() - 1).length;
+            compactBytes += compact.get(compact.size() - 1).length;
+        }
+
+        System.out.println(String.format("%-28s %12s %16s", "format", "bytes/record", "decode (us/rec)"));
+        System.out.println(String.format("%-28s %12.1f %16.3f", "text", (double) textBytes / text.size(),
+                measureText(text, iterations)));
+        System.out.println(String.format("%-28s %12.1f %16.3f", "binary", (double) binaryBytes / text.size(),
+                measureBinary(binary, iterations)));
+        System.out.println(String.format("%-28s %12.1f %16.3f", "binary, no alternate names",
+                (double) compactBytes / text.size(), measureBinary(compact, iterations)));
+    }
+
+    private static double measureText(final List<String> records, final int iterations) {
+        long sink = 0;
+        // warm up before measuring
+        for (int iter = 0; iter < iterations / 10; iter++) {
+            for (String record : records) {
+                sink += BasicGeoName.parseFromGeoNamesRecord(record).getGeonameID();
+            }
+        }
+        long start = System.nanoTime();
+        for (int iter = 0; iter < iterations; iter++) {
+            for (String record : records) {
+                sink += BasicGeoName.parseFromGeoNamesRecord(record).getGeonameID();
+            }
+        }
+        return report(System.nanoTime() - start, (long) iterations * records.size(), sink);
+    }
+
+    private static double measureBinary(final List<byte[]> records, final int iterations) {
+        long sink = 0;
+        for (int iter = 0; iter < iterations / 10; iter++) {
+            for (byte[] record : records) {
+                sink += GeoNameCodec.decode(record, 0, record.length, null).getGeonameID();
+            }
+        }
+        long start = System.nanoTime();
+        for (int iter = 0; iter < iterations; iter++) {
+            for (byte[] record : records) {
+                sink += GeoNameCodec.decode(record, 0, record.length, null).getGeonameID();
+            }
+        }
+        return report(System.nanoTime() - start, (long) iterations * records.size(), sink);
+    }
+
+    private static double report(final long nanos, final long count, final long sink) {
+        // consume the decoded IDs so decoding cannot be eliminated
+        if (sink == 42) {
+            System.out.println();
+        }
+        return nanos / 1e3 / count;
+    }
+}
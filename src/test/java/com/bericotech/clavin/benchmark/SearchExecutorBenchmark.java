@@ -0,0 +1,169 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * SearchExecutorBenchmark.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.benchmark;
+
+import com.bericotech.clavin.ClavinException;
+import com.bericotech.clavin.gazetteer.query.FuzzyMode;
+import com.bericotech.clavin.gazetteer.query.GazetteerQuery;
+import com.bericotech.clavin.gazetteer.query.LuceneGazetteer;
+import com.bericotech.clavin.gazetteer.query.LuceneGazetteerConfig;
+import com.bericotech.clavin.gazetteer.query.QueryBuilder;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+/**
+ * Compares the query latency distribution of the gazetteer with and without
+ * an executor for searching index segments in parallel.
+ *
+ * Usage: SearchExecutorBenchmark [indexDir] [iterations] [searchThreads] [clients...]
+ *
+ * Each client thread runs every query iterations times; the benchmark is
+ * repeated for each requested number of concurrent clients.  Segment
+ * parallelism only helps an index with several segments, such as the full
+ * GeoNames index.  The sample index has a single segment, so run this against
+ * a full index to see the effect.  Expect lower tail latency for fuzzy queries
+ * with a single client and lower throughput once the clients saturate the
+ * available cores.
+ */
+public class SearchExecutorBenchmark {
+    private static final String[] QUERY_NAMES = {
+        "Reston", "Boston", "Gun Barrel City", "Virginia", "Fairfax County", "United States",
+        "Bostonn", "Straßenhaus12", "Bostn", "Straßenha", "Restn", "Mogadishu", "Muqdisho", "Springfeld"
+    };
+
+    public static void main(String[] args) throws ClavinException, IOException, InterruptedException, ExecutionException {
+        File indexDir = new File(args.length > 0 ? args[0] : "./IndexDirectory");
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int searchThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        List<Integer> clientCounts = new ArrayList<Integer>();
+        for (int idx = 3; idx < args.length; idx++) {
+            clientCounts.add(Integer.parseInt(args[idx]));
+        }
+        if (clientCounts.isEmpty()) {
+            clientCounts.addAll(Arrays.asList(1, Runtime.getRuntime().availableProcessors()));
+        }
+
+        Directory directory = FSDirectory.open(indexDir);
+        try {
+            DirectoryReader reader = DirectoryReader.open(directory);
+            System.out.println(String.format("Index has %d segments.", reader.leaves().size()));
+            reader.close();
+        } finally {
+            directory.close();
+        }
+
+        List<GazetteerQuery> queries = buildQueries();
+        ExecutorService searchExecutor = Executors.newFixedThreadPool(searchThreads);
+        try {
+            System.out.println(String.format("%-10s %8s %10s %10s %10s %10s %10s %12s", "executor", "clients",
+                    "p50 (ms)", "p90 (ms)", "p99 (ms)", "p99.9 (ms)", "max (ms)", "queries/s"));
+            for (int clients : clientCounts) {
+                run("none", new LuceneGazetteerConfig(), indexDir, queries, iterations, clients);
+                run(String.valueOf(searchThreads), new LuceneGazetteerConfig().searchExecutor(searchExecutor), indexDir,
+                        queries, iterations, clients);
+            }
+        } finally {
+            searchExecutor.shutdown();
+        }
+    }
+
+    private static List<GazetteerQuery> buildQueries() {
+        // FILL forces the fuzzy query to run for every name
+        QueryBuilder builder = new QueryBuilder().maxResults(5).fuzzyMode(FuzzyMode.FILL);
+        List<GazetteerQuery> queries = new ArrayList<GazetteerQuery>(QUERY_NAMES.length);
+        for (String name : QUERY_NAMES) {
+            queries.add(builder.location(name).build());
+        }
+        return queries;
+    }
+
+    private static void run(final String label, final LuceneGazetteerConfig config, final File indexDir,
+            final List<GazetteerQuery> queries, final int iterations, final int clients)
+            throws ClavinException, InterruptedException, ExecutionException {
+        // disable the caches so every query is executed against the index
+        final LuceneGazetteer gazetteer = new LuceneGazetteer(indexDir, config.queryCacheSize(0).geoNameCacheSize(0));
+        ExecutorService clientPool = Executors.newFixedThreadPool(clients);
+        try {
+            // warm up
+            for (GazetteerQuery query : queries) {
+                gazetteer.getClosestLocations(query);
+            }
+            List<Future<long[]>> futures = new ArrayList<Future<long[]>>(clients);
+            long start = System.nanoTime();
+            for (int client = 0; client < clients; client++) {
+                futures.add(clientPool.submit(new Callable<long[]>() {
+                    @Override
+                    public long[] call() throws ClavinException {
+                        long[] latencies = new long[iterations * queries.size()];
+                        int idx = 0;
+                        for (int iter = 0; iter < iterations; iter++) {
+                            for (GazetteerQuery query : queries) {
+                                long queryStart = System.nanoTime();
+                                gazetteer.getClosestLocations(query);
+                                latencies[idx++] = System.nanoTime() - queryStart;
+                            }
+                        }
+                        return latencies;
+                    }
+                }));
+            }
+            long[] all = new long[clients * iterations * queries.size()];
+            int offset = 0;
+            for (Future<long[]> future : futures) {
+                long[] latencies = future.get();
+                System.arraycopy(latencies, 0, all, offset, latencies.length);
+                offset += latencies.length;
+            }
+            long elapsed = System.nanoTime() - start;
+            Arrays.sort(all);
+            System.out.println(String.format("%-10s %8d %10.3f %10.3f %10.3f %10.3f %10.3f %12.0f", label, clients,
+                    percentile(all, 0.5), percentile(all, 0.9), percentile(all, 0.99), percentile(all, 0.999),
+                    all[all.length - 1] / 1e6, all.length / (elapsed / 1e9)));
+        } finally {
+            clientPool.shutdown();
+            gazetteer.close();
+        }
+    }
+
+    private static double percentile(final long[] sorted, final double percentile) {
+        int idx = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(idx, sorted.length - 1))] / 1e6;
+    }
+}
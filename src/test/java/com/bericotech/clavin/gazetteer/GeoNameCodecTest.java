@@ -0,0 +1,199 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * GeoNameCodecTest.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.gazetteer;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the binary gazetteer record format of {@link GeoNameCodec}.
+ */
+public class GeoNameCodecTest {
+    private List<GeoName> geoNames;
+
+    @Before
+    public void setUp() throws IOException {
+        BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream(
+                new File("./src/test/resources/gazetteers/GeoNamesSampleSet.txt")), "UTF-8"));
+        geoNames = new ArrayList<GeoName>();
+        String line;
+        while ((line = r.readLine()) != null) {
+            geoNames.add(BasicGeoName.parseFromGeoNamesRecord(line));
+        }
+        r.close();
+    }
+
+    /**
+     * Every field of the sample GeoNames should survive encoding.
+     */
+    @Test
+    public void testRoundTrip() {
+        for (GeoName expected : geoNames) {
+            byte[] record = GeoNameCodec.encode(expected, false);
+            GeoName actual = GeoNameCodec.decode(record, 0, record.length, null);
+            assertGeoNameEquals(expected, actual);
+            // the GeoNames records regenerated for complete records should parse to the same GeoName
+            if (expected.getTimezone() != null) {
+                assertGeoNameEquals(expected, BasicGeoName.parseFromGeoNamesRecord(actual.getGazetteerRecord()));
+            }
+        }
+    }
+
+    /**
+     * Records should be decoded from the middle of a larger array.
+     */
+    @Test
+    public void testDecode_Offset() {
+        GeoName expected = geoNames.get(1);
+        byte[] record = GeoNameCodec.encode(expected, false);
+        byte[] padded = new byte[record.length + 10];
+        System.arraycopy(record, 0, padded, 7, record.length);
+        assertGeoNameEquals(expected, GeoNameCodec.decode(padded, 7, record.length, null));
+    }
+
+    /**
+     * The preferred name should be applied to the decoded GeoName.
+     */
+    @Test
+    public void testDecode_PreferredName() {
+        byte[] record = GeoNameCodec.encode(geoNames.get(7), false);
+        assertEquals("Beantown", GeoNameCodec.decode(record, 0, record.length, "Beantown").getPreferredName());
+    }
+
+    /**
+     * The ancestry of a GeoName should be encoded when requested.
+     */
+    @Test
+    public void testRoundTrip_Ancestry() {
+        GeoName reston = geoNames.get(0);
+        GeoName fairfaxCounty = geoNames.get(10);
+        GeoName virginia = geoNames.get(11);
+        GeoName unitedStates = geoNames.get(9);
+        virginia.setParent(unitedStates);
+        fairfaxCounty.setParent(virginia);
+        reston.setParent(fairfaxCounty);
+
+        byte[] withoutAncestry = GeoNameCodec.encode(reston, false);
+        assertFalse("ancestry should not be resolved", GeoNameCodec.decode(withoutAncestry, 0, withoutAncestry.length, null)
+                .isAncestryResolved());
+
+        byte[] record = GeoNameCodec.encode(reston, true);
+        GeoName actual = GeoNameCodec.decode(record, 0, record.length, null);
+        assertTrue("ancestry should be resolved", actual.isAncestryResolved());
+        for (GeoName expected : Arrays.asList(reston, fairfaxCounty, virginia, unitedStates)) {
+            assertGeoNameEquals(expected, actual);
+            actual = actual.getParent();
+        }
+        assertNull(actual);
+    }
+
+    /**
+     * Omitting alternate names should keep the names that identify top-level territories.
+     */
+    @Test
+    public void testEncode_WithoutAlternateNames() {
+        GeoName boston = geoNames.get(7);
+        assertFalse(boston.getAlternateNames().isEmpty());
+        byte[] full = GeoNameCodec.encode(boston, false);
+        byte[] compact = GeoNameCodec.encode(boston, false, false);
+        assertTrue("record should be smaller", compact.length < full.length);
+        assertTrue(GeoNameCodec.decode(compact, 0, compact.length, null).getAlternateNames().isEmpty());
+
+        for (GeoName expected : geoNames) {
+            byte[] record = GeoNameCodec.encode(expected, false, false);
+            GeoName actual = GeoNameCodec.decode(record, 0, record.length, null);
+            assertEquals(expected.getFeatureCode(), actual.getFeatureCode());
+            assertEquals(expected.getPreferredName(), actual.getPreferredName());
+            assertEquals(expected.isTopLevelAdminDivision(), actual.isTopLevelAdminDivision());
+        }
+    }
+
+    /**
+     * Records should be smaller than the GeoNames records they replace.
+     */
+    @Test
+    public void testEncode_Size() throws IOException {
+        for (GeoName geoName : geoNames) {
+            assertTrue(geoName.getName(),
+                    GeoNameCodec.encode(geoName, false).length < geoName.getGazetteerRecord().getBytes("UTF-8").length);
+        }
+    }
+
+    /**
+     * Text records and records written with other versions should not be decoded.
+     */
+    @Test
+    public void testDecode_UnsupportedVersion() throws IOException {
+        byte[] text = geoNames.get(0).getGazetteerRecord().getBytes("UTF-8");
+        assertFalse(GeoNameCodec.isEncoded(text, 0, text.length));
+        byte[] record = GeoNameCodec.encode(geoNames.get(0), false);
+        assertTrue(GeoNameCodec.isEncoded(record, 0, record.length));
+        record[0] = GeoNameCodec.FORMAT_VERSION + 1;
+        try {
+            GeoNameCodec.decode(record, 0, record.length, null);
+            fail("unsupported versions should not be decoded");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static void assertGeoNameEquals(final GeoName expected, final GeoName actual) {
+        String msg = expected.getName();
+        assertEquals(msg, expected.getGeonameID(), actual.getGeonameID());
+        assertEquals(msg, expected.getName(), actual.getName());
+        assertEquals(msg, expected.getAsciiName(), actual.getAsciiName());
+        assertEquals(msg, expected.getAlternateNames(), actual.getAlternateNames());
+        assertEquals(msg, expected.getPreferredName(), actual.getPreferredName());
+        assertEquals(msg, expected.getLatitude(), actual.getLatitude(), 0.0);
+        assertEquals(msg, expected.getLongitude(), actual.getLongitude(), 0.0);
+        assertEquals(msg, expected.getFeatureClass(), actual.getFeatureClass());
+        assertEquals(msg, expected.getFeatureCode(), actual.getFeatureCode());
+        assertEquals(msg, expected.getPrimaryCountryCode(), actual.getPrimaryCountryCode());
+        assertEquals(msg, expected.getAlternateCountryCodes(), actual.getAlternateCountryCodes());
+        assertEquals(msg, expected.getAdmin1Code(), actual.getAdmin1Code());
+        assertEquals(msg, expected.getAdmin2Code(), actual.getAdmin2Code());
+        assertEquals(msg, expected.getAdmin3Code(), actual.getAdmin3Code());
+        assertEquals(msg, expected.getAdmin4Code(), actual.getAdmin4Code());
+        assertEquals(msg, expected.getPopulation(), actual.getPopulation());
+        assertEquals(msg, expected.getElevation(), actual.getElevation());
+        assertEquals(msg, expected.getDigitalElevationModel(), actual.getDigitalElevationModel());
+        assertEquals(msg, expected.getTimezone(), actual.getTimezone());
+        assertEquals(msg, expected.getModificationDate(), actual.getModificationDate());
+        assertEquals(msg, expected.getParentAncestryKey(), actual.getParentAncestryKey());
+    }
+}
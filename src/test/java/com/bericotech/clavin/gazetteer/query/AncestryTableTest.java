@@ -0,0 +1,88 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * AncestryTableTest.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.gazetteer.query;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Ensures {@link AncestryTable} correctly maps parent GeoNames to their
+ * canonical records and their own parents.
+ */
+public class AncestryTableTest {
+    private static final File INDEX_DIRECTORY = new File("./IndexDirectory");
+
+    private static final int RESTON_VA = 4781530;
+    private static final int FAIRFAX_COUNTY_VA = 4758041;
+    private static final int VIRGINIA = 6254928;
+    private static final int UNITED_STATES = 6252001;
+
+    private Directory directory;
+    private DirectoryReader reader;
+    private AncestryTable instance;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = FSDirectory.open(INDEX_DIRECTORY);
+        reader = DirectoryReader.open(directory);
+        instance = AncestryTable.build(reader);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        reader.close();
+        directory.close();
+    }
+
+    @Test
+    public void testParentIds() {
+        assertNotNull("Expected ancestry table for index with doc values", instance);
+        assertEquals("Incorrect parent for Fairfax County", VIRGINIA, instance.getParentId(FAIRFAX_COUNTY_VA));
+        assertEquals("Incorrect parent for Virginia", UNITED_STATES, instance.getParentId(VIRGINIA));
+        assertEquals("Expected no parent for United States", AncestryTable.NOT_FOUND, instance.getParentId(UNITED_STATES));
+    }
+
+    @Test
+    public void testDocIds() throws IOException {
+        int docId = instance.getDocId(VIRGINIA);
+        assertTrue("Expected canonical record for Virginia", docId >= 0);
+        assertEquals("Incorrect canonical record for Virginia", String.valueOf(VIRGINIA),
+                reader.document(docId).get("geonameID"));
+        // Reston is not the parent of any GeoName
+        assertEquals("Expected Reston to be absent", AncestryTable.NOT_FOUND, instance.getDocId(RESTON_VA));
+    }
+}
@@ -0,0 +1,161 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * CachingGazetteerTest.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.gazetteer.query;
+
+import static org.junit.Assert.*;
+
+import com.bericotech.clavin.ClavinException;
+import com.bericotech.clavin.extractor.LocationOccurrence;
+import com.bericotech.clavin.gazetteer.BasicGeoName;
+import com.bericotech.clavin.gazetteer.FeatureCode;
+import com.bericotech.clavin.gazetteer.GeoName;
+import com.bericotech.clavin.resolver.ResolvedLocation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests to ensure query results are cached and re-bound to the requesting occurrence.
+ */
+public class CachingGazetteerTest {
+    private static final GeoName RESTON = BasicGeoName.parseFromGeoNamesRecord(
+            "4781530\tReston\tReston\tReston,Рестон\t38.96872\t-77.3411\tP\tPPL\tUS\tVA\t059\t58404\t100\t102\tAmerica/New_York\t2011-05-14");
+
+    private CountingGazetteer gazetteer;
+    private CachingGazetteer instance;
+    private QueryBuilder queryBuilder;
+
+    @Before
+    public void setUp() {
+        gazetteer = new CountingGazetteer();
+        instance = new CachingGazetteer(gazetteer, 10);
+        queryBuilder = new QueryBuilder().maxResults(1);
+    }
+
+    @Test
+    public void testCachedResultsRebound() throws ClavinException {
+        instance.getClosestLocations(queryBuilder.location(new LocationOccurrence("Reston", 0)).build());
+        List<ResolvedLocation> results = instance.getClosestLocations(queryBuilder.location(new LocationOccurrence("Reston", 42)).build());
+
+        assertEquals("Expected a single query", 1, gazetteer.queries);
+        assertEquals("Expected cached result", 1, results.size());
+        assertSame("Expected cached GeoName", RESTON, results.get(0).getGeoname());
+        assertEquals("Expected result bound to requested occurrence", 42, results.get(0).getLocation().getPosition());
+        assertEquals("Expected cache hit", 1, instance.getStats().getHitCount());
+    }
+
+    @Test
+    public void testQueryParametersInKey() throws ClavinException {
+        queryBuilder.location("Reston");
+        instance.getClosestLocations(queryBuilder.build());
+        instance.getClosestLocations(queryBuilder.maxResults(5).build());
+        instance.getClosestLocations(queryBuilder.fuzzyMode(FuzzyMode.FILL).build());
+        instance.getClosestLocations(queryBuilder.addFeatureCodes(FeatureCode.PPL).build());
+        instance.getClosestLocations(queryBuilder.addParentIds(6254928).build());
+        instance.getClosestLocations(queryBuilder.location("Boston").build());
+
+        assertEquals("Expected every query to be executed", 6, gazetteer.queries);
+        assertEquals("Expected no cache hits", 0, instance.getStats().getHitCount());
+    }
+
+    @Test
+    public void testNullOccurrenceNotCached() throws ClavinException {
+        instance.getClosestLocations(queryBuilder.build());
+        instance.getClosestLocations(queryBuilder.build());
+
+        assertEquals("Expected every query to be executed", 2, gazetteer.queries);
+        assertEquals("Expected empty cache", 0, instance.getStats().getSize());
+    }
+
+    @Test
+    public void testBatchQueriesMissesOnce() throws ClavinException {
+        instance.getClosestLocations(queryBuilder.location(new LocationOccurrence("Reston", 0)).build());
+        List<GazetteerQuery> batch = Arrays.asList(
+                queryBuilder.location(new LocationOccurrence("Boston", 10)).build(),
+                queryBuilder.location(new LocationOccurrence("Reston", 20)).build(),
+                queryBuilder.location(new LocationOccurrence("Boston", 30)).build()
+        );
+        List<List<ResolvedLocation>> results = instance.getClosestLocations(batch);
+
+        assertEquals("Expected a single batch", 1, gazetteer.batches);
+        assertEquals("Expected one query for Reston and one for Boston", 2, gazetteer.queries);
+        assertEquals("Expected results for every query", 3, results.size());
+        for (int idx = 0; idx < batch.size(); idx++) {
+            assertEquals("Expected result bound to requested occurrence", batch.get(idx).getOccurrence().getPosition(),
+                    results.get(idx).get(0).getLocation().getPosition());
+        }
+        assertEquals("Expected cache hit", 1, instance.getStats().getHitCount());
+        assertEquals("Expected batch results cached", 2, instance.getStats().getSize());
+    }
+
+    /**
+     * A Gazetteer that counts the queries it receives, matching every location to Reston.
+     */
+    private static class CountingGazetteer implements Gazetteer {
+        private int queries;
+        private int batches;
+
+        @Override
+        public List<ResolvedLocation> getClosestLocations(final GazetteerQuery query) {
+            queries++;
+            return Arrays.asList(new ResolvedLocation(query.getOccurrence(), RESTON, "Reston", false));
+        }
+
+        @Override
+        public List<List<ResolvedLocation>> getClosestLocations(final List<GazetteerQuery> queries) {
+            batches++;
+            List<List<ResolvedLocation>> results = new ArrayList<List<ResolvedLocation>>(queries.size());
+            for (GazetteerQuery query : queries) {
+                results.add(getClosestLocations(query));
+            }
+            return results;
+        }
+
+        @Override
+        public GeoName getGeoName(final int geonameId) {
+            return null;
+        }
+
+        @Override
+        public GeoName getGeoName(final int geonameId, final AncestryMode ancestryMode) {
+            return null;
+        }
+
+        @Override
+        public void loadAncestry(final GeoName... geoNames) {
+        }
+
+        @Override
+        public void loadAncestry(final Collection<GeoName> geoNames) {
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * FilterCacheTest.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.gazetteer.query;
+
+import static org.junit.Assert.*;
+
+import com.bericotech.clavin.gazetteer.FeatureCode;
+import java.util.Set;
+import org.apache.lucene.search.Filter;
+import org.junit.Test;
+
+/**
+ * Ensures {@link FilterCache} always caches the filters of the common
+ * feature code sets, even when its least-recently-used caches are disabled.
+ */
+public class FilterCacheTest {
+    @Test
+    public void testPresetFiltersPinned() {
+        FilterCache instance = new FilterCache(0);
+        for (Set<FeatureCode> codes : QueryBuilder.getPresetFeatureCodes()) {
+            GazetteerQuery query = new QueryBuilder().location("Springfield").featureCodes(codes).build();
+            Filter filter = instance.getFilter(query);
+            assertNotNull("Expected filter for " + codes, filter);
+            assertSame("Filter not cached for " + codes, filter, instance.getFilter(query));
+        }
+    }
+
+    @Test
+    public void testUncommonFiltersNotCachedWhenDisabled() {
+        FilterCache instance = new FilterCache(0);
+        GazetteerQuery query = new QueryBuilder().location("Springfield")
+                .addFeatureCodes(FeatureCode.PPLA, FeatureCode.ADM2).build();
+        assertNotSame("Unexpected cached filter", instance.getFilter(query), instance.getFilter(query));
+    }
+}
@@ -0,0 +1,219 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * InMemoryGazetteerTest.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.gazetteer.query;
+
+import static org.junit.Assert.*;
+
+import com.bericotech.clavin.ClavinException;
+import com.bericotech.clavin.gazetteer.FeatureCode;
+import com.bericotech.clavin.gazetteer.GeoName;
+import com.bericotech.clavin.resolver.ResolvedLocation;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Ensures {@link InMemoryGazetteer} implements the Gazetteer contract and
+ * returns the same exact matches as a {@link LuceneGazetteer} loaded from
+ * the same index.
+ */
+public class InMemoryGazetteerTest {
+    private static final File INDEX_DIRECTORY = new File("./IndexDirectory");
+    private static final List<File> GAZETTEER_FILES = Arrays.asList(
+            new File("./src/test/resources/gazetteers/GeoNamesSampleSet.txt"),
+            new File("./src/main/resources/SupplementaryGazetteer.txt"));
+
+    private static final int BOSTON_MA = 4930956;
+    private static final int RESTON_VA = 4781530;
+    private static final int FAIRFAX_COUNTY_VA = 4758041;
+    private static final int VIRGINIA = 6254928;
+    private static final int UNITED_STATES = 6252001;
+    private static final int STRAßENHAUS_DE = 2826158;
+    private static final int GUN_BARREL_CITY_TX = 4695535;
+    private static final int YUGOSLAVIA = 8505035;
+
+    private static LuceneGazetteer lucene;
+    private static InMemoryGazetteer fromIndex;
+    private static InMemoryGazetteer fromGeoNames;
+
+    private QueryBuilder queryBuilder;
+
+    @BeforeClass
+    public static void setUpClass() throws ClavinException {
+        lucene = new LuceneGazetteer(INDEX_DIRECTORY);
+        fromIndex = InMemoryGazetteer.fromIndex(INDEX_DIRECTORY);
+        fromGeoNames = InMemoryGazetteer.fromGeoNames(GAZETTEER_FILES);
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws ClavinException {
+        lucene.close();
+    }
+
+    @Before
+    public void setUp() {
+        queryBuilder = new QueryBuilder().maxResults(1).fuzzyMode(FuzzyMode.OFF);
+    }
+
+    @Test
+    public void testSameExactMatchesAsIndex() throws ClavinException {
+        String[] names = { "Reston", "RESTON", "Рестон", "Straßenhaus", "Boston", "Virginia", "Fairfax County",
+            "United States", "US", "Gun Barrel", "Gun Barrel City", "Springfield", "Yugoslavia", "Xyzzy" };
+        for (int maxResults : new int[] { 1, 5 }) {
+            for (boolean dedupe : new boolean[] { true, false }) {
+                queryBuilder.maxResults(maxResults).filterDupes(dedupe);
+                for (String name : names) {
+                    GazetteerQuery query = queryBuilder.location(name).build();
+                    assertEquals(String.format("%s [max: %d, dedupe: %s]: Expected same results as index", name, maxResults, dedupe),
+                            describe(lucene.getClosestLocations(query)), describe(fromIndex.getClosestLocations(query)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFromGeoNames() throws ClavinException {
+        assertEquals("Expected every GeoName of the index", fromIndex.size(), fromGeoNames.size());
+        queryBuilder.ancestryMode(AncestryMode.ON_CREATE);
+        for (InMemoryGazetteer gazetteer : Arrays.asList(fromIndex, fromGeoNames)) {
+            List<ResolvedLocation> locs = gazetteer.getClosestLocations(queryBuilder.location("Reston").build());
+            assertEquals("Expected single result", 1, locs.size());
+            assertFalse("Expected non-fuzzy result", locs.get(0).isFuzzy());
+            assertEquals("Expected ancestry path of Reston, Fairfax County, Virginia, United States",
+                    Arrays.asList(RESTON_VA, FAIRFAX_COUNTY_VA, VIRGINIA, UNITED_STATES), ancestry(locs.get(0).getGeoname()));
+            assertEquals("Incorrect match", STRAßENHAUS_DE, gazetteer.getClosestLocations(
+                    queryBuilder.location("Straßenhaus").build()).get(0).getGeoname().getGeonameID());
+        }
+    }
+
+    @Test
+    public void testFuzzy() throws ClavinException {
+        Object[][] testCases = new Object[][]{
+            new Object[]{"Bostonn", BOSTON_MA},
+            new Object[]{"Bostn", BOSTON_MA},
+            new Object[]{"Straßenhaus12", STRAßENHAUS_DE},
+            new Object[]{"Straßenhaus Airport", STRAßENHAUS_DE},
+            new Object[]{"Gunn Barel Citty", GUN_BARREL_CITY_TX}
+        };
+        queryBuilder.fuzzyMode(FuzzyMode.NO_EXACT);
+        for (Object[] test : testCases) {
+            List<ResolvedLocation> locs = fromIndex.getClosestLocations(queryBuilder.location((String) test[0]).build());
+            assertEquals(String.format("%s: Expected single result", test[0]), 1, locs.size());
+            assertTrue(String.format("%s: Expected fuzzy result", test[0]), locs.get(0).isFuzzy());
+            assertEquals(String.format("%s: Incorrect match", test[0]), test[1], locs.get(0).getGeoname().getGeonameID());
+        }
+        // the fuzzy configuration limits the accepted edits
+        queryBuilder.location("Bostonnn");
+        assertFalse("Expected match with default configuration", fromIndex.getClosestLocations(queryBuilder.build()).isEmpty());
+        assertTrue("Expected no match with a single edit",
+                fromIndex.getClosestLocations(queryBuilder.fuzzyConfig(new FuzzyConfig(1, 0, 50, true)).build()).isEmpty());
+        queryBuilder.location("Botson");
+        assertTrue("Expected no match without transpositions",
+                fromIndex.getClosestLocations(queryBuilder.fuzzyConfig(new FuzzyConfig(1, 0, 50, false)).build()).isEmpty());
+        // exact matches are not replaced by fuzzy matches
+        assertFalse("Expected exact match", fromIndex.getClosestLocations(
+                queryBuilder.fuzzyConfig(FuzzyConfig.DEFAULT).location("Reston").build()).get(0).isFuzzy());
+    }
+
+    @Test
+    public void testFilters() throws ClavinException {
+        queryBuilder.maxResults(10);
+        List<ResolvedLocation> locs = fromIndex.getClosestLocations(queryBuilder.location("Virginia").addCountryCodes().build());
+        assertTrue("Expected no countries named Virginia", locs.isEmpty());
+
+        locs = fromIndex.getClosestLocations(queryBuilder.clearFeatureCodes().addFeatureCodes(FeatureCode.ADM1).build());
+        assertFalse("Expected state of Virginia", locs.isEmpty());
+        for (ResolvedLocation loc : locs) {
+            assertEquals("Unexpected feature code", FeatureCode.ADM1, loc.getGeoname().getFeatureCode());
+        }
+
+        locs = fromIndex.getClosestLocations(queryBuilder.clearFeatureCodes().location("Reston").addParentIds(VIRGINIA).build());
+        assertEquals("Expected Reston, Virginia", RESTON_VA, locs.get(0).getGeoname().getGeonameID());
+        locs = fromIndex.getClosestLocations(queryBuilder.clearParentIds().addParentIds(BOSTON_MA).build());
+        assertTrue("Expected no Reston in Boston", locs.isEmpty());
+
+        queryBuilder.clearParentIds().location("Yugoslavia").includeHistorical(true);
+        assertEquals("Expected historical match", YUGOSLAVIA,
+                fromIndex.getClosestLocations(queryBuilder.build()).get(0).getGeoname().getGeonameID());
+        assertTrue("Expected no historical match", fromIndex.getClosestLocations(queryBuilder.includeHistorical(false).build()).isEmpty());
+    }
+
+    @Test
+    public void testAncestryModes() throws ClavinException {
+        GeoName lazy = fromIndex.getGeoName(RESTON_VA);
+        assertNotNull("Expected Reston", lazy);
+        assertEquals("Expected lazily loaded parent", FAIRFAX_COUNTY_VA, lazy.getParent().getGeonameID());
+
+        GeoName manual = fromIndex.getGeoName(RESTON_VA, AncestryMode.MANUAL);
+        assertFalse("Expected unresolved ancestry", manual.isAncestryResolved());
+        assertEquals("Expected parent ID", Integer.valueOf(FAIRFAX_COUNTY_VA), manual.getParentId());
+        fromIndex.loadAncestry(manual);
+        assertEquals("Expected ancestry path of Reston, Fairfax County, Virginia, United States",
+                Arrays.asList(RESTON_VA, FAIRFAX_COUNTY_VA, VIRGINIA, UNITED_STATES), ancestry(manual));
+
+        assertTrue("Expected resolved ancestry", fromIndex.getGeoName(RESTON_VA, AncestryMode.ON_CREATE).isAncestryResolved());
+        assertNull("Expected no GeoName for unknown ID", fromIndex.getGeoName(-1));
+    }
+
+    @Test
+    public void testBatchQueries() throws ClavinException {
+        List<GazetteerQuery> queries = new ArrayList<GazetteerQuery>();
+        for (String name : new String[] { "Reston", "", "Boston", "Reston" }) {
+            queries.add(queryBuilder.location(name).build());
+        }
+        List<List<ResolvedLocation>> results = fromIndex.getClosestLocations(queries);
+        assertEquals("Expected results for every query", queries.size(), results.size());
+        for (int idx = 0; idx < queries.size(); idx++) {
+            assertEquals("Expected same results as single query", describe(fromIndex.getClosestLocations(queries.get(idx))),
+                    describe(results.get(idx)));
+        }
+        assertTrue("Expected no results for empty query", results.get(1).isEmpty());
+    }
+
+    private static List<Integer> ancestry(final GeoName geoName) {
+        List<Integer> path = new ArrayList<Integer>();
+        for (GeoName geo = geoName; geo != null; geo = geo.getParent()) {
+            path.add(geo.getGeonameID());
+        }
+        return path;
+    }
+
+    private static List<String> describe(final List<ResolvedLocation> locs) {
+        List<String> described = new ArrayList<String>(locs.size());
+        for (ResolvedLocation loc : locs) {
+            described.add(String.format("%d:%s:%s", loc.getGeoname().getGeonameID(), loc.getMatchedName(), loc.isFuzzy()));
+        }
+        return described;
+    }
+}
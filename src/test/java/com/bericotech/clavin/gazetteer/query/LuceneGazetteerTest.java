@@ -32,18 +32,39 @@ import static org.junit.Assert.*;
 
 import com.bericotech.clavin.ClavinException;
 import com.bericotech.clavin.extractor.LocationOccurrence;
+import com.bericotech.clavin.gazetteer.BasicGeoName;
 import com.bericotech.clavin.gazetteer.FeatureCode;
 import com.bericotech.clavin.gazetteer.GeoName;
+import com.bericotech.clavin.gazetteer.GeoNameCodec;
+import com.bericotech.clavin.index.IndexDirectoryBuilder;
+import com.bericotech.clavin.index.IndexField;
+import com.bericotech.clavin.index.WhitespaceLowerCaseAnalyzer;
 import com.bericotech.clavin.resolver.ResolvedLocation;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Version;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  * Ensures non-heuristic matching and fuzzy matching features are working properly in {@link com.bericotech.clavin.gazetteer.query.LuceneGazetteer}.
@@ -52,6 +73,9 @@ public class LuceneGazetteerTest {
 
     private static final File INDEX_DIRECTORY = new File("./IndexDirectory");
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     private LuceneGazetteer instance;
     private QueryBuilder queryBuilder;
 
@@ -129,6 +153,544 @@ public class LuceneGazetteerTest {
         }
     }
 
+    /**
+     * Test configurable fuzzy matching and positional matching of multi-token names.
+     */
+    @Test
+    public void testResolveLocations_FuzzyConfig() throws ClavinException {
+        queryBuilder.fuzzyMode(FuzzyMode.NO_EXACT);
+        List<ResolvedLocation> locs = instance.getClosestLocations(queryBuilder.location("Gunn Barel Citty").build());
+        assertEquals("Expected fuzzy match of every term", GUN_BARREL_CITY_TX, locs.get(0).getGeoname().getGeonameID());
+        assertTrue("Expected fuzzy result", locs.get(0).isFuzzy());
+
+        // a single edit or a required prefix excludes matches the default configuration accepts
+        queryBuilder.location("Bostonnn");
+        assertEquals("Expected match with default configuration", BOSTON_MA,
+                instance.getClosestLocations(queryBuilder.build()).get(0).getGeoname().getGeonameID());
+        assertTrue("Expected no match with a single edit",
+                instance.getClosestLocations(queryBuilder.fuzzyConfig(new FuzzyConfig(1, 0, 50, true)).build()).isEmpty());
+        queryBuilder.location("Xoston");
+        assertTrue("Expected no match with required prefix",
+                instance.getClosestLocations(queryBuilder.fuzzyConfig(new FuzzyConfig(2, 1, 50, true)).build()).isEmpty());
+
+        // transpositions count as a single edit only if enabled
+        queryBuilder.location("Botson");
+        assertEquals("Expected match with transpositions", BOSTON_MA, instance.getClosestLocations(
+                queryBuilder.fuzzyConfig(new FuzzyConfig(1, 0, 50, true)).build()).get(0).getGeoname().getGeonameID());
+        assertTrue("Expected no match without transpositions", instance.getClosestLocations(
+                queryBuilder.fuzzyConfig(new FuzzyConfig(1, 0, 50, false)).build()).isEmpty());
+    }
+
+    /**
+     * Test n-gram matching against an index built with name n-grams and fall back to
+     * fuzzy matching for indexes without them.
+     */
+    @Test
+    public void testResolveLocations_NGram() throws Exception {
+        File ngramIndex = buildIndex("--with-name-ngrams");
+        Object[][] testCases = new Object[][]{
+            new Object[]{"Bostonn", BOSTON_MA},
+            new Object[]{"Botson", BOSTON_MA},
+            new Object[]{"Strasenhaus", STRAßENHAUS_DE},
+            new Object[]{"Fiarfax Conty", FAIRFAX_COUNTY_VA},
+            new Object[]{"Gun Barel Citty", GUN_BARREL_CITY_TX},
+            new Object[]{"Virgina", VIRGINIA}
+        };
+        queryBuilder.fuzzyMode(FuzzyMode.NGRAM).ancestryMode(AncestryMode.ON_CREATE);
+        LuceneGazetteer gazetteer = new LuceneGazetteer(ngramIndex);
+        try {
+            for (Object[] test : testCases) {
+                List<ResolvedLocation> locs = gazetteer.getClosestLocations(queryBuilder.location((String) test[0]).build());
+                assertEquals(String.format("%s: Expected single result from Gazetteer", test[0]), 1, locs.size());
+                assertTrue(String.format("%s: Expected fuzzy result", test[0]), locs.get(0).isFuzzy());
+                assertEquals(String.format("%s: Unexpected n-gram match", test[0]), test[1], locs.get(0).getGeoname().getGeonameID());
+                assertTrue(String.format("%s: Expected resolved ancestry", test[0]), locs.get(0).getGeoname().isAncestryResolved());
+            }
+            // exact matches are preferred and unrelated names are not matched
+            assertFalse("Expected exact match", gazetteer.getClosestLocations(queryBuilder.location("Reston").build()).get(0).isFuzzy());
+            assertTrue("Expected no match", gazetteer.getClosestLocations(queryBuilder.location("Xyzzy").build()).isEmpty());
+        } finally {
+            gazetteer.close();
+        }
+
+        // indexes without n-grams use fuzzy matching
+        List<ResolvedLocation> locs = instance.getClosestLocations(queryBuilder.location("Bostonn").build());
+        assertEquals("Expected fuzzy match without n-grams", BOSTON_MA, locs.get(0).getGeoname().getGeonameID());
+    }
+
+    /**
+     * Ensure exact queries answered from the name dictionary return the same results
+     * as searching the index, and filtered queries are unaffected.
+     */
+    @Test
+    public void testNameDictionary() throws Exception {
+        File index = buildIndex();
+        String[] names = { "Boston", "boston", "Reston", "Virginia", "Fairfax County", "United States", "US",
+            "Straßenhaus", "Gun Barrel City", "Bostonn", "Springfield" };
+        LuceneGazetteer searched = new LuceneGazetteer(index);
+        LuceneGazetteer dictionary = new LuceneGazetteer(index, new LuceneGazetteerConfig().nameDictionary(true));
+        try {
+            for (int maxResults : new int[] { 1, 3, 5 }) {
+                for (boolean dedupe : new boolean[] { true, false }) {
+                    queryBuilder.maxResults(maxResults).filterDupes(dedupe).fuzzyMode(FuzzyMode.FILL);
+                    for (String name : names) {
+                        GazetteerQuery query = queryBuilder.location(name).build();
+                        assertEquals(String.format("%s [max: %d, dedupe: %s]: Expected identical results", name, maxResults, dedupe),
+                                describe(searched.getClosestLocations(query)), describe(dictionary.getClosestLocations(query)));
+                    }
+                }
+            }
+            queryBuilder.maxResults(1).filterDupes(false).fuzzyMode(FuzzyMode.OFF).addCountryCodes();
+            List<ResolvedLocation> locs = dictionary.getClosestLocations(queryBuilder.location("Virginia").build());
+            assertTrue("Expected filtered query to search the index", locs.isEmpty());
+        } finally {
+            searched.close();
+            dictionary.close();
+        }
+    }
+
+    /**
+     * Ensure indexes with a single document per GeoName return the same exact matches as
+     * indexes with a document per name, without duplicates.
+     */
+    @Test
+    public void testGeoNameDocuments() throws Exception {
+        File nameIndex = buildIndex("--with-name-ngrams");
+        File geoNameIndex = buildIndex("--one-document-per-geoname", "--with-name-ngrams");
+        String[] names = { "Boston", "boston", "Reston", "Рестон", "Virginia", "Fairfax County", "Fairfax", "County",
+            "United States", "US", "Straßenhaus", "Gun Barrel City", "Gun Barrel", "Barrel City", "Springfield" };
+        LuceneGazetteer byName = new LuceneGazetteer(nameIndex);
+        LuceneGazetteer byGeoName = new LuceneGazetteer(geoNameIndex);
+        LuceneGazetteer dictionary = new LuceneGazetteer(geoNameIndex, new LuceneGazetteerConfig().nameDictionary(true));
+        try {
+            for (int maxResults : new int[] { 1, 3, 5 }) {
+                for (String name : names) {
+                    GazetteerQuery query = queryBuilder.location(name).maxResults(maxResults).filterDupes(true).build();
+                    List<String> expected = describe(byName.getClosestLocations(query));
+                    String msg = String.format("%s [max: %d]: Expected identical results", name, maxResults);
+                    assertEquals(msg, expected, describe(byGeoName.getClosestLocations(query)));
+                    assertEquals(msg, expected, describe(dictionary.getClosestLocations(query)));
+                }
+            }
+            // each GeoName is only found once, so duplicates need not be filtered; GeoNames listed in
+            // more than one gazetteer file, like the countries of the supplementary gazetteer, are still
+            // indexed once for each file
+            queryBuilder.maxResults(5);
+            for (String name : new String[] { "Boston", "Reston", "Virginia", "Fairfax", "Gun Barrel" }) {
+                List<String> expected = describe(byName.getClosestLocations(queryBuilder.location(name).filterDupes(true).build()));
+                GazetteerQuery query = queryBuilder.filterDupes(false).build();
+                assertEquals(name, expected, describe(byGeoName.getClosestLocations(query)));
+                assertEquals(name, expected, describe(dictionary.getClosestLocations(query)));
+            }
+
+            queryBuilder.maxResults(1).filterDupes(false).fuzzyMode(FuzzyMode.NO_EXACT);
+            for (String name : new String[] { "Bostonn", "Bostn", "Straßenhaus12", "Gunn Barel Citty" }) {
+                List<ResolvedLocation> locs = byGeoName.getClosestLocations(queryBuilder.location(name).build());
+                assertEquals(name, byName.getClosestLocations(queryBuilder.build()).get(0).getGeoname().getGeonameID(),
+                        locs.get(0).getGeoname().getGeonameID());
+                assertTrue(name + ": Expected fuzzy result", locs.get(0).isFuzzy());
+            }
+            queryBuilder.fuzzyMode(FuzzyMode.NGRAM);
+            List<ResolvedLocation> locs = byGeoName.getClosestLocations(queryBuilder.location("Botson").build());
+            assertEquals("Expected n-gram match", BOSTON_MA, locs.get(0).getGeoname().getGeonameID());
+            assertEquals("Expected closest matched name", "Boston", locs.get(0).getMatchedName());
+
+            assertTrue("Expected smaller index", FileUtils.sizeOfDirectory(geoNameIndex) < FileUtils.sizeOfDirectory(nameIndex));
+        } finally {
+            byName.close();
+            byGeoName.close();
+            dictionary.close();
+        }
+    }
+
+    /**
+     * Ensure a multi-threaded build indexes the same GeoNames and ancestry as a single-threaded build.
+     */
+    @Test
+    public void testMultiThreadedBuild() throws Exception {
+        assertSameGeoNames(buildIndex(), buildIndex("--threads", "4", "--ram-buffer-size", "1"));
+    }
+
+    /**
+     * Ensure a two-pass build indexes the same GeoNames and ancestry as a single-pass build.
+     */
+    @Test
+    public void testTwoPassBuild() throws Exception {
+        File serialIndex = buildIndex("--with-full-ancestry");
+        assertSameGeoNames(serialIndex, buildIndex("--with-full-ancestry", "--two-pass"));
+        assertSameGeoNames(serialIndex, buildIndex("--with-full-ancestry", "--two-pass", "--threads", "4"));
+    }
+
+    /**
+     * Ensure a build that stopped while resolving ancestry can be resumed from its last commit.
+     */
+    @Test
+    public void testResumeBuild() throws Exception {
+        File expectedIndex = buildIndex();
+        File resumedIndex = buildIndex();
+        // mark the index as a build that stopped after resolving a single country
+        FSDirectory directory = FSDirectory.open(resumedIndex);
+        IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_4_9, new WhitespaceLowerCaseAnalyzer()));
+        Map<String, String> commitData = new HashMap<String, String>();
+        commitData.put("clavin.build.phase", "resolving");
+        commitData.put("clavin.build.resolvedCountries", "AU");
+        writer.setCommitData(commitData);
+        writer.close();
+
+        String[] args = {
+            "-i", "./src/test/resources/gazetteers/GeoNamesSampleSet.txt:./src/main/resources/SupplementaryGazetteer.txt",
+            "-o", resumedIndex.getPath(),
+            "--resume"
+        };
+        IndexDirectoryBuilder.main(args);
+        DirectoryReader reader = DirectoryReader.open(directory);
+        try {
+            assertEquals("Expected completed build", "complete", reader.getIndexCommit().getUserData().get("clavin.build.phase"));
+        } finally {
+            reader.close();
+            directory.close();
+        }
+        // American Samoa is listed in both gazetteer files and never resolves its parent, so the
+        // resumed build only keeps the record held by the resolution phase
+        File sampleWithoutDupes = tempFolder.newFile("sampleWithoutDupes.txt");
+        List<String> lines = new ArrayList<String>();
+        for (String line : FileUtils.readLines(new File("./src/test/resources/gazetteers/GeoNamesSampleSet.txt"), "UTF-8")) {
+            if (!line.startsWith("5880801\t")) {
+                lines.add(line);
+            }
+        }
+        FileUtils.writeLines(sampleWithoutDupes, "UTF-8", lines);
+        assertSameGeoNames(expectedIndex, resumedIndex, sampleWithoutDupes);
+        // resuming a completed build leaves the index unchanged
+        IndexDirectoryBuilder.main(args);
+        assertSameGeoNames(expectedIndex, resumedIndex, sampleWithoutDupes);
+    }
+
+    /**
+     * Ensure resuming a build never replaces an index without a build to resume unless
+     * the index is replaced.
+     */
+    @Test
+    public void testResumeKeepsForeignIndex() throws Exception {
+        File foreignIndex = buildIndex();
+        // indexes built before the build phase was recorded have no commit data
+        FSDirectory directory = FSDirectory.open(foreignIndex);
+        IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_4_9, new WhitespaceLowerCaseAnalyzer()));
+        writer.setCommitData(new HashMap<String, String>());
+        writer.close();
+        DirectoryReader reader = DirectoryReader.open(directory);
+        int docCount = reader.maxDoc();
+        reader.close();
+
+        File tinyFile = tempFolder.newFile("tiny.txt");
+        FileUtils.writeLines(tinyFile, "UTF-8", Collections.singletonList(
+                FileUtils.readLines(new File("./src/test/resources/gazetteers/GeoNamesSampleSet.txt"), "UTF-8").get(0)));
+        try {
+            IndexDirectoryBuilder.main(new String[] { "-i", tinyFile.getPath(), "-o", foreignIndex.getPath(), "--resume" });
+            fail("resuming should not replace an index without a build to resume");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("-r"));
+        }
+        reader = DirectoryReader.open(directory);
+        try {
+            assertEquals("Expected unchanged index", docCount, reader.maxDoc());
+            assertTrue("Expected unchanged commit data", reader.getIndexCommit().getUserData().isEmpty());
+        } finally {
+            reader.close();
+        }
+
+        // replacing the index builds a new one
+        IndexDirectoryBuilder.main(new String[] { "-i", tinyFile.getPath(), "-o", foreignIndex.getPath(), "--resume", "-r" });
+        reader = DirectoryReader.open(directory);
+        try {
+            assertEquals("Expected completed build", "complete", reader.getIndexCommit().getUserData().get("clavin.build.phase"));
+            assertTrue("Expected replaced index", reader.maxDoc() < docCount);
+        } finally {
+            reader.close();
+            directory.close();
+        }
+    }
+
+    /**
+     * Ensure modifications and deletions applied to an existing index produce the same GeoNames and
+     * ancestry as a rebuild, re-resolving the descendants of modified administrative divisions.
+     */
+    @Test
+    public void testUpdateIndex() throws Exception {
+        File sampleFile = new File("./src/test/resources/gazetteers/GeoNamesSampleSet.txt");
+        List<String> modifications = new ArrayList<String>();
+        List<String> modifiedSample = new ArrayList<String>();
+        for (String line : FileUtils.readLines(sampleFile, "UTF-8")) {
+            String[] fields = line.split("\t", -1);
+            if (Integer.parseInt(fields[0]) == BOSTON_MA) {
+                continue;
+            } else if (Integer.parseInt(fields[0]) == RESTON_VA) {
+                fields[14] = "60000";
+                line = StringUtils.join(fields, '\t');
+                modifications.add(line);
+            } else if (Integer.parseInt(fields[0]) == FAIRFAX_COUNTY_VA) {
+                // Fairfax County moves to a new key, leaving Reston without its county
+                fields[11] = "999";
+                line = StringUtils.join(fields, '\t');
+                modifications.add(line);
+            }
+            modifiedSample.add(line);
+        }
+        File modificationsFile = tempFolder.newFile("modifications.txt");
+        FileUtils.writeLines(modificationsFile, "UTF-8", modifications);
+        File deletesFile = tempFolder.newFile("deletes.txt");
+        FileUtils.writeStringToFile(deletesFile, BOSTON_MA + "\tBoston\tduplicate\n", "UTF-8");
+        File modifiedSampleFile = tempFolder.newFile("modifiedSample.txt");
+        FileUtils.writeLines(modifiedSampleFile, "UTF-8", modifiedSample);
+
+        File updatedIndex = buildIndex();
+        updateIndex(updatedIndex, "--modifications-files", modificationsFile.getPath(), "--deletes-files", deletesFile.getPath());
+        File rebuiltIndex = tempFolder.newFolder();
+        IndexDirectoryBuilder.main(new String[] {
+            "-i", modifiedSampleFile.getPath() + ":./src/main/resources/SupplementaryGazetteer.txt",
+            "-o", rebuiltIndex.getPath(),
+            "-r"
+        });
+        assertSameGeoNames(rebuiltIndex, updatedIndex, modifiedSampleFile);
+
+        LuceneGazetteer updated = new LuceneGazetteer(updatedIndex);
+        try {
+            assertNull("Expected deleted GeoName", updated.getGeoName(BOSTON_MA));
+            GeoName reston = updated.getGeoName(RESTON_VA, AncestryMode.ON_CREATE);
+            assertEquals("Expected modified population", 60000L, reston.getPopulation());
+            assertEquals("Expected ancestry without the moved county", VIRGINIA, reston.getParent().getGeonameID());
+        } finally {
+            updated.close();
+        }
+
+        // moving Fairfax County back restores the ancestry of the GeoNames indexed below Virginia
+        FileUtils.writeLines(modificationsFile, "UTF-8", Collections.singletonList(
+                FileUtils.readLines(sampleFile, "UTF-8").get(10)));
+        updateIndex(updatedIndex, "--modifications-files", modificationsFile.getPath());
+        updated = new LuceneGazetteer(updatedIndex);
+        try {
+            GeoName reston = updated.getGeoName(RESTON_VA, AncestryMode.ON_CREATE);
+            assertEquals("Expected restored county", FAIRFAX_COUNTY_VA, reston.getParent().getGeonameID());
+            assertEquals("Expected restored ancestry", VIRGINIA, reston.getParent().getParent().getGeonameID());
+        } finally {
+            updated.close();
+        }
+    }
+
+    /**
+     * Ensure the descendants re-indexed by an update keep their alternate names when the
+     * index does not store them.
+     */
+    @Test
+    public void testUpdateIndexWithoutStoredAlternateNames() throws Exception {
+        File deletesFile = tempFolder.newFile("deletes.txt");
+        FileUtils.writeStringToFile(deletesFile, FAIRFAX_COUNTY_VA + "\tFairfax County\n", "UTF-8");
+        for (String[] options : new String[][] {
+                { "--without-stored-alternate-names" },
+                { "--without-stored-alternate-names", "--one-document-per-geoname" } }) {
+            File indexDir = buildIndex(options);
+            List<String> args = new ArrayList<String>(Arrays.asList(options));
+            args.addAll(Arrays.asList("--deletes-files", deletesFile.getPath()));
+            updateIndex(indexDir, args.toArray(new String[args.size()]));
+            LuceneGazetteer updated = new LuceneGazetteer(indexDir);
+            try {
+                List<ResolvedLocation> results = updated.getClosestLocations(queryBuilder.location("Рестон").build());
+                assertEquals("Expected alternate name after update", 1, results.size());
+                GeoName reston = results.get(0).getGeoname();
+                assertEquals("Expected Reston", RESTON_VA, reston.getGeonameID());
+                assertEquals("Expected ancestry without the deleted county", VIRGINIA, reston.getParent().getGeonameID());
+            } finally {
+                updated.close();
+            }
+        }
+    }
+
+    /**
+     * Ensure an index is only updated with the options it was built with.
+     */
+    @Test
+    public void testUpdateIndexOptionsMustMatch() throws Exception {
+        File deletesFile = tempFolder.newFile("deletes.txt");
+        FileUtils.writeStringToFile(deletesFile, BOSTON_MA + "\tBoston\n", "UTF-8");
+        File indexDir = buildIndex("--without-stored-alternate-names");
+        for (String option : new String[] { "--with-full-ancestry", "--one-document-per-geoname", "--with-name-ngrams" }) {
+            try {
+                updateIndex(indexDir, "--without-stored-alternate-names", option, "--deletes-files", deletesFile.getPath());
+                fail("updates with options other than the build options should be rejected: " + option);
+            } catch (IOException expected) {
+                assertTrue(expected.getMessage(), expected.getMessage().contains(option));
+            }
+        }
+        try {
+            updateIndex(indexDir, "--deletes-files", deletesFile.getPath());
+            fail("updates storing alternate names should be rejected");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("--without-stored-alternate-names"));
+        }
+
+        // the recorded options are kept by the update
+        updateIndex(indexDir, "--without-stored-alternate-names", "--deletes-files", deletesFile.getPath());
+        updateIndex(indexDir, "--without-stored-alternate-names", "--deletes-files", deletesFile.getPath());
+        LuceneGazetteer updated = new LuceneGazetteer(indexDir);
+        try {
+            assertNull("Expected deleted GeoName", updated.getGeoName(BOSTON_MA));
+        } finally {
+            updated.close();
+        }
+        try {
+            updateIndex(indexDir, "--deletes-files", deletesFile.getPath());
+            fail("updates storing alternate names should be rejected after an update");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("--without-stored-alternate-names"));
+        }
+    }
+
+    /**
+     * Ensure an update resolves a duplicated ancestry key to the division the index used.
+     */
+    @Test
+    public void testUpdateIndexWithDuplicateAdminKey() throws Exception {
+        List<String> sample = FileUtils.readLines(new File("./src/test/resources/gazetteers/GeoNamesSampleSet.txt"), "UTF-8");
+        // an earlier division for Virginia's key; the county is read after Virginia and resolves to it
+        String[] fields = sample.get(11).split("\t", -1);
+        fields[0] = "9999999";
+        fields[1] = "Old Virginia";
+        fields[2] = "Old Virginia";
+        fields[3] = "";
+        File duplicateFile = tempFolder.newFile("duplicate.txt");
+        FileUtils.writeLines(duplicateFile, "UTF-8", Collections.singletonList(StringUtils.join(fields, '\t')));
+        List<String> reordered = new ArrayList<String>(sample);
+        String county = reordered.remove(10);
+        reordered.add(county);
+        File reorderedFile = tempFolder.newFile("reordered.txt");
+        FileUtils.writeLines(reorderedFile, "UTF-8", reordered);
+        File indexDir = tempFolder.newFolder();
+        IndexDirectoryBuilder.main(new String[] {
+            "-i", duplicateFile.getPath() + ":" + reorderedFile.getPath(),
+            "-o", indexDir.getPath(),
+            "-r"
+        });
+        LuceneGazetteer gazetteer = new LuceneGazetteer(indexDir);
+        try {
+            assertEquals("Expected county below Virginia", VIRGINIA,
+                    gazetteer.getGeoName(FAIRFAX_COUNTY_VA, AncestryMode.ON_CREATE).getParent().getGeonameID());
+        } finally {
+            gazetteer.close();
+        }
+
+        fields = county.split("\t", -1);
+        fields[14] = "1100000";
+        File modificationsFile = tempFolder.newFile("modifications.txt");
+        FileUtils.writeLines(modificationsFile, "UTF-8", Collections.singletonList(StringUtils.join(fields, '\t')));
+        updateIndex(indexDir, "--modifications-files", modificationsFile.getPath());
+        gazetteer = new LuceneGazetteer(indexDir);
+        try {
+            GeoName fairfax = gazetteer.getGeoName(FAIRFAX_COUNTY_VA, AncestryMode.ON_CREATE);
+            assertEquals("Expected modified population", 1100000L, fairfax.getPopulation());
+            assertEquals("Expected county below Virginia after update", VIRGINIA, fairfax.getParent().getGeonameID());
+        } finally {
+            gazetteer.close();
+        }
+    }
+
+    /**
+     * Ensure preferred names are read from the alternate names file.
+     */
+    @Test
+    public void testAlternateNamesFile() throws Exception {
+        File altNamesFile = tempFolder.newFile("alternateNames.txt");
+        FileUtils.writeStringToFile(altNamesFile, String.format("1\t%d\tde\tReston (Virginia)\t1\t\n"
+                + "2\t%d\ten\tReston, Virginia\t1\t\n3\t%d\ten\tRestonville\t\t1\n", RESTON_VA, RESTON_VA, RESTON_VA), "UTF-8");
+        LuceneGazetteer gazetteer = new LuceneGazetteer(buildIndex("--alt-names-file", altNamesFile.getPath()));
+        try {
+            assertEquals("Reston, Virginia", gazetteer.getGeoName(RESTON_VA).getPreferredName());
+            assertEquals("Expected preferred name to be indexed", RESTON_VA, gazetteer.getClosestLocations(
+                    queryBuilder.location("Reston, Virginia").build()).get(0).getGeoname().getGeonameID());
+            assertEquals("Boston", gazetteer.getGeoName(BOSTON_MA).getPreferredName());
+        } finally {
+            gazetteer.close();
+        }
+    }
+
+    /**
+     * Asserts that the sample GeoNames, with their ancestry, and the top matches of several names
+     * are identical in two indexes.
+     */
+    private void assertSameGeoNames(final File expectedIndex, final File actualIndex) throws Exception {
+        assertSameGeoNames(expectedIndex, actualIndex, new File("./src/test/resources/gazetteers/GeoNamesSampleSet.txt"));
+    }
+
+    private void assertSameGeoNames(final File expectedIndex, final File actualIndex, final File gazetteerFile) throws Exception {
+        LuceneGazetteer expectedGazetteer = new LuceneGazetteer(expectedIndex);
+        LuceneGazetteer actualGazetteer = new LuceneGazetteer(actualIndex);
+        try {
+            for (String line : FileUtils.readLines(gazetteerFile, "UTF-8")) {
+                int geonameId = Integer.parseInt(line.substring(0, line.indexOf('\t')));
+                GeoName expected = expectedGazetteer.getGeoName(geonameId, AncestryMode.ON_CREATE);
+                GeoName actual = actualGazetteer.getGeoName(geonameId, AncestryMode.ON_CREATE);
+                assertNotNull(line, actual);
+                assertEquals(line, expected.getGazetteerRecordWithAncestry(), actual.getGazetteerRecordWithAncestry());
+            }
+            for (String name : new String[] { "Reston", "Virginia", "United States", "Straßenhaus", "Gun Barrel City" }) {
+                GazetteerQuery query = queryBuilder.location(name).filterDupes(true).build();
+                assertEquals(name, describe(expectedGazetteer.getClosestLocations(query)),
+                        describe(actualGazetteer.getClosestLocations(query)));
+            }
+        } finally {
+            expectedGazetteer.close();
+            actualGazetteer.close();
+        }
+    }
+
+    /**
+     * Ensure GeoNames are read from both binary records and the text records stored by older indexes.
+     */
+    @Test
+    public void testParseGeoName_RecordFormats() throws IOException {
+        String record = FileUtils.readLines(new File("./src/test/resources/gazetteers/GeoNamesSampleSet.txt"), "UTF-8").get(0);
+        GeoName reston = BasicGeoName.parseFromGeoNamesRecord(record);
+        Document textDoc = new Document();
+        textDoc.add(new StoredField(IndexField.GEONAME.key(), record));
+        textDoc.add(new StoredField(IndexField.PREFERRED_NAME.key(), "Reston Town"));
+        Document binaryDoc = new Document();
+        binaryDoc.add(new StoredField(IndexField.GEONAME.key(), GeoNameCodec.encode(reston, false)));
+        binaryDoc.add(new StoredField(IndexField.PREFERRED_NAME.key(), "Reston Town"));
+
+        for (Document doc : Arrays.asList(textDoc, binaryDoc)) {
+            GeoName geoName = LuceneGazetteer.parseGeoName(doc);
+            assertEquals(reston.getGeonameID(), geoName.getGeonameID());
+            assertEquals(reston.getAlternateNames(), geoName.getAlternateNames());
+            assertEquals(reston.getPopulation(), geoName.getPopulation());
+            assertEquals("Reston Town", geoName.getPreferredName());
+        }
+    }
+
+    /**
+     * Ensure indexes built without stored alternate names resolve the same locations.
+     */
+    @Test
+    public void testResolveLocations_WithoutStoredAlternateNames() throws Exception {
+        LuceneGazetteer full = new LuceneGazetteer(buildIndex());
+        LuceneGazetteer compact = new LuceneGazetteer(buildIndex("--without-stored-alternate-names"));
+        try {
+            for (String name : new String[] { "Boston", "Reston", "United States", "Coral Sea Islands", "Beantown" }) {
+                GazetteerQuery query = queryBuilder.location(name).build();
+                List<ResolvedLocation> expected = full.getClosestLocations(query);
+                List<ResolvedLocation> actual = compact.getClosestLocations(query);
+                assertEquals(name, describe(expected), describe(actual));
+                for (int i = 0; i < actual.size(); i++) {
+                    assertTrue(name, actual.get(i).getGeoname().getAlternateNames().size() <=
+                            expected.get(i).getGeoname().getAlternateNames().size());
+                    assertEquals(name, expected.get(i).getGeoname().getParentAncestryKey(),
+                            actual.get(i).getGeoname().getParentAncestryKey());
+                }
+            }
+        } finally {
+            full.close();
+            compact.close();
+        }
+    }
+
     /**
      * Verify that ancestry is loaded properly for all location resolution.
      */
@@ -209,6 +771,154 @@ public class LuceneGazetteerTest {
 
     }
 
+    /**
+     * Ensure repeated queries are served from the compiled query cache and
+     * return the same results.
+     */
+    @Test
+    public void testQueryCache() throws ClavinException {
+        queryBuilder.location("Reston");
+        List<ResolvedLocation> first = instance.getClosestLocations(queryBuilder.build());
+        long hits = instance.getQueryCacheStats().getHitCount();
+        List<ResolvedLocation> second = instance.getClosestLocations(queryBuilder.location("  RESTON ").build());
+        assertEquals("Expected identical results for cached query", first, second);
+        assertEquals("Expected query cache hit for repeated name", hits + 1, instance.getQueryCacheStats().getHitCount());
+    }
+
+    /**
+     * Ensure the gazetteer can be refreshed and switched to a new index while
+     * continuing to serve queries.
+     */
+    @Test
+    public void testRefreshAndSwitchIndex() throws ClavinException {
+        queryBuilder.location("Reston");
+        List<ResolvedLocation> before = instance.getClosestLocations(queryBuilder.build());
+        assertFalse("Expected no refresh for an unchanged index", instance.refresh());
+        instance.switchIndex(INDEX_DIRECTORY);
+        assertEquals("Expected identical results after switching index", before, instance.getClosestLocations(queryBuilder.build()));
+        instance.close();
+    }
+
+    /**
+     * Ensure parent ID filters are cached and re-used, alone and combined with other restrictions.
+     */
+    @Test
+    public void testFilterCache() throws ClavinException {
+        queryBuilder.location("Reston").maxResults(10).addParentIds(UNITED_STATES);
+        List<ResolvedLocation> first = instance.getClosestLocations(queryBuilder.build());
+        assertEquals("Expected identical results for cached filter", first, instance.getClosestLocations(queryBuilder.build()));
+        assertEquals("Expected parent filter cache hit", 1, instance.getFilterCacheStats().getHitCount());
+
+        List<ResolvedLocation> combined = instance.getClosestLocations(queryBuilder.includeHistorical(false).addCityCodes().build());
+        assertFalse("Expected at least one result", combined.isEmpty());
+        for (ResolvedLocation loc : combined) {
+            assertTrue("Expected only restricted results", first.contains(loc));
+            assertFalse("Expected non-historical result", loc.getGeoname().getFeatureCode().isHistorical());
+        }
+        assertEquals("Expected parent filter cache hit", 2, instance.getFilterCacheStats().getHitCount());
+    }
+
+    /**
+     * Ensure resolved GeoNames are shared across queries and administrative divisions can be pinned.
+     */
+    @Test
+    public void testGeoNameCache() throws ClavinException {
+        LuceneGazetteer gazetteer = new LuceneGazetteer(INDEX_DIRECTORY, new LuceneGazetteerConfig().pinAdminDivisions(true));
+        try {
+            assertTrue("Expected pinned administrative divisions", gazetteer.getGeoNameCacheStats().getSize() > 0);
+            GeoName virginia = gazetteer.getGeoName(VIRGINIA, AncestryMode.ON_CREATE);
+            assertTrue("Expected resolved ancestry", virginia.isAncestryResolved());
+            assertSame("Expected pinned GeoName", virginia, gazetteer.getGeoName(VIRGINIA, AncestryMode.ON_CREATE));
+
+            queryBuilder.location("Reston").ancestryMode(AncestryMode.ON_CREATE);
+            GeoName reston = gazetteer.getClosestLocations(queryBuilder.build()).get(0).getGeoname();
+            long hits = gazetteer.getGeoNameCacheStats().getHitCount();
+            assertSame("Expected cached GeoName", reston, gazetteer.getClosestLocations(queryBuilder.build()).get(0).getGeoname());
+            assertTrue("Expected cache hit", gazetteer.getGeoNameCacheStats().getHitCount() > hits);
+            assertSame("Expected shared ancestor", virginia, reston.getParent().getParent());
+
+            // lazily resolved results are never shared
+            queryBuilder.ancestryMode(AncestryMode.LAZY);
+            assertFalse("Expected unresolved ancestry",
+                    gazetteer.getClosestLocations(queryBuilder.build()).get(0).getGeoname().isAncestryResolved());
+        } finally {
+            gazetteer.close();
+        }
+    }
+
+    /**
+     * Ensure batch queries return the same results as individual queries, whether they run on the
+     * calling thread or in parallel.
+     */
+    @Test
+    public void testBatchQueries() throws ClavinException {
+        String[] names = { "Reston", "Boston", "Reston", "", "Straßenhaus", "Bostonn", "Boston", "Fairfax County" };
+        queryBuilder.maxResults(5).fuzzyMode(FuzzyMode.NO_EXACT).ancestryMode(AncestryMode.ON_CREATE);
+        List<GazetteerQuery> queries = new ArrayList<GazetteerQuery>();
+        List<List<ResolvedLocation>> expected = new ArrayList<List<ResolvedLocation>>();
+        for (int idx = 0; idx < names.length; idx++) {
+            queries.add(queryBuilder.location(new LocationOccurrence(names[idx], idx)).build());
+            expected.add(instance.getClosestLocations(queries.get(idx)));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        LuceneGazetteer parallel = new LuceneGazetteer(INDEX_DIRECTORY, new LuceneGazetteerConfig().batchExecutor(executor));
+        try {
+            for (Gazetteer gazetteer : new Gazetteer[] { instance, parallel }) {
+                List<List<ResolvedLocation>> results = gazetteer.getClosestLocations(queries);
+                assertEquals("Expected results for every query", queries.size(), results.size());
+                for (int idx = 0; idx < names.length; idx++) {
+                    assertEquals(String.format("%s: Expected batch results to match individual query", names[idx]),
+                            expected.get(idx), results.get(idx));
+                    for (ResolvedLocation loc : results.get(idx)) {
+                        assertEquals(String.format("%s: Expected result bound to query occurrence", names[idx]),
+                                idx, loc.getLocation().getPosition());
+                        assertTrue(String.format("%s: Expected resolved ancestry", names[idx]),
+                                loc.getGeoname().isAncestryResolved());
+                    }
+                }
+            }
+        } finally {
+            parallel.close();
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Ensure the gazetteer returns the same results regardless of how the index is loaded.
+     */
+    @Test
+    public void testDirectoryModes() throws ClavinException {
+        queryBuilder.location("Reston");
+        List<ResolvedLocation> expected = instance.getClosestLocations(queryBuilder.build());
+        for (DirectoryMode mode : new DirectoryMode[] { DirectoryMode.MMAP, DirectoryMode.NIO }) {
+            LuceneGazetteer gazetteer = new LuceneGazetteer(INDEX_DIRECTORY, new LuceneGazetteerConfig().directoryMode(mode));
+            try {
+                assertEquals(String.format("%s: Expected identical results", mode), expected,
+                        gazetteer.getClosestLocations(queryBuilder.build()));
+            } finally {
+                gazetteer.close();
+            }
+        }
+    }
+
+    /**
+     * Ensure searching index segments in parallel returns the same results.
+     */
+    @Test
+    public void testSearchExecutor() throws ClavinException {
+        queryBuilder.maxResults(5).fuzzyMode(FuzzyMode.FILL).location("Boston");
+        List<ResolvedLocation> expected = instance.getClosestLocations(queryBuilder.build());
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        LuceneGazetteer gazetteer = new LuceneGazetteer(INDEX_DIRECTORY, new LuceneGazetteerConfig().searchExecutor(executor));
+        try {
+            assertEquals("Expected identical results", expected, gazetteer.getClosestLocations(queryBuilder.build()));
+        } finally {
+            gazetteer.close();
+            executor.shutdown();
+        }
+    }
+
     /**
      * Ensures Lucene isn't choking on reserved words or unescaped characters.
      */
@@ -447,4 +1157,38 @@ public class LuceneGazetteerTest {
         assertEquals("Country should be United States", UNITED_STATES, usa.getGeonameID());
         assertNull("USA has no parent", usa.getParent());
     }
+
+    private static void updateIndex(final File indexDir, final String... options) throws IOException {
+        List<String> args = new ArrayList<String>(Arrays.asList("-o", indexDir.getPath()));
+        args.addAll(Arrays.asList(options));
+        IndexDirectoryBuilder.main(args.toArray(new String[args.size()]));
+    }
+
+    /**
+     * Builds an index of the sample gazetteer in a temporary folder.
+     * @param options additional IndexDirectoryBuilder options
+     * @return the index directory
+     */
+    private File buildIndex(final String... options) throws IOException {
+        File indexDir = tempFolder.newFolder();
+        List<String> args = new ArrayList<String>(Arrays.asList(
+            "-i", "./src/test/resources/gazetteers/GeoNamesSampleSet.txt:./src/main/resources/SupplementaryGazetteer.txt",
+            "-o", indexDir.getPath(),
+            "-r"
+        ));
+        args.addAll(Arrays.asList(options));
+        IndexDirectoryBuilder.main(args.toArray(new String[args.size()]));
+        return indexDir;
+    }
+
+    /**
+     * Describes the matched GeoNames, names and fuzziness of a list of results.
+     */
+    private static List<String> describe(final List<ResolvedLocation> locs) {
+        List<String> described = new ArrayList<String>(locs.size());
+        for (ResolvedLocation loc : locs) {
+            described.add(String.format("%d:%s:%s", loc.getGeoname().getGeonameID(), loc.getMatchedName(), loc.isFuzzy()));
+        }
+        return described;
+    }
 }
@@ -0,0 +1,112 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * NameDictionaryTest.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.gazetteer.query;
+
+import static org.junit.Assert.*;
+
+import com.bericotech.clavin.index.IndexDirectoryBuilder;
+import com.bericotech.clavin.index.IndexField;
+import com.bericotech.clavin.index.NameKeys;
+import java.io.File;
+import java.io.IOException;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Ensures {@link NameDictionary} maps name keys to the documents that
+ * index them, in population order.
+ */
+public class NameDictionaryTest {
+    private static final int BOSTON_MA = 4930956;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Directory directory;
+    private DirectoryReader reader;
+    private NameDictionary instance;
+
+    @Before
+    public void setUp() throws IOException {
+        File indexDir = tempFolder.newFolder();
+        IndexDirectoryBuilder.main(new String[] {
+            "-i", "./src/test/resources/gazetteers/GeoNamesSampleSet.txt:./src/main/resources/SupplementaryGazetteer.txt",
+            "-o", indexDir.getPath(),
+            "-r"
+        });
+        directory = FSDirectory.open(indexDir);
+        reader = DirectoryReader.open(directory);
+        instance = NameDictionary.build(reader);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        reader.close();
+        directory.close();
+    }
+
+    @Test
+    public void testKeys() {
+        assertEquals("Incorrect key", "fairfax county", NameKeys.toKey("  Fairfax \t COUNTY "));
+        assertEquals("Incorrect key", "straßenhaus", NameKeys.toKey("Straßenhaus"));
+        assertEquals("Expected empty key", "", NameKeys.toKey(" \n "));
+    }
+
+    @Test
+    public void testPostings() throws IOException {
+        assertNotNull("Expected name dictionary for index with name keys", instance);
+        assertTrue("Expected names in dictionary", instance.size() > 0);
+        assertNull("Expected no postings for unknown name", instance.get("xyzzy"));
+        assertNull("Expected no postings for partial name", instance.get("fairfax"));
+
+        NameDictionary.Postings postings = instance.get(NameKeys.toKey("Boston"));
+        assertNotNull("Expected postings for Boston", postings);
+        NumericDocValues geonameIds = MultiDocValues.getNumericValues(reader, IndexField.GEONAME_ID.key());
+        NumericDocValues sortPop = MultiDocValues.getNumericValues(reader, IndexField.SORT_POP.key());
+        assertEquals("Expected most populous Boston first", BOSTON_MA, geonameIds.get(postings.getDocId(0)));
+        for (int idx = 0; idx < postings.size(); idx++) {
+            int docId = postings.getDocId(idx);
+            assertEquals("Posting does not index Boston", "boston",
+                    NameKeys.toKey(reader.document(docId).get(IndexField.INDEX_NAME.key())));
+            if (idx > 0) {
+                int prev = postings.getDocId(idx - 1);
+                assertTrue("Postings are not in population order", sortPop.get(prev) > sortPop.get(docId)
+                        || (sortPop.get(prev) == sortPop.get(docId) && prev < docId));
+            }
+        }
+    }
+}
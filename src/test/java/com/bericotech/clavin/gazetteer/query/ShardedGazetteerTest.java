@@ -0,0 +1,233 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * ShardedGazetteerTest.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.gazetteer.query;
+
+import static org.junit.Assert.*;
+
+import com.bericotech.clavin.gazetteer.GeoName;
+import com.bericotech.clavin.index.IndexDirectoryBuilder;
+import com.bericotech.clavin.index.ShardLayout;
+import com.bericotech.clavin.resolver.ResolvedLocation;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Ensures {@link ShardedGazetteer} returns the same results as a {@link LuceneGazetteer}
+ * searching the same GeoNames in a single index.
+ */
+public class ShardedGazetteerTest {
+    private static final String GAZETTEER_FILES =
+            "./src/test/resources/gazetteers/GeoNamesSampleSet.txt:./src/main/resources/SupplementaryGazetteer.txt";
+    private static final String SHARDS = "americas=US,CA,MX,AS;africa=RW,SO,TZ,KE,CD,DJ,UG,CF,SC,ET,ER,EG,SD;"
+            + "asia=YE,IQ,SA,IR,CY,AM,JO,LB,KW,OM,QA,BH,AE,IL,TR,AF";
+    private static final int BOSTON_MA = 4930956;
+    private static final int VIRGINIA = 6254928;
+    private static final int UNITED_STATES = 6252001;
+    private static final int SOMALIA = 51537;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File shardedIndex;
+    private LuceneGazetteer unsharded;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        File index = tempFolder.newFolder();
+        IndexDirectoryBuilder.main(new String[] { "-i", GAZETTEER_FILES, "-o", index.getPath(), "-r" });
+        unsharded = new LuceneGazetteer(index);
+        shardedIndex = new File(tempFolder.getRoot(), "sharded");
+        IndexDirectoryBuilder.main(new String[] { "-i", GAZETTEER_FILES, "-o", shardedIndex.getPath(), "--shards", SHARDS });
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        unsharded.close();
+        executor.shutdown();
+    }
+
+    /**
+     * Ensure the shard layout is recorded and every shard is opened.
+     */
+    @Test
+    public void testShardLayout() throws Exception {
+        assertTrue("Expected shard layout", ShardLayout.isSharded(shardedIndex));
+        ShardLayout layout = ShardLayout.read(shardedIndex);
+        assertEquals(Arrays.asList("americas", "africa", "asia", ShardLayout.DEFAULT_SHARD), new ArrayList<String>(layout.getShardNames()));
+        ShardedGazetteer sharded = new ShardedGazetteer(shardedIndex);
+        try {
+            assertEquals(layout.getShardNames(), sharded.getShardNames());
+        } finally {
+            sharded.close();
+        }
+    }
+
+    /**
+     * Ensure the merged top results of the shards match the results of the single index.
+     */
+    @Test
+    public void testClosestLocations() throws Exception {
+        for (ExecutorService shardExecutor : Arrays.asList(null, executor)) {
+            ShardedGazetteer sharded = new ShardedGazetteer(shardedIndex, new LuceneGazetteerConfig(), shardExecutor);
+            try {
+                for (String name : new String[] { "Republic", "Republic of", "Kingdom", "State", "Boston", "Virginia",
+                        "United States", "Somalia", "Antarctica" }) {
+                    for (int maxResults : new int[] { 1, 5, 10 }) {
+                        for (boolean dedupe : new boolean[] { true, false }) {
+                            GazetteerQuery query = new QueryBuilder().location(name).maxResults(maxResults)
+                                    .fuzzyMode(FuzzyMode.OFF).filterDupes(dedupe).build();
+                            String msg = String.format("%s [max: %d, dedupe: %s]", name, maxResults, dedupe);
+                            assertEquals(msg, describe(unsharded.getClosestLocations(query)),
+                                    describe(sharded.getClosestLocations(query)));
+                        }
+                    }
+                }
+            } finally {
+                sharded.close();
+            }
+        }
+    }
+
+    /**
+     * Ensure batches return the same results as individual queries.
+     */
+    @Test
+    public void testBatchClosestLocations() throws Exception {
+        ShardedGazetteer sharded = new ShardedGazetteer(shardedIndex, new LuceneGazetteerConfig(), executor);
+        try {
+            QueryBuilder builder = new QueryBuilder().maxResults(5).fuzzyMode(FuzzyMode.OFF);
+            List<GazetteerQuery> queries = Arrays.asList(
+                    builder.location("Republic").build(),
+                    builder.location("Boston").build(),
+                    builder.location("").build(),
+                    builder.location("Boston").addParentIds(UNITED_STATES).build(),
+                    builder.location("Republic").clearParentIds().build());
+            List<List<ResolvedLocation>> results = sharded.getClosestLocations(queries);
+            assertEquals(queries.size(), results.size());
+            for (int idx = 0; idx < queries.size(); idx++) {
+                assertEquals(queries.get(idx).getOccurrence().getText(), describe(sharded.getClosestLocations(queries.get(idx))),
+                        describe(results.get(idx)));
+            }
+        } finally {
+            sharded.close();
+        }
+    }
+
+    /**
+     * Ensure fuzzy matches are only returned when the exact matches of every shard call for them.
+     */
+    @Test
+    public void testFuzzyMatches() throws Exception {
+        ShardedGazetteer sharded = new ShardedGazetteer(shardedIndex, new LuceneGazetteerConfig(), executor);
+        try {
+            QueryBuilder builder = new QueryBuilder().maxResults(1).fuzzyMode(FuzzyMode.NO_EXACT);
+            for (String name : new String[] { "Bostonn", "Somalai", "Gunn Barel Citty" }) {
+                GazetteerQuery query = builder.location(name).build();
+                assertEquals(name, describe(unsharded.getClosestLocations(query)), describe(sharded.getClosestLocations(query)));
+            }
+            // a shard without exact matches must not add fuzzy matches to the exact matches of another shard
+            GazetteerQuery query = builder.location("Republic").maxResults(50).build();
+            for (ResolvedLocation loc : sharded.getClosestLocations(query)) {
+                assertFalse(loc.toString(), loc.isFuzzy());
+            }
+            query = builder.location("Republic").fuzzyMode(FuzzyMode.FILL).build();
+            List<ResolvedLocation> locs = sharded.getClosestLocations(query);
+            assertEquals(unsharded.getClosestLocations(query).size(), locs.size());
+            boolean fuzzy = false;
+            for (ResolvedLocation loc : locs) {
+                assertTrue("Expected exact matches before fuzzy matches", !fuzzy || loc.isFuzzy());
+                fuzzy = loc.isFuzzy();
+            }
+        } finally {
+            sharded.close();
+        }
+    }
+
+    /**
+     * Ensure queries restricted to a country are only sent to its shard, and GeoNames and their
+     * ancestry are loaded from the shard holding them.
+     */
+    @Test
+    public void testCountryRouting() throws Exception {
+        ShardedGazetteer sharded = new ShardedGazetteer(shardedIndex, new LuceneGazetteerConfig(), executor,
+                Collections.singleton("americas"));
+        try {
+            QueryBuilder builder = new QueryBuilder().maxResults(5).fuzzyMode(FuzzyMode.OFF);
+            GazetteerQuery query = builder.location("Boston").addParentIds(UNITED_STATES).build();
+            assertEquals(describe(unsharded.getClosestLocations(query)), describe(sharded.getClosestLocations(query)));
+            query = builder.location("Boston").addParentIds(VIRGINIA).build();
+            assertEquals(describe(unsharded.getClosestLocations(query)), describe(sharded.getClosestLocations(query)));
+            // Somalia's shard is not loaded
+            assertTrue(sharded.getClosestLocations(builder.location("Somalia").clearParentIds().build()).isEmpty());
+            assertTrue(sharded.getClosestLocations(builder.addParentIds(SOMALIA).build()).isEmpty());
+            assertNull(sharded.getGeoName(SOMALIA));
+
+            for (int geonameId : new int[] { UNITED_STATES, VIRGINIA, BOSTON_MA }) {
+                GeoName expected = unsharded.getGeoName(geonameId, AncestryMode.ON_CREATE);
+                GeoName actual = sharded.getGeoName(geonameId, AncestryMode.ON_CREATE);
+                assertEquals(expected.getGazetteerRecord(), actual.getGazetteerRecord());
+                assertEquals(getAncestorIds(expected), getAncestorIds(actual));
+            }
+            GeoName boston = sharded.getGeoName(BOSTON_MA, AncestryMode.MANUAL);
+            assertFalse(boston.isAncestryResolved());
+            sharded.loadAncestry(boston);
+            assertEquals(getAncestorIds(unsharded.getGeoName(BOSTON_MA, AncestryMode.ON_CREATE)), getAncestorIds(boston));
+        } finally {
+            sharded.close();
+        }
+    }
+
+    private static List<Integer> getAncestorIds(final GeoName geoName) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (GeoName parent = geoName.getParent(); parent != null; parent = parent.getParent()) {
+            ids.add(parent.getGeonameID());
+        }
+        return ids;
+    }
+
+    private static List<String> describe(final List<ResolvedLocation> locs) {
+        List<String> described = new ArrayList<String>(locs.size());
+        for (ResolvedLocation loc : locs) {
+            described.add(String.format("%d:%s:%s", loc.getGeoname().getGeonameID(), loc.getMatchedName(), loc.isFuzzy()));
+        }
+        return described;
+    }
+}
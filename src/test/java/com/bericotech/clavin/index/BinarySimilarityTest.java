@@ -2,6 +2,9 @@ package com.bericotech.clavin.index;
 
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
 import org.apache.lucene.search.similarities.DefaultSimilarity;
 import org.junit.Test;
 
@@ -52,4 +55,27 @@ public class BinarySimilarityTest {
         assertEquals("big negative number", 0, (int)Math.round(sim.tf(-999)));
     }
 
+    /**
+     * Ensures name length payloads are scored as the length norm of the name.
+     */
+    @Test
+    public void testScorePayload() throws IOException {
+        DefaultSimilarity sim = new BinarySimilarity();
+        TokenStream stream = new GeoNameDocumentAnalyzer().tokenStream(IndexField.INDEX_NAME.key(), "Gun  Barrel City");
+        PayloadAttribute payloadAttr = stream.addAttribute(PayloadAttribute.class);
+        stream.reset();
+        int tokens = 0;
+        while (stream.incrementToken()) {
+            tokens++;
+            assertEquals("name length", 3, NameLengthPayloadFilter.getNameLength(payloadAttr.getPayload()));
+            assertEquals("payload score", 0.5f, sim.scorePayload(0, 0, 1, payloadAttr.getPayload()), 0.0f);
+        }
+        stream.end();
+        stream.close();
+        assertEquals("token count", 3, tokens);
+        assertEquals("single term name", 1.0f, BinarySimilarity.getNameNorm(1), 0.0f);
+        assertEquals("two term name", 0.625f, BinarySimilarity.getNameNorm(2), 0.0f);
+        assertEquals("no payload", 1.0f, sim.scorePayload(0, 0, 1, null), 0.0f);
+    }
+
 }
@@ -0,0 +1,64 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * NameNGramsTest.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.index;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+/**
+ * Tests for the n-grams indexed for each location name.
+ */
+public class NameNGramsTest {
+    @Test
+    public void testGetNGrams() {
+        assertEquals("Expected padded, lower-cased n-grams", Arrays.asList("^re", "res", "est", "sto", "ton", "on$"),
+                NameNGrams.getNGrams("Reston"));
+        assertEquals("Expected whitespace to be collapsed", Arrays.asList("^a_", "a_b", "_b$"),
+                NameNGrams.getNGrams(" A \t B "));
+        assertEquals("Expected single n-gram for single character", Arrays.asList("^x$"), NameNGrams.getNGrams("X"));
+        assertEquals("Expected no n-grams for empty name", Collections.emptyList(), NameNGrams.getNGrams("  "));
+        assertEquals("Expected no n-grams for null name", Collections.emptyList(), NameNGrams.getNGrams(null));
+    }
+
+    @Test
+    public void testSupplementaryCharacters() {
+        // U+1D49C MATHEMATICAL SCRIPT CAPITAL A must not be split into surrogate halves
+        String name = new StringBuilder().appendCodePoint(0x1D49C).append("b").toString();
+        assertEquals("Expected n-grams of code points", 2, NameNGrams.getNGrams(name).size());
+    }
+
+    @Test
+    public void testToIndexText() {
+        assertEquals("^bo bos ost sto ton on$", NameNGrams.toIndexText("Boston"));
+        assertEquals("", NameNGrams.toIndexText(""));
+    }
+}
@@ -0,0 +1,82 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * PreferredNamesTest.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.index;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import org.junit.Test;
+
+/**
+ * Tests the selection of preferred names from the GeoNames.org alternate names file.
+ */
+public class PreferredNamesTest {
+    @Test
+    public void testAddAlternateName() {
+        PreferredNames names = new PreferredNames();
+        assertFalse("Expected non-English name to be rejected", names.addAlternateName("1\t100\tde\tVereinigte Staaten\t1\t1"));
+        assertFalse("Expected postal code to be rejected", names.addAlternateName("2\t100\tpost\t20190\t\t"));
+        assertFalse("Expected plain English name to be rejected", names.addAlternateName("3\t100\ten\tAmerica\t\t"));
+        assertFalse("Expected truncated line to be rejected", names.addAlternateName("4\t100\ten"));
+        assertFalse("Expected invalid ID to be rejected", names.addAlternateName("5\tx100\ten\tUSA\t1\t"));
+        assertNull(names.get(100));
+
+        assertTrue(names.addAlternateName("6\t100\tEN\tUSA\t\t1"));
+        assertEquals("Expected short name", "USA", names.get(100));
+        assertTrue(names.addAlternateName("7\t100\teng\tUnited States of America\t1 \t\t\t"));
+        assertEquals("Expected preferred name over short name", "United States of America", names.get(100));
+        assertFalse(names.addAlternateName("8\t100\ten\tUS\t\t1"));
+        assertEquals("Expected preferred name to be kept", "United States of America", names.get(100));
+        assertTrue(names.addAlternateName("9\t100\ten\tUnited States\t1\t1\r"));
+        assertEquals("Expected preferred short name", "United States", names.get(100));
+        assertTrue(names.addAlternateName("10\t100\ten\tThe United States\t1\t1"));
+        assertEquals("Expected last name of the same kind", "The United States", names.get(100));
+        assertEquals(1, names.size());
+    }
+
+    @Test
+    public void testLoad() throws IOException {
+        StringBuilder file = new StringBuilder();
+        for (int id = 1; id <= 5000; id++) {
+            file.append(id * 2).append('\t').append(id).append("\ten\tPlace ").append(id).append("\t1\t\n");
+            file.append(id * 2 + 1).append('\t').append(id).append("\tru\tМесто ").append(id).append("\t1\t\n");
+        }
+        // the final line has no line terminator and a multi-byte name
+        file.append("10001\t5001\ten\tStraßenhaus\t\t1");
+        PreferredNames names = new PreferredNames();
+        assertEquals("Expected every line to be read", 10001,
+                names.load(new ByteArrayInputStream(file.toString().getBytes("UTF-8"))));
+        assertEquals(5001, names.size());
+        assertEquals("Place 1", names.get(1));
+        assertEquals("Place 5000", names.get(5000));
+        assertEquals("Straßenhaus", names.get(5001));
+        assertNull(names.get(5002));
+    }
+}
@@ -0,0 +1,89 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * ShardLayoutTest.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.index;
+
+import static org.junit.Assert.*;
+
+import com.bericotech.clavin.gazetteer.CountryCode;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the parsing and recording of gazetteer shard layouts.
+ */
+public class ShardLayoutTest {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testParse() {
+        ShardLayout layout = ShardLayout.parse(" americas = us, CA ;europe=GB");
+        assertEquals(Arrays.asList("americas", "europe", ShardLayout.DEFAULT_SHARD), new ArrayList<String>(layout.getShardNames()));
+        assertEquals(Arrays.asList(CountryCode.US, CountryCode.CA), layout.getCountries("americas"));
+        assertEquals("americas", layout.getShard(CountryCode.US));
+        assertEquals("europe", layout.getShard(CountryCode.GB));
+        assertEquals(ShardLayout.DEFAULT_SHARD, layout.getShard(CountryCode.FR));
+        assertEquals(ShardLayout.DEFAULT_SHARD, layout.getShard(CountryCode.NULL));
+        assertEquals(ShardLayout.DEFAULT_SHARD, layout.getShard(null));
+        assertTrue(layout.getCountries(ShardLayout.DEFAULT_SHARD).isEmpty());
+
+        // the default shard may be listed to set its position
+        layout = ShardLayout.parse("other;americas=US");
+        assertEquals(Arrays.asList(ShardLayout.DEFAULT_SHARD, "americas"), new ArrayList<String>(layout.getShardNames()));
+
+        for (String spec : new String[] { "", "americas", "americas=US;americas=CA", "americas=US;europe=US",
+                "americas=XX", "americas=NULL", "a/b=US", "other=US" }) {
+            try {
+                ShardLayout.parse(spec);
+                fail(String.format("Expected '%s' to be rejected", spec));
+            } catch (IllegalArgumentException iae) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testReadWrite() throws Exception {
+        File indexDir = tempFolder.newFolder();
+        assertFalse(ShardLayout.isSharded(indexDir));
+        ShardLayout layout = ShardLayout.parse("oceania=NZ,AU;americas=US;other;africa=SO");
+        layout.write(indexDir);
+        assertTrue(ShardLayout.isSharded(indexDir));
+        ShardLayout read = ShardLayout.read(indexDir);
+        assertEquals(new ArrayList<String>(layout.getShardNames()), new ArrayList<String>(read.getShardNames()));
+        for (String shard : layout.getShardNames()) {
+            assertEquals(layout.getCountries(shard), read.getCountries(shard));
+        }
+        assertEquals(new File(indexDir, "oceania"), read.getShardDirectory(indexDir, "oceania"));
+    }
+}
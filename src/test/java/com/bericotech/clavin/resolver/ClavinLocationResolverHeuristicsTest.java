@@ -5,9 +5,16 @@ import static org.junit.Assert.assertTrue;
 
 import com.bericotech.clavin.ClavinException;
 import com.bericotech.clavin.extractor.LocationOccurrence;
+import com.bericotech.clavin.gazetteer.BasicGeoName;
+import com.bericotech.clavin.gazetteer.CountryCode;
 import com.bericotech.clavin.gazetteer.query.LuceneGazetteer;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
 import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -265,4 +272,118 @@ public class ClavinLocationResolverHeuristicsTest {
         assertEquals("LocationResolver chose the wrong \"Washington\"", WASHINGTON_STATE_US, resolvedLocations.get(1).getGeoname().getGeonameID());
         assertEquals("LocationResolver chose the wrong \"Tacoma\"", TACOMA_WA, resolvedLocations.get(2).getGeoname().getGeonameID());
     }
+
+    /**
+     * Ensure the candidate search selects the same candidates as enumerating every combination
+     * of the candidates of the locations in the heuristics tests.
+     */
+    @Test
+    public void testPickBestCandidatesMatchesExhaustiveSearch() {
+        String[][] fixtures = {
+            { "Boston:US.MA:GB.ENG:US.GA:US.VA:US.KY", "Haverhill:US.MA:GB.ENG:US.NH:US.FL:US.IA",
+              "Worcester:US.MA:GB.ENG:ZA.11:US.NY:US.VT", "Springfield:US.MO:US.MA:US.IL:US.OH:US.OR",
+              "Leominister:US.MA:GB.ENG" },
+            { "Chicago:US.IL:US.IL:US.OH", "Rockford:US.IL:US.MI:US.MN:US.TN:US.OH",
+              "Springfield:US.MO:US.MA:US.IL:US.OH:US.OR", "Decatur:US.AL:US.IL:US.GA:US.TX:US.IN" },
+            { "Kansas City:US.MO:US.KS", "Springfield:US.MO:US.MA:US.IL:US.OH:US.OR",
+              "St. Louis:US.MO:US.MI:CA.10:SN.15:US.MN", "Independence:US.MO:US.KS:US.OR:US.KY:US.IA" },
+            { "London:GB.ENG:CA.08:US.KY:US.OH:ZA.05", "Manchester:GB.ENG:US.NH:US.CT:JM.12:US.TN",
+              "Haverhill:US.MA:GB.ENG:US.NH:US.FL:US.IA" },
+            { "Toronto:CA.08:US.OH:AU.02", "Ottawa:CA.08:US.IL:US.KS:US.OH", "Hamilton:CA.08:NZ.85:GB.SCT:US.OH:BM.03",
+              "Kitchener:CA.08", "London:GB.ENG:CA.08:US.KY:US.OH:ZA.05" },
+            { "Cairo:EG.11:US.IL:US.GA", "Benghazi:LY.54" },
+            { "Virginia:US.VA:ZA.03:US.MN:IE.C:AU.04", "Washington:US.DC:US.WA:GB.ENG:US.PA:US.NC",
+              "Maryland:US.MD:LR.13" },
+            { "Seattle:US.WA", "Washington:US.DC:US.WA:GB.ENG:US.PA:US.NC", "Tacoma:US.WA" }
+        };
+        int geonameId = 0;
+        for (String[] fixture : fixtures) {
+            List<List<ResolvedLocation>> allCandidates = new ArrayList<List<ResolvedLocation>>();
+            for (String location : fixture) {
+                String[] parts = location.split(":");
+                List<ResolvedLocation> candidates = new ArrayList<ResolvedLocation>();
+                for (int idx = 1; idx < parts.length; idx++) {
+                    String[] codes = parts[idx].split("\\.");
+                    candidates.add(makeCandidate(++geonameId, parts[0], codes[0], codes[1]));
+                }
+                allCandidates.add(candidates);
+            }
+            assertEquals(fixture[0], pickByEnumeration(allCandidates), resolver.pickBestCandidates(allCandidates));
+        }
+
+        // windows of randomly distributed candidates, including repeated codes, missing admin1
+        // codes and locations with fewer candidates than the search depth
+        Random random = new Random(42);
+        String[] countries = { "US", "CA", "GB", "NU" };
+        String[] states = { "MA", "IL", "08", "LL", null };
+        for (int test = 0; test < 500; test++) {
+            List<List<ResolvedLocation>> allCandidates = new ArrayList<List<ResolvedLocation>>();
+            int locationCount = 1 + random.nextInt(6);
+            for (int location = 0; location < locationCount; location++) {
+                List<ResolvedLocation> candidates = new ArrayList<ResolvedLocation>();
+                int candidateCount = 1 + random.nextInt(7);
+                for (int candidate = 0; candidate < candidateCount; candidate++) {
+                    candidates.add(makeCandidate(++geonameId, "Location" + location, countries[random.nextInt(countries.length)],
+                            states[random.nextInt(states.length)]));
+                }
+                allCandidates.add(candidates);
+            }
+            assertEquals("Window " + test, pickByEnumeration(allCandidates), resolver.pickBestCandidates(allCandidates));
+        }
+    }
+
+    private static ResolvedLocation makeCandidate(final int geonameId, final String name, final String country,
+            final String admin1) {
+        String record = String.format("%d\t%s\t%s\t\t0.0\t0.0\tP\tPPL\t%s\t\t%s\t\t\t\t%d\t\t0\tUTC\t2014-01-01",
+                geonameId, name, name, country, admin1 != null ? admin1 : "", 1000 - geonameId);
+        return new ResolvedLocation(new LocationOccurrence(name, 0), BasicGeoName.parseFromGeoNamesRecord(record), name, false);
+    }
+
+    /**
+     * Selects the best candidates by scoring every combination of the candidates at each depth,
+     * as the resolver did before it searched for the best combination.
+     */
+    private static List<ResolvedLocation> pickByEnumeration(final List<List<ResolvedLocation>> allCandidates) {
+        List<ResolvedLocation> bestCandidates = new ArrayList<ResolvedLocation>();
+        float newMaxScore = 0;
+        float oldMaxScore;
+        int candidateDepth = 3;
+        do {
+            oldMaxScore = newMaxScore;
+            for (List<ResolvedLocation> combo : generateAllCombos(allCandidates, 0, candidateDepth)) {
+                Set<CountryCode> countries = EnumSet.noneOf(CountryCode.class);
+                Set<String> states = new HashSet<String>();
+                for (ResolvedLocation location : combo) {
+                    countries.add(location.getGeoname().getPrimaryCountryCode());
+                    states.add(location.getGeoname().getPrimaryCountryCode() + location.getGeoname().getAdmin1Code());
+                }
+                float score = ((float) allCandidates.size() / (countries.size() + states.size())) / candidateDepth;
+                if (score > newMaxScore) {
+                    newMaxScore = score;
+                    bestCandidates = combo;
+                }
+            }
+            candidateDepth++;
+        } while (newMaxScore > oldMaxScore);
+        return bestCandidates;
+    }
+
+    private static List<List<ResolvedLocation>> generateAllCombos(final List<List<ResolvedLocation>> allCandidates,
+            final int index, final int depth) {
+        List<List<ResolvedLocation>> result = new ArrayList<List<ResolvedLocation>>();
+        if (index == allCandidates.size()) {
+            result.add(new ArrayList<ResolvedLocation>());
+            return result;
+        }
+        List<List<ResolvedLocation>> recursive = generateAllCombos(allCandidates, index + 1, depth);
+        for (int j = 0; j < Math.min(allCandidates.get(index).size(), depth); j++) {
+            for (List<ResolvedLocation> recList : recursive) {
+                List<ResolvedLocation> newList = new ArrayList<ResolvedLocation>();
+                newList.add(allCandidates.get(index).get(j));
+                newList.addAll(recList);
+                result.add(newList);
+            }
+        }
+        return result;
+    }
 }
\ No newline at end of file
@@ -7,10 +7,15 @@ import com.bericotech.clavin.ClavinException;
 import com.bericotech.clavin.extractor.LocationOccurrence;
 import com.bericotech.clavin.gazetteer.GeoName;
 import com.bericotech.clavin.gazetteer.query.AncestryMode;
+import com.bericotech.clavin.gazetteer.query.Gazetteer;
+import com.bericotech.clavin.gazetteer.query.GazetteerQuery;
 import com.bericotech.clavin.gazetteer.query.LuceneGazetteer;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -272,4 +277,157 @@ public class ClavinLocationResolverTest {
         assertFalse("mistook Bangladesh as demonym", isDemonym(locationOccurrences.get(4)));
         assertFalse("mistook Britain as demonym", isDemonym(locationOccurrences.get(5)));
     }
+
+    /**
+     * Ensure repeated location names are queried once and that the match
+     * chosen for a name is assigned to each of its occurrences.
+     */
+    @Test
+    public void testRepeatedLocations() throws ClavinException {
+        final Gazetteer gazetteer = resolver.getGazetteer();
+        final List<String> queried = new ArrayList<String>();
+        Gazetteer recording = new Gazetteer() {
+            @Override
+            public List<ResolvedLocation> getClosestLocations(final GazetteerQuery query) throws ClavinException {
+                queried.add(query.getOccurrence().getText());
+                return gazetteer.getClosestLocations(query);
+            }
+
+            @Override
+            public List<List<ResolvedLocation>> getClosestLocations(final List<GazetteerQuery> queries)
+                    throws ClavinException {
+                for (GazetteerQuery query : queries) {
+                    queried.add(query.getOccurrence().getText());
+                }
+                return gazetteer.getClosestLocations(queries);
+            }
+
+            @Override
+            public GeoName getGeoName(final int geonameId) throws ClavinException {
+                return gazetteer.getGeoName(geonameId);
+            }
+
+            @Override
+            public GeoName getGeoName(final int geonameId, final AncestryMode ancestryMode) throws ClavinException {
+                return gazetteer.getGeoName(geonameId, ancestryMode);
+            }
+
+            @Override
+            public void loadAncestry(final GeoName... geoNames) throws ClavinException {
+                gazetteer.loadAncestry(geoNames);
+            }
+
+            @Override
+            public void loadAncestry(final Collection<GeoName> geoNames) throws ClavinException {
+                gazetteer.loadAncestry(geoNames);
+            }
+        };
+        String[] locationNames = {"Reston", "Boston", "jhadghaoidhg", "Reston", "Boston", "Reston", "jhadghaoidhg"};
+        List<LocationOccurrence> locations = makeOccurrencesFromNames(locationNames);
+
+        ClavinLocationResolver recordingResolver = new ClavinLocationResolver(recording);
+        for (int maxHitDepth : new int[] {1, ClavinLocationResolver.DEFAULT_MAX_HIT_DEPTH}) {
+            queried.clear();
+            resolvedLocations = recordingResolver.resolveLocations(locations, maxHitDepth, 5, false);
+
+            assertEquals("Repeated names were queried", Arrays.asList("Reston", "Boston", "jhadghaoidhg"), queried);
+            assertEquals("Wrong number of locations", 5, resolvedLocations.size());
+            int[] positions = {0, 1, 3, 4, 5};
+            int[] expected = {RESTON_VA, BOSTON_MA, RESTON_VA, BOSTON_MA, RESTON_VA};
+            for (int i = 0; i < positions.length; i++) {
+                assertEquals("Wrong occurrence", locations.get(positions[i]), resolvedLocations.get(i).getLocation());
+                assertEquals("Wrong GeoName", expected[i], resolvedLocations.get(i).getGeoname().getGeonameID());
+            }
+        }
+    }
+
+    /**
+     * Ensure a resolver with a pool returns the same locations, in document
+     * order, as a resolver resolving on the calling thread.
+     */
+    @Test
+    public void testParallelResolution() throws ClavinException {
+        String[] names = {"Springfield", "Boston", "Reston", "Straßenhaus", "Virginia", "Springfield", "Vermont",
+                "Massachusetts", "Gun Barrel City", "Texas", "Germany", "Springfield", "Illinois"};
+        String[] locationNames = new String[250];
+        for (int i = 0; i < locationNames.length; i++) {
+            locationNames[i] = names[(i * 7) % names.length];
+        }
+        List<LocationOccurrence> locations = makeOccurrencesFromNames(locationNames);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ClavinLocationResolver parallel = new ClavinLocationResolver(resolver.getGazetteer(), pool);
+            assertSameLocations(resolver.resolveLocations(locations, 1, 1, false),
+                    parallel.resolveLocations(locations, 1, 1, false));
+            assertSameLocations(resolver.resolveLocations(locations, false), parallel.resolveLocations(locations, false));
+            assertSameLocations(resolver.resolveLocations(locations, true), parallel.resolveLocations(locations, true));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Ensure a gazetteer failure while retrieving candidates in parallel is
+     * reported as the original {@link ClavinException}.
+     */
+    @Test
+    public void testParallelGazetteerFailure() throws ClavinException {
+        final ClavinException failure = new ClavinException("expected failure");
+        Gazetteer failing = new Gazetteer() {
+            @Override
+            public List<ResolvedLocation> getClosestLocations(final GazetteerQuery query) throws ClavinException {
+                throw failure;
+            }
+
+            @Override
+            public List<List<ResolvedLocation>> getClosestLocations(final List<GazetteerQuery> queries)
+                    throws ClavinException {
+                throw failure;
+            }
+
+            @Override
+            public GeoName getGeoName(final int geonameId) throws ClavinException {
+                throw failure;
+            }
+
+            @Override
+            public GeoName getGeoName(final int geonameId, final AncestryMode ancestryMode) throws ClavinException {
+                throw failure;
+            }
+
+            @Override
+            public void loadAncestry(final GeoName... geoNames) throws ClavinException {
+                throw failure;
+            }
+
+            @Override
+            public void loadAncestry(final Collection<GeoName> geoNames) throws ClavinException {
+                throw failure;
+            }
+        };
+        String[] locationNames = new String[ClavinLocationResolver.MIN_PARALLEL_BATCH_SIZE * 4];
+        for (int i = 0; i < locationNames.length; i++) {
+            locationNames[i] = "Boston";
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            new ClavinLocationResolver(failing, pool).resolveLocations(makeOccurrencesFromNames(locationNames), false);
+            fail("Expected ClavinException");
+        } catch (ClavinException ce) {
+            assertSame("Unexpected exception", failure, ce);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertSameLocations(final List<ResolvedLocation> expected, final List<ResolvedLocation> actual) {
+        assertEquals("Wrong number of locations", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("Wrong location", expected.get(i).getLocation(), actual.get(i).getLocation());
+            assertEquals("Wrong GeoName", expected.get(i).getGeoname().getGeonameID(),
+                    actual.get(i).getGeoname().getGeonameID());
+        }
+    }
 }
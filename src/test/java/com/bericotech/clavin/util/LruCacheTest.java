@@ -0,0 +1,105 @@
+/*#####################################################################
+ *
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ *
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ *
+ * ====================================================================
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * ====================================================================
+ *
+ * LruCacheTest.java
+ *
+ *###################################################################*/
+
+package com.bericotech.clavin.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Tests for the bounded LRU cache.
+ */
+public class LruCacheTest {
+
+    /**
+     * Ensure the least recently used entry is evicted when the cache is full.
+     */
+    @Test
+    public void testEviction() {
+        LruCache<String, Integer> cache = new LruCache<String, Integer>(2);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        // touch "a" so "b" becomes the eldest entry
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        cache.put("c", 3);
+
+        assertEquals("Expected cache to be bounded", 2, cache.size());
+        assertNull("Expected least recently used entry to be evicted", cache.get("b"));
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        assertEquals(Integer.valueOf(3), cache.get("c"));
+        assertEquals("Expected a single eviction", 1, cache.getStats().getEvictionCount());
+    }
+
+    /**
+     * Ensure hits and misses are counted.
+     */
+    @Test
+    public void testStats() {
+        LruCache<String, Integer> cache = new LruCache<String, Integer>(10);
+        cache.get("a");
+        cache.put("a", 1);
+        cache.get("a");
+        cache.get("a");
+
+        CacheStats stats = cache.getStats();
+        assertEquals(2, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(3, stats.getRequestCount());
+        assertEquals(2.0 / 3.0, stats.getHitRate(), 0.0001);
+        assertEquals(1, stats.getSize());
+        assertEquals(10, stats.getMaxSize());
+    }
+
+    /**
+     * Ensure a cache with no capacity never stores values.
+     */
+    @Test
+    public void testDisabled() {
+        LruCache<String, Integer> cache = new LruCache<String, Integer>(0);
+        cache.put("a", 1);
+        assertNull("Disabled cache should not store values", cache.get("a"));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getStats().getMissCount());
+    }
+
+    /**
+     * Ensure entries expire once their time-to-live has elapsed.
+     */
+    @Test
+    public void testExpiration() throws InterruptedException {
+        LruCache<String, Integer> cache = new LruCache<String, Integer>(10, 10, TimeUnit.MILLISECONDS);
+        cache.put("a", 1);
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        Thread.sleep(50);
+        assertNull("Expected expired entry", cache.get("a"));
+        assertEquals("Expected expired entry to be removed", 0, cache.size());
+        assertEquals("Expected expiration to be counted as an eviction", 1, cache.getStats().getEvictionCount());
+    }
+}